@@ -1505,6 +1505,8 @@ public class ActiveModeWarden {
         mWifiInjector.getHalDeviceManager().dump(fd, pw, args);
         pw.println("Wifi handler thread overruns");
         mWifiInjector.getWifiHandlerLocalLog().dump(fd, pw, args);
+        pw.println("Wifi handler thread task stats");
+        mWifiInjector.getWifiHandler().dumpTaskStats(pw);
     }
 
     @VisibleForTesting
@@ -460,6 +460,8 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
     static final int CMD_RSSI_POLL                                      = BASE + 83;
     /** Runs RSSI poll once */
     static final int CMD_ONESHOT_RSSI_POLL                              = BASE + 84;
+    /** Results of an RSSI poll run by {@link SignalPoller} */
+    static final int CMD_SIGNAL_POLL_RESULT                             = BASE + 85;
     /* Enable suspend mode optimizations in the driver */
     static final int CMD_SET_SUSPEND_OPT_ENABLED                        = BASE + 86;
     /* L3 provisioning timed out*/
@@ -969,7 +971,8 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
 
     private void registerForWifiMonitorEvents()  {
         for (int event : WIFI_MONITOR_EVENTS) {
-            mWifiMonitor.registerHandler(mInterfaceName, event, getHandler());
+            // This state machine only handles the events of its own iface.
+            mWifiMonitor.registerHandler(mInterfaceName, event, getHandler(), false);
         }
 
         mWifiMetrics.registerForWifiMonitorEvents(mInterfaceName);
@@ -1609,17 +1612,32 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
             loge("getWifiLinkLayerStats called without an interface");
             return null;
         }
-        mLastLinkLayerStatsUpdate = mClock.getWallClockMillis();
         WifiLinkLayerStats stats = null;
-        if (isLinkLayerStatsSupported()) {
-            if (isPrimary()) {
-                stats = mWifiNative.getWifiLinkLayerStats(mInterfaceName);
-            } else {
-                if (mVerboseLoggingEnabled) {
-                    Log.w(getTag(), "Can't getWifiLinkLayerStats on secondary iface");
-                }
+        if (shouldFetchWifiLinkLayerStats()) {
+            stats = mWifiNative.getWifiLinkLayerStats(mInterfaceName);
+        }
+        return updateWifiLinkLayerStats(stats);
+    }
+
+    private boolean shouldFetchWifiLinkLayerStats() {
+        if (!isLinkLayerStatsSupported()) {
+            return false;
+        }
+        if (!isPrimary()) {
+            if (mVerboseLoggingEnabled) {
+                Log.w(getTag(), "Can't getWifiLinkLayerStats on secondary iface");
             }
+            return false;
         }
+        return true;
+    }
+
+    /**
+     * Updates the connection info with the link layer stats fetched from the HAL, or with the
+     * packet counters of the interface if |stats| is null.
+     */
+    private WifiLinkLayerStats updateWifiLinkLayerStats(@Nullable WifiLinkLayerStats stats) {
+        mLastLinkLayerStatsUpdate = mClock.getWallClockMillis();
         if (stats != null) {
             mOnTime = stats.on_time;
             mTxTime = stats.tx_time;
@@ -2130,6 +2148,7 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
     protected boolean recordLogRec(Message msg) {
         switch (msg.what) {
             case CMD_RSSI_POLL:
+            case CMD_SIGNAL_POLL_RESULT:
                 return mVerboseLoggingEnabled;
             default:
                 return true;
@@ -2245,6 +2264,7 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
                 break;
             case CMD_RSSI_POLL:
             case CMD_ONESHOT_RSSI_POLL:
+            case CMD_SIGNAL_POLL_RESULT:
             case CMD_UNWANTED_NETWORK:
                 sb.append(" ");
                 sb.append(Integer.toString(msg.arg1));
@@ -2500,6 +2520,8 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
                 return "CMD_SET_MAX_DTIM_MULTIPLIER";
             case CMD_SET_SUSPEND_OPT_ENABLED:
                 return "CMD_SET_SUSPEND_OPT_ENABLED";
+            case CMD_SIGNAL_POLL_RESULT:
+                return "CMD_SIGNAL_POLL_RESULT";
             case CMD_START_CONNECT:
                 return "CMD_START_CONNECT";
             case CMD_START_FILS_CONNECTION:
@@ -2750,7 +2772,16 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
     private WifiLinkLayerStats updateLinkLayerStatsRssiSpeedFrequencyCapabilities(long txBytes,
             long rxBytes) {
         WifiLinkLayerStats stats = getWifiLinkLayerStats();
-        WifiSignalPollResults pollResults = mWifiNative.signalPoll(mInterfaceName);
+        return updateRssiSpeedFrequencyCapabilities(stats,
+                mWifiNative.signalPoll(mInterfaceName), txBytes, rxBytes);
+    }
+
+    /*
+     * Update RSSI, linkspeed, and frequency on current connection and Network capabilities from
+     * signal poll results already fetched from the HAL
+     */
+    private WifiLinkLayerStats updateRssiSpeedFrequencyCapabilities(WifiLinkLayerStats stats,
+            @Nullable WifiSignalPollResults pollResults, long txBytes, long rxBytes) {
         if (pollResults == null) {
             return stats;
         }
@@ -5075,6 +5106,7 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
                 case WifiMonitor.ASSOCIATION_REJECTION_EVENT:
                 case CMD_RSSI_POLL:
                 case CMD_ONESHOT_RSSI_POLL:
+                case CMD_SIGNAL_POLL_RESULT:
                 case CMD_PRE_DHCP_ACTION:
                 case CMD_PRE_DHCP_ACTION_COMPLETE:
                 case CMD_POST_DHCP_ACTION:
@@ -6674,29 +6706,33 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
                         break;
                     }
                     if (message.arg1 == mRssiPollToken) {
-                        updateLinkLayerStatsRssiDataStallScoreReport();
-                        mWifiScoreCard.noteSignalPoll(mWifiInfo);
-                        if (isPrimary()) {
-                            mLinkProbeManager.updateConnectionStats(mWifiInfo, mInterfaceName);
-                        }
-                        // Update the polling interval as needed before sending the delayed message
-                        // so that the next polling can happen after the updated interval
-                        if (isPrimary()) {
-                            int curState = mWifiInjector.getActiveModeWarden()
-                                    .getDeviceMobilityState();
-                            mRssiMonitor.updatePollRssiInterval(curState);
-                        }
-                        sendMessageDelayed(obtainMessage(CMD_RSSI_POLL, mRssiPollToken, 0),
-                                mWifiGlobals.getPollRssiIntervalMillis());
-                        if (isPrimary()) {
-                            mWifiTrafficPoller.notifyOnDataActivity(
-                                    mWifiInfo.txSuccess, mWifiInfo.rxSuccess);
+                        SignalPoller signalPoller = mWifiInjector.getSignalPoller();
+                        if (signalPoller != null) {
+                            // The poll completes in CMD_SIGNAL_POLL_RESULT.
+                            final int token = mRssiPollToken;
+                            signalPoller.requestPoll(mInterfaceName,
+                                    shouldFetchWifiLinkLayerStats(),
+                                    sample -> sendMessage(CMD_SIGNAL_POLL_RESULT, token, 0,
+                                            sample));
+                        } else {
+                            updateLinkLayerStatsRssiDataStallScoreReport();
+                            completeRssiPoll();
                         }
                     } else {
                         // Polling has completed
                     }
                     break;
                 }
+                case CMD_SIGNAL_POLL_RESULT: {
+                    if (message.arg1 == mRssiPollToken) {
+                        updateLinkLayerStatsRssiDataStallScoreReport(
+                                (SignalPoller.Sample) message.obj);
+                        completeRssiPoll();
+                    } else {
+                        // Polling was disabled or restarted while the HAL was queried
+                    }
+                    break;
+                }
                 case CMD_ENABLE_RSSI_POLL: {
                     cleanWifiScore();
                     mEnableRssiPolling = (message.arg1 == 1);
@@ -6886,6 +6922,26 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
             }
             WifiLinkLayerStats stats = updateLinkLayerStatsRssiSpeedFrequencyCapabilities(txBytes,
                     rxBytes);
+            return updateDataStallAndScoreReport(stats, txBytes, rxBytes);
+        }
+
+        /**
+         * Same as {@link #updateLinkLayerStatsRssiDataStallScoreReport()}, with the results of a
+         * poll run by {@link SignalPoller}.
+         */
+        private WifiLinkLayerStats updateLinkLayerStatsRssiDataStallScoreReport(
+                SignalPoller.Sample sample) {
+            // Only supplicant was queried off the wifi thread, fall back to wificond here.
+            WifiSignalPollResults pollResults = mWifiNative.completeSignalPoll(mInterfaceName,
+                    sample.getSignalPollResults());
+            WifiLinkLayerStats stats = updateRssiSpeedFrequencyCapabilities(
+                    updateWifiLinkLayerStats(sample.getLinkLayerStats()), pollResults,
+                    sample.getTxBytes(), sample.getRxBytes());
+            return updateDataStallAndScoreReport(stats, sample.getTxBytes(), sample.getRxBytes());
+        }
+
+        private WifiLinkLayerStats updateDataStallAndScoreReport(WifiLinkLayerStats stats,
+                long txBytes, long rxBytes) {
             mWifiMetrics.updateWifiUsabilityStatsEntries(mInterfaceName, mWifiInfo, stats);
             // checkDataStallAndThroughputSufficiency() should be called before
             // mWifiScoreReport.calculateAndReportScore() which needs the latest throughput
@@ -6922,6 +6978,29 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
             mLastLinkLayerStats = stats;
             return stats;
         }
+
+        /**
+         * Notes the completed poll and schedules the next one.
+         */
+        private void completeRssiPoll() {
+            mWifiScoreCard.noteSignalPoll(mWifiInfo);
+            if (isPrimary()) {
+                mLinkProbeManager.updateConnectionStats(mWifiInfo, mInterfaceName);
+            }
+            // Update the polling interval as needed before sending the delayed message
+            // so that the next polling can happen after the updated interval
+            if (isPrimary()) {
+                int curState = mWifiInjector.getActiveModeWarden()
+                        .getDeviceMobilityState();
+                mRssiMonitor.updatePollRssiInterval(curState);
+            }
+            sendMessageDelayed(obtainMessage(CMD_RSSI_POLL, mRssiPollToken, 0),
+                    mWifiGlobals.getPollRssiIntervalMillis());
+            if (isPrimary()) {
+                mWifiTrafficPoller.notifyOnDataActivity(
+                        mWifiInfo.txSuccess, mWifiInfo.rxSuccess);
+            }
+        }
     }
 
     /**
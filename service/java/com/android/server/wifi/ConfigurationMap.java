@@ -19,25 +19,56 @@ package com.android.server.wifi;
 import android.net.wifi.ScanResult;
 import android.net.wifi.WifiConfiguration;
 import android.os.UserHandle;
-import android.text.TextUtils;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.android.server.wifi.util.WifiPermissionsUtil;
 
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
+/**
+ * Holds the configured networks, indexed by network ID, profile key, SSID and
+ * {@link ScanResultMatchInfo}.
+ *
+ * The keys of a network are computed once when it is put in the map, so the fields they are
+ * derived from (SSID, security params, creator, ...) must not be modified in place unless the
+ * network is put again afterwards, which re-indexes it.
+ *
+ * When several networks of the current user share a profile key, the one indexed first is
+ * returned by {@link #getByConfigKeyForCurrentUser(String)}, and the next one once it is removed.
+ */
 public class ConfigurationMap {
     private final Map<Integer, WifiConfiguration> mPerID = new HashMap<>();
 
     private final Map<Integer, WifiConfiguration> mPerIDForCurrentUser = new HashMap<>();
+    private final Map<String, List<WifiConfiguration>> mPerProfileKeyForCurrentUser =
+            new HashMap<>();
+    private final Map<String, List<WifiConfiguration>> mPerSsidForCurrentUser = new HashMap<>();
     private final Map<ScanResultMatchInfo, WifiConfiguration>
             mScanResultMatchInfoMapForCurrentUser = new HashMap<>();
+    /** Keys each network of the current user was indexed with, to be able to unindex it. */
+    private final Map<Integer, IndexKeys> mIndexKeysPerID = new HashMap<>();
+
+    private static class IndexKeys {
+        public final String profileKey;
+        @Nullable public final String ssid;
+        @Nullable public final ScanResultMatchInfo scanResultMatchInfo;
+
+        IndexKeys(String profileKey, @Nullable String ssid,
+                @Nullable ScanResultMatchInfo scanResultMatchInfo) {
+            this.profileKey = profileKey;
+            this.ssid = ssid;
+            this.scanResultMatchInfo = scanResultMatchInfo;
+        }
+    }
 
     @NonNull private final WifiPermissionsUtil mWifiPermissionsUtil;
 
@@ -59,17 +90,10 @@ public class ConfigurationMap {
     // RW methods:
     public WifiConfiguration put(WifiConfiguration config) {
         final WifiConfiguration current = mPerID.put(config.networkId, config);
-        if (config.shared || mWifiPermissionsUtil
-                .doesUidBelongToCurrentUserOrDeviceOwner(config.creatorUid)) {
-            mPerIDForCurrentUser.put(config.networkId, config);
-            // TODO (b/142035508): Add a more generic fix. This cache should only hold saved
-            // networks.
-            if (!config.fromWifiNetworkSpecifier && !config.fromWifiNetworkSuggestion
-                    && !config.isPasspoint()) {
-                mScanResultMatchInfoMapForCurrentUser.put(
-                        ScanResultMatchInfo.fromWifiConfiguration(config), config);
-            }
+        if (current != null) {
+            removeFromCurrentUserIndexes(current.networkId);
         }
+        addToCurrentUserIndexes(config);
         return current;
     }
 
@@ -78,33 +102,94 @@ public class ConfigurationMap {
         if (config == null) {
             return null;
         }
-
-        mPerIDForCurrentUser.remove(netID);
-
-        Iterator<Map.Entry<ScanResultMatchInfo, WifiConfiguration>> scanResultMatchInfoEntries =
-                mScanResultMatchInfoMapForCurrentUser.entrySet().iterator();
-        while (scanResultMatchInfoEntries.hasNext()) {
-            if (scanResultMatchInfoEntries.next().getValue().networkId == netID) {
-                scanResultMatchInfoEntries.remove();
-                break;
-            }
-        }
+        removeFromCurrentUserIndexes(netID);
         return config;
     }
 
     public void clear() {
         mPerID.clear();
-        mPerIDForCurrentUser.clear();
-        mScanResultMatchInfoMapForCurrentUser.clear();
+        clearCurrentUserIndexes();
     }
 
     /**
-     * Sets the new foreground user ID.
+     * Sets the new foreground user ID, and rebuilds the indexes of the networks visible to the
+     * current user.
      *
      * @param userId the id of the new foreground user
      */
     public void setNewUser(int userId) {
         mCurrentUserId = userId;
+        clearCurrentUserIndexes();
+        for (WifiConfiguration config : mPerID.values()) {
+            addToCurrentUserIndexes(config);
+        }
+    }
+
+    private void addToCurrentUserIndexes(WifiConfiguration config) {
+        if (!config.shared && !mWifiPermissionsUtil
+                .doesUidBelongToCurrentUserOrDeviceOwner(config.creatorUid)) {
+            return;
+        }
+        mPerIDForCurrentUser.put(config.networkId, config);
+        String profileKey = config.getProfileKey();
+        addToIndex(mPerProfileKeyForCurrentUser, profileKey, config);
+        String ssid = config.SSID;
+        if (ssid != null) {
+            addToIndex(mPerSsidForCurrentUser, ssid, config);
+        }
+        ScanResultMatchInfo scanResultMatchInfo = null;
+        // TODO (b/142035508): Add a more generic fix. This cache should only hold saved
+        // networks.
+        if (!config.fromWifiNetworkSpecifier && !config.fromWifiNetworkSuggestion
+                && !config.isPasspoint()) {
+            scanResultMatchInfo = ScanResultMatchInfo.fromWifiConfiguration(config);
+            mScanResultMatchInfoMapForCurrentUser.put(scanResultMatchInfo, config);
+        }
+        mIndexKeysPerID.put(config.networkId,
+                new IndexKeys(profileKey, ssid, scanResultMatchInfo));
+    }
+
+    private void removeFromCurrentUserIndexes(int netID) {
+        WifiConfiguration config = mPerIDForCurrentUser.remove(netID);
+        IndexKeys keys = mIndexKeysPerID.remove(netID);
+        if (config == null || keys == null) {
+            return;
+        }
+        // Use the keys the network was indexed with, its fields may have changed since.
+        removeFromIndex(mPerProfileKeyForCurrentUser, keys.profileKey, config);
+        if (keys.ssid != null) {
+            removeFromIndex(mPerSsidForCurrentUser, keys.ssid, config);
+        }
+        // Only drop the entry still pointing to this network, another network with the same
+        // match info may have replaced it.
+        if (keys.scanResultMatchInfo != null) {
+            mScanResultMatchInfoMapForCurrentUser.remove(keys.scanResultMatchInfo, config);
+        }
+    }
+
+    private static void addToIndex(Map<String, List<WifiConfiguration>> index, String key,
+            WifiConfiguration config) {
+        index.computeIfAbsent(key, k -> new ArrayList<>(1)).add(config);
+    }
+
+    private static void removeFromIndex(Map<String, List<WifiConfiguration>> index, String key,
+            WifiConfiguration config) {
+        List<WifiConfiguration> configs = index.get(key);
+        if (configs == null) {
+            return;
+        }
+        configs.remove(config);
+        if (configs.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    private void clearCurrentUserIndexes() {
+        mPerIDForCurrentUser.clear();
+        mPerProfileKeyForCurrentUser.clear();
+        mPerSsidForCurrentUser.clear();
+        mScanResultMatchInfoMapForCurrentUser.clear();
+        mIndexKeysPerID.clear();
     }
 
     // RO methods:
@@ -128,12 +213,21 @@ public class ConfigurationMap {
         if (key == null) {
             return null;
         }
-        for (WifiConfiguration config : mPerIDForCurrentUser.values()) {
-            if (TextUtils.equals(config.getProfileKey(), key)) {
-                return config;
-            }
-        }
-        return null;
+        List<WifiConfiguration> configs = mPerProfileKeyForCurrentUser.get(key);
+        return configs == null ? null : configs.get(0);
+    }
+
+    /**
+     * Retrieves the |WifiConfiguration| objects with the provided |ssid| visible to the current
+     * user.
+     *
+     * @param ssid SSID of the networks, in the format of {@link WifiConfiguration#SSID}.
+     * @return unmodifiable list of the matching networks, empty if there is none.
+     */
+    @NonNull
+    public List<WifiConfiguration> getBySsidForCurrentUser(String ssid) {
+        List<WifiConfiguration> configs = mPerSsidForCurrentUser.get(ssid);
+        return configs == null ? Collections.emptyList() : Collections.unmodifiableList(configs);
     }
 
     /**
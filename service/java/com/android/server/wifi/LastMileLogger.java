@@ -20,14 +20,16 @@ package com.android.server.wifi;
 import android.util.ArrayMap;
 
 import com.android.internal.annotations.VisibleForTesting;
+import com.android.server.wifi.util.DeflatedData;
 import com.android.server.wifi.util.FileUtils;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.PrintWriter;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.io.Reader;
 import java.util.Map;
 
 /**
@@ -88,11 +90,19 @@ public class LastMileLogger {
      * @param pw the PrintWriter that will receive the dump
      */
     public void dump(PrintWriter pw) {
-        dumpInternal(pw, "Last failed last-mile log", mLastMileLogForLastFailure);
-        dumpInternal(pw, "Latest last-mile log", readTrace());
+        dumpInternal(pw, "Last failed last-mile log", mLastMileLogForLastFailure == null
+                ? null : mLastMileLogForLastFailure.openInflatedStream());
+        InputStream latest = null;
+        try {
+            latest = new FileInputStream(mEventBufferPath);
+        } catch (IOException e) {
+            mLog.warn("Failed to read event trace: %").r(e.getMessage()).flush();
+        }
+        dumpInternal(pw, "Latest last-mile log", latest);
     }
 
     private static final String TAG = "LastMileLogger";
+    private static final int READ_CHUNK_SIZE = 4096;
     private static final String WIFI_EVENT_BUFFER_PATH =
             "/sys/kernel/tracing/instances/wifi/trace";
     private static final String WIFI_EVENT_ENABLE_PATH =
@@ -110,7 +120,8 @@ public class LastMileLogger {
     private String mEventEnablePath;
     private String mEventReleasePath;
     private WifiLog mLog;
-    private byte[] mLastMileLogForLastFailure;
+    // Kept deflated, as the trace can be large and is rarely dumped.
+    private DeflatedData mLastMileLogForLastFailure;
     private FileInputStream mLastMileTraceHandle;
     /**
      * String key: iface name
@@ -147,13 +158,20 @@ public class LastMileLogger {
         }
     }
 
-    private byte[] readTrace() {
-        try {
-            return Files.readAllBytes(Paths.get(mEventBufferPath));
+    /** Reads the trace, deflating it as it is read. */
+    private DeflatedData readTrace() {
+        DeflatedData.Builder builder = new DeflatedData.Builder();
+        try (InputStream in = new FileInputStream(mEventBufferPath)) {
+            byte[] chunk = new byte[READ_CHUNK_SIZE];
+            int count;
+            while ((count = in.read(chunk)) > 0) {
+                builder.write(chunk, 0, count);
+            }
         } catch (IOException e) {
+            // Keep what was read before the failure.
             mLog.warn("Failed to read event trace: %").r(e.getMessage()).flush();
-            return new byte[0];
         }
+        return builder.build();
     }
 
     private boolean ensureFailSafeIsArmed() {
@@ -181,14 +199,30 @@ public class LastMileLogger {
         }
     }
 
-    private static void dumpInternal(PrintWriter pw, String description, byte[] lastMileLog) {
-        if (lastMileLog == null || lastMileLog.length < 1) {
+    /**
+     * Streams the log to |pw| chunk by chunk, so the whole trace is never held as a String.
+     * Closes |lastMileLog|.
+     */
+    private void dumpInternal(PrintWriter pw, String description, InputStream lastMileLog) {
+        if (lastMileLog == null) {
             pw.format("No last mile log for \"%s\"\n", description);
             return;
         }
-
-        pw.format("-------------------------- %s ---------------------------\n", description);
-        pw.print(new String(lastMileLog));
-        pw.println("--------------------------------------------------------------------");
+        try (Reader reader = new InputStreamReader(lastMileLog)) {
+            char[] chunk = new char[READ_CHUNK_SIZE];
+            int count = reader.read(chunk);
+            if (count < 1) {
+                pw.format("No last mile log for \"%s\"\n", description);
+                return;
+            }
+            pw.format("-------------------------- %s ---------------------------\n", description);
+            while (count > 0) {
+                pw.write(chunk, 0, count);
+                count = reader.read(chunk);
+            }
+            pw.println("--------------------------------------------------------------------");
+        } catch (IOException e) {
+            mLog.warn("Failed to read event trace: %").r(e.getMessage()).flush();
+        }
     }
 }
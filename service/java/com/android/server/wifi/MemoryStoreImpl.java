@@ -44,7 +44,8 @@ final class MemoryStoreImpl implements WifiScoreCard.MemoryStore {
     @NonNull private final WifiScoreCard mWifiScoreCard;
     @NonNull private final WifiHealthMonitor mWifiHealthMonitor;
     @NonNull private final WifiInjector mWifiInjector;
-    @Nullable private IpMemoryStore mIpMemoryStore;
+    // Also used by the write-behind passes of WifiScoreCard, off the wifi thread
+    @Nullable private volatile IpMemoryStore mIpMemoryStore;
 
     MemoryStoreImpl(Context context, WifiInjector wifiInjector, WifiScoreCard wifiScoreCard,
             WifiHealthMonitor wifiHealthMonitor) {
@@ -55,7 +56,7 @@ final class MemoryStoreImpl implements WifiScoreCard.MemoryStore {
         mIpMemoryStore = null;
     }
 
-    private boolean mBroken = false;
+    private volatile boolean mBroken = false;
     private void handleException(Exception e) {
         // Skip Log.wtf when device is shutting down
         if (!mWifiInjector.getActiveModeWarden().isShuttingDown()) {
@@ -117,11 +118,12 @@ final class MemoryStoreImpl implements WifiScoreCard.MemoryStore {
 
     @Override
     public void write(String key, String name, byte[] value) {
-        if (mBroken) return;
+        final IpMemoryStore ipMemoryStore = mIpMemoryStore;
+        if (mBroken || ipMemoryStore == null) return;
         final Blob blob = new Blob();
         blob.data = value;
         try {
-            mIpMemoryStore.storeBlob(
+            ipMemoryStore.storeBlob(
                     key,
                     WIFI_FRAMEWORK_IP_MEMORY_STORE_CLIENT_ID,
                     name,
@@ -134,12 +136,13 @@ final class MemoryStoreImpl implements WifiScoreCard.MemoryStore {
 
     @Override
     public void setCluster(String key, String cluster) {
-        if (mBroken) return;
+        final IpMemoryStore ipMemoryStore = mIpMemoryStore;
+        if (mBroken || ipMemoryStore == null) return;
         try {
             NetworkAttributes attributes = new NetworkAttributes.Builder()
                     .setCluster(cluster)
                     .build();
-            mIpMemoryStore.storeNetworkAttributes(key, attributes, status -> {
+            ipMemoryStore.storeNetworkAttributes(key, attributes, status -> {
                 Log.d(TAG, "Set cluster " + cluster + " for " + key + ": " + status);
             });
         } catch (RuntimeException e) {
@@ -28,30 +28,49 @@ import android.os.SystemClock;
 import android.os.Trace;
 import android.util.LocalLog;
 
+import com.android.internal.annotations.VisibleForTesting;
 import com.android.modules.utils.HandlerExecutor;
 import com.android.server.wifi.proto.WifiStatsLog;
 
+import java.io.PrintWriter;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * RunnerHandler tracks all the Runnable jobs posted to the handler for the running time and
  * monitor if the running time exceeds the expected threshold.
  *
+ * Each job is identified by the caller which posted it, captured from the stack trace. Since
+ * lambdas and method references get a class per call site, the signature is only captured the
+ * first time a Runnable class is posted and is then cached for that class.
  */
 public class RunnerHandler extends Handler {
     private static final String TAG = "WifiThreadRunner";
 
     private static final String KEY_SIGNATURE = "KEY_RUNNER_HANDLER_SIGNATURE";
-    private static final String KEY_WHEN = "KEY_RUNNER_HANDLER_WHEN";
     private static final int METRICS_THRESHOLD_MILLIS = 100;
+    // Set as Message#obj of the messages enqueued by postToFront(), which carry their enqueue
+    // time in arg1/arg2 since Message#getWhen() is 0 for messages at the front of the queue.
+    // Callback messages posted without a token have a null obj, and a null token matches any
+    // obj, so this does not change which messages the remove/has methods of Handler match.
+    private static final Object POSTED_TO_FRONT = new Object();
 
     private final int mRunningTimeThresholdInMilliseconds;
     private Set<String> mIgnoredClasses = new HashSet<>();
     private Set<String> mIgnoredMethods = new HashSet<>();
+    // Signatures by Runnable class, filled in from the posting threads.
+    private final Map<Class<?>, String> mSignatureCache = new ConcurrentHashMap<>();
 
     // TODO: b/246623192 Add Wifi metric for Runner state overruns.
     private final LocalLog mLocalLog;
+    private final RunnerHandlerProfiler mProfiler = new RunnerHandlerProfiler();
+    // Number of messages enqueued through this handler, from any thread.
+    private final AtomicLong mEnqueuedCount = new AtomicLong();
+    // Number of messages dispatched by this handler, only accessed from the handler thread.
+    private long mDispatchedCount = 0;
 
     /**
      * The Runner handler Constructor
@@ -73,7 +92,8 @@ public class RunnerHandler extends Handler {
         mIgnoredMethods.add("handleMessage");
     }
 
-    private String getSignature(StackTraceElement[] elements, Runnable callback) {
+    @VisibleForTesting
+    String getSignature(StackTraceElement[] elements, Runnable callback) {
         StringBuilder sb = new StringBuilder();
         for (StackTraceElement e : elements) {
             // Go through the stack elements to find out the caller who schedule the job.
@@ -99,32 +119,79 @@ public class RunnerHandler extends Handler {
         return sb.length() == 0 ? "<UNKNOWN>" : sb.toString();
     }
 
+    /**
+     * Captures the signature of the caller posting the message. The stack trace is only captured
+     * the first time a Runnable class is posted, messages without a Runnable carry their
+     * signature in their data.
+     */
+    private void captureSignature(Message msg) {
+        Runnable callback = WifiThreadRunner.unwrapRunnable(msg.getCallback());
+        if (callback == null) {
+            msg.getData().putString(KEY_SIGNATURE,
+                    getSignature(new Throwable("RunnerHandler:").getStackTrace(), null));
+            return;
+        }
+        Class<?> clazz = callback.getClass();
+        if (!mSignatureCache.containsKey(clazz)) {
+            mSignatureCache.putIfAbsent(clazz,
+                    getSignature(new Throwable("RunnerHandler:").getStackTrace(),
+                            msg.getCallback()));
+        }
+    }
+
+    /**
+     * Returns the signature captured when the message was posted, or null if there is none.
+     */
+    @VisibleForTesting
+    String getCachedSignature(Message msg) {
+        Runnable callback = WifiThreadRunner.unwrapRunnable(msg.getCallback());
+        if (callback != null) {
+            return mSignatureCache.get(callback.getClass());
+        }
+        // Use peekData() so that messages without data do not allocate a Bundle.
+        final Bundle bundle = msg.peekData();
+        return bundle != null ? bundle.getString(KEY_SIGNATURE) : null;
+    }
+
     @Override
     public boolean sendMessageAtTime(Message msg, long uptimeMillis) {
-        String signature = getSignature(new Throwable("RunnerHandler:").getStackTrace(),
-                msg.getCallback());
-        Bundle bundle = msg.getData();
-        bundle.putString(KEY_SIGNATURE, signature);
-        return super.sendMessageAtTime(msg, uptimeMillis);
+        captureSignature(msg);
+        final boolean sent = super.sendMessageAtTime(msg, uptimeMillis);
+        if (sent) {
+            mEnqueuedCount.incrementAndGet();
+        }
+        return sent;
     }
 
     @Override
     public void dispatchMessage(@NonNull Message msg) {
-        final Bundle bundle = msg.getData();
-        final String signature = bundle.getString(KEY_SIGNATURE);
+        final String signature = getCachedSignature(msg);
         if (signature != null) {
             Trace.traceBegin(Trace.TRACE_TAG_NETWORK, signature);
         }
-        // The message sent to front of the queue has when=0, get from the bundle in that case.
-        final long when = msg.getWhen() != 0 ? msg.getWhen() : bundle.getLong(KEY_WHEN);
+        // The message sent to front of the queue has when=0, get the enqueue time stored by
+        // postToFront() in that case.
+        final long when;
+        if (msg.getWhen() != 0) {
+            when = msg.getWhen();
+        } else if (msg.obj == POSTED_TO_FRONT) {
+            when = ((long) msg.arg1 << 32) | (msg.arg2 & 0xFFFFFFFFL);
+        } else {
+            when = 0;
+        }
+        mDispatchedCount++;
         final long start = SystemClock.uptimeMillis();
-        final long scheduleLatency = start - when;
+        final long scheduleLatency = when != 0 ? start - when : 0;
+        if (mProfiler.shouldSampleQueueDepth(start)) {
+            mProfiler.noteQueueDepth(getQueueDepth());
+        }
         super.dispatchMessage(msg);
         if (signature != null) {
             Trace.traceEnd(Trace.TRACE_TAG_NETWORK);
         }
         final long runTime = SystemClock.uptimeMillis() - start;
         final String signatureToLog = signature != null ? signature : "unknown";
+        mProfiler.noteTask(signatureToLog, runTime, scheduleLatency);
         if (runTime > mRunningTimeThresholdInMilliseconds) {
             mLocalLog.log(signatureToLog + " was running for " + runTime);
         }
@@ -140,6 +207,45 @@ public class RunnerHandler extends Handler {
         }
     }
 
+    /**
+     * Returns the number of messages enqueued through this handler that are not dispatched yet.
+     * Must be called on the handler thread.
+     *
+     * This is an estimate derived from the enqueue and dispatch counters only, so that sampling
+     * it does not take the MessageQueue lock: delayed messages are counted as pending, messages
+     * posted with {@link Handler#postAtFrontOfQueue(Runnable)} are not counted, and messages
+     * removed before being dispatched are still counted as pending.
+     */
+    @VisibleForTesting
+    int getQueueDepth() {
+        return (int) Math.max(0, Math.min(mEnqueuedCount.get() - mDispatchedCount,
+                Integer.MAX_VALUE));
+    }
+
+    /**
+     * Enables or disables the collection of per task run time and schedule latency histograms.
+     * Must be called on the handler thread.
+     */
+    public void setTaskStatsEnabled(boolean enabled) {
+        mProfiler.setEnabled(enabled);
+    }
+
+    /**
+     * Clears the per task run time and schedule latency histograms. Must be called on the handler
+     * thread.
+     */
+    public void resetTaskStats() {
+        mProfiler.reset();
+    }
+
+    /**
+     * Dumps the per task run time and schedule latency histograms. Must be called on the handler
+     * thread.
+     */
+    public void dumpTaskStats(@NonNull PrintWriter pw) {
+        mProfiler.dump(pw);
+    }
+
     /**
      * Use this helper function rather than directly calling Handler#postAtFrontOfQueue, which does
      * not call sendMessageAtTime and set the signature. This function will set the signature
@@ -149,11 +255,15 @@ public class RunnerHandler extends Handler {
      */
     public final boolean postToFront(@NonNull Runnable r) {
         Message msg = Message.obtain(this, r);
-        String signature = getSignature(new Throwable("RunnerHandler:").getStackTrace(),
-                msg.getCallback());
-        Bundle bundle = msg.getData();
-        bundle.putString(KEY_SIGNATURE, signature);
-        bundle.putLong(KEY_WHEN, SystemClock.uptimeMillis());
-        return sendMessageAtFrontOfQueue(msg);
+        captureSignature(msg);
+        final long now = SystemClock.uptimeMillis();
+        msg.obj = POSTED_TO_FRONT;
+        msg.arg1 = (int) (now >>> 32);
+        msg.arg2 = (int) now;
+        final boolean sent = sendMessageAtFrontOfQueue(msg);
+        if (sent) {
+            mEnqueuedCount.incrementAndGet();
+        }
+        return sent;
     }
 }
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import android.annotation.NonNull;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.server.wifi.util.IntHistogram;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the distribution of the run time and schedule latency of the tasks executed by a
+ * {@link RunnerHandler}, keyed by task signature, along with samples of the handler queue depth.
+ *
+ * Recording a task is a map lookup plus two histogram increments, and does not allocate once the
+ * signature has been seen. This class is not thread safe, and is expected to only be accessed
+ * from the handler thread.
+ */
+public class RunnerHandlerProfiler {
+    /** Bucket boundaries in milliseconds for the run time and schedule latency histograms. */
+    private static final int[] LATENCY_BUCKETS_MS =
+            {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 5000};
+    /** Bucket boundaries for the number of messages pending in the queue. */
+    private static final int[] QUEUE_DEPTH_BUCKETS = {1, 2, 5, 10, 20, 50, 100, 200};
+    /**
+     * Max number of distinct signatures tracked, tasks with new signatures past this limit are
+     * aggregated together.
+     */
+    @VisibleForTesting
+    static final int MAX_SIGNATURES = 256;
+    @VisibleForTesting
+    static final String OVERFLOW_SIGNATURE = "<OTHER>";
+    /** Min interval between two samples of the queue depth. */
+    @VisibleForTesting
+    static final long QUEUE_DEPTH_SAMPLING_INTERVAL_MS = 10_000;
+
+    /** Stats of the tasks sharing a signature. */
+    private static class TaskStats {
+        public final IntHistogram runTimeMs = new IntHistogram(LATENCY_BUCKETS_MS);
+        public final IntHistogram scheduleLatencyMs = new IntHistogram(LATENCY_BUCKETS_MS);
+        public long count;
+        public long totalRunTimeMs;
+        public int maxRunTimeMs;
+        public int maxScheduleLatencyMs;
+    }
+
+    private final Map<String, TaskStats> mTaskStats = new HashMap<>();
+    private final IntHistogram mQueueDepth = new IntHistogram(QUEUE_DEPTH_BUCKETS);
+    private int mMaxQueueDepth;
+    private long mLastQueueDepthSampleTimeMs = Long.MIN_VALUE;
+    private boolean mEnabled = false;
+
+    /**
+     * Enables or disables the collection of the stats, which is disabled by default. Disabling
+     * clears the collected stats.
+     */
+    public void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+        if (!enabled) {
+            reset();
+        }
+    }
+
+    /** Returns whether stats are being collected. */
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * Records the execution of a task.
+     *
+     * @param signature signature of the task
+     * @param runTimeMs time spent running the task
+     * @param scheduleLatencyMs time between the task being due and the task starting
+     */
+    public void noteTask(@NonNull String signature, long runTimeMs, long scheduleLatencyMs) {
+        if (!mEnabled) return;
+        TaskStats stats = mTaskStats.get(signature);
+        if (stats == null) {
+            if (mTaskStats.size() >= MAX_SIGNATURES) {
+                signature = OVERFLOW_SIGNATURE;
+                stats = mTaskStats.get(signature);
+            }
+            if (stats == null) {
+                stats = new TaskStats();
+                mTaskStats.put(signature, stats);
+            }
+        }
+        int runTime = (int) Math.min(runTimeMs, Integer.MAX_VALUE);
+        int scheduleLatency = (int) Math.max(0, Math.min(scheduleLatencyMs, Integer.MAX_VALUE));
+        stats.runTimeMs.increment(runTime);
+        stats.scheduleLatencyMs.increment(scheduleLatency);
+        stats.count++;
+        stats.totalRunTimeMs += runTime;
+        stats.maxRunTimeMs = Math.max(stats.maxRunTimeMs, runTime);
+        stats.maxScheduleLatencyMs = Math.max(stats.maxScheduleLatencyMs, scheduleLatency);
+    }
+
+    /**
+     * Returns whether the queue depth should be sampled now, and if so starts a new sampling
+     * interval.
+     */
+    public boolean shouldSampleQueueDepth(long nowMs) {
+        if (!mEnabled) return false;
+        if (mLastQueueDepthSampleTimeMs != Long.MIN_VALUE
+                && nowMs - mLastQueueDepthSampleTimeMs < QUEUE_DEPTH_SAMPLING_INTERVAL_MS) {
+            return false;
+        }
+        mLastQueueDepthSampleTimeMs = nowMs;
+        return true;
+    }
+
+    /** Records a sample of the number of messages pending in the queue. */
+    public void noteQueueDepth(int depth) {
+        if (!mEnabled) return;
+        mQueueDepth.increment(depth);
+        mMaxQueueDepth = Math.max(mMaxQueueDepth, depth);
+    }
+
+    /** Returns the number of distinct signatures being tracked. */
+    public int getNumSignatures() {
+        return mTaskStats.size();
+    }
+
+    /** Returns the number of tasks recorded with the given signature. */
+    public long getTaskCount(@NonNull String signature) {
+        TaskStats stats = mTaskStats.get(signature);
+        return stats == null ? 0 : stats.count;
+    }
+
+    /** Clears all the collected stats. */
+    public void reset() {
+        mTaskStats.clear();
+        mQueueDepth.clear();
+        mMaxQueueDepth = 0;
+        mLastQueueDepthSampleTimeMs = Long.MIN_VALUE;
+    }
+
+    /**
+     * Dumps the collected stats, ordered by decreasing total run time.
+     */
+    public void dump(@NonNull PrintWriter pw) {
+        pw.println("RunnerHandlerProfiler: enabled=" + mEnabled);
+        pw.println("Queue depth samples: " + mQueueDepth + " max=" + mMaxQueueDepth);
+        List<Map.Entry<String, TaskStats>> entries = new ArrayList<>(mTaskStats.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue().totalRunTimeMs,
+                a.getValue().totalRunTimeMs));
+        for (Map.Entry<String, TaskStats> entry : entries) {
+            TaskStats stats = entry.getValue();
+            pw.println(entry.getKey() + ": count=" + stats.count
+                    + " totalRunTimeMs=" + stats.totalRunTimeMs
+                    + " maxRunTimeMs=" + stats.maxRunTimeMs
+                    + " maxScheduleLatencyMs=" + stats.maxScheduleLatencyMs);
+            pw.println("  runTimeMs=" + stats.runTimeMs);
+            pw.println("  scheduleLatencyMs=" + stats.scheduleLatencyMs);
+        }
+    }
+}
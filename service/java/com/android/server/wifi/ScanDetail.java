@@ -42,6 +42,7 @@ public class ScanDetail {
     private volatile NetworkDetail mNetworkDetail;
     private long mSeen = 0;
     private byte[] mInformationElementRawData;
+    private ScanResultMatchInfo mScanResultMatchInfo;
     private static final ScanResult.Builder sBuilder = new ScanResult.Builder();
 
     /**
@@ -178,6 +179,16 @@ public class ScanDetail {
         return mScanResult;
     }
 
+    /**
+     * Get the {@link ScanResultMatchInfo} of the scan result, which is computed on the first call.
+     */
+    public @NonNull ScanResultMatchInfo getScanResultMatchInfo() {
+        if (mScanResultMatchInfo == null) {
+            mScanResultMatchInfo = ScanResultMatchInfo.fromScanResult(mScanResult);
+        }
+        return mScanResultMatchInfo;
+    }
+
     public NetworkDetail getNetworkDetail() {
         return mNetworkDetail;
     }
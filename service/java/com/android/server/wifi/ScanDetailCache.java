@@ -22,31 +22,55 @@ import android.net.wifi.WifiConfiguration;
 
 import com.android.server.wifi.hotspot2.NetworkDetail;
 
+import java.util.AbstractCollection;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
  * Maps BSSIDs to their individual ScanDetails for a given WifiConfiguration.
+ *
+ * The entries are also kept in a list ordered by ascending timestamp, so that the oldest entries
+ * can be evicted and the most recent entry can be found without sorting the whole cache. Scan
+ * details are usually added in timestamp order, in which case adding an entry is O(1).
  */
 public class ScanDetailCache {
 
     private static final String TAG = "ScanDetailCache";
     private static final boolean DBG = false;
 
+    /** Entry of the cache, linked in ascending order of timestamp, then BSSID. */
+    private static final class Node {
+        public final String bssid;
+        public ScanDetail scanDetail;
+        /** Timestamp of |scanDetail| when it was linked. */
+        public long seen;
+        public Node prev;
+        public Node next;
+
+        Node(String bssid) {
+            this.bssid = bssid;
+        }
+    }
+
     private final WifiConfiguration mConfig;
     private final int mMaxSize;
     private final int mTrimSize;
-    private final HashMap<String, ScanDetail> mMap;
+    private final HashMap<String, Node> mMap;
+    /** Oldest entry. */
+    private Node mHead;
+    /** Most recent entry. */
+    private Node mTail;
 
     /**
      * Scan Detail cache associated with each configured network.
      *
      * The cache size is trimmed down to |trimSize| once it crosses the provided |maxSize|.
-     * Since this operation is relatively expensive, ensure that |maxSize| and |trimSize| are not
-     * too close to each other. |trimSize| should always be <= |maxSize|.
+     * |trimSize| should always be <= |maxSize|.
      *
      * @param config   WifiConfiguration object corresponding to the network.
      * @param maxSize  Max size desired for the cache.
@@ -65,7 +89,16 @@ public class ScanDetailCache {
             trim();
         }
 
-        mMap.put(scanDetail.getBSSIDString(), scanDetail);
+        String bssid = scanDetail.getBSSIDString();
+        Node node = mMap.get(bssid);
+        if (node == null) {
+            node = new Node(bssid);
+            mMap.put(bssid, node);
+        } else {
+            unlink(node);
+        }
+        node.scanDetail = scanDetail;
+        link(node);
     }
 
     /**
@@ -86,11 +119,28 @@ public class ScanDetailCache {
      * @return {@code null} if no match ScanDetail is found.
      */
     public ScanDetail getScanDetail(@NonNull String bssid) {
-        return mMap.get(bssid);
+        Node node = mMap.get(bssid);
+        return node == null ? null : node.scanDetail;
     }
 
     void remove(@NonNull String bssid) {
-        mMap.remove(bssid);
+        Node node = mMap.remove(bssid);
+        if (node != null) {
+            unlink(node);
+        }
+    }
+
+    /**
+     * Must be called after the timestamp of the ScanDetail cached for |bssid| was updated in
+     * place, to move it to its new position in the timestamp order.
+     */
+    void onSeenUpdated(@NonNull String bssid) {
+        Node node = mMap.get(bssid);
+        if (node == null || node.seen == node.scanDetail.getSeen()) {
+            return;
+        }
+        unlink(node);
+        link(node);
     }
 
     int size() {
@@ -105,52 +155,112 @@ public class ScanDetailCache {
         return mMap.keySet();
     }
 
+    /**
+     * Returns a view of the cached ScanDetails, in ascending order of timestamp.
+     */
     Collection<ScanDetail> values() {
-        return mMap.values();
+        return mValues;
     }
 
+    private final Collection<ScanDetail> mValues = new AbstractCollection<ScanDetail>() {
+        @Override
+        public Iterator<ScanDetail> iterator() {
+            return new Iterator<ScanDetail>() {
+                private Node mNext = mHead;
+
+                @Override
+                public boolean hasNext() {
+                    return mNext != null;
+                }
+
+                @Override
+                public ScanDetail next() {
+                    if (mNext == null) {
+                        throw new NoSuchElementException();
+                    }
+                    ScanDetail scanDetail = mNext.scanDetail;
+                    mNext = mNext.next;
+                    return scanDetail;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return mMap.size();
+        }
+    };
+
     /**
-     * Method to reduce the cache to |mTrimSize| size by removing the oldest entries.
-     * TODO: Investigate if this method can be further optimized.
+     * Links |node| at its position in ascending order of timestamp, then BSSID. Starts from the
+     * most recent entry, as new entries are usually the most recent ones.
      */
-    private void trim() {
-        int currentSize = mMap.size();
-        if (currentSize < mTrimSize) {
-            return; // Nothing to trim
+    private void link(Node node) {
+        node.seen = node.scanDetail.getSeen();
+        Node prev = mTail;
+        while (prev != null && (prev.seen > node.seen
+                || (prev.seen == node.seen && prev.bssid.compareTo(node.bssid) > 0))) {
+            prev = prev.prev;
         }
-        ArrayList<ScanDetail> list = new ArrayList<ScanDetail>(mMap.values());
-        if (list.size() != 0) {
-            // Sort by ascending timestamp (oldest scan results first)
-            Collections.sort(list, new Comparator() {
-                public int compare(Object o1, Object o2) {
-                    ScanDetail a = (ScanDetail) o1;
-                    ScanDetail b = (ScanDetail) o2;
-                    if (a.getSeen() > b.getSeen()) {
-                        return 1;
-                    }
-                    if (a.getSeen() < b.getSeen()) {
-                        return -1;
-                    }
-                    return a.getBSSIDString().compareTo(b.getBSSIDString());
-                }
-            });
+        Node next = prev == null ? mHead : prev.next;
+        node.prev = prev;
+        node.next = next;
+        if (prev == null) {
+            mHead = node;
+        } else {
+            prev.next = node;
+        }
+        if (next == null) {
+            mTail = node;
+        } else {
+            next.prev = node;
+        }
+    }
+
+    private void unlink(Node node) {
+        if (node.prev == null) {
+            mHead = node.next;
+        } else {
+            node.prev.next = node.next;
+        }
+        if (node.next == null) {
+            mTail = node.prev;
+        } else {
+            node.next.prev = node.prev;
         }
-        for (int i = 0; i < currentSize - mTrimSize; i++) {
+        node.prev = null;
+        node.next = null;
+    }
+
+    /**
+     * Method to reduce the cache to |mTrimSize| size by removing the oldest entries.
+     */
+    private void trim() {
+        while (mMap.size() > mTrimSize && mHead != null) {
             // Remove oldest results from scan cache
-            ScanDetail result = list.get(i);
-            mMap.remove(result.getBSSIDString());
+            Node oldest = mHead;
+            unlink(oldest);
+            mMap.remove(oldest.bssid);
         }
     }
 
     /**
-     * Return the most recent ScanResult for this network, or null if non exists.
+     * Return the most recent ScanResult for this network, or null if non exists. Among the most
+     * recent ScanResults with the same timestamp, the one with the highest RSSI is returned.
      */
     public ScanResult getMostRecentScanResult() {
-        ArrayList<ScanDetail> list = sort();
-        if (list.size() == 0) {
+        if (mTail == null) {
             return null;
         }
-        return list.get(0).getScanResult();
+        ScanResult best = mTail.scanDetail.getScanResult();
+        for (Node node = mTail.prev; node != null && node.seen == mTail.seen; node = node.prev) {
+            ScanResult result = node.scanDetail.getScanResult();
+            if (result.level > best.level
+                    || (result.level == best.level && result.BSSID.compareTo(best.BSSID) < 0)) {
+                best = result;
+            }
+        }
+        return best;
     }
 
     /**
@@ -159,7 +269,7 @@ public class ScanDetailCache {
      * @hide
      **/
     private ArrayList<ScanDetail> sort() {
-        ArrayList<ScanDetail> list = new ArrayList<ScanDetail>(mMap.values());
+        ArrayList<ScanDetail> list = new ArrayList<ScanDetail>(values());
         if (list.size() != 0) {
             Collections.sort(list, new Comparator() {
                 public int compare(Object o1, Object o2) {
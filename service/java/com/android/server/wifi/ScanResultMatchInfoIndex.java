@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import android.annotation.NonNull;
+import android.net.wifi.ScanResult;
+import android.util.Pair;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of scan results by SSID, holding the {@link ScanResultMatchInfo} of each scan result so
+ * that it is computed once when the same scan results are matched with many networks.
+ *
+ * Two {@link ScanResultMatchInfo} can only be equal if they have the same SSID, so matching a
+ * network only compares its match info with the scan results of the same SSID.
+ */
+public class ScanResultMatchInfoIndex {
+    private final List<ScanResult> mScanResults = new ArrayList<>();
+    private final Map<String, List<Pair<ScanResult, ScanResultMatchInfo>>> mScanResultsBySsid =
+            new HashMap<>();
+
+    /**
+     * Create an index of the given scan results.
+     */
+    public static ScanResultMatchInfoIndex fromScanResults(@NonNull List<ScanResult> scanResults) {
+        ScanResultMatchInfoIndex index = new ScanResultMatchInfoIndex();
+        for (ScanResult scanResult : scanResults) {
+            index.add(scanResult, ScanResultMatchInfo.fromScanResult(scanResult));
+        }
+        return index;
+    }
+
+    /**
+     * Create an index of the scan results of the given scan details, reusing the match info
+     * cached in the scan details.
+     */
+    public static ScanResultMatchInfoIndex fromScanDetails(@NonNull List<ScanDetail> scanDetails) {
+        ScanResultMatchInfoIndex index = new ScanResultMatchInfoIndex();
+        for (ScanDetail scanDetail : scanDetails) {
+            index.add(scanDetail.getScanResult(), scanDetail.getScanResultMatchInfo());
+        }
+        return index;
+    }
+
+    private void add(ScanResult scanResult, ScanResultMatchInfo matchInfo) {
+        mScanResults.add(scanResult);
+        List<Pair<ScanResult, ScanResultMatchInfo>> sameSsid =
+                mScanResultsBySsid.get(matchInfo.networkSsid);
+        if (sameSsid == null) {
+            sameSsid = new ArrayList<>();
+            mScanResultsBySsid.put(matchInfo.networkSsid, sameSsid);
+        }
+        sameSsid.add(Pair.create(scanResult, matchInfo));
+    }
+
+    /**
+     * Get all the indexed scan results, in the order they were indexed.
+     */
+    public @NonNull List<ScanResult> getScanResults() {
+        return mScanResults;
+    }
+
+    /**
+     * Get the scan results matching a network, in the order they were indexed.
+     *
+     * @param matchInfoFromConfiguration match info of the network configuration
+     * @return the matching scan results
+     */
+    public @NonNull List<ScanResult> getMatchingScanResults(
+            @NonNull ScanResultMatchInfo matchInfoFromConfiguration) {
+        List<ScanResult> matchingScanResults = new ArrayList<>();
+        List<Pair<ScanResult, ScanResultMatchInfo>> sameSsid =
+                mScanResultsBySsid.get(matchInfoFromConfiguration.networkSsid);
+        if (sameSsid == null) {
+            return matchingScanResults;
+        }
+        for (Pair<ScanResult, ScanResultMatchInfo> entry : sameSsid) {
+            if (matchInfoFromConfiguration.equals(entry.second)) {
+                matchingScanResults.add(entry.first);
+            }
+        }
+        return matchingScanResults;
+    }
+}
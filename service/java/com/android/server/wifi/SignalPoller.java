@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.os.Handler;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.modules.utils.build.SdkLevel;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Queries the signal poll results and link layer stats of the client interfaces off the wifi
+ * thread, for the RSSI polls of {@link ClientModeImpl}.
+ *
+ * The polls requested for all the interfaces while the poll thread is busy are batched and run
+ * back to back, and a second request for an interface whose poll has not started yet is merged
+ * into the pending one, so a slow HAL can not queue up polls. Each poll result is delivered as a
+ * single immutable {@link Sample}.
+ */
+public class SignalPoller {
+    /** Results of one poll of an interface. */
+    public static final class Sample {
+        private final String mIfaceName;
+        private final WifiLinkLayerStats mLinkLayerStats;
+        private final WifiSignalPollResults mSignalPollResults;
+        private final long mTxBytes;
+        private final long mRxBytes;
+        private final long mTimestampMs;
+
+        public Sample(@NonNull String ifaceName, @Nullable WifiLinkLayerStats linkLayerStats,
+                @Nullable WifiSignalPollResults signalPollResults, long txBytes, long rxBytes,
+                long timestampMs) {
+            mIfaceName = ifaceName;
+            mLinkLayerStats = linkLayerStats;
+            mSignalPollResults = signalPollResults;
+            mTxBytes = txBytes;
+            mRxBytes = rxBytes;
+            mTimestampMs = timestampMs;
+        }
+
+        /** Name of the polled interface. */
+        @NonNull
+        public String getIfaceName() {
+            return mIfaceName;
+        }
+
+        /**
+         * Link layer stats of the interface, null if they were not requested or could not be
+         * fetched. The stats are owned by the sample and must not be modified.
+         */
+        @Nullable
+        public WifiLinkLayerStats getLinkLayerStats() {
+            return mLinkLayerStats;
+        }
+
+        /**
+         * Signal poll results of supplicant for the interface, null if they could not be
+         * fetched. They are completed with {@link WifiNative#completeSignalPoll(String,
+         * WifiSignalPollResults)} on the wifi thread.
+         */
+        @Nullable
+        public WifiSignalPollResults getSignalPollResults() {
+            return mSignalPollResults;
+        }
+
+        /** Total bytes transmitted on the interface. */
+        public long getTxBytes() {
+            return mTxBytes;
+        }
+
+        /** Total bytes received on the interface. */
+        public long getRxBytes() {
+            return mRxBytes;
+        }
+
+        /** Time the poll completed, in milliseconds since boot. */
+        public long getTimestampMs() {
+            return mTimestampMs;
+        }
+    }
+
+    /** Receives the result of a poll. */
+    public interface Callback {
+        /**
+         * Called on the poll thread once the interface was polled. Implementations are expected
+         * to hand the sample over to their own thread.
+         */
+        void onSignalPollSample(@NonNull Sample sample);
+    }
+
+    private static class Request {
+        public final boolean fetchLinkLayerStats;
+        public final Callback callback;
+
+        Request(boolean fetchLinkLayerStats, Callback callback) {
+            this.fetchLinkLayerStats = fetchLinkLayerStats;
+            this.callback = callback;
+        }
+    }
+
+    private final WifiNative mWifiNative;
+    private final FrameworkFacade mFacade;
+    private final Clock mClock;
+    private final Handler mHandler;
+    private final Object mLock = new Object();
+    @GuardedBy("mLock")
+    private final Map<String, Request> mPendingRequests = new LinkedHashMap<>();
+    @GuardedBy("mLock")
+    private boolean mBatchScheduled;
+    @GuardedBy("mLock")
+    private long mNumBatches;
+    @GuardedBy("mLock")
+    private long mNumPolls;
+    @GuardedBy("mLock")
+    private long mNumMergedRequests;
+
+    /**
+     * @param handler handler of the thread running the polls, not the wifi thread.
+     */
+    public SignalPoller(@NonNull WifiNative wifiNative, @NonNull FrameworkFacade facade,
+            @NonNull Clock clock, @NonNull Handler handler) {
+        mWifiNative = wifiNative;
+        mFacade = facade;
+        mClock = clock;
+        mHandler = handler;
+    }
+
+    /**
+     * Requests a poll of an interface. If a poll of the interface is already pending, the two
+     * requests are served by the same poll, which reports to the latest callback only.
+     *
+     * @param ifaceName interface to poll.
+     * @param fetchLinkLayerStats whether to fetch the link layer stats along with the signal poll
+     *                            results.
+     * @param callback receives the results.
+     */
+    public void requestPoll(@NonNull String ifaceName, boolean fetchLinkLayerStats,
+            @NonNull Callback callback) {
+        synchronized (mLock) {
+            Request pending = mPendingRequests.put(ifaceName,
+                    new Request(fetchLinkLayerStats, callback));
+            if (pending != null) {
+                mNumMergedRequests++;
+            }
+            if (!mBatchScheduled) {
+                mBatchScheduled = true;
+                mHandler.post(this::runBatch);
+            }
+        }
+    }
+
+    /** Polls all the interfaces requested since the previous batch. */
+    private void runBatch() {
+        List<Map.Entry<String, Request>> batch;
+        synchronized (mLock) {
+            batch = new ArrayList<>(mPendingRequests.entrySet());
+            mPendingRequests.clear();
+            mBatchScheduled = false;
+            mNumBatches++;
+            mNumPolls += batch.size();
+        }
+        // Query the HAL for all the interfaces before delivering any sample, so that a slow
+        // consumer does not delay the polls of the other interfaces.
+        Sample[] samples = new Sample[batch.size()];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = poll(batch.get(i).getKey(), batch.get(i).getValue().fetchLinkLayerStats);
+        }
+        for (int i = 0; i < samples.length; i++) {
+            batch.get(i).getValue().callback.onSignalPollSample(samples[i]);
+        }
+    }
+
+    private Sample poll(String ifaceName, boolean fetchLinkLayerStats) {
+        long txBytes;
+        long rxBytes;
+        if (SdkLevel.isAtLeastS()) {
+            txBytes = mFacade.getTxBytes(ifaceName);
+            rxBytes = mFacade.getRxBytes(ifaceName);
+        } else {
+            txBytes = mFacade.getTotalTxBytes() - mFacade.getMobileTxBytes();
+            rxBytes = mFacade.getTotalRxBytes() - mFacade.getMobileRxBytes();
+        }
+        WifiLinkLayerStats stats = null;
+        if (fetchLinkLayerStats) {
+            stats = mWifiNative.getWifiLinkLayerStats(ifaceName);
+        }
+        // wificond is not thread safe, the wifi thread falls back to it if supplicant fails.
+        WifiSignalPollResults pollResults = mWifiNative.getSupplicantSignalPollResults(ifaceName);
+        return new Sample(ifaceName, stats, pollResults, txBytes, rxBytes,
+                mClock.getElapsedSinceBootMillis());
+    }
+
+    /** Dump the internal state of SignalPoller. */
+    public void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
+        pw.println("Dump of SignalPoller");
+        synchronized (mLock) {
+            pw.println("mNumBatches=" + mNumBatches);
+            pw.println("mNumPolls=" + mNumPolls);
+            pw.println("mNumMergedRequests=" + mNumMergedRequests);
+            pw.println("mPendingRequests=" + mPendingRequests.keySet());
+        }
+    }
+}
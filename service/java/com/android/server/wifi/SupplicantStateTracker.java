@@ -136,7 +136,7 @@ public class SupplicantStateTracker extends StateMachine {
 
     private void registerForWifiMonitorEvents() {
         for (int event : WIFI_MONITOR_EVENTS) {
-            mWifiMonitor.registerHandler(mInterfaceName, event, getHandler());
+            mWifiMonitor.registerHandler(mInterfaceName, event, getHandler(), false);
         }
     }
 
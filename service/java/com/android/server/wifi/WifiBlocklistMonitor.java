@@ -20,6 +20,7 @@ import static android.net.wifi.WifiConfiguration.NetworkSelectionStatus.DISABLE_
 
 import android.annotation.IntDef;
 import android.annotation.NonNull;
+import android.annotation.Nullable;
 import android.content.Context;
 import android.net.wifi.ScanResult;
 import android.net.wifi.WifiConfiguration;
@@ -31,6 +32,7 @@ import android.util.ArrayMap;
 import android.util.ArraySet;
 import android.util.LocalLog;
 import android.util.Log;
+import android.util.LongSparseArray;
 import android.util.SparseArray;
 
 import com.android.internal.annotations.VisibleForTesting;
@@ -50,10 +52,9 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * This class manages the addition and removal of BSSIDs to the BSSID blocklist, which is used
@@ -135,8 +136,19 @@ public class WifiBlocklistMonitor {
     private final SparseArray<DisableReasonInfo> mDisableReasonInfo;
     private final WifiGlobals mWifiGlobals;
 
-    // Map of bssid to BssidStatus
-    private Map<String, BssidStatus> mBssidStatusMap = new ArrayMap<>();
+    // Key of a BSSID that is not a valid MAC address, such BSSIDs are not tracked.
+    @VisibleForTesting
+    static final long INVALID_BSSID_KEY = -1;
+    // Slack of stale entries allowed in the expiry queue before it is compacted.
+    private static final int EXPIRY_QUEUE_COMPACTION_SLACK = 16;
+
+    // Map of bssid key to BssidStatus
+    private final LongSparseArray<BssidStatus> mBssidStatusMap = new LongSparseArray<>();
+    // Subset of mBssidStatusMap that is in the blocklist
+    private final LongSparseArray<BssidStatus> mBlockedBssids = new LongSparseArray<>();
+    // Blocklist end times, earliest first. Entries are invalidated lazily, see isCurrent().
+    private final PriorityQueue<BlocklistExpiry> mBlocklistExpiryQueue =
+            new PriorityQueue<>((o1, o2) -> Long.compare(o1.endTimeMs, o2.endTimeMs));
     private Set<String> mDisabledSsids = new ArraySet<>();
 
     // Internal logger to make sure imporatant logs do not get lost.
@@ -294,7 +306,9 @@ public class WifiBlocklistMonitor {
         pw.println("Dump of WifiBlocklistMonitor");
         mLocalLog.dump(fd, pw, args);
         pw.println("WifiBlocklistMonitor - Bssid blocklist begin ----");
-        mBssidStatusMap.values().stream().forEach(entry -> pw.println(entry));
+        for (int i = 0; i < mBssidStatusMap.size(); i++) {
+            pw.println(mBssidStatusMap.valueAt(i));
+        }
         pw.println("WifiBlocklistMonitor - Bssid blocklist end ----");
         pw.println("Dump of BSSID to Affiliated BSSID mapping");
         mAffiliatedBssidMap.forEach((bssid, aList) -> pw.println(bssid + " -> " + aList));
@@ -304,6 +318,14 @@ public class WifiBlocklistMonitor {
     private void addToBlocklist(@NonNull BssidStatus entry, long durationMs,
             @FailureReason int reason, int rssi) {
         entry.setAsBlocked(durationMs, reason, rssi);
+        if (mBssidStatusMap.get(entry.bssidKey) == entry) {
+            mBlockedBssids.put(entry.bssidKey, entry);
+            mBlocklistExpiryQueue.add(new BlocklistExpiry(entry));
+            if (mBlocklistExpiryQueue.size()
+                    > 2 * mBlockedBssids.size() + EXPIRY_QUEUE_COMPACTION_SLACK) {
+                mBlocklistExpiryQueue.removeIf(expiry -> !isCurrent(expiry));
+            }
+        }
         localLog(TAG + " addToBlocklist: bssid=" + entry.bssid + ", ssid=" + entry.ssid
                 + ", durationMs=" + durationMs + ", reason=" + getFailureReasonString(reason)
                 + ", rssi=" + rssi);
@@ -323,21 +345,71 @@ public class WifiBlocklistMonitor {
 
     /**
      * Get the BssidStatus representing the BSSID or create a new one if it doesn't exist.
+     * The BssidStatus of a BSSID that is not a valid MAC address is not tracked.
      */
     private @NonNull BssidStatus getOrCreateBssidStatus(@NonNull String bssid,
             @NonNull String ssid) {
-        BssidStatus status = mBssidStatusMap.get(bssid);
+        long key = bssidToKey(bssid);
+        if (key == INVALID_BSSID_KEY) {
+            Log.e(TAG, "getOrCreateBssidStatus: invalid BSSID=" + bssid);
+            return new BssidStatus(bssid, key, ssid);
+        }
+        BssidStatus status = mBssidStatusMap.get(key);
         if (status == null || !ssid.equals(status.ssid)) {
             if (status != null) {
                 localLog("getOrCreateBssidStatus: BSSID=" + bssid + ", SSID changed from "
                         + status.ssid + " to " + ssid);
             }
-            status = new BssidStatus(bssid, ssid);
-            mBssidStatusMap.put(bssid, status);
+            status = new BssidStatus(bssid, key, ssid);
+            mBssidStatusMap.put(key, status);
+            mBlockedBssids.remove(key);
         }
         return status;
     }
 
+    /**
+     * Get the BssidStatus representing the BSSID, or null if it doesn't exist.
+     */
+    private @Nullable BssidStatus getBssidStatus(@Nullable String bssid) {
+        long key = bssidToKey(bssid);
+        return key == INVALID_BSSID_KEY ? null : mBssidStatusMap.get(key);
+    }
+
+    /**
+     * Stop tracking the BSSID of |status|, which also removes it from the blocklist.
+     */
+    private void removeBssidStatus(@NonNull BssidStatus status) {
+        mBssidStatusMap.remove(status.bssidKey);
+        mBlockedBssids.remove(status.bssidKey);
+    }
+
+    /**
+     * Packs a BSSID of the form "xx:xx:xx:xx:xx:xx" into the low 48 bits of a long.
+     * @return the key of the BSSID, or INVALID_BSSID_KEY if it is not a valid MAC address.
+     */
+    @VisibleForTesting
+    static long bssidToKey(@Nullable String bssid) {
+        if (bssid == null || bssid.length() != 17) {
+            return INVALID_BSSID_KEY;
+        }
+        long key = 0;
+        for (int i = 0; i < 17; i++) {
+            char c = bssid.charAt(i);
+            if (i % 3 == 2) {
+                if (c != ':') {
+                    return INVALID_BSSID_KEY;
+                }
+                continue;
+            }
+            int digit = Character.digit(c, 16);
+            if (digit < 0) {
+                return INVALID_BSSID_KEY;
+            }
+            key = (key << 4) | digit;
+        }
+        return key;
+    }
+
     /**
      * Set a list of SSIDs that will always be enabled for network selection.
      */
@@ -356,6 +428,7 @@ public class WifiBlocklistMonitor {
             WifiConfiguration config, @FailureReason int reasonCode) {
         if (bssid == null || config == null
                 || bssid.equals(ClientModeImpl.SUPPLICANT_BSSID_ANY)
+                || bssidToKey(bssid) == INVALID_BSSID_KEY
                 || reasonCode < 0 || reasonCode >= NUMBER_REASON_CODES) {
             Log.e(TAG, "Invalid input: BSSID=" + bssid + ", config=" + config
                     + ", reasonCode=" + reasonCode);
@@ -620,7 +693,7 @@ public class WifiBlocklistMonitor {
                     REASON_FRAMEWORK_DISCONNECT_CONNECTED_SCORE);
         }
 
-        BssidStatus status = mBssidStatusMap.get(bssid);
+        BssidStatus status = getBssidStatus(bssid);
         if (status == null) {
             return;
         }
@@ -665,7 +738,7 @@ public class WifiBlocklistMonitor {
      */
     private void resetNetworkValidationFailures(@NonNull String bssid, @NonNull String ssid) {
         mWifiScoreCard.resetBssidBlocklistStreak(ssid, bssid, REASON_NETWORK_VALIDATION_FAILURE);
-        BssidStatus status = mBssidStatusMap.get(bssid);
+        BssidStatus status = getBssidStatus(bssid);
         if (status == null) {
             return;
         }
@@ -679,14 +752,14 @@ public class WifiBlocklistMonitor {
      * @param reasonString A string to be logged while removing the entry from the block list.
      */
     private void removeFromBlocklist(@NonNull String bssid, final String reasonString) {
-        BssidStatus status = mBssidStatusMap.get(bssid);
+        BssidStatus status = getBssidStatus(bssid);
         if (status == null) {
             return;
         }
 
         if (status.isInBlocklist) {
             mBssidBlocklistMonitorLogger.logBssidUnblocked(status, reasonString);
-            mBssidStatusMap.remove(bssid);
+            removeBssidStatus(status);
         }
     }
 
@@ -705,7 +778,7 @@ public class WifiBlocklistMonitor {
      */
     private void resetDhcpFailures(@NonNull String bssid, @NonNull String ssid) {
         mWifiScoreCard.resetBssidBlocklistStreak(ssid, bssid, REASON_DHCP_FAILURE);
-        BssidStatus status = mBssidStatusMap.get(bssid);
+        BssidStatus status = getBssidStatus(bssid);
         if (status == null) {
             return;
         }
@@ -728,18 +801,15 @@ public class WifiBlocklistMonitor {
      */
     public void clearBssidBlocklistForSsid(@NonNull String ssid) {
         int prevSize = mBssidStatusMap.size();
-        mBssidStatusMap.entrySet().removeIf(e -> {
-            BssidStatus status = e.getValue();
-            if (status.ssid == null) {
-                return false;
-            }
-            if (status.ssid.equals(ssid)) {
+        for (int i = mBssidStatusMap.size() - 1; i >= 0; i--) {
+            BssidStatus status = mBssidStatusMap.valueAt(i);
+            if (status.ssid != null && status.ssid.equals(ssid)) {
                 mBssidBlocklistMonitorLogger.logBssidUnblocked(
                         status, "clearBssidBlocklistForSsid");
-                return true;
+                mBssidStatusMap.removeAt(i);
+                mBlockedBssids.remove(status.bssidKey);
             }
-            return false;
-        });
+        }
         int diff = prevSize - mBssidStatusMap.size();
         if (diff > 0) {
             localLog(TAG + " clearBssidBlocklistForSsid: SSID=" + ssid
@@ -753,10 +823,13 @@ public class WifiBlocklistMonitor {
     public void clearBssidBlocklist() {
         if (mBssidStatusMap.size() > 0) {
             int prevSize = mBssidStatusMap.size();
-            for (BssidStatus status : mBssidStatusMap.values()) {
-                mBssidBlocklistMonitorLogger.logBssidUnblocked(status, "clearBssidBlocklist");
+            for (int i = 0; i < mBssidStatusMap.size(); i++) {
+                mBssidBlocklistMonitorLogger.logBssidUnblocked(
+                        mBssidStatusMap.valueAt(i), "clearBssidBlocklist");
             }
             mBssidStatusMap.clear();
+            mBlockedBssids.clear();
+            mBlocklistExpiryQueue.clear();
             localLog(TAG + " clearBssidBlocklist: num BSSIDs cleared="
                     + (prevSize - mBssidStatusMap.size()));
         }
@@ -768,17 +841,27 @@ public class WifiBlocklistMonitor {
      * @return the number of BSSIDs currently in the blocklist for the |ssid|.
      */
     public int updateAndGetNumBlockedBssidsForSsid(@NonNull String ssid) {
-        return (int) updateAndGetBssidBlocklistInternal()
-                .filter(entry -> ssid.equals(entry.ssid)).count();
+        LongSparseArray<BssidStatus> blocklist = updateAndGetBssidBlocklistInternal();
+        int count = 0;
+        for (int i = 0; i < blocklist.size(); i++) {
+            if (ssid.equals(blocklist.valueAt(i).ssid)) {
+                count++;
+            }
+        }
+        return count;
     }
 
     private int getNumBlockedBssidsForSsids(@NonNull Set<String> ssids) {
         if (ssids.isEmpty()) {
             return 0;
         }
-        return (int) mBssidStatusMap.values().stream()
-                .filter(entry -> entry.isInBlocklist && ssids.contains(entry.ssid))
-                .count();
+        int count = 0;
+        for (int i = 0; i < mBlockedBssids.size(); i++) {
+            if (ssids.contains(mBlockedBssids.valueAt(i).ssid)) {
+                count++;
+            }
+        }
+        return count;
     }
 
     /**
@@ -802,9 +885,12 @@ public class WifiBlocklistMonitor {
      * @return Set of BSSIDs currently in the blocklist
      */
     public Set<String> updateAndGetBssidBlocklist() {
-        return updateAndGetBssidBlocklistInternal()
-                .map(entry -> entry.bssid)
-                .collect(Collectors.toSet());
+        LongSparseArray<BssidStatus> blocklist = updateAndGetBssidBlocklistInternal();
+        Set<String> bssids = new HashSet<>(blocklist.size() * 2);
+        for (int i = 0; i < blocklist.size(); i++) {
+            bssids.add(blocklist.valueAt(i).bssid);
+        }
+        return bssids;
     }
 
     /**
@@ -815,10 +901,14 @@ public class WifiBlocklistMonitor {
         if (ssid == null) {
             return Collections.emptySet();
         }
-        return mBssidStatusMap.values().stream()
-                .filter(entry -> entry.isInBlocklist && ssid.equals(entry.ssid))
-                .map(entry -> entry.blockReason)
-                .collect(Collectors.toSet());
+        Set<Integer> reasons = new HashSet<>();
+        for (int i = 0; i < mBlockedBssids.size(); i++) {
+            BssidStatus entry = mBlockedBssids.valueAt(i);
+            if (ssid.equals(entry.ssid)) {
+                reasons.add(entry.blockReason);
+            }
+        }
+        return reasons;
     }
 
     /**
@@ -836,7 +926,7 @@ public class WifiBlocklistMonitor {
             if (scanResult == null) {
                 continue;
             }
-            BssidStatus status = mBssidStatusMap.get(scanResult.BSSID);
+            BssidStatus status = getBssidStatus(scanResult.BSSID);
             if (status == null || !status.isInBlocklist
                     || !isLowRssiSensitiveFailure(status.blockReason)) {
                 continue;
@@ -866,24 +956,31 @@ public class WifiBlocklistMonitor {
 
     /**
      * Removes expired BssidStatus entries and then return remaining entries in the blocklist.
-     * @return Stream of BssidStatus for BSSIDs that are in the blocklist.
+     * Only the expired entries are visited, in order of their blocklist end time.
+     * @return BssidStatus for BSSIDs that are in the blocklist, the caller must not modify it.
      */
-    private Stream<BssidStatus> updateAndGetBssidBlocklistInternal() {
-        Stream.Builder<BssidStatus> builder = Stream.builder();
+    private LongSparseArray<BssidStatus> updateAndGetBssidBlocklistInternal() {
         long curTime = mClock.getWallClockMillis();
-        mBssidStatusMap.entrySet().removeIf(e -> {
-            BssidStatus status = e.getValue();
-            if (status.isInBlocklist) {
-                if (status.blocklistEndTimeMs < curTime) {
-                    mBssidBlocklistMonitorLogger.logBssidUnblocked(
-                            status, "updateAndGetBssidBlocklistInternal");
-                    return true;
-                }
-                builder.accept(status);
+        while (!mBlocklistExpiryQueue.isEmpty()
+                && mBlocklistExpiryQueue.peek().endTimeMs < curTime) {
+            BlocklistExpiry expiry = mBlocklistExpiryQueue.poll();
+            if (!isCurrent(expiry)) {
+                continue;
             }
-            return false;
-        });
-        return builder.build();
+            mBssidBlocklistMonitorLogger.logBssidUnblocked(
+                    expiry.status, "updateAndGetBssidBlocklistInternal");
+            removeBssidStatus(expiry.status);
+        }
+        return mBlockedBssids;
+    }
+
+    /**
+     * Whether |expiry| is still the end of the blocking of its BSSID, i.e. the BSSID was neither
+     * removed from the blocklist nor blocked again since.
+     */
+    private boolean isCurrent(@NonNull BlocklistExpiry expiry) {
+        return mBlockedBssids.get(expiry.status.bssidKey) == expiry.status
+                && expiry.status.blocklistEndTimeMs == expiry.endTimeMs;
     }
 
     /**
@@ -895,11 +992,18 @@ public class WifiBlocklistMonitor {
         if (!mConnectivityHelper.isFirmwareRoamingSupported()) {
             return;
         }
-        ArrayList<String> bssidBlocklist = updateAndGetBssidBlocklistInternal()
-                .filter(entry -> ssids.contains(entry.ssid))
-                .sorted((o1, o2) -> (int) (o2.blocklistEndTimeMs - o1.blocklistEndTimeMs))
-                .map(entry -> entry.bssid)
-                .collect(Collectors.toCollection(ArrayList::new));
+        LongSparseArray<BssidStatus> blocklist = updateAndGetBssidBlocklistInternal();
+        ArrayList<BssidStatus> entries = new ArrayList<>();
+        for (int i = 0; i < blocklist.size(); i++) {
+            if (ssids.contains(blocklist.valueAt(i).ssid)) {
+                entries.add(blocklist.valueAt(i));
+            }
+        }
+        entries.sort((o1, o2) -> Long.compare(o2.blocklistEndTimeMs, o1.blocklistEndTimeMs));
+        ArrayList<String> bssidBlocklist = new ArrayList<>(entries.size());
+        for (BssidStatus entry : entries) {
+            bssidBlocklist.add(entry.bssid);
+        }
         int fwMaxBlocklistSize = mConnectivityHelper.getMaxNumBlocklistBssid();
         if (fwMaxBlocklistSize <= 0) {
             Log.e(TAG, "Invalid max BSSID blocklist size:  " + fwMaxBlocklistSize);
@@ -1022,6 +1126,7 @@ public class WifiBlocklistMonitor {
      */
     private class BssidStatus {
         public final String bssid;
+        public final long bssidKey;
         public final String ssid;
         public final int[] failureCount = new int[NUMBER_REASON_CODES];
         public int blockReason = INVALID_REASON; // reason of blocking this BSSID
@@ -1033,8 +1138,9 @@ public class WifiBlocklistMonitor {
         public long blocklistEndTimeMs;
         public long blocklistStartTimeMs;
 
-        BssidStatus(String bssid, String ssid) {
+        BssidStatus(String bssid, long bssidKey, String ssid) {
             this.bssid = bssid;
+            this.bssidKey = bssidKey;
             this.ssid = ssid;
         }
 
@@ -1080,6 +1186,20 @@ public class WifiBlocklistMonitor {
         }
     }
 
+    /**
+     * Entry of the blocklist expiry queue, holding the blocklist end time of a BssidStatus when
+     * it was added to the queue.
+     */
+    private static class BlocklistExpiry {
+        public final BssidStatus status;
+        public final long endTimeMs;
+
+        BlocklistExpiry(BssidStatus status) {
+            this.status = status;
+            this.endTimeMs = status.blocklistEndTimeMs;
+        }
+    }
+
     /**
      * Enable/disable verbose logging in WifiBlocklistMonitor.
      */
@@ -320,6 +320,15 @@ public class WifiConfigManager {
      * Map of configured networks with network id as the key.
      */
     private final ConfigurationMap mConfiguredNetworks;
+    /**
+     * Shared read-only copies of the configured networks with passwords masked, returned by
+     * {@link #getConfiguredNetworksSnapshot()}. Null until requested after the last change.
+     */
+    private List<WifiConfiguration> mConfiguredNetworksSnapshot;
+    /**
+     * Incremented on every change to the configured networks invalidating the snapshot.
+     */
+    private long mConfiguredNetworksVersion;
     /**
      * Stores a map of NetworkId to ScanDetailCache.
      */
@@ -793,6 +802,45 @@ public class WifiConfigManager {
         return getConfiguredNetworks(false, true, Process.WIFI_UID);
     }
 
+    /**
+     * Retrieves a read-only snapshot of all the configured networks with passwords masked.
+     *
+     * Unlike {@link #getConfiguredNetworks()}, the networks are not copied on every call: the
+     * same list is returned to all callers until the configured networks change, i.e. until a
+     * network is added, updated or removed, its selection status changes, or a change is saved
+     * to the store. Transient network selection state, like the candidate scan result, is not
+     * tracked and may be stale in the snapshot.
+     *
+     * WARNING: The list and the networks in it must not be modified, and must not be passed to
+     * external apps. Use {@link #getConfiguredNetworks()} for that.
+     *
+     * @return Unmodifiable list of WifiConfiguration objects representing the networks.
+     */
+    public @NonNull List<WifiConfiguration> getConfiguredNetworksSnapshot() {
+        if (mConfiguredNetworksSnapshot == null) {
+            mConfiguredNetworksSnapshot = Collections.unmodifiableList(
+                    getConfiguredNetworks(false, true, Process.WIFI_UID));
+        }
+        return mConfiguredNetworksSnapshot;
+    }
+
+    /**
+     * Retrieves the version of the configured networks, which changes every time the snapshot
+     * returned by {@link #getConfiguredNetworksSnapshot()} is invalidated.
+     */
+    @VisibleForTesting
+    long getConfiguredNetworksVersion() {
+        return mConfiguredNetworksVersion;
+    }
+
+    /**
+     * Invalidates the snapshot of the configured networks after a change.
+     */
+    private void invalidateConfiguredNetworksSnapshot() {
+        mConfiguredNetworksSnapshot = null;
+        mConfiguredNetworksVersion++;
+    }
+
     /**
      * Retrieves the list of all configured networks with the passwords in plaintext.
      *
@@ -1013,6 +1061,7 @@ public class WifiConfigManager {
      */
     private void sendConfiguredNetworkChangedBroadcast(int reason,
             @Nullable WifiConfiguration config) {
+        invalidateConfiguredNetworksSnapshot();
         Intent intent = new Intent(WifiManager.CONFIGURED_NETWORKS_CHANGED_ACTION);
         intent.addFlags(Intent.FLAG_RECEIVER_REGISTERED_ONLY_BEFORE_BOOT);
         intent.putExtra(WifiManager.EXTRA_MULTIPLE_NETWORKS_CHANGED, true);
@@ -1627,6 +1676,7 @@ public class WifiConfigManager {
 
         // Add it to our internal map. This will replace any existing network configuration for
         // updates.
+        invalidateConfiguredNetworksSnapshot();
         try {
             if (null != existingInternalConfig) {
                 mConfiguredNetworks.remove(existingInternalConfig.networkId);
@@ -1907,6 +1957,7 @@ public class WifiConfigManager {
                         .thenComparing((WifiConfiguration config) -> config.numAssociation))
                 .limit(numExcessNetworks)
                 .collect(Collectors.toList());
+        invalidateConfiguredNetworksSnapshot();
         for (WifiConfiguration config : configsToDelete) {
             mConfiguredNetworks.remove(config.networkId);
             localLog("removeExcessNetworks: removed config."
@@ -1941,6 +1992,7 @@ public class WifiConfigManager {
             removeConnectChoiceFromAllNetworks(config.getProfileKey());
         }
         mConfiguredNetworks.remove(config.networkId);
+        invalidateConfiguredNetworksSnapshot();
         mScanDetailCaches.remove(config.networkId);
         // Stage the backup of the SettingsProvider package which backs this up.
         mBackupManagerProxy.notifyDataChanged();
@@ -2195,6 +2247,7 @@ public class WifiConfigManager {
         if (!mWifiBlocklistMonitor.updateNetworkSelectionStatus(config, reason)) {
             return false;
         }
+        invalidateConfiguredNetworksSnapshot();
         int newNetworkSelectionStatus = config.getNetworkSelectionStatus()
                 .getNetworkSelectionStatus();
         int newAuthFailureCounter = config.getNetworkSelectionStatus().getDisableReasonCounter(
@@ -2914,6 +2967,7 @@ public class WifiConfigManager {
                 int previousRssi = result.level;
                 // Update the scan result
                 scanDetail.setSeen();
+                scanDetailCache.onSeenUpdated(info.getBSSID());
                 result.level = info.getRssi();
                 // Average the RSSI value
                 long maxAge = SCAN_RESULT_MAXIMUM_AGE_MS;
@@ -3267,7 +3321,11 @@ public class WifiConfigManager {
 
     private void removeUserChoiceFromDisabledNetwork(
             @NonNull String network, int uid) {
-        for (WifiConfiguration config : getInternalConfiguredNetworks()) {
+        // Quoted SSIDs can not match any FQDN, so the SSID index is enough for them.
+        Collection<WifiConfiguration> configs = network.startsWith("\"")
+                ? mConfiguredNetworks.getBySsidForCurrentUser(network)
+                : getInternalConfiguredNetworks();
+        for (WifiConfiguration config : configs) {
             if (TextUtils.equals(config.SSID, network) || TextUtils.equals(config.FQDN, network)) {
                 if (mWifiPermissionsUtil.checkNetworkSettingsPermission(uid)) {
                     mWifiMetrics.logUserActionEvent(
@@ -3494,6 +3552,7 @@ public class WifiConfigManager {
     private void clearInternalData() {
         localLog("clearInternalData: Clearing all internal data");
         mConfiguredNetworks.clear();
+        invalidateConfiguredNetworksSnapshot();
         mUserTemporarilyDisabledList.clear();
         mNonCarrierMergedNetworksStatusTracker.clear();
         mRandomizedMacAddressMapping.clear();
@@ -3524,6 +3583,7 @@ public class WifiConfigManager {
                         + " netId=" + config.networkId
                         + " configKey=" + config.getProfileKey());
                 mConfiguredNetworks.remove(config.networkId);
+                invalidateConfiguredNetworksSnapshot();
                 for (OnNetworkUpdateListener listener : mListeners) {
                     listener.onNetworkRemoved(
                             createExternalWifiConfiguration(config, true, Process.WIFI_UID));
@@ -3565,6 +3625,8 @@ public class WifiConfigManager {
                 Log.d(TAG, "Merging network from shared store "
                         + configuration.getProfileKey());
                 mergeWithInternalWifiConfiguration(existingConfiguration, configuration);
+                // The merge may change the keys the network is indexed with, re-index it.
+                mConfiguredNetworks.put(existingConfiguration);
                 continue;
             }
 
@@ -3604,6 +3666,8 @@ public class WifiConfigManager {
                 Log.d(TAG, "Merging network from user store "
                         + configuration.getProfileKey());
                 mergeWithInternalWifiConfiguration(existingConfiguration, configuration);
+                // The merge may change the keys the network is indexed with, re-index it.
+                mConfiguredNetworks.put(existingConfiguration);
                 continue;
             }
 
@@ -3784,6 +3848,8 @@ public class WifiConfigManager {
      * @return Whether the write was successful or not, this is applicable only for force writes.
      */
     public synchronized boolean saveToStore(boolean forceWrite) {
+        // Any change to the networks that is persisted invalidates the snapshot.
+        invalidateConfiguredNetworksSnapshot();
         if (mPendingStoreRead) {
             Log.e(TAG, "Cannot save to store before store is read!");
             return false;
@@ -3864,6 +3930,9 @@ public class WifiConfigManager {
         for (int networkId : legacyPasspointNetId) {
             mConfiguredNetworks.remove(networkId);
         }
+        if (!legacyPasspointNetId.isEmpty()) {
+            invalidateConfiguredNetworksSnapshot();
+        }
 
         // Setup store data for write.
         mNetworkListSharedStoreData.setConfigurations(sharedConfigurations);
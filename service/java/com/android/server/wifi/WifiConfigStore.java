@@ -96,12 +96,17 @@ public class WifiConfigStore {
      * Config store file for network suggestions user store file.
      */
     public static final int STORE_FILE_USER_NETWORK_SUGGESTIONS = 3;
+    /**
+     * Config store file for ANQP cache shared store file.
+     */
+    public static final int STORE_FILE_SHARED_ANQP_CACHE = 4;
 
     @IntDef(prefix = { "STORE_FILE_" }, value = {
             STORE_FILE_SHARED_GENERAL,
             STORE_FILE_SHARED_SOFTAP,
             STORE_FILE_USER_GENERAL,
-            STORE_FILE_USER_NETWORK_SUGGESTIONS
+            STORE_FILE_USER_NETWORK_SUGGESTIONS,
+            STORE_FILE_SHARED_ANQP_CACHE
     })
     @Retention(RetentionPolicy.SOURCE)
     public @interface StoreFileId { }
@@ -170,6 +175,11 @@ public class WifiConfigStore {
      */
     private static final String STORE_FILE_NAME_USER_NETWORK_SUGGESTIONS =
             "WifiConfigStoreNetworkSuggestions.xml";
+    /**
+     * Config store file name for ANQP cache shared store file.
+     */
+    private static final String STORE_FILE_NAME_SHARED_ANQP_CACHE =
+            "WifiConfigStoreAnqpCache.xml";
     /**
      * Mapping of Store file Id to Store file names.
      */
@@ -179,6 +189,7 @@ public class WifiConfigStore {
                 put(STORE_FILE_SHARED_SOFTAP, STORE_FILE_NAME_SHARED_SOFTAP);
                 put(STORE_FILE_USER_GENERAL, STORE_FILE_NAME_USER_GENERAL);
                 put(STORE_FILE_USER_NETWORK_SUGGESTIONS, STORE_FILE_NAME_USER_NETWORK_SUGGESTIONS);
+                put(STORE_FILE_SHARED_ANQP_CACHE, STORE_FILE_NAME_SHARED_ANQP_CACHE);
             }};
     /**
      * Handler instance to post alarm timeouts to
@@ -194,8 +205,9 @@ public class WifiConfigStore {
     private final Clock mClock;
     private final WifiMetrics mWifiMetrics;
     /**
-     * Shared config store file instance. There are 2 shared store files:
-     * {@link #STORE_FILE_NAME_SHARED_GENERAL} & {@link #STORE_FILE_NAME_SHARED_SOFTAP}.
+     * Shared config store file instance. There are 3 shared store files:
+     * {@link #STORE_FILE_NAME_SHARED_GENERAL}, {@link #STORE_FILE_NAME_SHARED_SOFTAP} &
+     * {@link #STORE_FILE_NAME_SHARED_ANQP_CACHE}.
      */
     private final List<StoreFile> mSharedStores;
     /**
@@ -342,7 +354,8 @@ public class WifiConfigStore {
     public static @NonNull List<StoreFile> createSharedFiles(boolean shouldEncryptCredentials) {
         return createFiles(
                 Environment.getWifiSharedDirectory(),
-                Arrays.asList(STORE_FILE_SHARED_GENERAL, STORE_FILE_SHARED_SOFTAP),
+                Arrays.asList(STORE_FILE_SHARED_GENERAL, STORE_FILE_SHARED_SOFTAP,
+                        STORE_FILE_SHARED_ANQP_CACHE),
                 UserHandle.ALL,
                 shouldEncryptCredentials);
     }
@@ -26,21 +26,21 @@ import android.os.BugreportParams;
 import android.os.Handler;
 import android.os.Looper;
 import android.util.ArraySet;
-import android.util.Base64;
 import android.util.Log;
 import android.util.SparseLongArray;
 
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.server.wifi.util.ByteArrayRingBuffer;
+import com.android.server.wifi.util.DeflatedData;
 import com.android.server.wifi.util.StringUtil;
 import com.android.wifi.resources.R;
 
 import java.io.BufferedReader;
-import java.io.ByteArrayOutputStream;
 import java.io.FileDescriptor;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -51,7 +51,6 @@ import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
-import java.util.zip.Deflater;
 
 /**
  * Tracks various logs for framework.
@@ -310,7 +309,7 @@ public class WifiDiagnostics {
             // This is very slow, don't put this inside `synchronized(this)`!
             BugReport report = captureBugreport(errorCode, verbose);
             synchronized (this) {
-                report.alertData = alertData;
+                report.alertData = DeflatedData.of(alertData);
                 mLastAlerts.addLast(report);
 
                 /* Flush HAL ring buffer when detecting data stall */
@@ -332,14 +331,14 @@ public class WifiDiagnostics {
         for (int i = 0; i < mLastAlerts.size(); i++) {
             pw.println("--------------------------------------------------------------------");
             pw.println("Alert dump " + i);
-            pw.print(mLastAlerts.get(i));
+            mLastAlerts.get(i).dump(pw);
             pw.println("--------------------------------------------------------------------");
         }
 
         for (int i = 0; i < mLastBugReports.size(); i++) {
             pw.println("--------------------------------------------------------------------");
             pw.println("Bug dump " + i);
-            pw.print(mLastBugReports.get(i));
+            mLastBugReports.get(i).dump(pw);
             pw.println("--------------------------------------------------------------------");
         }
 
@@ -370,10 +369,11 @@ public class WifiDiagnostics {
         long systemTimeMs;
         long kernelTimeNanos;
         int errorCode;
-        HashMap<String, byte[][]> ringBuffers = new HashMap();
-        byte[] fwMemoryDump;
+        // Ring buffer data, deflated as it is captured.
+        HashMap<String, DeflatedData> ringBuffers = new HashMap();
+        DeflatedData fwMemoryDump;
         byte[] mDriverStateDump;
-        byte[] alertData;
+        DeflatedData alertData;
         ArrayList<String> kernelLogLines;
         ArrayList<String> logcatLines;
 
@@ -382,83 +382,75 @@ public class WifiDiagnostics {
             mDriverStateDump = null;
         }
 
-        public String toString() {
-            StringBuilder builder = new StringBuilder();
-
+        /**
+         * Writes the report to |pw|, encoding the captured data directly to the writer.
+         */
+        void dump(PrintWriter pw) {
             Calendar c = Calendar.getInstance();
             c.setTimeInMillis(systemTimeMs);
-            builder.append("system time = ")
+            pw.append("system time = ")
                     .append(StringUtil.calendarToString(c)).append("\n");
 
             long kernelTimeMs = kernelTimeNanos/(1000*1000);
-            builder.append("kernel time = ").append(kernelTimeMs/1000).append(".").append
-                    (kernelTimeMs%1000).append("\n");
+            pw.append("kernel time = ").append(String.valueOf(kernelTimeMs / 1000)).append(".")
+                    .append(String.valueOf(kernelTimeMs % 1000)).append("\n");
 
             if (alertData == null)
-                builder.append("reason = ").append(errorCode).append("\n");
+                pw.append("reason = ").append(String.valueOf(errorCode)).append("\n");
             else {
-                builder.append("errorCode = ").append(errorCode);
-                builder.append("data \n");
-                builder.append(compressToBase64(alertData)).append("\n");
+                pw.append("errorCode = ").append(String.valueOf(errorCode));
+                pw.append("data \n");
+                alertData.writeBase64(pw);
+                pw.append("\n");
             }
 
             if (kernelLogLines != null) {
-                builder.append("kernel log: \n");
+                pw.append("kernel log: \n");
                 for (int i = 0; i < kernelLogLines.size(); i++) {
-                    builder.append(kernelLogLines.get(i)).append("\n");
+                    pw.append(kernelLogLines.get(i)).append("\n");
                 }
-                builder.append("\n");
+                pw.append("\n");
             }
 
             if (logcatLines != null) {
-                builder.append("system log: \n");
+                pw.append("system log: \n");
                 for (int i = 0; i < logcatLines.size(); i++) {
-                    builder.append(logcatLines.get(i)).append("\n");
+                    pw.append(logcatLines.get(i)).append("\n");
                 }
-                builder.append("\n");
+                pw.append("\n");
             }
 
-            for (HashMap.Entry<String, byte[][]> e : ringBuffers.entrySet()) {
+            for (HashMap.Entry<String, DeflatedData> e : ringBuffers.entrySet()) {
                 String ringName = e.getKey();
-                byte[][] buffers = e.getValue();
-                builder.append("ring-buffer = ").append(ringName).append("\n");
-
-                int size = 0;
-                for (int i = 0; i < buffers.length; i++) {
-                    size += buffers[i].length;
-                }
-
-                byte[] buffer = new byte[size];
-                int index = 0;
-                for (int i = 0; i < buffers.length; i++) {
-                    System.arraycopy(buffers[i], 0, buffer, index, buffers[i].length);
-                    index += buffers[i].length;
-                }
-
-                builder.append(compressToBase64(buffer));
-                builder.append("\n");
+                pw.append("ring-buffer = ").append(ringName).append("\n");
+                e.getValue().writeBase64(pw);
+                pw.append("\n");
             }
 
             if (fwMemoryDump != null) {
-                builder.append(FIRMWARE_DUMP_SECTION_HEADER);
-                builder.append("\n");
-                builder.append(compressToBase64(fwMemoryDump));
-                builder.append("\n");
+                pw.append(FIRMWARE_DUMP_SECTION_HEADER);
+                pw.append("\n");
+                fwMemoryDump.writeBase64(pw);
+                pw.append("\n");
             }
 
             if (mDriverStateDump != null) {
-                builder.append(DRIVER_DUMP_SECTION_HEADER);
+                pw.append(DRIVER_DUMP_SECTION_HEADER);
                 if (StringUtil.isAsciiPrintable(mDriverStateDump)) {
-                    builder.append(" (ascii)\n");
-                    builder.append(new String(mDriverStateDump, Charset.forName("US-ASCII")));
-                    builder.append("\n");
+                    pw.append(" (ascii)\n");
+                    pw.append(new String(mDriverStateDump, Charset.forName("US-ASCII")));
+                    pw.append("\n");
                 } else {
-                    builder.append(" (base64)\n");
-                    builder.append(compressToBase64(mDriverStateDump));
+                    pw.append(" (base64)\n");
+                    DeflatedData.of(mDriverStateDump).writeBase64(pw);
                 }
             }
+        }
 
-            return builder.toString();
+        public String toString() {
+            StringWriter sw = new StringWriter();
+            dump(new PrintWriter(sw));
+            return sw.toString();
         }
     }
 
@@ -689,11 +681,16 @@ public class WifiDiagnostics {
                     /* this will push data in mRingBuffers */
                     mWifiNative.getRingBufferData(buffer.name);
                     ByteArrayRingBuffer data = mRingBufferData.get(buffer.name);
-                    byte[][] buffers = new byte[data.getNumBuffers()][];
+                    // Deflate the records straight out of the ring, without copying them.
+                    DeflatedData.Builder builder = new DeflatedData.Builder();
                     for (int i = 0; i < data.getNumBuffers(); i++) {
-                        buffers[i] = data.getBuffer(i).clone();
+                        try {
+                            data.writeBuffer(i, builder);
+                        } catch (IOException e) {
+                            // Not expected, the builder does not throw.
+                        }
                     }
-                    report.ringBuffers.put(buffer.name, buffers);
+                    report.ringBuffers.put(buffer.name, builder.build());
                 }
             }
         }
@@ -703,7 +700,7 @@ public class WifiDiagnostics {
         report.kernelLogLines = getLogcatKernel(127);
 
         if (captureFWDump) {
-            report.fwMemoryDump = mWifiNative.getFwMemoryDump();
+            report.fwMemoryDump = DeflatedData.of(mWifiNative.getFwMemoryDump());
             report.mDriverStateDump = mWifiNative.getDriverStateDump();
         }
         return report;
@@ -719,46 +716,6 @@ public class WifiDiagnostics {
         return mLastAlerts;
     }
 
-    private String compressToBase64(byte[] input) {
-        String result;
-        //compress
-        Deflater compressor = new Deflater();
-        compressor.setLevel(Deflater.BEST_SPEED);
-        compressor.setInput(input);
-        compressor.finish();
-        ByteArrayOutputStream bos = new ByteArrayOutputStream(input.length);
-        final byte[] buf = new byte[1024];
-
-        while (!compressor.finished()) {
-            int count = compressor.deflate(buf);
-            bos.write(buf, 0, count);
-        }
-
-        try {
-            compressor.end();
-            bos.close();
-        } catch (IOException e) {
-            mLog.wC("ByteArrayOutputStream close error");
-            result =  android.util.Base64.encodeToString(input, Base64.DEFAULT);
-            return result;
-        }
-
-        byte[] compressed = bos.toByteArray();
-        if (DBG) {
-            mLog.dump("length is: %").c(compressed == null ? 0 : compressed.length).flush();
-        }
-
-        //encode
-        result = android.util.Base64.encodeToString(
-                compressed.length < input.length ? compressed : input , Base64.DEFAULT);
-
-        if (DBG) {
-            mLog.dump("FwMemoryDump length is: %").c(result.length()).flush();
-        }
-
-        return result;
-    }
-
     private void readLogcatStreamLinesWithTimeout(
             BufferedReader inReader, List<String> outLinesList) throws IOException {
         long startTimeMs = mClock.getElapsedSinceBootMillis();
@@ -63,6 +63,7 @@ public class WifiGlobals {
     private boolean mIsWpa3SaeUpgradeOffloadEnabled;
     private final boolean mIsOweUpgradeEnabled;
     private final boolean mFlushAnqpCacheOnWifiToggleOffEvent;
+    private final int mMaxOutstandingAnqpRequests;
     private final boolean mIsWpa3SaeH2eSupported;
     private final String mP2pDeviceNamePrefix;
     private final int mP2pDeviceNamePostfixNumDigits;
@@ -81,6 +82,7 @@ public class WifiGlobals {
     private final int mRepeatedNudFailuresThreshold;
     private final int mRepeatedNudFailuresWindowMs;
     private final boolean mAdjustPollRssiIntervalEnabled;
+    private final boolean mAsyncSignalPollEnabled;
     private final boolean mWifiInterfaceAddedSelfRecoveryEnabled;
     private final int mNetworkNotFoundEventThreshold;
     private boolean mIsBackgroundScanSupported;
@@ -114,6 +116,8 @@ public class WifiGlobals {
                 .getBoolean(R.bool.config_wifiOweUpgradeEnabled);
         mFlushAnqpCacheOnWifiToggleOffEvent = mContext.getResources()
                 .getBoolean(R.bool.config_wifiFlushAnqpCacheOnWifiToggleOffEvent);
+        mMaxOutstandingAnqpRequests = mContext.getResources()
+                .getInteger(R.integer.config_wifiPasspointMaxOutstandingAnqpRequests);
         mIsWpa3SaeH2eSupported = mContext.getResources()
                 .getBoolean(R.bool.config_wifiSaeH2eSupported);
         mP2pDeviceNamePrefix = mContext.getResources()
@@ -144,6 +148,8 @@ public class WifiGlobals {
                 R.integer.config_wifiClientRssiMonitorHysteresisDb);
         mAdjustPollRssiIntervalEnabled = mContext.getResources().getBoolean(
                 R.bool.config_wifiAdjustPollRssiIntervalEnabled);
+        mAsyncSignalPollEnabled = mContext.getResources().getBoolean(
+                R.bool.config_wifiAsyncSignalPollEnabled);
         mDisableFirmwareRoamingInIdleMode = mContext.getResources()
                 .getBoolean(R.bool.config_wifiDisableFirmwareRoamingInIdleMode);
         mIsSupportMultiInternetDual5G = mContext.getResources().getBoolean(
@@ -480,6 +486,14 @@ public class WifiGlobals {
         return mFlushAnqpCacheOnWifiToggleOffEvent;
     }
 
+    /**
+     * Get the maximum number of ANQP requests waiting for a response at the same time, when the
+     * ANQP requests are queued until the previous ones are answered.
+     */
+    public int getMaxOutstandingAnqpRequests() {
+        return mMaxOutstandingAnqpRequests;
+    }
+
     /*
      * Help method to check if WPA3 SAE Hash-to-Element is supported on this device.
      *
@@ -596,6 +610,13 @@ public class WifiGlobals {
         return mAdjustPollRssiIntervalEnabled;
     }
 
+    /**
+     * Get whether the RSSI polls query the HAL off the wifi thread, see {@link SignalPoller}.
+     */
+    public boolean isAsyncSignalPollEnabled() {
+        return mAsyncSignalPollEnabled;
+    }
+
     /**
      * Get whether hot-plugging an interface will trigger a restart of the wifi stack.
      */
@@ -711,6 +732,7 @@ public class WifiGlobals {
         pw.println("mIsWpa3SaeUpgradeOffloadEnabled=" + mIsWpa3SaeUpgradeOffloadEnabled);
         pw.println("mIsOweUpgradeEnabled=" + mIsOweUpgradeEnabled);
         pw.println("mFlushAnqpCacheOnWifiToggleOffEvent=" + mFlushAnqpCacheOnWifiToggleOffEvent);
+        pw.println("mMaxOutstandingAnqpRequests=" + mMaxOutstandingAnqpRequests);
         pw.println("mIsWpa3SaeH2eSupported=" + mIsWpa3SaeH2eSupported);
         pw.println("mP2pDeviceNamePrefix=" + mP2pDeviceNamePrefix);
         pw.println("mP2pDeviceNamePostfixNumDigits=" + mP2pDeviceNamePostfixNumDigits);
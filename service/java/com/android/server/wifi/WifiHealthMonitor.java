@@ -389,7 +389,8 @@ public class WifiHealthMonitor {
         int connectionDurationSec = 0;
         // Set the alarm for the next day
         scheduleDailyDetectionAlarm(DAILY_DETECTION_INTERVAL_MS);
-        List<WifiConfiguration> configuredNetworks = mWifiConfigManager.getConfiguredNetworks();
+        List<WifiConfiguration> configuredNetworks =
+                mWifiConfigManager.getConfiguredNetworksSnapshot();
         for (WifiConfiguration network : configuredNetworks) {
             if (isInvalidConfiguredNetwork(network)) {
                 continue;
@@ -543,7 +544,8 @@ public class WifiHealthMonitor {
      * Issue NetworkStats read request for all configured networks.
      */
     private void requestReadAllNetworks() {
-        List<WifiConfiguration> configuredNetworks = mWifiConfigManager.getConfiguredNetworks();
+        List<WifiConfiguration> configuredNetworks =
+                mWifiConfigManager.getConfiguredNetworksSnapshot();
         for (WifiConfiguration network : configuredNetworks) {
             if (isInvalidConfiguredNetwork(network)) {
                 continue;
@@ -564,7 +566,8 @@ public class WifiHealthMonitor {
      * Update NetworkStats of all configured networks after a SW build change is detected
      */
     private void updateAllNetworkAfterSwBuildChange() {
-        List<WifiConfiguration> configuredNetworks = mWifiConfigManager.getConfiguredNetworks();
+        List<WifiConfiguration> configuredNetworks =
+                mWifiConfigManager.getConfiguredNetworksSnapshot();
         for (WifiConfiguration network : configuredNetworks) {
             if (isInvalidConfiguredNetwork(network)) {
                 continue;
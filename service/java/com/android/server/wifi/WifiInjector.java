@@ -160,7 +160,9 @@ public class WifiInjector {
     private final HandlerThread mWifiP2pServiceHandlerThread;
     private final HandlerThread mPasspointProvisionerHandlerThread;
     private final HandlerThread mWifiDiagnosticsHandlerThread;
+    @Nullable private final HandlerThread mSignalPollHandlerThread;
     private final WifiTrafficPoller mWifiTrafficPoller;
+    @Nullable private final SignalPoller mSignalPoller;
     private final WifiCountryCode mCountryCode;
     private final BackupManagerProxy mBackupManagerProxy = new BackupManagerProxy();
     private final WifiApConfigStore mWifiApConfigStore;
@@ -197,6 +199,7 @@ public class WifiInjector {
     private final WifiConnectivityHelper mWifiConnectivityHelper;
     private final LocalLog mConnectivityLocalLog;
     private final LocalLog mWifiHandlerLocalLog;
+    private final RunnerHandler mWifiHandler;
     private final ThroughputScorer mThroughputScorer;
     private final WifiNetworkSelector mWifiNetworkSelector;
     private final SavedNetworkNominator mSavedNetworkNominator;
@@ -303,6 +306,7 @@ public class WifiInjector {
         RunnerHandler wifiHandler = new RunnerHandler(wifiLooper, context.getResources().getInteger(
                 R.integer.config_wifiConfigurationWifiRunnerThresholdInMs),
                 mWifiHandlerLocalLog);
+        mWifiHandler = wifiHandler;
         mWifiDeviceStateChangeManager = new WifiDeviceStateChangeManager(context, wifiHandler);
         mWifiMetrics = new WifiMetrics(mContext, mFrameworkFacade, mClock, wifiLooper,
                 awareMetrics, rttMetrics, new WifiPowerMetrics(mBatteryStats), mWifiP2pMetrics,
@@ -372,6 +376,16 @@ public class WifiInjector {
             mCoexManager = null;
         }
 
+        if (mWifiGlobals.isAsyncSignalPollEnabled()) {
+            mSignalPollHandlerThread = new HandlerThread("WifiSignalPoll");
+            mSignalPollHandlerThread.start();
+            mSignalPoller = new SignalPoller(mWifiNative, mFrameworkFacade, mClock,
+                    new Handler(mSignalPollHandlerThread.getLooper()));
+        } else {
+            mSignalPollHandlerThread = null;
+            mSignalPoller = null;
+        }
+
         // Now get instances of all the objects that depend on the HandlerThreads
         mWifiTrafficPoller = new WifiTrafficPoller(mContext);
         // WifiConfigManager/Store objects and their dependencies.
@@ -398,7 +412,7 @@ public class WifiInjector {
                 mWifiConfigStore, wifiHandler, mWifiMetrics, mClock, mWifiPseudonymManager);
         String l2KeySeed = Secure.getString(mContext.getContentResolver(), Secure.ANDROID_ID);
         mWifiScoreCard = new WifiScoreCard(mClock, l2KeySeed, mDeviceConfigFacade,
-                mContext, mWifiGlobals);
+                mContext, mWifiGlobals, wifiHandler, BackgroundThread.getExecutor());
         mWifiMetrics.setWifiScoreCard(mWifiScoreCard);
         mLruConnectionTracker = new LruConnectionTracker(MAX_RECENTLY_CONNECTED_NETWORK,
                 mContext);
@@ -730,6 +744,10 @@ public class WifiInjector {
         return mWifiHandlerThread;
     }
 
+    public RunnerHandler getWifiHandler() {
+        return mWifiHandler;
+    }
+
     public MockWifiServiceUtil getMockWifiServiceUtil() {
         return mMockWifiModem;
     }
@@ -749,6 +767,15 @@ public class WifiInjector {
         return mWifiTrafficPoller;
     }
 
+    /**
+     * Returns the poller running the RSSI polls off the wifi thread, null if
+     * {@link WifiGlobals#isAsyncSignalPollEnabled()} is false.
+     */
+    @Nullable
+    public SignalPoller getSignalPoller() {
+        return mSignalPoller;
+    }
+
     public WifiCountryCode getWifiCountryCode() {
         return mCountryCode;
     }
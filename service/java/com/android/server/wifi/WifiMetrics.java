@@ -70,6 +70,7 @@ import android.text.TextUtils;
 import android.util.ArrayMap;
 import android.util.ArraySet;
 import android.util.Base64;
+import android.util.Base64OutputStream;
 import android.util.Log;
 import android.util.Pair;
 import android.util.SparseArray;
@@ -123,6 +124,7 @@ import com.android.server.wifi.proto.nano.WifiMetricsProto.WifiLockStats;
 import com.android.server.wifi.proto.nano.WifiMetricsProto.WifiNetworkRequestApiLog;
 import com.android.server.wifi.proto.nano.WifiMetricsProto.WifiNetworkSuggestionApiLog;
 import com.android.server.wifi.proto.nano.WifiMetricsProto.WifiNetworkSuggestionApiLog.SuggestionAppCount;
+import com.android.server.wifi.proto.nano.WifiMetricsProto.WifiP2pStats;
 import com.android.server.wifi.proto.nano.WifiMetricsProto.WifiStatus;
 import com.android.server.wifi.proto.nano.WifiMetricsProto.WifiToWifiSwitchStats;
 import com.android.server.wifi.proto.nano.WifiMetricsProto.WifiToggleStats;
@@ -133,18 +135,26 @@ import com.android.server.wifi.scanner.KnownBandsChannelHelper;
 import com.android.server.wifi.util.InformationElementUtil;
 import com.android.server.wifi.util.InformationElementUtil.ApType6GHz;
 import com.android.server.wifi.util.InformationElementUtil.WifiMode;
+import com.android.server.wifi.util.ConcurrentLongCounter;
 import com.android.server.wifi.util.IntCounter;
 import com.android.server.wifi.util.IntHistogram;
 import com.android.server.wifi.util.MetricsUtils;
 import com.android.server.wifi.util.ObjectCounter;
+import com.android.server.wifi.util.PrintWriterOutputStream;
+import com.android.server.wifi.util.StaEventRing;
 import com.android.server.wifi.util.StringUtil;
 import com.android.wifi.resources.R;
 
+import com.google.protobuf.nano.InvalidProtocolBufferNanoException;
+import com.google.protobuf.nano.MessageNano;
+
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.time.Duration;
 import java.util.ArrayDeque;
@@ -160,6 +170,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.function.BiConsumer;
 
 /**
  * Provides storage for wireless connectivity metrics, as they are generated.
@@ -182,6 +193,10 @@ public class WifiMetrics {
     public static final int MIN_RSSI_DELTA = -127;
     /** Minimum link speed (Mbps) to count for link_speed_counts */
     public static final int MIN_LINK_SPEED_MBPS = 0;
+    /** Number of distinct (frequency, RSSI) pairs counted without locking for the RSSI polls. */
+    private static final int RSSI_POLL_COUNTS_CAPACITY = 2048;
+    /** Number of distinct link speeds counted without locking per link speed counter. */
+    private static final int LINK_SPEED_COUNTS_CAPACITY = 128;
     /** Maximum time period between ScanResult and RSSI poll to generate rssi delta datapoint */
     public static final long TIMEOUT_RSSI_DELTA_MILLIS =  3000;
     private static final int MIN_WIFI_SCORE = 0;
@@ -284,7 +299,10 @@ public class WifiMetrics {
 
     public static final int MAX_STA_EVENTS = 768;
     @VisibleForTesting static final int MAX_USER_ACTION_EVENTS = 200;
-    private LinkedList<StaEventWithTime> mStaEventList = new LinkedList<>();
+    private final StaEventRing mStaEventRing = new StaEventRing(MAX_STA_EVENTS);
+    // Reused to build each StaEvent before it is copied into mStaEventRing, guarded by mLock.
+    private final StaEvent mStaEventScratch = new StaEvent();
+    private final ConfigInfo mConfigInfoScratch = new ConfigInfo();
     private LinkedList<UserActionEventWithTime> mUserActionEventList = new LinkedList<>();
     private WifiStatusBuilder mWifiStatusBuilder = new WifiStatusBuilder();
     private int mLastPollRssi = -127;
@@ -314,7 +332,7 @@ public class WifiMetrics {
      * runtime in member lists of this WifiMetrics class, with the final WifiLog proto being pieced
      * together at dump-time
      */
-    private final WifiMetricsProto.WifiLog mWifiLogProto = new WifiMetricsProto.WifiLog();
+    private WifiMetricsProto.WifiLog mWifiLogProto = new WifiMetricsProto.WifiLog();
     /**
      * Session information that gets logged for every Wifi connection attempt.
      */
@@ -332,28 +350,58 @@ public class WifiMetrics {
      * combination. Indexed by WifiLog.WifiState * (1 + screenOn)
      */
     private final SparseIntArray mWifiSystemStateEntries = new SparseIntArray();
-    /** Mapping of channel frequency to its RSSI distribution histogram **/
-    private final Map<Integer, SparseIntArray> mRssiPollCountsMap = new HashMap<>();
+    /*
+     * The counters below are updated on every RSSI poll. They do not need mLock: they can be
+     * updated concurrently with a dump or a consolidation of the proto, without locking or
+     * allocating until they hold more distinct keys than their capacity.
+     */
+    /**
+     * RSSI distribution histogram per channel frequency, keyed by
+     * {@link #rssiPollKey(int, int)}.
+     */
+    private final ConcurrentLongCounter mRssiPollCounts =
+            new ConcurrentLongCounter(RSSI_POLL_COUNTS_CAPACITY);
+    /** Mapping of link speed values to the number of polls with that link speed. */
+    private final ConcurrentLongCounter mLinkSpeedCounts =
+            new ConcurrentLongCounter(LINK_SPEED_COUNTS_CAPACITY);
+    /** Mapping of link speed values to the sum of the absolute RSSI of the polls. */
+    private final ConcurrentLongCounter mLinkSpeedRssiSums =
+            new ConcurrentLongCounter(LINK_SPEED_COUNTS_CAPACITY);
+    /** Mapping of link speed values to the sum of the squared RSSI of the polls. */
+    private final ConcurrentLongCounter mLinkSpeedRssiSquareSums =
+            new ConcurrentLongCounter(LINK_SPEED_COUNTS_CAPACITY);
     /** Mapping of RSSI scan-poll delta values to counts. */
     private final SparseIntArray mRssiDeltaCounts = new SparseIntArray();
-    /** Mapping of link speed values to LinkSpeedCount objects. */
-    private final SparseArray<LinkSpeedCount> mLinkSpeedCounts = new SparseArray<>();
-
-    private final IntCounter mTxLinkSpeedCount2g = new IntCounter();
-    private final IntCounter mTxLinkSpeedCount5gLow = new IntCounter();
-    private final IntCounter mTxLinkSpeedCount5gMid = new IntCounter();
-    private final IntCounter mTxLinkSpeedCount5gHigh = new IntCounter();
-    private final IntCounter mTxLinkSpeedCount6gLow = new IntCounter();
-    private final IntCounter mTxLinkSpeedCount6gMid = new IntCounter();
-    private final IntCounter mTxLinkSpeedCount6gHigh = new IntCounter();
-
-    private final IntCounter mRxLinkSpeedCount2g = new IntCounter();
-    private final IntCounter mRxLinkSpeedCount5gLow = new IntCounter();
-    private final IntCounter mRxLinkSpeedCount5gMid = new IntCounter();
-    private final IntCounter mRxLinkSpeedCount5gHigh = new IntCounter();
-    private final IntCounter mRxLinkSpeedCount6gLow = new IntCounter();
-    private final IntCounter mRxLinkSpeedCount6gMid = new IntCounter();
-    private final IntCounter mRxLinkSpeedCount6gHigh = new IntCounter();
+
+    private final ConcurrentLongCounter mTxLinkSpeedCount2g =
+            new ConcurrentLongCounter(LINK_SPEED_COUNTS_CAPACITY);
+    private final ConcurrentLongCounter mTxLinkSpeedCount5gLow =
+            new ConcurrentLongCounter(LINK_SPEED_COUNTS_CAPACITY);
+    private final ConcurrentLongCounter mTxLinkSpeedCount5gMid =
+            new ConcurrentLongCounter(LINK_SPEED_COUNTS_CAPACITY);
+    private final ConcurrentLongCounter mTxLinkSpeedCount5gHigh =
+            new ConcurrentLongCounter(LINK_SPEED_COUNTS_CAPACITY);
+    private final ConcurrentLongCounter mTxLinkSpeedCount6gLow =
+            new ConcurrentLongCounter(LINK_SPEED_COUNTS_CAPACITY);
+    private final ConcurrentLongCounter mTxLinkSpeedCount6gMid =
+            new ConcurrentLongCounter(LINK_SPEED_COUNTS_CAPACITY);
+    private final ConcurrentLongCounter mTxLinkSpeedCount6gHigh =
+            new ConcurrentLongCounter(LINK_SPEED_COUNTS_CAPACITY);
+
+    private final ConcurrentLongCounter mRxLinkSpeedCount2g =
+            new ConcurrentLongCounter(LINK_SPEED_COUNTS_CAPACITY);
+    private final ConcurrentLongCounter mRxLinkSpeedCount5gLow =
+            new ConcurrentLongCounter(LINK_SPEED_COUNTS_CAPACITY);
+    private final ConcurrentLongCounter mRxLinkSpeedCount5gMid =
+            new ConcurrentLongCounter(LINK_SPEED_COUNTS_CAPACITY);
+    private final ConcurrentLongCounter mRxLinkSpeedCount5gHigh =
+            new ConcurrentLongCounter(LINK_SPEED_COUNTS_CAPACITY);
+    private final ConcurrentLongCounter mRxLinkSpeedCount6gLow =
+            new ConcurrentLongCounter(LINK_SPEED_COUNTS_CAPACITY);
+    private final ConcurrentLongCounter mRxLinkSpeedCount6gMid =
+            new ConcurrentLongCounter(LINK_SPEED_COUNTS_CAPACITY);
+    private final ConcurrentLongCounter mRxLinkSpeedCount6gHigh =
+            new ConcurrentLongCounter(LINK_SPEED_COUNTS_CAPACITY);
 
     private final IntCounter mMakeBeforeBreakLingeringDurationSeconds = new IntCounter();
 
@@ -361,7 +409,7 @@ public class WifiMetrics {
     private int mScanResultRssi = 0;
     /** Boot-relative timestamp when the last candidate scanresult was received, used to calculate
         RSSI deltas. -1 designates no candidate scanResult being tracked */
-    private long mScanResultRssiTimestampMillis = -1;
+    private volatile long mScanResultRssiTimestampMillis = -1;
     /** Mapping of alert reason to the respective alert count. */
     private final SparseIntArray mWifiAlertReasonCounts = new SparseIntArray();
     /**
@@ -446,8 +494,16 @@ public class WifiMetrics {
     private int mLinkProbeStaEventCount = 0;
     @VisibleForTesting static final int MAX_LINK_PROBE_STA_EVENTS = MAX_STA_EVENTS / 4;
 
-    private final LinkedList<WifiUsabilityStatsEntry> mWifiUsabilityStatsEntriesList =
-            new LinkedList<>();
+    /**
+     * Ring buffer of the latest WifiUsabilityStatsEntry, oldest first. The entries and their
+     * sub-messages are allocated once and then updated in place on every poll, they are only
+     * copied when a labeled snapshot is taken.
+     */
+    private final WifiUsabilityStatsEntry[] mWifiUsabilityStatsEntries =
+            new WifiUsabilityStatsEntry[MAX_WIFI_USABILITY_STATS_ENTRIES_LIST_SIZE];
+    /** Index of the oldest entry in |mWifiUsabilityStatsEntries|. */
+    private int mWifiUsabilityStatsEntriesHead = 0;
+    private int mWifiUsabilityStatsEntriesSize = 0;
     private final LinkedList<WifiUsabilityStats> mWifiUsabilityStatsListBad = new LinkedList<>();
     private final LinkedList<WifiUsabilityStats> mWifiUsabilityStatsListGood = new LinkedList<>();
     private int mWifiUsabilityStatsCounter = 0;
@@ -3279,17 +3335,51 @@ public class WifiMetrics {
         if (!(rssi >= MIN_RSSI_POLL && rssi <= MAX_RSSI_POLL)) {
             return;
         }
-        synchronized (mLock) {
-            if (!mRssiPollCountsMap.containsKey(frequency)) {
-                mRssiPollCountsMap.put(frequency, new SparseIntArray());
+        mRssiPollCounts.increment(rssiPollKey(frequency, rssi));
+        // Only the first poll following a connection is compared with the scan RSSI.
+        if (mScanResultRssiTimestampMillis >= 0) {
+            synchronized (mLock) {
+                maybeIncrementRssiDeltaCount(rssi - mScanResultRssi);
             }
-            SparseIntArray sparseIntArray = mRssiPollCountsMap.get(frequency);
-            int count = sparseIntArray.get(rssi);
-            sparseIntArray.put(rssi, count + 1);
-            maybeIncrementRssiDeltaCount(rssi - mScanResultRssi);
         }
     }
 
+    /**
+     * Packs a frequency and an RSSI into a key of {@link #mRssiPollCounts}. Keys are ordered by
+     * frequency, then by RSSI.
+     */
+    private static long rssiPollKey(int frequency, int rssi) {
+        return ((long) frequency << 32) + rssi;
+    }
+
+    /** Converts the RSSI poll counts to protos, ordered by frequency then RSSI. */
+    private WifiMetricsProto.RssiPollCount[] getRssiPollCounts() {
+        List<WifiMetricsProto.RssiPollCount> rssiPollCounts = new ArrayList<>();
+        mRssiPollCounts.forEach((key, count) -> {
+            WifiMetricsProto.RssiPollCount rssiPollCount =
+                    new WifiMetricsProto.RssiPollCount();
+            rssiPollCount.rssi = (int) key;
+            rssiPollCount.frequency = (int) ((key - rssiPollCount.rssi) >> 32);
+            rssiPollCount.count = (int) count;
+            rssiPollCounts.add(rssiPollCount);
+        });
+        return rssiPollCounts.toArray(new WifiMetricsProto.RssiPollCount[0]);
+    }
+
+    /** Merges the link speed counters into protos, ordered by link speed. */
+    private LinkSpeedCount[] getLinkSpeedCounts() {
+        List<LinkSpeedCount> linkSpeedCounts = new ArrayList<>();
+        mLinkSpeedCounts.forEach((linkSpeed, count) -> {
+            LinkSpeedCount linkSpeedCount = new LinkSpeedCount();
+            linkSpeedCount.linkSpeedMbps = (int) linkSpeed;
+            linkSpeedCount.count = (int) count;
+            linkSpeedCount.rssiSumDbm = (int) mLinkSpeedRssiSums.get(linkSpeed);
+            linkSpeedCount.rssiSumOfSquaresDbmSq = mLinkSpeedRssiSquareSums.get(linkSpeed);
+            linkSpeedCounts.add(linkSpeedCount);
+        });
+        return linkSpeedCounts.toArray(new LinkSpeedCount[0]);
+    }
+
     /**
      * Increment occurence count of difference between scan result RSSI and the first RSSI poll.
      * Ignores rssi values outside the bounds of [MIN_RSSI_DELTA, MAX_RSSI_DELTA]
@@ -3322,16 +3412,39 @@ public class WifiMetrics {
                 && rssi <= MAX_RSSI_POLL)) {
             return;
         }
-        synchronized (mLock) {
-            LinkSpeedCount linkSpeedCount = mLinkSpeedCounts.get(linkSpeed);
-            if (linkSpeedCount == null) {
-                linkSpeedCount = new LinkSpeedCount();
-                linkSpeedCount.linkSpeedMbps = linkSpeed;
-                mLinkSpeedCounts.put(linkSpeed, linkSpeedCount);
-            }
-            linkSpeedCount.count++;
-            linkSpeedCount.rssiSumDbm += Math.abs(rssi);
-            linkSpeedCount.rssiSumOfSquaresDbmSq += rssi * rssi;
+        mLinkSpeedCounts.increment(linkSpeed);
+        mLinkSpeedRssiSums.add(linkSpeed, Math.abs(rssi));
+        mLinkSpeedRssiSquareSums.add(linkSpeed, rssi * rssi);
+    }
+
+    /**
+     * Dumps the number of samples of each RSSI poll counter which overflowed its lock-free table.
+     */
+    private void dumpRssiPollCounterOverflows(PrintWriter pw) {
+        dumpCounterOverflow(pw, "mRssiPollCounts", mRssiPollCounts);
+        dumpCounterOverflow(pw, "mLinkSpeedCounts", mLinkSpeedCounts);
+        dumpCounterOverflow(pw, "mLinkSpeedRssiSums", mLinkSpeedRssiSums);
+        dumpCounterOverflow(pw, "mLinkSpeedRssiSquareSums", mLinkSpeedRssiSquareSums);
+        dumpCounterOverflow(pw, "mTxLinkSpeedCount2g", mTxLinkSpeedCount2g);
+        dumpCounterOverflow(pw, "mTxLinkSpeedCount5gLow", mTxLinkSpeedCount5gLow);
+        dumpCounterOverflow(pw, "mTxLinkSpeedCount5gMid", mTxLinkSpeedCount5gMid);
+        dumpCounterOverflow(pw, "mTxLinkSpeedCount5gHigh", mTxLinkSpeedCount5gHigh);
+        dumpCounterOverflow(pw, "mTxLinkSpeedCount6gLow", mTxLinkSpeedCount6gLow);
+        dumpCounterOverflow(pw, "mTxLinkSpeedCount6gMid", mTxLinkSpeedCount6gMid);
+        dumpCounterOverflow(pw, "mTxLinkSpeedCount6gHigh", mTxLinkSpeedCount6gHigh);
+        dumpCounterOverflow(pw, "mRxLinkSpeedCount2g", mRxLinkSpeedCount2g);
+        dumpCounterOverflow(pw, "mRxLinkSpeedCount5gLow", mRxLinkSpeedCount5gLow);
+        dumpCounterOverflow(pw, "mRxLinkSpeedCount5gMid", mRxLinkSpeedCount5gMid);
+        dumpCounterOverflow(pw, "mRxLinkSpeedCount5gHigh", mRxLinkSpeedCount5gHigh);
+        dumpCounterOverflow(pw, "mRxLinkSpeedCount6gLow", mRxLinkSpeedCount6gLow);
+        dumpCounterOverflow(pw, "mRxLinkSpeedCount6gMid", mRxLinkSpeedCount6gMid);
+        dumpCounterOverflow(pw, "mRxLinkSpeedCount6gHigh", mRxLinkSpeedCount6gHigh);
+    }
+
+    private static void dumpCounterOverflow(PrintWriter pw, String name,
+            ConcurrentLongCounter counter) {
+        if (counter.getOverflowCount() > 0) {
+            pw.println(name + " overflowed samples: " + counter.getOverflowCount());
         }
     }
 
@@ -3347,22 +3460,20 @@ public class WifiMetrics {
                 && txLinkSpeed >= MIN_LINK_SPEED_MBPS)) {
             return;
         }
-        synchronized (mLock) {
-            if (ScanResult.is24GHz(frequency)) {
-                mTxLinkSpeedCount2g.increment(txLinkSpeed);
-            } else if (frequency <= KnownBandsChannelHelper.BAND_5_GHZ_LOW_END_FREQ) {
-                mTxLinkSpeedCount5gLow.increment(txLinkSpeed);
-            } else if (frequency <= KnownBandsChannelHelper.BAND_5_GHZ_MID_END_FREQ) {
-                mTxLinkSpeedCount5gMid.increment(txLinkSpeed);
-            } else if (frequency <= KnownBandsChannelHelper.BAND_5_GHZ_HIGH_END_FREQ) {
-                mTxLinkSpeedCount5gHigh.increment(txLinkSpeed);
-            } else if (frequency <= KnownBandsChannelHelper.BAND_6_GHZ_LOW_END_FREQ) {
-                mTxLinkSpeedCount6gLow.increment(txLinkSpeed);
-            } else if (frequency <= KnownBandsChannelHelper.BAND_6_GHZ_MID_END_FREQ) {
-                mTxLinkSpeedCount6gMid.increment(txLinkSpeed);
-            } else if (frequency <= KnownBandsChannelHelper.BAND_6_GHZ_HIGH_END_FREQ) {
-                mTxLinkSpeedCount6gHigh.increment(txLinkSpeed);
-            }
+        if (ScanResult.is24GHz(frequency)) {
+            mTxLinkSpeedCount2g.increment(txLinkSpeed);
+        } else if (frequency <= KnownBandsChannelHelper.BAND_5_GHZ_LOW_END_FREQ) {
+            mTxLinkSpeedCount5gLow.increment(txLinkSpeed);
+        } else if (frequency <= KnownBandsChannelHelper.BAND_5_GHZ_MID_END_FREQ) {
+            mTxLinkSpeedCount5gMid.increment(txLinkSpeed);
+        } else if (frequency <= KnownBandsChannelHelper.BAND_5_GHZ_HIGH_END_FREQ) {
+            mTxLinkSpeedCount5gHigh.increment(txLinkSpeed);
+        } else if (frequency <= KnownBandsChannelHelper.BAND_6_GHZ_LOW_END_FREQ) {
+            mTxLinkSpeedCount6gLow.increment(txLinkSpeed);
+        } else if (frequency <= KnownBandsChannelHelper.BAND_6_GHZ_MID_END_FREQ) {
+            mTxLinkSpeedCount6gMid.increment(txLinkSpeed);
+        } else if (frequency <= KnownBandsChannelHelper.BAND_6_GHZ_HIGH_END_FREQ) {
+            mTxLinkSpeedCount6gHigh.increment(txLinkSpeed);
         }
     }
 
@@ -3378,22 +3489,20 @@ public class WifiMetrics {
                 && rxLinkSpeed >= MIN_LINK_SPEED_MBPS)) {
             return;
         }
-        synchronized (mLock) {
-            if (ScanResult.is24GHz(frequency)) {
-                mRxLinkSpeedCount2g.increment(rxLinkSpeed);
-            } else if (frequency <= KnownBandsChannelHelper.BAND_5_GHZ_LOW_END_FREQ) {
-                mRxLinkSpeedCount5gLow.increment(rxLinkSpeed);
-            } else if (frequency <= KnownBandsChannelHelper.BAND_5_GHZ_MID_END_FREQ) {
-                mRxLinkSpeedCount5gMid.increment(rxLinkSpeed);
-            } else if (frequency <= KnownBandsChannelHelper.BAND_5_GHZ_HIGH_END_FREQ) {
-                mRxLinkSpeedCount5gHigh.increment(rxLinkSpeed);
-            } else if (frequency <= KnownBandsChannelHelper.BAND_6_GHZ_LOW_END_FREQ) {
-                mRxLinkSpeedCount6gLow.increment(rxLinkSpeed);
-            } else if (frequency <= KnownBandsChannelHelper.BAND_6_GHZ_MID_END_FREQ) {
-                mRxLinkSpeedCount6gMid.increment(rxLinkSpeed);
-            } else if (frequency <= KnownBandsChannelHelper.BAND_6_GHZ_HIGH_END_FREQ) {
-                mRxLinkSpeedCount6gHigh.increment(rxLinkSpeed);
-            }
+        if (ScanResult.is24GHz(frequency)) {
+            mRxLinkSpeedCount2g.increment(rxLinkSpeed);
+        } else if (frequency <= KnownBandsChannelHelper.BAND_5_GHZ_LOW_END_FREQ) {
+            mRxLinkSpeedCount5gLow.increment(rxLinkSpeed);
+        } else if (frequency <= KnownBandsChannelHelper.BAND_5_GHZ_MID_END_FREQ) {
+            mRxLinkSpeedCount5gMid.increment(rxLinkSpeed);
+        } else if (frequency <= KnownBandsChannelHelper.BAND_5_GHZ_HIGH_END_FREQ) {
+            mRxLinkSpeedCount5gHigh.increment(rxLinkSpeed);
+        } else if (frequency <= KnownBandsChannelHelper.BAND_6_GHZ_LOW_END_FREQ) {
+            mRxLinkSpeedCount6gLow.increment(rxLinkSpeed);
+        } else if (frequency <= KnownBandsChannelHelper.BAND_6_GHZ_MID_END_FREQ) {
+            mRxLinkSpeedCount6gMid.increment(rxLinkSpeed);
+        } else if (frequency <= KnownBandsChannelHelper.BAND_6_GHZ_HIGH_END_FREQ) {
+            mRxLinkSpeedCount6gHigh.increment(rxLinkSpeed);
         }
     }
 
@@ -3637,7 +3746,7 @@ public class WifiMetrics {
             mLastScoreNoReset = score;
             if (wifiWins != mWifiWins) {
                 mWifiWins = wifiWins;
-                StaEvent event = new StaEvent();
+                StaEvent event = obtainStaEvent();
                 event.type = StaEvent.TYPE_SCORE_BREACH;
                 addStaEvent(ifaceName, event);
                 // Only record the first score breach by checking whether mScoreBreachLowTimeMillis
@@ -4324,6 +4433,8 @@ public class WifiMetrics {
 
     public static final String PROTO_DUMP_ARG = "wifiMetricsProto";
     public static final String CLEAN_DUMP_ARG = "clean";
+    // Max number of elements of a repeated field serialized at once by the proto dump
+    private static final int PROTO_DUMP_SLICE_SIZE = 16;
 
     /**
      * Dump all WifiMetrics. Collects some metrics from ConfigStore, Settings and WifiManager
@@ -4334,22 +4445,15 @@ public class WifiMetrics {
      * @param args [wifiMetricsProto [clean]]
      */
     public void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
+        WifiMetricsProto.WifiLog wifiLogToDump = null;
         synchronized (mLock) {
             consolidateScoringParams();
             if (args != null && args.length > 0 && PROTO_DUMP_ARG.equals(args[0])) {
-                // Dump serialized WifiLog proto
                 consolidateProto();
-                byte[] wifiMetricsProto = WifiMetricsProto.WifiLog.toByteArray(mWifiLogProto);
-                String metricsProtoDump = Base64.encodeToString(wifiMetricsProto, Base64.DEFAULT);
-                if (args.length > 1 && CLEAN_DUMP_ARG.equals(args[1])) {
-                    // Output metrics proto bytes (base64) and nothing else
-                    pw.print(metricsProtoDump);
-                } else {
-                    // Tag the start and end of the metrics proto bytes
-                    pw.println("WifiMetrics:");
-                    pw.println(metricsProtoDump);
-                    pw.println("EndWifiMetrics");
-                }
+                // Take the consolidated proto out, so that it is serialized without holding the
+                // lock, and start over with a new one
+                wifiLogToDump = mWifiLogProto;
+                mWifiLogProto = new WifiMetricsProto.WifiLog();
                 clear();
             } else {
                 pw.println("WifiMetrics:");
@@ -4484,25 +4588,23 @@ public class WifiMetrics {
 
                 try {
                     JSONObject rssiMap = new JSONObject();
-                    for (Map.Entry<Integer, SparseIntArray> entry : mRssiPollCountsMap.entrySet()) {
-                        int frequency = entry.getKey();
-                        final SparseIntArray histogram = entry.getValue();
-                        JSONArray histogramElements = new JSONArray();
-                        for (int i = MIN_RSSI_POLL; i <= MAX_RSSI_POLL; i++) {
-                            int count = histogram.get(i);
-                            if (count == 0) {
-                                continue;
-                            }
-                            JSONObject histogramElement = new JSONObject();
-                            histogramElement.put(Integer.toString(i), count);
-                            histogramElements.put(histogramElement);
+                    for (WifiMetricsProto.RssiPollCount rssiPollCount : getRssiPollCounts()) {
+                        String frequency = Integer.toString(rssiPollCount.frequency);
+                        JSONArray histogramElements = rssiMap.optJSONArray(frequency);
+                        if (histogramElements == null) {
+                            histogramElements = new JSONArray();
+                            rssiMap.put(frequency, histogramElements);
                         }
-                        rssiMap.put(Integer.toString(frequency), histogramElements);
+                        JSONObject histogramElement = new JSONObject();
+                        histogramElement.put(Integer.toString(rssiPollCount.rssi),
+                                rssiPollCount.count);
+                        histogramElements.put(histogramElement);
                     }
                     pw.println("mWifiLogProto.rssiPollCount: " + rssiMap.toString());
                 } catch (JSONException e) {
                     pw.println("JSONException occurred: " + e.getMessage());
                 }
+                dumpRssiPollCounterOverflows(pw);
 
                 pw.println("mWifiLogProto.rssiPollDeltaCount: Printing counts for ["
                         + MIN_RSSI_DELTA + ", " + MAX_RSSI_DELTA + "]");
@@ -4513,8 +4615,7 @@ public class WifiMetrics {
                 pw.println("  " + sb.toString());
                 pw.println("mWifiLogProto.linkSpeedCounts: ");
                 sb.setLength(0);
-                for (int i = 0; i < mLinkSpeedCounts.size(); i++) {
-                    LinkSpeedCount linkSpeedCount = mLinkSpeedCounts.valueAt(i);
+                for (LinkSpeedCount linkSpeedCount : getLinkSpeedCounts()) {
                     sb.append(linkSpeedCount.linkSpeedMbps).append(":{")
                             .append(linkSpeedCount.count).append(", ")
                             .append(linkSpeedCount.rssiSumDbm).append(", ")
@@ -4645,8 +4746,9 @@ public class WifiMetrics {
                 pw.println("mWifiLogProto.numSetupSoftApInterfaceFailureDueToHostapd="
                         + mWifiLogProto.numSetupSoftApInterfaceFailureDueToHostapd);
                 pw.println("StaEventList:");
-                for (StaEventWithTime event : mStaEventList) {
-                    pw.println(event);
+                for (int i = 0; i < mStaEventRing.size(); i++) {
+                    pw.println(staEventWithTimeToString(mStaEventRing.getWallClockMillis(i),
+                            mStaEventRing.get(i)));
                 }
                 pw.println("UserActionEvents:");
                 for (UserActionEventWithTime event : mUserActionEventList) {
@@ -4891,8 +4993,8 @@ public class WifiMetrics {
                 pw.println("Hardware Version: " + SystemProperties.get("ro.boot.revision", ""));
 
                 pw.println("mWifiUsabilityStatsEntriesList:");
-                for (WifiUsabilityStatsEntry stats : mWifiUsabilityStatsEntriesList) {
-                    printWifiUsabilityStatsEntry(pw, stats);
+                for (int i = 0; i < mWifiUsabilityStatsEntriesSize; i++) {
+                    printWifiUsabilityStatsEntry(pw, getWifiUsabilityStatsEntry(i));
                 }
                 pw.println("mWifiUsabilityStatsList:");
                 for (WifiUsabilityStats stats : mWifiUsabilityStatsListGood) {
@@ -5025,6 +5127,63 @@ public class WifiMetrics {
                 dumpInitPartialScanMetrics(pw);
             }
         }
+        if (wifiLogToDump != null) {
+            // Dump serialized WifiLog proto
+            if (args.length > 1 && CLEAN_DUMP_ARG.equals(args[1])) {
+                // Output metrics proto bytes (base64) and nothing else
+                writeWifiLogBase64(wifiLogToDump, pw);
+            } else {
+                // Tag the start and end of the metrics proto bytes
+                pw.println("WifiMetrics:");
+                writeWifiLogBase64(wifiLogToDump, pw);
+                pw.println();
+                pw.println("EndWifiMetrics");
+            }
+        }
+    }
+
+    /**
+     * Writes |wifiLog| encoded in base64 to |pw|, as a sequence of WifiLogs whose concatenation
+     * parses back to |wifiLog|. The largest repeated fields are moved out of |wifiLog| and
+     * written a slice at a time, so only one slice is serialized in memory at once.
+     */
+    private static void writeWifiLogBase64(WifiMetricsProto.WifiLog wifiLog, PrintWriter pw) {
+        try (OutputStream out = new Base64OutputStream(new PrintWriterOutputStream(pw),
+                Base64.DEFAULT)) {
+            wifiLog.connectionEvent = writeInSlices(wifiLog.connectionEvent,
+                    (log, slice) -> log.connectionEvent = slice, out);
+            wifiLog.rssiPollRssiCount = writeInSlices(wifiLog.rssiPollRssiCount,
+                    (log, slice) -> log.rssiPollRssiCount = slice, out);
+            wifiLog.staEventList = writeInSlices(wifiLog.staEventList,
+                    (log, slice) -> log.staEventList = slice, out);
+            wifiLog.wifiIsUnusableEventList = writeInSlices(wifiLog.wifiIsUnusableEventList,
+                    (log, slice) -> log.wifiIsUnusableEventList = slice, out);
+            wifiLog.wifiUsabilityStatsList = writeInSlices(wifiLog.wifiUsabilityStatsList,
+                    (log, slice) -> log.wifiUsabilityStatsList = slice, out);
+            wifiLog.userActionEvents = writeInSlices(wifiLog.userActionEvents,
+                    (log, slice) -> log.userActionEvents = slice, out);
+            // The remaining fields
+            out.write(WifiMetricsProto.WifiLog.toByteArray(wifiLog));
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write WifiLog proto", e);
+        }
+    }
+
+    /**
+     * Writes |items| as WifiLogs each holding up to PROTO_DUMP_SLICE_SIZE of them in the field
+     * set by |setter|.
+     * @return an empty array, to replace |items| with.
+     */
+    private static <T> T[] writeInSlices(T[] items,
+            BiConsumer<WifiMetricsProto.WifiLog, T[]> setter, OutputStream out)
+            throws IOException {
+        WifiMetricsProto.WifiLog slice = new WifiMetricsProto.WifiLog();
+        for (int from = 0; from < items.length; from += PROTO_DUMP_SLICE_SIZE) {
+            setter.accept(slice, Arrays.copyOfRange(items, from,
+                    Math.min(items.length, from + PROTO_DUMP_SLICE_SIZE)));
+            out.write(WifiMetricsProto.WifiLog.toByteArray(slice));
+        }
+        return Arrays.copyOf(items, 0);
     }
 
     private void dumpInitPartialScanMetrics(PrintWriter pw) {
@@ -5296,7 +5455,6 @@ public class WifiMetrics {
      * Put all metrics that were being tracked separately into mWifiLogProto
      */
     private void consolidateProto() {
-        List<WifiMetricsProto.RssiPollCount> rssis = new ArrayList<>();
         synchronized (mLock) {
             mWifiLogProto.connectionEvent = mConnectionEventList
                     .stream()
@@ -5339,18 +5497,7 @@ public class WifiMetrics {
              * Convert the SparseIntArrays of RSSI poll rssi, counts, and frequency to the
              * proto's repeated IntKeyVal array.
              */
-            for (Map.Entry<Integer, SparseIntArray> entry : mRssiPollCountsMap.entrySet()) {
-                int frequency = entry.getKey();
-                SparseIntArray histogram = entry.getValue();
-                for (int i = 0; i < histogram.size(); i++) {
-                    WifiMetricsProto.RssiPollCount keyVal = new WifiMetricsProto.RssiPollCount();
-                    keyVal.rssi = histogram.keyAt(i);
-                    keyVal.count = histogram.valueAt(i);
-                    keyVal.frequency = frequency;
-                    rssis.add(keyVal);
-                }
-            }
-            mWifiLogProto.rssiPollRssiCount = rssis.toArray(mWifiLogProto.rssiPollRssiCount);
+            mWifiLogProto.rssiPollRssiCount = getRssiPollCounts();
 
             /**
              * Convert the SparseIntArray of RSSI delta rssi's and counts to the proto's repeated
@@ -5367,11 +5514,7 @@ public class WifiMetrics {
             /**
              * Add LinkSpeedCount objects from mLinkSpeedCounts to proto.
              */
-            mWifiLogProto.linkSpeedCounts =
-                    new WifiMetricsProto.LinkSpeedCount[mLinkSpeedCounts.size()];
-            for (int i = 0; i < mLinkSpeedCounts.size(); i++) {
-                mWifiLogProto.linkSpeedCounts[i] = mLinkSpeedCounts.valueAt(i);
-            }
+            mWifiLogProto.linkSpeedCounts = getLinkSpeedCounts();
 
             /**
              * Convert the SparseIntArray of alert reasons and counts to the proto's repeated
@@ -5430,9 +5573,9 @@ public class WifiMetrics {
             /**
              * Convert StaEventList to array of StaEvents
              */
-            mWifiLogProto.staEventList = new StaEvent[mStaEventList.size()];
-            for (int i = 0; i < mStaEventList.size(); i++) {
-                mWifiLogProto.staEventList[i] = mStaEventList.get(i).staEvent;
+            mWifiLogProto.staEventList = new StaEvent[mStaEventRing.size()];
+            for (int i = 0; i < mStaEventRing.size(); i++) {
+                mWifiLogProto.staEventList[i] = mStaEventRing.get(i);
             }
             mWifiLogProto.userActionEvents = new UserActionEvent[mUserActionEventList.size()];
             for (int i = 0; i < mUserActionEventList.size(); i++) {
@@ -5465,8 +5608,11 @@ public class WifiMetrics {
             mWifiLogProto.wifiAwareLog = mWifiAwareMetrics.consolidateProto();
             mWifiLogProto.wifiRttLog = mRttMetrics.consolidateProto();
 
-            mWifiLogProto.pnoScanMetrics = mPnoScanMetrics;
-            mWifiLogProto.wifiLinkLayerUsageStats = mWifiLinkLayerUsageStats;
+            // The sub-messages kept across dumps are copied, so that the proto can be serialized
+            // without holding mLock while they are updated or reset by clear()
+            mWifiLogProto.pnoScanMetrics = copyOf(mPnoScanMetrics, new PnoScanMetrics());
+            mWifiLogProto.wifiLinkLayerUsageStats =
+                    copyOf(mWifiLinkLayerUsageStats, new WifiLinkLayerUsageStats());
             mWifiLogProto.wifiLinkLayerUsageStats.radioStats =
                     new WifiMetricsProto.RadioStats[mRadioStats.size()];
             for (int i = 0; i < mRadioStats.size(); i++) {
@@ -5574,7 +5720,7 @@ public class WifiMetrics {
             mExperimentValues.wifiDataStallMinTxSuccessWithoutRx =
                     mContext.getResources().getInteger(
                             R.integer.config_wifiDataStallMinTxSuccessWithoutRx);
-            mWifiLogProto.experimentValues = mExperimentValues;
+            mWifiLogProto.experimentValues = copyOf(mExperimentValues, new ExperimentValues());
             mWifiLogProto.wifiIsUnusableEventList =
                     new WifiIsUnusableEvent[mWifiIsUnusableList.size()];
             for (int i = 0; i < mWifiIsUnusableList.size(); i++) {
@@ -5604,7 +5750,9 @@ public class WifiMetrics {
             for (int i = 0; i < mMobilityStatePnoStatsMap.size(); i++) {
                 mWifiLogProto.mobilityStatePnoStatsList[i] = mMobilityStatePnoStatsMap.valueAt(i);
             }
-            mWifiLogProto.wifiP2PStats = mWifiP2pMetrics.consolidateProto();
+            // WifiP2pMetrics returns its live proto, which clear() resets in place
+            mWifiLogProto.wifiP2PStats =
+                    copyOf(mWifiP2pMetrics.consolidateProto(), new WifiP2pStats());
             mWifiLogProto.wifiDppLog = mDppMetrics.consolidateProto();
             mWifiLogProto.wifiConfigStoreIo = new WifiMetricsProto.WifiConfigStoreIO();
             mWifiLogProto.wifiConfigStoreIo.readDurations =
@@ -5653,7 +5801,8 @@ public class WifiMetrics {
                     mWifiNetworkRequestApiConnectionDurationSecOnSecondaryIfaceHistogram.toProto();
             mWifiNetworkRequestApiLog.concurrentConnectionDurationSecHistogram =
                     mWifiNetworkRequestApiConcurrentConnectionDurationSecHistogram.toProto();
-            mWifiLogProto.wifiNetworkRequestApiLog = mWifiNetworkRequestApiLog;
+            mWifiLogProto.wifiNetworkRequestApiLog =
+                    copyOf(mWifiNetworkRequestApiLog, new WifiNetworkRequestApiLog());
 
             mWifiNetworkSuggestionApiLog.networkListSizeHistogram =
                     mWifiNetworkSuggestionApiListSizeHistogram.toProto();
@@ -5669,7 +5818,8 @@ public class WifiMetrics {
                     mWifiNetworkSuggestionPriorityGroups.size();
             mWifiNetworkSuggestionApiLog.numSavedNetworksWithConfiguredSuggestion =
                     mWifiNetworkSuggestionCoexistSavedNetworks.size();
-            mWifiLogProto.wifiNetworkSuggestionApiLog = mWifiNetworkSuggestionApiLog;
+            mWifiLogProto.wifiNetworkSuggestionApiLog =
+                    copyOf(mWifiNetworkSuggestionApiLog, new WifiNetworkSuggestionApiLog());
 
             UserReactionToApprovalUiEvent events = new UserReactionToApprovalUiEvent();
             events.userApprovalAppUiReaction = mUserApprovalSuggestionAppUiReactionList
@@ -5690,8 +5840,8 @@ public class WifiMetrics {
             mWifiLockStats.lowLatencyActiveSessionDurationSecHistogram =
                     mWifiLockLowLatencyActiveSessionDurationSecHistogram.toProto();
 
-            mWifiLogProto.wifiLockStats = mWifiLockStats;
-            mWifiLogProto.wifiToggleStats = mWifiToggleStats;
+            mWifiLogProto.wifiLockStats = copyOf(mWifiLockStats, new WifiLockStats());
+            mWifiLogProto.wifiToggleStats = copyOf(mWifiToggleStats, new WifiToggleStats());
 
             /**
              * Convert the SparseIntArray of passpoint provision failure code
@@ -5860,6 +6010,19 @@ public class WifiMetrics {
         return array;
     }
 
+    /**
+     * Copies |message| into |copy|, which must be a new message of the same type.
+     * @return |copy|
+     */
+    private static <T extends MessageNano> T copyOf(T message, T copy) {
+        try {
+            return MessageNano.mergeFrom(copy, MessageNano.toByteArray(message));
+        } catch (InvalidProtocolBufferNanoException e) {
+            // Can't happen, the bytes were just serialized from a message of the same type
+            throw new IllegalStateException(e);
+        }
+    }
+
     /**
      * Clear all WifiMetrics, except for currentConnectionEvent and Open Network Notification
      * feature enabled state, blocklist size.
@@ -5873,9 +6036,11 @@ public class WifiMetrics {
             mScanReturnEntries.clear();
             mWifiSystemStateEntries.clear();
             mRecordStartTimeSec = mClock.getElapsedSinceBootMillis() / 1000;
-            mRssiPollCountsMap.clear();
+            mRssiPollCounts.clear();
             mRssiDeltaCounts.clear();
             mLinkSpeedCounts.clear();
+            mLinkSpeedRssiSums.clear();
+            mLinkSpeedRssiSquareSums.clear();
             mTxLinkSpeedCount2g.clear();
             mTxLinkSpeedCount5gLow.clear();
             mTxLinkSpeedCount5gMid.clear();
@@ -5897,7 +6062,7 @@ public class WifiMetrics {
             mWifiLogProto.clear();
             mScanResultRssiTimestampMillis = -1;
             mSoftApManagerReturnCodeCounts.clear();
-            mStaEventList.clear();
+            mStaEventRing.clear();
             mUserActionEventList.clear();
             mWifiAwareMetrics.clear();
             mRttMetrics.clear();
@@ -5936,7 +6101,7 @@ public class WifiMetrics {
             mInstalledPasspointProfileTypeForR2.clear();
             mWifiUsabilityStatsListGood.clear();
             mWifiUsabilityStatsListBad.clear();
-            mWifiUsabilityStatsEntriesList.clear();
+            clearWifiUsabilityStatsEntries();
             mMobilityStatePnoStatsMap.clear();
             mWifiP2pMetrics.clear();
             mDppMetrics.clear();
@@ -6048,61 +6213,63 @@ public class WifiMetrics {
     private void processMessage(Message msg) {
         String ifaceName = msg.getData().getString(WifiMonitor.KEY_IFACE);
 
-        StaEvent event = new StaEvent();
-        boolean logEvent = true;
-        switch (msg.what) {
-            case WifiMonitor.ASSOCIATION_REJECTION_EVENT:
-                event.type = StaEvent.TYPE_ASSOCIATION_REJECTION_EVENT;
-                AssocRejectEventInfo assocRejectEventInfo = (AssocRejectEventInfo) msg.obj;
-                event.associationTimedOut = assocRejectEventInfo.timedOut;
-                event.status = assocRejectEventInfo.statusCode;
-                break;
-            case WifiMonitor.AUTHENTICATION_FAILURE_EVENT:
-                event.type = StaEvent.TYPE_AUTHENTICATION_FAILURE_EVENT;
-                AuthenticationFailureEventInfo authenticationFailureEventInfo =
-                        (AuthenticationFailureEventInfo) msg.obj;
-                switch (authenticationFailureEventInfo.reasonCode) {
-                    case WifiManager.ERROR_AUTH_FAILURE_NONE:
-                        event.authFailureReason = StaEvent.AUTH_FAILURE_NONE;
-                        break;
-                    case WifiManager.ERROR_AUTH_FAILURE_TIMEOUT:
-                        event.authFailureReason = StaEvent.AUTH_FAILURE_TIMEOUT;
-                        break;
-                    case WifiManager.ERROR_AUTH_FAILURE_WRONG_PSWD:
-                        event.authFailureReason = StaEvent.AUTH_FAILURE_WRONG_PSWD;
-                        break;
-                    case WifiManager.ERROR_AUTH_FAILURE_EAP_FAILURE:
-                        event.authFailureReason = StaEvent.AUTH_FAILURE_EAP_FAILURE;
-                        break;
-                    default:
-                        break;
-                }
-                break;
-            case WifiMonitor.NETWORK_CONNECTION_EVENT:
-                event.type = StaEvent.TYPE_NETWORK_CONNECTION_EVENT;
-                break;
-            case WifiMonitor.NETWORK_DISCONNECTION_EVENT:
-                event.type = StaEvent.TYPE_NETWORK_DISCONNECTION_EVENT;
-                DisconnectEventInfo disconnectEventInfo = (DisconnectEventInfo) msg.obj;
-                event.reason = disconnectEventInfo.reasonCode;
-                event.localGen = disconnectEventInfo.locallyGenerated;
-                break;
-            case WifiMonitor.SUPPLICANT_STATE_CHANGE_EVENT:
-                logEvent = false;
-                StateChangeResult stateChangeResult = (StateChangeResult) msg.obj;
-                mSupplicantStateChangeBitmask |= supplicantStateToBit(stateChangeResult.state);
-                break;
-            case WifiMonitor.ASSOCIATED_BSSID_EVENT:
-                event.type = StaEvent.TYPE_CMD_ASSOCIATED_BSSID;
-                break;
-            case WifiMonitor.TARGET_BSSID_EVENT:
-                event.type = StaEvent.TYPE_CMD_TARGET_BSSID;
-                break;
-            default:
-                return;
-        }
-        if (logEvent) {
-            addStaEvent(ifaceName, event);
+        synchronized (mLock) {
+            StaEvent event = obtainStaEvent();
+            boolean logEvent = true;
+            switch (msg.what) {
+                case WifiMonitor.ASSOCIATION_REJECTION_EVENT:
+                    event.type = StaEvent.TYPE_ASSOCIATION_REJECTION_EVENT;
+                    AssocRejectEventInfo assocRejectEventInfo = (AssocRejectEventInfo) msg.obj;
+                    event.associationTimedOut = assocRejectEventInfo.timedOut;
+                    event.status = assocRejectEventInfo.statusCode;
+                    break;
+                case WifiMonitor.AUTHENTICATION_FAILURE_EVENT:
+                    event.type = StaEvent.TYPE_AUTHENTICATION_FAILURE_EVENT;
+                    AuthenticationFailureEventInfo authenticationFailureEventInfo =
+                            (AuthenticationFailureEventInfo) msg.obj;
+                    switch (authenticationFailureEventInfo.reasonCode) {
+                        case WifiManager.ERROR_AUTH_FAILURE_NONE:
+                            event.authFailureReason = StaEvent.AUTH_FAILURE_NONE;
+                            break;
+                        case WifiManager.ERROR_AUTH_FAILURE_TIMEOUT:
+                            event.authFailureReason = StaEvent.AUTH_FAILURE_TIMEOUT;
+                            break;
+                        case WifiManager.ERROR_AUTH_FAILURE_WRONG_PSWD:
+                            event.authFailureReason = StaEvent.AUTH_FAILURE_WRONG_PSWD;
+                            break;
+                        case WifiManager.ERROR_AUTH_FAILURE_EAP_FAILURE:
+                            event.authFailureReason = StaEvent.AUTH_FAILURE_EAP_FAILURE;
+                            break;
+                        default:
+                            break;
+                    }
+                    break;
+                case WifiMonitor.NETWORK_CONNECTION_EVENT:
+                    event.type = StaEvent.TYPE_NETWORK_CONNECTION_EVENT;
+                    break;
+                case WifiMonitor.NETWORK_DISCONNECTION_EVENT:
+                    event.type = StaEvent.TYPE_NETWORK_DISCONNECTION_EVENT;
+                    DisconnectEventInfo disconnectEventInfo = (DisconnectEventInfo) msg.obj;
+                    event.reason = disconnectEventInfo.reasonCode;
+                    event.localGen = disconnectEventInfo.locallyGenerated;
+                    break;
+                case WifiMonitor.SUPPLICANT_STATE_CHANGE_EVENT:
+                    logEvent = false;
+                    StateChangeResult stateChangeResult = (StateChangeResult) msg.obj;
+                    mSupplicantStateChangeBitmask |= supplicantStateToBit(stateChangeResult.state);
+                    break;
+                case WifiMonitor.ASSOCIATED_BSSID_EVENT:
+                    event.type = StaEvent.TYPE_CMD_ASSOCIATED_BSSID;
+                    break;
+                case WifiMonitor.TARGET_BSSID_EVENT:
+                    event.type = StaEvent.TYPE_CMD_TARGET_BSSID;
+                    break;
+                default:
+                    return;
+            }
+            if (logEvent) {
+                addStaEvent(ifaceName, event);
+            }
         }
     }
     /**
@@ -6170,13 +6337,23 @@ public class WifiMetrics {
                 Log.e(TAG, "Unknown StaEvent:" + type);
                 return;
         }
-        StaEvent event = new StaEvent();
-        event.type = type;
-        if (frameworkDisconnectReason != StaEvent.DISCONNECT_UNKNOWN) {
-            event.frameworkDisconnectReason = frameworkDisconnectReason;
+        synchronized (mLock) {
+            StaEvent event = obtainStaEvent();
+            event.type = type;
+            if (frameworkDisconnectReason != StaEvent.DISCONNECT_UNKNOWN) {
+                event.frameworkDisconnectReason = frameworkDisconnectReason;
+            }
+            event.configInfo = createConfigInfo(config);
+            addStaEvent(ifaceName, event);
         }
-        event.configInfo = createConfigInfo(config);
-        addStaEvent(ifaceName, event);
+    }
+
+    /**
+     * Returns the StaEvent to fill for the next call to addStaEvent, reset to its defaults.
+     * Must be called with mLock held, until the event is added.
+     */
+    private StaEvent obtainStaEvent() {
+        return mStaEventScratch.clear();
     }
 
     private void addStaEvent(String ifaceName, StaEvent staEvent) {
@@ -6219,15 +6396,14 @@ public class WifiMetrics {
         mLastWifiUsabilityScore = -1;
         mLastPredictionHorizonSec = -1;
         synchronized (mLock) {
-            mStaEventList.add(new StaEventWithTime(staEvent, mClock.getWallClockMillis()));
-            // Prune StaEventList if it gets too long
-            if (mStaEventList.size() > MAX_STA_EVENTS) mStaEventList.remove();
+            // The oldest event is overwritten once the ring is full
+            mStaEventRing.append(staEvent, mClock.getWallClockMillis());
         }
     }
 
     private ConfigInfo createConfigInfo(WifiConfiguration config) {
         if (config == null) return null;
-        ConfigInfo info = new ConfigInfo();
+        ConfigInfo info = mConfigInfoScratch.clear();
         info.allowedKeyManagement = bitSetToInt(config.allowedKeyManagement);
         info.allowedProtocols = bitSetToInt(config.allowedProtocols);
         info.allowedAuthAlgorithms = bitSetToInt(config.allowedAuthAlgorithms);
@@ -6599,27 +6775,17 @@ public class WifiMetrics {
         sia.put(element, count + 1);
     }
 
-    private static class StaEventWithTime {
-        public StaEvent staEvent;
-        public long wallClockMillis;
-
-        StaEventWithTime(StaEvent event, long wallClockMillis) {
-            staEvent = event;
-            this.wallClockMillis = wallClockMillis;
-        }
-
-        public String toString() {
-            StringBuilder sb = new StringBuilder();
-            Calendar c = Calendar.getInstance();
-            c.setTimeInMillis(wallClockMillis);
-            if (wallClockMillis != 0) {
-                sb.append(String.format("%tm-%td %tH:%tM:%tS.%tL", c, c, c, c, c, c));
-            } else {
-                sb.append("                  ");
-            }
-            sb.append(" ").append(staEventToString(staEvent));
-            return sb.toString();
+    private static String staEventWithTimeToString(long wallClockMillis, StaEvent staEvent) {
+        StringBuilder sb = new StringBuilder();
+        Calendar c = Calendar.getInstance();
+        c.setTimeInMillis(wallClockMillis);
+        if (wallClockMillis != 0) {
+            sb.append(String.format("%tm-%td %tH:%tM:%tS.%tL", c, c, c, c, c, c));
+        } else {
+            sb.append("                  ");
         }
+        sb.append(" ").append(staEventToString(staEvent));
+        return sb.toString();
     }
 
     private LinkedList<WifiIsUnusableWithTime> mWifiIsUnusableList =
@@ -6982,10 +7148,13 @@ public class WifiMetrics {
                 stats.lostmpdu_be = info.txBad;
                 stats.rxmpdu_be = info.rxSuccess;
             }
-            WifiUsabilityStatsEntry wifiUsabilityStatsEntry =
-                    mWifiUsabilityStatsEntriesList.size()
-                    < MAX_WIFI_USABILITY_STATS_ENTRIES_LIST_SIZE
-                    ? new WifiUsabilityStatsEntry() : mWifiUsabilityStatsEntriesList.remove();
+            WifiUsabilityStatsEntry wifiUsabilityStatsEntry = nextWifiUsabilityStatsEntry();
+            // Keep the sub-messages of the recycled entry to update them in place.
+            RadioStats[] radioStatsArray = wifiUsabilityStatsEntry.radioStats;
+            ContentionTimeStats[] contentionTimeStatsArray =
+                    wifiUsabilityStatsEntry.contentionTimeStats;
+            RateStats[] rateStatsArray = wifiUsabilityStatsEntry.rateStats;
+            wifiUsabilityStatsEntry.clear();
             wifiUsabilityStatsEntry.timeStampMs = stats.timeStampInMs;
             wifiUsabilityStatsEntry.totalTxSuccess = stats.txmpdu_be + stats.txmpdu_bk
                     + stats.txmpdu_vi + stats.txmpdu_vo;
@@ -6998,10 +7167,13 @@ public class WifiMetrics {
             /* Update per radio stats */
             if (stats.radioStats != null && stats.radioStats.length > 0) {
                 int numRadios = stats.radioStats.length;
-                wifiUsabilityStatsEntry.radioStats =
-                        new RadioStats[numRadios];
+                wifiUsabilityStatsEntry.radioStats = resizeArray(radioStatsArray, numRadios);
                 for (int i = 0; i < numRadios; i++) {
-                    RadioStats radioStats = new RadioStats();
+                    RadioStats radioStats = wifiUsabilityStatsEntry.radioStats[i];
+                    if (radioStats == null) {
+                        radioStats = new RadioStats();
+                        wifiUsabilityStatsEntry.radioStats[i] = radioStats;
+                    }
                     WifiLinkLayerStats.RadioStat radio = stats.radioStats[i];
                     radioStats.radioId = radio.radio_id;
                     radioStats.totalRadioOnTimeMs = radio.on_time;
@@ -7013,7 +7185,6 @@ public class WifiMetrics {
                     radioStats.totalRoamScanTimeMs = radio.on_time_roam_scan;
                     radioStats.totalPnoScanTimeMs = radio.on_time_pno_scan;
                     radioStats.totalHotspot2ScanTimeMs = radio.on_time_hs20_scan;
-                    wifiUsabilityStatsEntry.radioStats[i] = radioStats;
                 }
             }
             wifiUsabilityStatsEntry.totalRadioOnTimeMs = stats.on_time;
@@ -7072,9 +7243,14 @@ public class WifiMetrics {
             wifiUsabilityStatsEntry.seqNumInsideFramework = mSeqNumInsideFramework;
             wifiUsabilityStatsEntry.deviceMobilityState = mCurrentDeviceMobilityState;
             wifiUsabilityStatsEntry.contentionTimeStats =
-                    new ContentionTimeStats[NUM_WME_ACCESS_CATEGORIES];
+                    resizeArray(contentionTimeStatsArray, NUM_WME_ACCESS_CATEGORIES);
             for (int ac = 0; ac < NUM_WME_ACCESS_CATEGORIES; ac++) {
-                ContentionTimeStats contentionTimeStats = new ContentionTimeStats();
+                ContentionTimeStats contentionTimeStats =
+                        wifiUsabilityStatsEntry.contentionTimeStats[ac];
+                if (contentionTimeStats == null) {
+                    contentionTimeStats = new ContentionTimeStats();
+                    wifiUsabilityStatsEntry.contentionTimeStats[ac] = contentionTimeStats;
+                }
                 switch (ac) {
                     case ContentionTimeStats.WME_ACCESS_CATEGORY_BE:
                         contentionTimeStats.accessCategory =
@@ -7127,7 +7303,6 @@ public class WifiMetrics {
                     default:
                         Log.e(TAG, "Unknown WME Access Category: " + ac);
                 }
-                wifiUsabilityStatsEntry.contentionTimeStats[ac] = contentionTimeStats;
             }
             if (mWifiChannelUtilization != null) {
                 wifiUsabilityStatsEntry.channelUtilizationRatio =
@@ -7151,9 +7326,13 @@ public class WifiMetrics {
                 wifiUsabilityStatsEntry.channelUtilization = stats.peerInfo[0].chanUtil;
                 int numRates = stats.peerInfo[0].rateStats != null
                         ? stats.peerInfo[0].rateStats.length : 0;
-                wifiUsabilityStatsEntry.rateStats = new RateStats[numRates];
+                wifiUsabilityStatsEntry.rateStats = resizeArray(rateStatsArray, numRates);
                 for (int i = 0; i < numRates; i++) {
-                    RateStats rate = new RateStats();
+                    RateStats rate = wifiUsabilityStatsEntry.rateStats[i];
+                    if (rate == null) {
+                        rate = new RateStats();
+                        wifiUsabilityStatsEntry.rateStats[i] = rate;
+                    }
                     WifiLinkLayerStats.RateStat curRate = stats.peerInfo[0].rateStats[i];
                     rate.preamble = curRate.preamble;
                     rate.nss = curRate.nss;
@@ -7164,11 +7343,9 @@ public class WifiMetrics {
                     rate.rxMpdu = curRate.rxMpdu;
                     rate.mpduLost = curRate.mpduLost;
                     rate.retries = curRate.retries;
-                    wifiUsabilityStatsEntry.rateStats[i] = rate;
                 }
             }
 
-            mWifiUsabilityStatsEntriesList.add(wifiUsabilityStatsEntry);
             mWifiUsabilityStatsCounter++;
             if (mWifiUsabilityStatsCounter >= NUM_WIFI_USABILITY_STATS_ENTRIES_PER_WIFI_GOOD) {
                 addToWifiUsabilityStatsList(ifaceName, WifiUsabilityStats.LABEL_GOOD,
@@ -7188,7 +7365,8 @@ public class WifiMetrics {
             // Invoke Wifi usability stats listener.
             // TODO(b/179518316): Enable this for secondary transient STA also if external scorer
             // is in charge of MBB.
-            if (isPrimary(ifaceName)) {
+            if (isPrimary(ifaceName)
+                    && mOnWifiUsabilityListeners.getRegisteredCallbackCount() > 0) {
                 sendWifiUsabilityStats(mSeqNumInsideFramework, isSameBssidAndFreq,
                         createNewWifiUsabilityStatsEntryParcelable(wifiUsabilityStatsEntry, stats,
                                 info));
@@ -7202,6 +7380,51 @@ public class WifiMetrics {
         }
     }
 
+    /**
+     * Returns the |i|th oldest entry of the WifiUsabilityStatsEntry ring buffer.
+     * mLock must be held when calling this method.
+     */
+    private WifiUsabilityStatsEntry getWifiUsabilityStatsEntry(int i) {
+        return mWifiUsabilityStatsEntries[(mWifiUsabilityStatsEntriesHead + i)
+                % MAX_WIFI_USABILITY_STATS_ENTRIES_LIST_SIZE];
+    }
+
+    /**
+     * Returns the entry of the WifiUsabilityStatsEntry ring buffer to fill with the next poll,
+     * which becomes the newest entry. The oldest entry is recycled once the buffer is full.
+     * mLock must be held when calling this method.
+     */
+    private WifiUsabilityStatsEntry nextWifiUsabilityStatsEntry() {
+        int index = (mWifiUsabilityStatsEntriesHead + mWifiUsabilityStatsEntriesSize)
+                % MAX_WIFI_USABILITY_STATS_ENTRIES_LIST_SIZE;
+        if (mWifiUsabilityStatsEntriesSize < MAX_WIFI_USABILITY_STATS_ENTRIES_LIST_SIZE) {
+            mWifiUsabilityStatsEntriesSize++;
+        } else {
+            mWifiUsabilityStatsEntriesHead = (mWifiUsabilityStatsEntriesHead + 1)
+                    % MAX_WIFI_USABILITY_STATS_ENTRIES_LIST_SIZE;
+        }
+        WifiUsabilityStatsEntry entry = mWifiUsabilityStatsEntries[index];
+        if (entry == null) {
+            entry = new WifiUsabilityStatsEntry();
+            mWifiUsabilityStatsEntries[index] = entry;
+        }
+        return entry;
+    }
+
+    /**
+     * Empties the WifiUsabilityStatsEntry ring buffer, keeping the entries for reuse.
+     * mLock must be held when calling this method.
+     */
+    private void clearWifiUsabilityStatsEntries() {
+        mWifiUsabilityStatsEntriesHead = 0;
+        mWifiUsabilityStatsEntriesSize = 0;
+    }
+
+    /** Returns |array| if it has |length| elements, or a copy of it resized to |length|. */
+    private static <T> T[] resizeArray(T[] array, int length) {
+        return array.length == length ? array : Arrays.copyOf(array, length);
+    }
+
     /**
      * Send Wifi usability stats.
      * @param seqNum
@@ -7570,15 +7793,55 @@ public class WifiMetrics {
         out.seqNumInsideFramework = s.seqNumInsideFramework;
         out.deviceMobilityState = s.deviceMobilityState;
         out.timeSliceDutyCycleInPercent = s.timeSliceDutyCycleInPercent;
-        out.contentionTimeStats = s.contentionTimeStats;
+        // The sub-messages of |s| are updated in place by the next polls, copy them.
+        out.contentionTimeStats = new ContentionTimeStats[s.contentionTimeStats.length];
+        for (int i = 0; i < s.contentionTimeStats.length; i++) {
+            ContentionTimeStats in = s.contentionTimeStats[i];
+            ContentionTimeStats copy = new ContentionTimeStats();
+            copy.accessCategory = in.accessCategory;
+            copy.contentionTimeMinMicros = in.contentionTimeMinMicros;
+            copy.contentionTimeMaxMicros = in.contentionTimeMaxMicros;
+            copy.contentionTimeAvgMicros = in.contentionTimeAvgMicros;
+            copy.contentionNumSamples = in.contentionNumSamples;
+            out.contentionTimeStats[i] = copy;
+        }
         out.channelUtilizationRatio = s.channelUtilizationRatio;
         out.isThroughputSufficient = s.isThroughputSufficient;
         out.isWifiScoringEnabled = s.isWifiScoringEnabled;
         out.isCellularDataAvailable = s.isCellularDataAvailable;
-        out.rateStats = s.rateStats;
+        out.rateStats = new RateStats[s.rateStats.length];
+        for (int i = 0; i < s.rateStats.length; i++) {
+            RateStats in = s.rateStats[i];
+            RateStats copy = new RateStats();
+            copy.preamble = in.preamble;
+            copy.nss = in.nss;
+            copy.bw = in.bw;
+            copy.rateMcsIdx = in.rateMcsIdx;
+            copy.bitRateInKbps = in.bitRateInKbps;
+            copy.txMpdu = in.txMpdu;
+            copy.rxMpdu = in.rxMpdu;
+            copy.mpduLost = in.mpduLost;
+            copy.retries = in.retries;
+            out.rateStats[i] = copy;
+        }
         out.staCount = s.staCount;
         out.channelUtilization = s.channelUtilization;
-        out.radioStats = s.radioStats;
+        out.radioStats = new RadioStats[s.radioStats.length];
+        for (int i = 0; i < s.radioStats.length; i++) {
+            RadioStats in = s.radioStats[i];
+            RadioStats copy = new RadioStats();
+            copy.radioId = in.radioId;
+            copy.totalRadioOnTimeMs = in.totalRadioOnTimeMs;
+            copy.totalRadioTxTimeMs = in.totalRadioTxTimeMs;
+            copy.totalRadioRxTimeMs = in.totalRadioRxTimeMs;
+            copy.totalScanTimeMs = in.totalScanTimeMs;
+            copy.totalNanScanTimeMs = in.totalNanScanTimeMs;
+            copy.totalBackgroundScanTimeMs = in.totalBackgroundScanTimeMs;
+            copy.totalRoamScanTimeMs = in.totalRoamScanTimeMs;
+            copy.totalPnoScanTimeMs = in.totalPnoScanTimeMs;
+            copy.totalHotspot2ScanTimeMs = in.totalHotspot2ScanTimeMs;
+            out.radioStats[i] = copy;
+        }
         return out;
     }
 
@@ -7589,11 +7852,10 @@ public class WifiMetrics {
         wifiUsabilityStats.triggerType = triggerType;
         wifiUsabilityStats.firmwareAlertCode = firmwareAlertCode;
         wifiUsabilityStats.timeStampMs = mClock.getElapsedSinceBootMillis();
-        wifiUsabilityStats.stats =
-                new WifiUsabilityStatsEntry[mWifiUsabilityStatsEntriesList.size()];
-        for (int i = 0; i < mWifiUsabilityStatsEntriesList.size(); i++) {
+        wifiUsabilityStats.stats = new WifiUsabilityStatsEntry[mWifiUsabilityStatsEntriesSize];
+        for (int i = 0; i < mWifiUsabilityStatsEntriesSize; i++) {
             wifiUsabilityStats.stats[i] =
-                    createNewWifiUsabilityStatsEntry(mWifiUsabilityStatsEntriesList.get(i));
+                    createNewWifiUsabilityStatsEntry(getWifiUsabilityStatsEntry(i));
         }
         return wifiUsabilityStats;
     }
@@ -7611,7 +7873,7 @@ public class WifiMetrics {
             if (!isPrimary(ifaceName)) {
                 return;
             }
-            if (mWifiUsabilityStatsEntriesList.isEmpty() || !mScreenOn) {
+            if (mWifiUsabilityStatsEntriesSize == 0 || !mScreenOn) {
                 return;
             }
             if (label == WifiUsabilityStats.LABEL_GOOD) {
@@ -7621,7 +7883,8 @@ public class WifiMetrics {
                         || mWifiUsabilityStatsListGood.getLast().stats[mWifiUsabilityStatsListGood
                         .getLast().stats.length - 1].timeStampMs
                         + MIN_WIFI_GOOD_USABILITY_STATS_PERIOD_MS
-                        < mWifiUsabilityStatsEntriesList.getLast().timeStampMs) {
+                        < getWifiUsabilityStatsEntry(mWifiUsabilityStatsEntriesSize - 1)
+                                .timeStampMs) {
                     while (mWifiUsabilityStatsListGood.size()
                             >= MAX_WIFI_USABILITY_STATS_LIST_SIZE_PER_TYPE) {
                         mWifiUsabilityStatsListGood.remove(
@@ -7639,7 +7902,8 @@ public class WifiMetrics {
                         || (mWifiUsabilityStatsListBad.getLast().stats[mWifiUsabilityStatsListBad
                         .getLast().stats.length - 1].timeStampMs
                         + MIN_DATA_STALL_WAIT_MS
-                        < mWifiUsabilityStatsEntriesList.getLast().timeStampMs)) {
+                        < getWifiUsabilityStatsEntry(mWifiUsabilityStatsEntriesSize - 1)
+                                .timeStampMs)) {
                     while (mWifiUsabilityStatsListBad.size()
                             >= MAX_WIFI_USABILITY_STATS_LIST_SIZE_PER_TYPE) {
                         mWifiUsabilityStatsListBad.remove(
@@ -7651,7 +7915,7 @@ public class WifiMetrics {
                 }
             }
             mWifiUsabilityStatsCounter = 0;
-            mWifiUsabilityStatsEntriesList.clear();
+            clearWifiUsabilityStatsEntries();
         }
     }
 
@@ -7820,7 +8084,7 @@ public class WifiMetrics {
 
             if (wifiWins != mWifiWinsUsabilityScore) {
                 mWifiWinsUsabilityScore = wifiWins;
-                StaEvent event = new StaEvent();
+                StaEvent event = obtainStaEvent();
                 event.type = StaEvent.TYPE_WIFI_USABILITY_SCORE_BREACH;
                 addStaEvent(ifaceName, event);
                 // Only record the first score breach by checking whether mScoreBreachLowTimeMillis
@@ -7859,7 +8123,7 @@ public class WifiMetrics {
             mLinkProbeSuccessElapsedTimeMsHistogram.increment(elapsedTimeMs);
 
             if (mLinkProbeStaEventCount < MAX_LINK_PROBE_STA_EVENTS) {
-                StaEvent event = new StaEvent();
+                StaEvent event = obtainStaEvent();
                 event.type = StaEvent.TYPE_LINK_PROBE;
                 event.linkProbeWasSuccess = true;
                 event.linkProbeSuccessElapsedTimeMs = elapsedTimeMs;
@@ -7894,7 +8158,7 @@ public class WifiMetrics {
             mLinkProbeFailureReasonCounts.increment(reason);
 
             if (mLinkProbeStaEventCount < MAX_LINK_PROBE_STA_EVENTS) {
-                StaEvent event = new StaEvent();
+                StaEvent event = obtainStaEvent();
                 event.type = StaEvent.TYPE_LINK_PROBE;
                 event.linkProbeWasSuccess = false;
                 event.linkProbeFailureReason = linkProbeFailureReasonToProto(reason);
@@ -24,7 +24,6 @@ import android.net.wifi.WifiManager;
 import android.net.wifi.WifiSsid;
 import android.os.Handler;
 import android.os.Message;
-import android.util.ArraySet;
 import android.util.Log;
 import android.util.SparseArray;
 
@@ -41,11 +40,12 @@ import com.android.server.wifi.hotspot2.WnmData;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Listen for events from the wpa_supplicant & wificond and broadcast them on
@@ -161,7 +161,8 @@ public class WifiMonitor {
 
     /**
      * Use this key to get the interface name of the message sent by WifiMonitor,
-     * or null if not available.
+     * or null if not available. Only set for handlers registered with
+     * {@link #registerHandler(String, int, Handler)}, or with |attachIfaceName| set.
      *
      * <br />
      * Sample code:
@@ -177,19 +178,51 @@ public class WifiMonitor {
         mVerboseLoggingEnabled = verbose;
     }
 
-    private final Map<String, SparseArray<Set<Handler>>> mHandlerMap = new HashMap<>();
-    public synchronized void registerHandler(String iface, int what, Handler handler) {
-        SparseArray<Set<Handler>> ifaceHandlers = mHandlerMap.get(iface);
-        if (ifaceHandlers == null) {
-            ifaceHandlers = new SparseArray<>();
-            mHandlerMap.put(iface, ifaceHandlers);
+    /** A handler registered for an event, and whether it needs the iface name. */
+    private static final class Registration {
+        public final Handler handler;
+        public final boolean attachIfaceName;
+
+        Registration(Handler handler, boolean attachIfaceName) {
+            this.handler = handler;
+            this.attachIfaceName = attachIfaceName;
         }
-        Set<Handler> ifaceWhatHandlers = ifaceHandlers.get(what);
-        if (ifaceWhatHandlers == null) {
-            ifaceWhatHandlers = new ArraySet<>();
-            ifaceHandlers.put(what, ifaceWhatHandlers);
+    }
+
+    private static final Registration[] NO_REGISTRATIONS = new Registration[0];
+
+    /**
+     * Dispatch table: iface name -> message what -> handlers, in registration order.
+     * The table is never modified once published. Registration changes, which are rare, build a
+     * new table under the class lock, so events can be dispatched from any thread without locking.
+     */
+    private volatile Map<String, SparseArray<Registration[]>> mDispatchTable = new HashMap<>();
+
+    /**
+     * Register the given |handler| to receive the events |what| for |iface|. The name of the
+     * iface is attached to each message under {@link #KEY_IFACE}.
+     */
+    public void registerHandler(String iface, int what, Handler handler) {
+        registerHandler(iface, what, handler, true);
+    }
+
+    /**
+     * Register the given |handler| to receive the events |what| for |iface|.
+     *
+     * @param attachIfaceName whether to attach the name of the iface to each message under
+     *        {@link #KEY_IFACE}. Handlers that do not need it should pass false, to save a Bundle
+     *        allocation per event.
+     */
+    public synchronized void registerHandler(String iface, int what, Handler handler,
+            boolean attachIfaceName) {
+        if (handler == null) return;
+        Registration[] registrations = getRegistrations(mDispatchTable, iface, what);
+        for (Registration registration : registrations) {
+            if (registration.handler == handler) return;
         }
-        ifaceWhatHandlers.add(handler);
+        Registration[] updated = Arrays.copyOf(registrations, registrations.length + 1);
+        updated[registrations.length] = new Registration(handler, attachIfaceName);
+        publishRegistrations(iface, what, updated);
     }
 
     /**
@@ -199,18 +232,42 @@ public class WifiMonitor {
      * @param handler
      */
     public synchronized void deregisterHandler(String iface, int what, Handler handler) {
-        SparseArray<Set<Handler>> ifaceHandlers = mHandlerMap.get(iface);
-        if (ifaceHandlers == null) {
+        Registration[] registrations = getRegistrations(mDispatchTable, iface, what);
+        for (int i = 0; i < registrations.length; i++) {
+            if (registrations[i].handler != handler) continue;
+            Registration[] updated = new Registration[registrations.length - 1];
+            System.arraycopy(registrations, 0, updated, 0, i);
+            System.arraycopy(registrations, i + 1, updated, i, updated.length - i);
+            publishRegistrations(iface, what, updated);
             return;
         }
-        Set<Handler> ifaceWhatHandlers = ifaceHandlers.get(what);
-        if (ifaceWhatHandlers == null) {
-            return;
+    }
+
+    private static Registration[] getRegistrations(
+            Map<String, SparseArray<Registration[]>> table, String iface, int what) {
+        SparseArray<Registration[]> ifaceRegistrations = table.get(iface);
+        if (ifaceRegistrations == null) return NO_REGISTRATIONS;
+        return ifaceRegistrations.get(what, NO_REGISTRATIONS);
+    }
+
+    /** Publishes a copy of the dispatch table, with the given handlers for |iface| and |what|. */
+    private void publishRegistrations(String iface, int what, Registration[] registrations) {
+        Map<String, SparseArray<Registration[]>> table = new HashMap<>(mDispatchTable);
+        SparseArray<Registration[]> ifaceRegistrations = table.get(iface);
+        ifaceRegistrations = ifaceRegistrations == null
+                ? new SparseArray<>() : ifaceRegistrations.clone();
+        if (registrations.length == 0) {
+            ifaceRegistrations.remove(what);
+        } else {
+            ifaceRegistrations.put(what, registrations);
         }
-        ifaceWhatHandlers.remove(handler);
+        // The iface stays in the table with no handlers, so that its events are not broadcast to
+        // the other ifaces.
+        table.put(iface, ifaceRegistrations);
+        mDispatchTable = table;
     }
 
-    private final Map<String, Boolean> mMonitoringMap = new HashMap<>();
+    private final Map<String, Boolean> mMonitoringMap = new ConcurrentHashMap<>();
     private boolean isMonitoring(String iface) {
         Boolean val = mMonitoringMap.get(iface);
         if (val == null) {
@@ -257,51 +314,42 @@ public class WifiMonitor {
      */
     public List<String> getMonitoredIfaceNames() {
         List<String> monitoringIfaceList = new ArrayList<>();
-        for (String iface : mMonitoringMap.keySet()) {
-            if (mMonitoringMap.get(iface)) {
-                monitoringIfaceList.add(iface);
+        for (Map.Entry<String, Boolean> entry : mMonitoringMap.entrySet()) {
+            if (entry.getValue()) {
+                monitoringIfaceList.add(entry.getKey());
             }
         }
         return monitoringIfaceList;
     }
 
     /**
-     * Similar functions to Handler#sendMessage that send the message to the registered handler
-     * for the given interface and message what.
-     * All of these should be called with the WifiMonitor class lock
+     * Similar functions to Handler#sendMessage that send the message to the registered handlers
+     * for the given interface and message what. Each handler gets its own Message obtained from
+     * the pool, no Message is allocated if no handler is registered.
      */
     private void sendMessage(String iface, int what) {
-        sendMessage(iface, Message.obtain(null, what));
+        sendMessage(iface, what, 0, 0, null);
     }
 
     private void sendMessage(String iface, int what, Object obj) {
-        sendMessage(iface, Message.obtain(null, what, obj));
+        sendMessage(iface, what, 0, 0, obj);
     }
 
     private void sendMessage(String iface, int what, int arg1) {
-        sendMessage(iface, Message.obtain(null, what, arg1, 0));
+        sendMessage(iface, what, arg1, 0, null);
     }
 
     private void sendMessage(String iface, int what, int arg1, int arg2) {
-        sendMessage(iface, Message.obtain(null, what, arg1, arg2));
+        sendMessage(iface, what, arg1, arg2, null);
     }
 
     private void sendMessage(String iface, int what, int arg1, int arg2, Object obj) {
-        sendMessage(iface, Message.obtain(null, what, arg1, arg2, obj));
-    }
-
-    private void sendMessage(String iface, Message message) {
-        SparseArray<Set<Handler>> ifaceHandlers = mHandlerMap.get(iface);
-        if (iface != null && ifaceHandlers != null) {
+        Map<String, SparseArray<Registration[]>> table = mDispatchTable;
+        SparseArray<Registration[]> ifaceRegistrations = iface == null ? null : table.get(iface);
+        if (ifaceRegistrations != null) {
             if (isMonitoring(iface)) {
-                Set<Handler> ifaceWhatHandlers = ifaceHandlers.get(message.what);
-                if (ifaceWhatHandlers != null) {
-                    for (Handler handler : ifaceWhatHandlers) {
-                        if (handler != null) {
-                            sendMessage(iface, handler, Message.obtain(message));
-                        }
-                    }
-                }
+                sendMessage(iface, ifaceRegistrations.get(what, NO_REGISTRATIONS),
+                        what, arg1, arg2, obj);
             } else {
                 if (mVerboseLoggingEnabled) {
                     Log.d(TAG, "Dropping event because (" + iface + ") is stopped");
@@ -311,29 +359,25 @@ public class WifiMonitor {
             if (mVerboseLoggingEnabled) {
                 Log.d(TAG, "Sending to all monitors because there's no matching iface");
             }
-            for (Map.Entry<String, SparseArray<Set<Handler>>> entry : mHandlerMap.entrySet()) {
-                iface = entry.getKey();
-                if (isMonitoring(iface)) {
-                    Set<Handler> ifaceWhatHandlers = entry.getValue().get(message.what);
-                    if (ifaceWhatHandlers == null) continue;
-                    for (Handler handler : ifaceWhatHandlers) {
-                        if (handler != null) {
-                            sendMessage(iface, handler, Message.obtain(message));
-                        }
-                    }
+            for (Map.Entry<String, SparseArray<Registration[]>> entry : table.entrySet()) {
+                if (isMonitoring(entry.getKey())) {
+                    sendMessage(entry.getKey(), entry.getValue().get(what, NO_REGISTRATIONS),
+                            what, arg1, arg2, obj);
                 }
             }
         }
-
-        message.recycle();
     }
 
-    private void sendMessage(String iface, Handler handler, Message message) {
-        message.setTarget(handler);
-        // getData() will return the existing Bundle if it exists, or create a new one
-        // This prevents clearing the existing data.
-        message.getData().putString(KEY_IFACE, iface);
-        message.sendToTarget();
+    private static void sendMessage(String iface, Registration[] registrations, int what,
+            int arg1, int arg2, Object obj) {
+        for (Registration registration : registrations) {
+            Message message = Message.obtain(registration.handler, what, arg1, arg2, obj);
+            if (registration.attachIfaceName) {
+                // Each message needs its own Bundle, as receivers may add to it.
+                message.getData().putString(KEY_IFACE, iface);
+            }
+            message.sendToTarget();
+        }
     }
 
     /**
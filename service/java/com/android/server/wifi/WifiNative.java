@@ -4015,35 +4015,80 @@ public class WifiNative {
      */
     @Nullable
     public WifiSignalPollResults signalPoll(@NonNull String ifaceName) {
-        if (mMockWifiModem != null
-                && mMockWifiModem.isMethodConfigured(
-                    MockWifiServiceUtil.MOCK_NL80211_SERVICE, "signalPoll")) {
-            Log.i(TAG, "signalPoll was called from mock wificond");
-            WifiNl80211Manager.SignalPollResult result =
-                    mMockWifiModem.getWifiNl80211Manager().signalPoll(ifaceName);
-            if (result != null) {
-                // Convert WifiNl80211Manager#SignalPollResult to WifiSignalPollResults.
-                // Assume single link and linkId = 0.
-                WifiSignalPollResults results = new WifiSignalPollResults();
-                results.addEntry(0, result.currentRssiDbm, result.txBitrateMbps,
-                        result.rxBitrateMbps, result.associationFrequencyMHz);
-                return results;
-            }
+        WifiSignalPollResults results = signalPollFromMockWificond(ifaceName);
+        if (results != null) {
+            return results;
         }
         // Query supplicant.
-        WifiSignalPollResults results = mSupplicantStaIfaceHal.getSignalPollResults(
-                ifaceName);
+        results = mSupplicantStaIfaceHal.getSignalPollResults(ifaceName);
         if (results == null) {
             // Fallback to WifiCond.
-            WifiNl80211Manager.SignalPollResult result = mWifiCondManager.signalPoll(ifaceName);
-            if (result != null) {
-                // Convert WifiNl80211Manager#SignalPollResult to WifiSignalPollResults.
-                // Assume single link and linkId = 0.
-                results = new WifiSignalPollResults();
-                results.addEntry(0, result.currentRssiDbm, result.txBitrateMbps,
-                        result.rxBitrateMbps, result.associationFrequencyMHz);
-            }
+            results = toWifiSignalPollResults(mWifiCondManager.signalPoll(ifaceName));
+        }
+        return results;
+    }
+
+    /**
+     * Request signal polling to supplicant only, without the wificond fallback of
+     * {@link #signalPoll(String)}. Unlike wificond, supplicant may be queried off the wifi
+     * thread, the results are then passed to {@link #completeSignalPoll(String,
+     * WifiSignalPollResults)} on the wifi thread.
+     *
+     * @param ifaceName Name of the interface.
+     * @return the signal poll results of supplicant, or null on failure.
+     */
+    @Nullable
+    public WifiSignalPollResults getSupplicantSignalPollResults(@NonNull String ifaceName) {
+        return mSupplicantStaIfaceHal.getSignalPollResults(ifaceName);
+    }
+
+    /**
+     * Complete a signal poll with the results of
+     * {@link #getSupplicantSignalPollResults(String)}, the same way {@link #signalPoll(String)}
+     * does: the mock wificond results take precedence when configured, and wificond is queried
+     * if supplicant returned none. Must be called on the wifi thread.
+     *
+     * @param ifaceName Name of the interface.
+     * @param supplicantResults Signal poll results of supplicant, null if it failed.
+     * @return the signal poll results, or null on failure.
+     */
+    @Nullable
+    public WifiSignalPollResults completeSignalPoll(@NonNull String ifaceName,
+            @Nullable WifiSignalPollResults supplicantResults) {
+        WifiSignalPollResults results = signalPollFromMockWificond(ifaceName);
+        if (results != null) {
+            return results;
+        }
+        if (supplicantResults != null) {
+            return supplicantResults;
+        }
+        // Fallback to WifiCond.
+        return toWifiSignalPollResults(mWifiCondManager.signalPoll(ifaceName));
+    }
+
+    @Nullable
+    private WifiSignalPollResults signalPollFromMockWificond(@NonNull String ifaceName) {
+        if (mMockWifiModem == null
+                || !mMockWifiModem.isMethodConfigured(
+                    MockWifiServiceUtil.MOCK_NL80211_SERVICE, "signalPoll")) {
+            return null;
+        }
+        Log.i(TAG, "signalPoll was called from mock wificond");
+        return toWifiSignalPollResults(
+                mMockWifiModem.getWifiNl80211Manager().signalPoll(ifaceName));
+    }
+
+    @Nullable
+    private static WifiSignalPollResults toWifiSignalPollResults(
+            @Nullable WifiNl80211Manager.SignalPollResult result) {
+        if (result == null) {
+            return null;
         }
+        // Convert WifiNl80211Manager#SignalPollResult to WifiSignalPollResults.
+        // Assume single link and linkId = 0.
+        WifiSignalPollResults results = new WifiSignalPollResults();
+        results.addEntry(0, result.currentRssiDbm, result.txBitrateMbps,
+                result.rxBitrateMbps, result.associationFrequencyMHz);
         return results;
     }
 
@@ -61,6 +61,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -115,6 +116,12 @@ public class WifiNetworkSelector {
     private final List<Pair<ScanDetail, WifiConfiguration>> mConnectableNetworks =
             new ArrayList<>();
     private List<ScanDetail> mFilteredNetworks = new ArrayList<>();
+    /**
+     * Throughput predicted for the scan details of the current selection pass. A scan detail can
+     * be nominated several times in a pass, e.g. for different configs or security params, and
+     * the inputs of the prediction do not change within a pass.
+     */
+    private final Map<ScanDetail, Integer> mPredictedThroughputMbps = new IdentityHashMap<>();
     private final WifiScoreCard mWifiScoreCard;
     private final ScoringParams mScoringParams;
     private final WifiInjector mWifiInjector;
@@ -489,6 +496,8 @@ public class WifiNetworkSelector {
         Set<WifiSsid> admindSsidDenylist = new ArraySet<>();
 
         int numBssidFiltered = 0;
+        boolean wepDeprecated = mWifiGlobals.isWepDeprecated();
+        boolean wpaPersonalDeprecated = mWifiGlobals.isWpaPersonalDeprecated();
 
         if (mDevicePolicyManager != null && SdkLevel.isAtLeastT()) {
             adminMinimumSecurityLevel =
@@ -519,17 +528,16 @@ public class WifiNetworkSelector {
                 continue;
             }
 
-            final String scanId = toScanId(scanResult);
-
+            // The scan id is only built for the networks filtered out, to be logged.
             if (bssidBlocklist.contains(scanResult.BSSID)) {
-                blockedBssid.append(scanId).append(" / ");
+                blockedBssid.append(toScanId(scanResult)).append(" / ");
                 numBssidFiltered++;
                 continue;
             }
 
             // Skip network with too weak signals.
             if (isSignalTooWeak(scanResult)) {
-                lowRssi.append(scanId);
+                lowRssi.append(toScanId(scanResult));
                 if (scanResult.is24GHz()) {
                     lowRssi.append("(2.4GHz)");
                 } else if (scanResult.is5GHz()) {
@@ -548,7 +556,7 @@ public class WifiNetworkSelector {
                         != MboOceConstants.MBO_OCE_ATTRIBUTE_NOT_PRESENT) {
                     mWifiMetrics
                             .incrementNetworkSelectionFilteredBssidCountDueToMboAssocDisallowInd();
-                    mboAssociationDisallowedBssid.append(scanId).append("(")
+                    mboAssociationDisallowedBssid.append(toScanId(scanResult)).append("(")
                             .append(networkDetail.getMboAssociationDisallowedReasonCode())
                             .append(")").append(" / ");
                     continue;
@@ -560,20 +568,23 @@ public class WifiNetworkSelector {
                 WifiSsid ssid = scanResult.getWifiSsid();
                 // Allowlist policy set but network is not present in the list
                 if (!adminSsidAllowlist.isEmpty() && !adminSsidAllowlist.contains(ssid)) {
-                    adminRestrictedSsid.append(scanId).append(" / ");
+                    adminRestrictedSsid.append(toScanId(scanResult)).append(" / ");
                     continue;
                 }
                 // Denylist policy set but network is present in the list
                 if (!admindSsidDenylist.isEmpty() && admindSsidDenylist.contains(ssid)) {
-                    adminRestrictedSsid.append(scanId).append(" / ");
+                    adminRestrictedSsid.append(toScanId(scanResult)).append(" / ");
                     continue;
                 }
             }
 
+            // Security types are parsed from the capabilities, only do it once per scan result.
+            @WifiAnnotations.SecurityType int[] securityTypes = null;
+
             // Skip network that does not meet the admin set minimum security level restriction
             if (adminMinimumSecurityLevel != 0) {
                 boolean securityRestrictionPassed = false;
-                @WifiAnnotations.SecurityType int[] securityTypes = scanResult.getSecurityTypes();
+                securityTypes = scanResult.getSecurityTypes();
                 for (int type : securityTypes) {
                     int securityLevel = WifiInfo.convertSecurityTypeToDpmWifiSecurity(type);
 
@@ -588,28 +599,30 @@ public class WifiNetworkSelector {
                     }
                 }
                 if (!securityRestrictionPassed) {
-                    adminRestrictedSsid.append(scanId).append(" / ");
+                    adminRestrictedSsid.append(toScanId(scanResult)).append(" / ");
                     continue;
                 }
             }
 
             // Skip network that has deprecated security type
-            if (mWifiGlobals.isWpaPersonalDeprecated() || mWifiGlobals.isWepDeprecated()) {
+            if (wpaPersonalDeprecated || wepDeprecated) {
                 boolean securityTypeDeprecated = false;
-                @WifiAnnotations.SecurityType int[] securityTypes = scanResult.getSecurityTypes();
+                if (securityTypes == null) {
+                    securityTypes = scanResult.getSecurityTypes();
+                }
                 for (int type : securityTypes) {
-                    if (mWifiGlobals.isWepDeprecated() && type == WifiInfo.SECURITY_TYPE_WEP) {
+                    if (wepDeprecated && type == WifiInfo.SECURITY_TYPE_WEP) {
                         securityTypeDeprecated = true;
                         break;
                     }
-                    if (mWifiGlobals.isWpaPersonalDeprecated() && type == WifiInfo.SECURITY_TYPE_PSK
+                    if (wpaPersonalDeprecated && type == WifiInfo.SECURITY_TYPE_PSK
                             && ScanResultUtil.isScanResultForWpaPersonalOnlyNetwork(scanResult)) {
                         securityTypeDeprecated = true;
                         break;
                     }
                 }
                 if (securityTypeDeprecated) {
-                    deprecatedSecurityTypeSsid.add(scanId);
+                    deprecatedSecurityTypeSsid.add(toScanId(scanResult));
                     continue;
                 }
             }
@@ -746,7 +759,8 @@ public class WifiNetworkSelector {
      * c) Log any disabled networks.
      */
     private void updateConfiguredNetworks() {
-        List<WifiConfiguration> configuredNetworks = mWifiConfigManager.getConfiguredNetworks();
+        List<WifiConfiguration> configuredNetworks =
+                mWifiConfigManager.getConfiguredNetworksSnapshot();
         if (configuredNetworks.size() == 0) {
             localLog("No configured networks.");
             return;
@@ -1059,6 +1073,7 @@ public class WifiNetworkSelector {
             Set<Integer> restrictedNetworkAllowedUids, boolean multiInternetNetworkAllowed) {
         mFilteredNetworks.clear();
         mConnectableNetworks.clear();
+        mPredictedThroughputMbps.clear();
         if (scanDetails.size() == 0) {
             localLog("Empty connectivity scan result");
             return null;
@@ -1300,6 +1315,7 @@ public class WifiNetworkSelector {
         }
 
         mConnectableNetworks.clear();
+        mPredictedThroughputMbps.clear();
         WifiCandidates wifiCandidates = new WifiCandidates(mWifiScoreCard, mContext);
         for (ScanDetail scanDetail: scanDetails) {
             WifiCandidates.Key key = wifiCandidates.keyFromScanDetailAndConfig(
@@ -1647,6 +1663,16 @@ public class WifiNetworkSelector {
     }
 
     private int predictThroughput(@NonNull ScanDetail scanDetail) {
+        Integer cached = mPredictedThroughputMbps.get(scanDetail);
+        if (cached != null) {
+            return cached;
+        }
+        int predictedThroughputMbps = predictThroughputUncached(scanDetail);
+        mPredictedThroughputMbps.put(scanDetail, predictedThroughputMbps);
+        return predictedThroughputMbps;
+    }
+
+    private int predictThroughputUncached(@NonNull ScanDetail scanDetail) {
         if (scanDetail.getScanResult() == null || scanDetail.getNetworkDetail() == null) {
             return 0;
         }
@@ -75,6 +75,7 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -301,6 +302,55 @@ public class WifiNetworkSuggestionsManager {
         }
     }
 
+    /**
+     * Immutable views of the suggestions at a given {@link #mSuggestionsVersion}.
+     */
+    private static class SuggestionViews {
+        public final long version;
+        public final Set<WifiNetworkSuggestion> allSuggestions;
+        public final Set<WifiNetworkSuggestion> approvedSuggestions;
+        /** Approved non-Passpoint suggestions, the networks to optimize the scans for. */
+        public final List<ExtendedWifiNetworkSuggestion> approvedNonPasspointSuggestions;
+        /** SSIDs of the hidden suggestions of the apps approved by the user. */
+        public final List<WifiSsid> hiddenSsids;
+        /** SSIDs of the auto-join enabled hidden suggestions of the apps approved by the user. */
+        public final List<WifiSsid> autojoinHiddenSsids;
+
+        SuggestionViews(long version, Collection<PerAppInfo> perAppInfos) {
+            this.version = version;
+            Set<WifiNetworkSuggestion> all = new HashSet<>();
+            Set<WifiNetworkSuggestion> approved = new HashSet<>();
+            List<ExtendedWifiNetworkSuggestion> approvedNonPasspoint = new ArrayList<>();
+            List<WifiSsid> hidden = new ArrayList<>();
+            List<WifiSsid> autojoinHidden = new ArrayList<>();
+            for (PerAppInfo appInfo : perAppInfos) {
+                boolean isApproved = appInfo.isApproved();
+                for (ExtendedWifiNetworkSuggestion ewns : appInfo.extNetworkSuggestions.values()) {
+                    all.add(ewns.wns);
+                    if (isApproved) {
+                        approved.add(ewns.wns);
+                        if (ewns.wns.getPasspointConfig() == null) {
+                            approvedNonPasspoint.add(ewns);
+                        }
+                    }
+                    if (!appInfo.hasUserApproved || !ewns.wns.wifiConfiguration.hiddenSSID) {
+                        continue;
+                    }
+                    WifiSsid ssid = WifiSsid.fromString(ewns.wns.wifiConfiguration.SSID);
+                    hidden.add(ssid);
+                    if (ewns.isAutojoinEnabled) {
+                        autojoinHidden.add(ssid);
+                    }
+                }
+            }
+            allSuggestions = Collections.unmodifiableSet(all);
+            approvedSuggestions = Collections.unmodifiableSet(approved);
+            approvedNonPasspointSuggestions = Collections.unmodifiableList(approvedNonPasspoint);
+            hiddenSsids = Collections.unmodifiableList(hidden);
+            autojoinHiddenSsids = Collections.unmodifiableList(autojoinHidden);
+        }
+    }
+
     /**
      * Internal container class which holds a network suggestion and a pointer to the
      * {@link PerAppInfo} entry from {@link #mActiveNetworkSuggestionsPerApp} corresponding to the
@@ -433,6 +483,17 @@ public class WifiNetworkSuggestionsManager {
     private final Map<String, Set<ExtendedWifiNetworkSuggestion>>
             mPasspointInfo = new HashMap<>();
 
+    /**
+     * Version of the suggestions, their approval and their auto-join state, incremented on every
+     * change to invalidate {@link #mSuggestionViews}.
+     */
+    private long mSuggestionsVersion = 0;
+    /**
+     * Views of the suggestions read on every scan and network selection, rebuilt on the first read
+     * after the suggestions change.
+     */
+    private SuggestionViews mSuggestionViews;
+
     private final HashMap<String, RemoteCallbackList<ISuggestionConnectionStatusListener>>
             mSuggestionStatusListenerPerApp = new HashMap<>();
 
@@ -537,6 +598,7 @@ public class WifiNetworkSuggestionsManager {
         public void fromDeserialized(Map<String, PerAppInfo> networkSuggestionsMap) {
             mActiveNetworkSuggestionsPerApp.clear();
             mActiveNetworkSuggestionsPerApp.putAll(networkSuggestionsMap);
+            onSuggestionsChanged();
             // Build the scan cache.
             for (Map.Entry<String, PerAppInfo> entry : networkSuggestionsMap.entrySet()) {
                 String packageName = entry.getKey();
@@ -564,6 +626,7 @@ public class WifiNetworkSuggestionsManager {
         public void reset() {
             mUserDataLoaded = false;
             mActiveNetworkSuggestionsPerApp.clear();
+            onSuggestionsChanged();
             mActiveScanResultMatchInfoWithBssid.clear();
             mActiveScanResultMatchInfoWithNoBssid.clear();
             mPasspointInfo.clear();
@@ -706,6 +769,8 @@ public class WifiNetworkSuggestionsManager {
     }
 
     private void saveToStore() {
+        // Every change to the suggestions, their approval or their auto-join state is saved.
+        onSuggestionsChanged();
         // Set the flag to let WifiConfigStore that we have new data to write.
         mHasNewDataToSerialize = true;
         if (!mWifiConfigManager.saveToStore(true)) {
@@ -713,6 +778,22 @@ public class WifiNetworkSuggestionsManager {
         }
     }
 
+    /**
+     * Invalidate the views of the suggestions, called whenever the suggestions, their approval or
+     * their auto-join state change.
+     */
+    private void onSuggestionsChanged() {
+        mSuggestionsVersion++;
+    }
+
+    private SuggestionViews getSuggestionViews() {
+        if (mSuggestionViews == null || mSuggestionViews.version != mSuggestionsVersion) {
+            mSuggestionViews = new SuggestionViews(mSuggestionsVersion,
+                    mActiveNetworkSuggestionsPerApp.values());
+        }
+        return mSuggestionViews;
+    }
+
     private void addToScanResultMatchInfoMap(
             @NonNull ExtendedWifiNetworkSuggestion extNetworkSuggestion) {
         ScanResultMatchInfo scanResultMatchInfo =
@@ -854,19 +935,6 @@ public class WifiNetworkSuggestionsManager {
                 .collect(Collectors.toSet());
     }
 
-    /**
-     * Helper method to convert the incoming collection of internal wrapper
-     * {@link ExtendedWifiNetworkSuggestion} objects to a set of corresponding public
-     * {@link WifiNetworkSuggestion} objects.
-     */
-    private Set<WifiNetworkSuggestion> convertToWnsSet(
-            final Collection<ExtendedWifiNetworkSuggestion> extNetworkSuggestions) {
-        return extNetworkSuggestions
-                .stream()
-                .map(n -> n.wns)
-                .collect(Collectors.toSet());
-    }
-
     private void updateWifiConfigInWcmIfPresent(
             WifiConfiguration newConfig, int uid, String packageName) {
         WifiConfiguration configInWcm =
@@ -1053,6 +1121,7 @@ public class WifiNetworkSuggestionsManager {
             perAppInfo.extNetworkSuggestions.remove(ewns.hashCode());
             perAppInfo.extNetworkSuggestions.put(ewns.hashCode(), ewns);
         }
+        onSuggestionsChanged();
         for (OnSuggestionUpdateListener listener : mListeners) {
             listener.onSuggestionsAddedOrUpdated(networkSuggestions);
         }
@@ -1317,6 +1386,7 @@ public class WifiNetworkSuggestionsManager {
             // empty list is used to clear everything for the app. Store a copy for use below.
             perAppInfo.extNetworkSuggestions.clear();
         }
+        onSuggestionsChanged();
         if (perAppInfo.extNetworkSuggestions.isEmpty()) {
             // Note: We don't remove the app entry even if there is no active suggestions because
             // we want to keep the notification state for all apps that have ever provided
@@ -1566,23 +1636,15 @@ public class WifiNetworkSuggestionsManager {
      */
     @VisibleForTesting
     public Set<WifiNetworkSuggestion> getAllNetworkSuggestions() {
-        return mActiveNetworkSuggestionsPerApp.values()
-                .stream()
-                .flatMap(e -> convertToWnsSet(e.extNetworkSuggestions.values())
-                        .stream())
-                .collect(Collectors.toSet());
+        return getSuggestionViews().allSuggestions;
     }
 
     /**
      * Returns a set of all network suggestions across all apps that have been approved by user.
+     * The returned set is not modifiable.
      */
     public Set<WifiNetworkSuggestion> getAllApprovedNetworkSuggestions() {
-        return mActiveNetworkSuggestionsPerApp.values()
-                .stream()
-                .filter(e -> e.isApproved())
-                .flatMap(e -> convertToWnsSet(e.extNetworkSuggestions.values())
-                        .stream())
-                .collect(Collectors.toSet());
+        return getSuggestionViews().approvedSuggestions;
     }
 
     /**
@@ -1590,22 +1652,17 @@ public class WifiNetworkSuggestionsManager {
      */
     public List<WifiConfiguration> getAllScanOptimizationSuggestionNetworks() {
         List<WifiConfiguration> networks = new ArrayList<>();
-        for (PerAppInfo info : mActiveNetworkSuggestionsPerApp.values()) {
-            if (!info.isApproved()) {
-                continue;
-            }
-            for (ExtendedWifiNetworkSuggestion ewns : info.extNetworkSuggestions.values()) {
-                if (ewns.wns.getPasspointConfig() != null) {
-                    continue;
-                }
-                WifiConfiguration network = mWifiConfigManager
-                        .getConfiguredNetwork(ewns.wns.getWifiConfiguration()
-                                .getProfileKey());
-                if (network == null) {
-                    network = ewns.createInternalWifiConfiguration(mWifiCarrierInfoManager);
-                }
-                networks.add(network);
-            }
+        // The configurations are looked up on every call, as they depend on the state of
+        // WifiConfigManager.
+        for (ExtendedWifiNetworkSuggestion ewns
+                : getSuggestionViews().approvedNonPasspointSuggestions) {
+            WifiConfiguration network = mWifiConfigManager
+                    .getConfiguredNetwork(ewns.wns.getWifiConfiguration()
+                            .getProfileKey());
+            if (network == null) {
+                network = ewns.createInternalWifiConfiguration(mWifiCarrierInfoManager);
+            }
+            networks.add(network);
         }
         return networks;
     }
@@ -1860,8 +1917,9 @@ public class WifiNetworkSuggestionsManager {
         }
         Set<ExtendedWifiNetworkSuggestion> extNetworkSuggestions = null;
         try {
-            ScanResultMatchInfo scanResultMatchInfo =
-                    ScanResultMatchInfo.fromScanResult(scanResult);
+            // The match info is cached in the scan detail, which is looked up several times
+            // per network selection.
+            ScanResultMatchInfo scanResultMatchInfo = scanDetail.getScanResultMatchInfo();
             extNetworkSuggestions = getNetworkSuggestionsForScanResultMatchInfo(
                     scanResultMatchInfo,  MacAddress.fromString(scanResult.BSSID));
         } catch (IllegalArgumentException e) {
@@ -2044,16 +2102,14 @@ public class WifiNetworkSuggestionsManager {
             boolean autoJoinOnly) {
         List<WifiScanner.ScanSettings.HiddenNetwork> hiddenNetworks = new ArrayList<>();
         Set<WifiSsid> ssidSet = new LinkedHashSet<>();
-        for (PerAppInfo appInfo : mActiveNetworkSuggestionsPerApp.values()) {
-            if (!appInfo.hasUserApproved) continue;
-            for (ExtendedWifiNetworkSuggestion ewns : appInfo.extNetworkSuggestions.values()) {
-                if (!ewns.wns.wifiConfiguration.hiddenSSID) continue;
-                if (autoJoinOnly && !ewns.isAutojoinEnabled) continue;
-                ssidSet.addAll(mWifiInjector.getSsidTranslator().getAllPossibleOriginalSsids(
-                        WifiSsid.fromString(ewns.wns.wifiConfiguration.SSID)));
-                if (ssidSet.size() >= NUMBER_OF_HIDDEN_NETWORK_FOR_ONE_SCAN) {
-                    break;
-                }
+        SuggestionViews views = getSuggestionViews();
+        // The original SSIDs are looked up on every call, as the translator learns them from
+        // the scan results.
+        for (WifiSsid hiddenSsid : autoJoinOnly ? views.autojoinHiddenSsids : views.hiddenSsids) {
+            ssidSet.addAll(mWifiInjector.getSsidTranslator().getAllPossibleOriginalSsids(
+                    hiddenSsid));
+            if (ssidSet.size() >= NUMBER_OF_HIDDEN_NETWORK_FOR_ONE_SCAN) {
+                break;
             }
         }
         for (WifiSsid ssid : ssidSet) {
@@ -2538,50 +2594,46 @@ public class WifiNetworkSuggestionsManager {
                 || scanResults == null || scanResults.isEmpty()) {
             return filteredScanResults;
         }
+        // Compute the match info of each scan result once, instead of once per suggestion.
+        ScanResultMatchInfoIndex scanResultIndex =
+                ScanResultMatchInfoIndex.fromScanResults(scanResults);
         for (WifiNetworkSuggestion suggestion : wifiNetworkSuggestions) {
             if (suggestion == null || suggestion.wifiConfiguration == null) {
                 continue;
             }
             filteredScanResults.put(suggestion,
-                    getMatchingScanResultsForSuggestion(suggestion, scanResults));
+                    getMatchingScanResultsForSuggestion(suggestion, scanResultIndex));
         }
 
         return filteredScanResults;
     }
 
     private List<ScanResult> getMatchingScanResultsForSuggestion(WifiNetworkSuggestion suggestion,
-            List<ScanResult> scanResults) {
+            ScanResultMatchInfoIndex scanResultIndex) {
         if (suggestion.passpointConfiguration != null) {
             return mWifiInjector.getPasspointManager().getMatchingScanResults(
-                    suggestion.passpointConfiguration, scanResults);
+                    suggestion.passpointConfiguration, scanResultIndex.getScanResults());
         } else {
-            return getMatchingScanResults(suggestion.wifiConfiguration, scanResults);
+            return getMatchingScanResults(suggestion.wifiConfiguration, scanResultIndex);
         }
     }
 
     /**
      * Get the filtered ScanResults which may be authenticated by the {@link WifiConfiguration}.
      * @param wifiConfiguration The instance of {@link WifiConfiguration}
-     * @param scanResults The list of {@link ScanResult}
+     * @param scanResultIndex The index of the {@link ScanResult}s
      * @return The filtered ScanResults
      */
     @NonNull
     private List<ScanResult> getMatchingScanResults(
             @NonNull WifiConfiguration wifiConfiguration,
-            @NonNull List<ScanResult> scanResults) {
+            @NonNull ScanResultMatchInfoIndex scanResultIndex) {
         ScanResultMatchInfo matchInfoFromConfigration =
                 ScanResultMatchInfo.fromWifiConfiguration(wifiConfiguration);
         if (matchInfoFromConfigration == null) {
             return new ArrayList<>();
         }
-        List<ScanResult> filteredScanResult = new ArrayList<>();
-        for (ScanResult scanResult : scanResults) {
-            if (matchInfoFromConfigration.equals(ScanResultMatchInfo.fromScanResult(scanResult))) {
-                filteredScanResult.add(scanResult);
-            }
-        }
-
-        return filteredScanResult;
+        return scanResultIndex.getMatchingScanResults(matchInfoFromConfigration);
     }
 
     /**
@@ -2690,11 +2742,11 @@ public class WifiNetworkSuggestionsManager {
         if (secureExtSuggestions.isEmpty()) {
             return false;
         }
-        List<ScanResult> scanResults = scanDetails.stream().map(ScanDetail::getScanResult)
-                .collect(Collectors.toList());
+        ScanResultMatchInfoIndex scanResultIndex =
+                ScanResultMatchInfoIndex.fromScanDetails(scanDetails);
         // Check if the secure suggestion is in the range.
         for (ExtendedWifiNetworkSuggestion ewns : secureExtSuggestions) {
-            if (!getMatchingScanResultsForSuggestion(ewns.wns, scanResults).isEmpty()) {
+            if (!getMatchingScanResultsForSuggestion(ewns.wns, scanResultIndex).isEmpty()) {
                 return true;
             }
         }
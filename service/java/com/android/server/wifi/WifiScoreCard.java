@@ -39,13 +39,16 @@ import android.net.MacAddress;
 import android.net.wifi.ScanResult;
 import android.net.wifi.SupplicantState;
 import android.net.wifi.WifiManager;
+import android.os.Handler;
 import android.util.ArrayMap;
 import android.util.Base64;
 import android.util.LocalLog;
 import android.util.Log;
+import android.util.LruCache;
 import android.util.Pair;
 import android.util.SparseLongArray;
 
+import com.android.internal.annotations.GuardedBy;
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.util.Preconditions;
 import com.android.server.wifi.WifiBlocklistMonitor.FailureReason;
@@ -73,6 +76,7 @@ import com.android.server.wifi.util.RssiUtil;
 
 import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MessageLite;
 
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
@@ -83,9 +87,11 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
@@ -124,7 +130,15 @@ public class WifiScoreCard {
 
     private final Clock mClock;
     private final String mL2KeySeed;
-    private MemoryStore mMemoryStore;
+    // The hashes of the SSIDs and BSSIDs seen recently, so that looking up an entry evicted by
+    // clean() or the group hint of a network does not compute a SHA-256 again
+    private static final int HASH_CACHE_SIZE = 256;
+    private final LruCache<Pair<String, MacAddress>, Long> mHashCache =
+            new LruCache<>(HASH_CACHE_SIZE);
+    private final LruCache<String, String> mGroupHintCache = new LruCache<>(HASH_CACHE_SIZE);
+    private volatile MemoryStore mMemoryStore;
+    private final Handler mHandler;
+    private final Executor mWriteExecutor;
     private final DeviceConfigFacade mDeviceConfigFacade;
     private final Context mContext;
     private final WifiGlobals mWifiGlobals;
@@ -189,6 +203,11 @@ public class WifiScoreCard {
         } else {
             mMemoryStore = memoryStore;
             Log.e(TAG, "Reinstalling MemoryStore");
+            // The new store may have lost the clusters we set in the old one.
+            synchronized (mWriteLock) {
+                mApForBssid.values().forEach(perBssid -> perBssid.clusterWritten = false);
+                mApForNetwork.values().forEach(perNetwork -> perNetwork.clusterWritten = false);
+            }
             // Our caller will call doWrites() eventually, so nothing more to do here.
         }
     }
@@ -272,10 +291,14 @@ public class WifiScoreCard {
     /**
      * @param clock is the time source
      * @param l2KeySeed is for making our L2Keys usable only on this device
+     * @param handler is the handler of the wifi thread, which schedules the write-behind passes
+     * @param writeExecutor serializes and writes the changed entries of the write-behind passes
      */
     public WifiScoreCard(Clock clock, String l2KeySeed, DeviceConfigFacade deviceConfigFacade,
-            Context context, WifiGlobals wifiGlobals) {
+            Context context, WifiGlobals wifiGlobals, Handler handler, Executor writeExecutor) {
         mClock = clock;
+        mHandler = handler;
+        mWriteExecutor = writeExecutor;
         mContext = context;
         mL2KeySeed = l2KeySeed;
         mPlaceholderPerBssid = new PerBssid("", MacAddress.fromString(DEFAULT_MAC_ADDRESS));
@@ -299,8 +322,15 @@ public class WifiScoreCard {
      * Computes the GroupHint associated with the given ssid.
      */
     public @NonNull String groupHintFromSsid(String ssid) {
-        final long groupIdHash = computeHashLong(ssid, mPlaceholderPerBssid.bssid, mL2KeySeed);
-        return groupHintFromLong(groupIdHash);
+        if (ssid == null) {
+            return groupHintFromLong(computeHashLong(ssid, mPlaceholderPerBssid.bssid, mL2KeySeed));
+        }
+        String groupHint = mGroupHintCache.get(ssid);
+        if (groupHint == null) {
+            groupHint = groupHintFromLong(computeHashLongCached(ssid, mPlaceholderPerBssid.bssid));
+            mGroupHintCache.put(ssid, groupHint);
+        }
+        return groupHint;
     }
 
     /** Handle network disconnection. */
@@ -308,6 +338,9 @@ public class WifiScoreCard {
         IfaceInfo ifaceInfo = getIfaceInfo(ifaceName);
         noteDisconnectionForIface(ifaceInfo);
         resetConnectionStateForIfaceInternal(ifaceInfo, true);
+        // Persist what was learned during the connection without waiting for the next pass.
+        cancelWriteBehind();
+        doWriteBehind();
     }
 
     /** Handle shutdown event. */
@@ -402,7 +435,7 @@ public class WifiScoreCard {
             if (duration >= SUCCESS_MILLIS_SINCE_ROAM) {
                 updatePerBssid(Event.ROAM_SUCCESS, wifiInfo);
                 ifaceInfo.tsRoam = TS_NONE;
-                doWritesBssid();
+                scheduleWrites();
             }
         }
     }
@@ -432,7 +465,7 @@ public class WifiScoreCard {
         PerNetwork perNetwork = lookupNetwork(wifiInfo.getSSID());
         perNetwork.initBandwidthFilter(wifiInfo);
         ifaceInfo.attemptingSwitch = false;
-        doWrites();
+        scheduleWrites();
     }
 
     /**
@@ -445,7 +478,7 @@ public class WifiScoreCard {
         if (ifaceInfo.validatedThisConnectionAtLeastOnce) return; // Only once per connection
         updatePerBssid(Event.VALIDATION_SUCCESS, wifiInfo);
         ifaceInfo.validatedThisConnectionAtLeastOnce = true;
-        doWrites();
+        scheduleWrites();
     }
 
     /**
@@ -552,7 +585,7 @@ public class WifiScoreCard {
         }
         // No need to call resetConnectionStateInternal() because
         // resetConnectionState() will be called after WifiNative.disconnect() in ClientModeImpl
-        doWrites();
+        scheduleWrites();
     }
 
     /**
@@ -779,7 +812,7 @@ public class WifiScoreCard {
                 mSignalForEventAndFrequency = new ArrayMap<>();
 
         PerBssid(String ssid, MacAddress bssid) {
-            super(computeHashLong(ssid, bssid, mL2KeySeed));
+            super(computeHashLongCached(ssid, bssid));
             this.ssid = ssid;
             this.bssid = bssid;
             this.id = idFromLong();
@@ -1081,7 +1114,7 @@ public class WifiScoreCard {
                 new int[NUM_LINK_BAND][NUM_LINK_DIRECTION][NUM_SIGNAL_LEVEL];
 
         PerNetwork(String ssid) {
-            super(computeHashLong(ssid, MacAddress.fromString(DEFAULT_MAC_ADDRESS), mL2KeySeed));
+            super(computeHashLongCached(ssid, MacAddress.fromString(DEFAULT_MAC_ADDRESS)));
             this.ssid = ssid;
             this.id = idFromLong();
             this.changed = false;
@@ -2054,6 +2087,8 @@ public class WifiScoreCard {
         private final long mHash;
         private static final String TAG = "WifiMemoryStoreAccessBase";
         private final AtomicReference<byte[]> mPendingReadFromStore = new AtomicReference<>();
+        // Whether the cluster of this entry was set in the MemoryStore, guarded by mWriteLock
+        boolean clusterWritten;
         MemoryStoreAccessBase(long hash) {
             mHash = hash;
             mL2Key = l2KeyFromLong();
@@ -2191,8 +2226,15 @@ public class WifiScoreCard {
         }
         mApForNetwork.remove(ssid);
         mApForBssid.entrySet().removeIf(entry -> ssid.equals(entry.getValue().ssid));
+        synchronized (mWriteLock) {
+            // Must not write the removed entries back after the cluster is removed.
+            mQueuedWrites.values().removeIf(write -> ssid.equals(write.ssid));
+        }
         if (mMemoryStore == null) return;
-        mMemoryStore.removeCluster(groupHintFromSsid(ssid));
+        // Must not remove the cluster before a pass in progress wrote the removed entries.
+        synchronized (mStoreWriteLock) {
+            mMemoryStore.removeCluster(groupHintFromSsid(ssid));
+        }
     }
 
     void requestReadNetwork(final PerNetwork perNetwork) {
@@ -2202,6 +2244,40 @@ public class WifiScoreCard {
         }
     }
 
+    /** Delay of a write-behind pass after the first change it writes */
+    @VisibleForTesting
+    static final long WRITE_BEHIND_DELAY_MS = 10_000;
+
+    /** Snapshot of a changed entry, to be serialized and written to the MemoryStore */
+    private static final class PendingWrite {
+        public final MemoryStoreAccessBase entry;
+        public final String ssid;
+        public final String cluster;
+        public final String name;
+        public final MessageLite record;
+        // Whether the cluster of the entry must be set before writing the record
+        public boolean setCluster;
+
+        PendingWrite(MemoryStoreAccessBase entry, String ssid, String cluster, String name,
+                MessageLite record) {
+            this.entry = entry;
+            this.ssid = ssid;
+            this.cluster = cluster;
+            this.name = name;
+            this.record = record;
+        }
+    }
+
+    private final Runnable mWriteBehindRunnable = this::doWriteBehind;
+    private boolean mWriteBehindScheduled = false;
+    private final Object mWriteLock = new Object();
+    // Latest snapshot of each changed entry not yet written, in the order they changed
+    @GuardedBy("mWriteLock")
+    private Map<String, PendingWrite> mQueuedWrites = new LinkedHashMap<>();
+    // Serializes the passes issuing the MemoryStore requests, so that a pass can not overtake
+    // an older one. Never held by the threads queueing writes.
+    private final Object mStoreWriteLock = new Object();
+
     /**
      * Issues write requests for all changed entries.
      *
@@ -2209,55 +2285,134 @@ public class WifiScoreCard {
      * storage. Since we always check internal state first, this does not need
      * to be called very often, but it should be called before shutdown.
      *
+     * The writes are issued on the calling thread, along with those of any
+     * write-behind pass still in progress.
+     *
      * @returns number of writes issued.
      */
     public int doWrites() {
-        return doWritesBssid() + doWritesNetwork();
+        if (mMemoryStore == null) return 0;
+        cancelWriteBehind();
+        int count = queueChangedBssids(false) + queueChangedNetworks();
+        int bytes = writeQueued();
+        if (mVerboseLoggingEnabled && count > 0) {
+            Log.v(TAG, "Write count: " + count + ", bytes: " + bytes);
+        }
+        return count;
     }
 
-    private int doWritesBssid() {
-        if (mMemoryStore == null) return 0;
+    /**
+     * Schedules a write-behind pass for the changed entries.
+     *
+     * All the changes made until the pass runs are coalesced into one write per entry, which
+     * bounds the rate of MemoryStore requests while connected.
+     */
+    private void scheduleWrites() {
+        if (mMemoryStore == null || mWriteBehindScheduled) return;
+        mWriteBehindScheduled = true;
+        mHandler.postDelayed(mWriteBehindRunnable, WRITE_BEHIND_DELAY_MS);
+    }
+
+    private void cancelWriteBehind() {
+        if (!mWriteBehindScheduled) return;
+        mWriteBehindScheduled = false;
+        mHandler.removeCallbacks(mWriteBehindRunnable);
+    }
+
+    /**
+     * Snapshots the changed entries on this thread, and leaves their serialization and the
+     * MemoryStore requests to the write executor.
+     */
+    private void doWriteBehind() {
+        mWriteBehindScheduled = false;
+        if (mMemoryStore == null) return;
+        int count = queueChangedBssids(false) + queueChangedNetworks();
+        if (count > 0) {
+            if (mVerboseLoggingEnabled) Log.v(TAG, "Write-behind count: " + count);
+            mWriteExecutor.execute(this::writeQueued);
+        }
+    }
+
+    /**
+     * Queues a snapshot of the changed BSSIDs.
+     *
+     * @param unreferencedOnly only queue the BSSIDs that are about to be evicted.
+     * @return number of snapshots queued.
+     */
+    private int queueChangedBssids(boolean unreferencedOnly) {
         int count = 0;
-        int bytes = 0;
         for (PerBssid perBssid : mApForBssid.values()) {
-            if (perBssid.changed) {
+            if (perBssid.changed && !(unreferencedOnly && perBssid.referenced)) {
                 perBssid.finishPendingRead();
-                byte[] serialized = perBssid.toAccessPoint(/* No BSSID */ true).toByteArray();
-                mMemoryStore.setCluster(perBssid.getL2Key(), groupHintFromSsid(perBssid.ssid));
-                mMemoryStore.write(perBssid.getL2Key(), PER_BSSID_DATA_NAME, serialized);
-
+                queueWrite(perBssid, perBssid.ssid, PER_BSSID_DATA_NAME,
+                        perBssid.toAccessPoint(/* No BSSID */ true));
                 perBssid.changed = false;
                 count++;
-                bytes += serialized.length;
             }
         }
-        if (mVerboseLoggingEnabled && count > 0) {
-            Log.v(TAG, "Write count: " + count + ", bytes: " + bytes);
-        }
         return count;
     }
 
-    private int doWritesNetwork() {
-        if (mMemoryStore == null) return 0;
+    private int queueChangedNetworks() {
         int count = 0;
-        int bytes = 0;
         for (PerNetwork perNetwork : mApForNetwork.values()) {
             if (perNetwork.changed) {
                 perNetwork.finishPendingRead();
-                byte[] serialized = perNetwork.toNetworkStats().toByteArray();
-                mMemoryStore.setCluster(perNetwork.getL2Key(), groupHintFromSsid(perNetwork.ssid));
-                mMemoryStore.write(perNetwork.getL2Key(), PER_NETWORK_DATA_NAME, serialized);
+                queueWrite(perNetwork, perNetwork.ssid, PER_NETWORK_DATA_NAME,
+                        perNetwork.toNetworkStats());
                 perNetwork.changed = false;
                 count++;
-                bytes += serialized.length;
             }
         }
-        if (mVerboseLoggingEnabled && count > 0) {
-            Log.v(TAG, "Write count: " + count + ", bytes: " + bytes);
-        }
         return count;
     }
 
+    private void queueWrite(MemoryStoreAccessBase entry, String ssid, String name,
+            MessageLite record) {
+        PendingWrite write = new PendingWrite(entry, ssid, groupHintFromSsid(ssid), name, record);
+        synchronized (mWriteLock) {
+            // A newer snapshot replaces the one not yet written.
+            mQueuedWrites.remove(entry.getL2Key() + name);
+            mQueuedWrites.put(entry.getL2Key() + name, write);
+        }
+    }
+
+    /**
+     * Serializes and writes the queued snapshots, setting the cluster of each entry the first
+     * time it is written.
+     *
+     * The queue is swapped out under mWriteLock, and the MemoryStore requests are issued after
+     * releasing it, so that queueing new writes never waits for them.
+     *
+     * @return number of bytes written.
+     */
+    private int writeQueued() {
+        final MemoryStore memoryStore = mMemoryStore;
+        if (memoryStore == null) return 0;
+        int bytes = 0;
+        synchronized (mStoreWriteLock) {
+            final Map<String, PendingWrite> writes;
+            synchronized (mWriteLock) {
+                if (mQueuedWrites.isEmpty()) return 0;
+                writes = mQueuedWrites;
+                mQueuedWrites = new LinkedHashMap<>();
+                for (PendingWrite write : writes.values()) {
+                    write.setCluster = !write.entry.clusterWritten;
+                    write.entry.clusterWritten = true;
+                }
+            }
+            for (PendingWrite write : writes.values()) {
+                byte[] serialized = write.record.toByteArray();
+                if (write.setCluster) {
+                    memoryStore.setCluster(write.entry.getL2Key(), write.cluster);
+                }
+                memoryStore.write(write.entry.getL2Key(), write.name, serialized);
+                bytes += serialized.length;
+            }
+        }
+        return bytes;
+    }
+
     /**
      * Evicts older entries from memory.
      *
@@ -2270,7 +2425,10 @@ public class WifiScoreCard {
     private void clean() {
         if (mMemoryStore == null) return;
         if (mApForBssidReferenced >= mApForBssidTargetSize) {
-            doWritesBssid(); // Do not want to evict changed items
+            // Do not want to evict changed items. They are written right away, so that a read
+            // issued if they are looked up again can not overtake the write.
+            queueChangedBssids(true);
+            writeQueued();
             // Evict the unreferenced ones, and clear all the referenced bits for the next round.
             Iterator<Map.Entry<MacAddress, PerBssid>> it = mApForBssid.entrySet().iterator();
             while (it.hasNext()) {
@@ -2294,45 +2452,56 @@ public class WifiScoreCard {
      * @return
      */
     public static long computeHashLong(String ssid, MacAddress mac, String l2KeySeed) {
-        final ArrayList<Byte> decodedSsid;
+        // ssid is either quoted utf8 or hex-encoded bytes; turn it into plain bytes.
+        final byte[] decodedSsid;
         try {
-            decodedSsid = NativeUtil.decodeSsid(ssid);
+            decodedSsid = NativeUtil.byteArrayFromArrayList(NativeUtil.decodeSsid(ssid));
         } catch (IllegalArgumentException e) {
             Log.e(TAG, "NativeUtil.decodeSsid failed: malformed string: " + ssid);
             return 0;
         }
-        byte[][] parts = {
-                // Our seed keeps the L2Keys specific to this device
-                l2KeySeed.getBytes(),
-                // ssid is either quoted utf8 or hex-encoded bytes; turn it into plain bytes.
-                NativeUtil.byteArrayFromArrayList(decodedSsid),
-                // And the BSSID
-                mac.toByteArray()
-        };
-        // Assemble the parts into one, with single-byte lengths before each.
-        int n = 0;
-        for (int i = 0; i < parts.length; i++) {
-            n += 1 + parts[i].length;
-        }
-        byte[] mashed = new byte[n];
-        int p = 0;
-        for (int i = 0; i < parts.length; i++) {
-            byte[] part = parts[i];
-            mashed[p++] = (byte) part.length;
-            for (int j = 0; j < part.length; j++) {
-                mashed[p++] = part[j];
-            }
+        // Our seed keeps the L2Keys specific to this device
+        final byte[] seed = l2KeySeed.getBytes();
+        // And the BSSID
+        final byte[] bssid = mac.toByteArray();
+        final MessageDigest md = SHA_256.get();
+        if (md == null) {
+            Log.e(TAG, "SHA-256 not supported.");
+            return 0;
         }
+        // Digest the parts as one, with single-byte lengths before each.
+        md.update((byte) seed.length);
+        md.update(seed);
+        md.update((byte) decodedSsid.length);
+        md.update(decodedSsid);
+        md.update((byte) bssid.length);
+        md.update(bssid);
         // Finally, turn that into a long
-        MessageDigest md;
+        ByteBuffer buffer = ByteBuffer.wrap(md.digest());
+        return buffer.getLong();
+    }
+
+    // MessageDigest.getInstance() is costly, keep one digest per thread.
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
         try {
-            md = MessageDigest.getInstance("SHA-256");
+            return MessageDigest.getInstance("SHA-256");
         } catch (NoSuchAlgorithmException e) {
-            Log.e(TAG, "SHA-256 not supported.");
-            return 0;
+            return null;
         }
-        ByteBuffer buffer = ByteBuffer.wrap(md.digest(mashed));
-        return buffer.getLong();
+    });
+
+    /**
+     * Returns {@link #computeHashLong(String, MacAddress, String)} for our seed, from the cache
+     * if the pair was hashed recently.
+     */
+    private long computeHashLongCached(String ssid, MacAddress mac) {
+        final Pair<String, MacAddress> key = new Pair<>(ssid, mac);
+        Long hash = mHashCache.get(key);
+        if (hash == null) {
+            hash = computeHashLong(ssid, mac, mL2KeySeed);
+            mHashCache.put(key, hash);
+        }
+        return hash;
     }
 
     private static String groupHintFromLong(long hash) {
@@ -2582,6 +2751,10 @@ public class WifiScoreCard {
      * received the factoryReset.
      */
     public void clear() {
+        cancelWriteBehind();
+        synchronized (mWriteLock) {
+            mQueuedWrites.clear();
+        }
         mApForBssid.clear();
         mApForNetwork.clear();
         resetAllConnectionStatesInternal();
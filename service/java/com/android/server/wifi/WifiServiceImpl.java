@@ -5431,6 +5431,9 @@ public class WifiServiceImpl extends BaseWifiService {
                 mWifiInjector.getWifiLastResortWatchdog().dump(fd, pw, args);
                 mWifiInjector.getAdaptiveConnectivityEnabledSettingObserver().dump(fd, pw, args);
                 mWifiInjector.getWifiGlobals().dump(fd, pw, args);
+                if (mWifiInjector.getSignalPoller() != null) {
+                    mWifiInjector.getSignalPoller().dump(fd, pw, args);
+                }
                 mWifiInjector.getSarManager().dump(fd, pw, args);
                 pw.println();
                 mLastCallerInfoManager.dump(pw);
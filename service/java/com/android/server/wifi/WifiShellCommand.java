@@ -213,6 +213,7 @@ public class WifiShellCommand extends BasicShellCommandHandler {
     private final SsidTranslator mSsidTranslator;
     private final WifiDiagnostics mWifiDiagnostics;
     private final DeviceConfigFacade mDeviceConfig;
+    private final RunnerHandler mWifiHandler;
     private final AfcManager mAfcManager;
     private static final int[] OP_MODE_LIST = {
             WifiAvailableChannel.OP_MODE_STA,
@@ -463,6 +464,7 @@ public class WifiShellCommand extends BasicShellCommandHandler {
         mWifiDiagnostics = wifiInjector.getWifiDiagnostics();
         mDeviceConfig = wifiInjector.getDeviceConfigFacade();
         mAfcManager = wifiInjector.getAfcManager();
+        mWifiHandler = wifiInjector.getWifiHandler();
     }
 
     private String getOpModeName(@WifiAvailableChannel.OpMode int mode) {
@@ -622,6 +624,9 @@ public class WifiShellCommand extends BasicShellCommandHandler {
                 case "send-link-probe": {
                     return sendLinkProbe(pw);
                 }
+                case "wifi-thread-task-stats": {
+                    return handleWifiThreadTaskStats(pw);
+                }
                 case "get-last-caller-info": {
                     int apiType = Integer.parseInt(getNextArgRequired());
                     mWifiService.getLastCallerInfoForApi(apiType,
@@ -2633,6 +2638,27 @@ public class WifiShellCommand extends BasicShellCommandHandler {
         mWifiService.allowAutojoin(retrievedConfig.networkId, allowAutojoin);
     }
 
+    private int handleWifiThreadTaskStats(PrintWriter pw) {
+        String option = getNextArg();
+        if (option == null) {
+            mWifiThreadRunner.run(() -> mWifiHandler.dumpTaskStats(pw));
+            return 0;
+        }
+        switch (option) {
+            case "reset":
+                mWifiThreadRunner.run(() -> mWifiHandler.resetTaskStats());
+                return 0;
+            case "enabled":
+            case "disabled":
+                boolean enabled = option.equals("enabled");
+                mWifiThreadRunner.run(() -> mWifiHandler.setTaskStatsEnabled(enabled));
+                return 0;
+            default:
+                pw.println("Unknown option: " + option);
+                return -1;
+        }
+    }
+
     private int sendLinkProbe(PrintWriter pw) throws InterruptedException {
         // Note: should match WifiNl80211Manager#SEND_MGMT_FRAME_TIMEOUT_MS
         final int sendMgmtFrameTimeoutMs = 1000;
@@ -3057,6 +3083,12 @@ public class WifiShellCommand extends BasicShellCommandHandler {
         pw.println("    Clears the user disabled networks list.");
         pw.println("  send-link-probe");
         pw.println("    Manually triggers a link probe.");
+        pw.println("  wifi-thread-task-stats [reset|enabled|disabled]");
+        pw.println("    Prints the run time and schedule latency histograms of the tasks executed "
+                + "on the wifi thread, along with samples of its queue depth.");
+        pw.println("    reset - Clears the collected stats.");
+        pw.println("    enabled|disabled - Enables or disables the collection of the stats, "
+                + "disabled by default.");
         pw.println("  force-softap-band enabled <int> | disabled");
         pw.println("    Forces soft AP band to 2|5|6");
         pw.println("  force-softap-channel enabled <int> | disabled [-w <maxBandwidth>]");
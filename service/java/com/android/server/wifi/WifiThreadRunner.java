@@ -290,6 +290,17 @@ public class WifiThreadRunner {
         return br.postAndWait(handler, timeout, atFront);
     }
 
+    /**
+     * Returns the task wrapped by a blocking runnable posted by this class, or the runnable
+     * itself otherwise.
+     */
+    static Runnable unwrapRunnable(Runnable r) {
+        if (r instanceof BlockingRunnable) {
+            return ((BlockingRunnable) r).mTask;
+        }
+        return r;
+    }
+
     private static final class BlockingRunnable implements Runnable {
         private final Runnable mTask;
         private boolean mDone;
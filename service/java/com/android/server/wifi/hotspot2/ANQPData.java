@@ -40,6 +40,7 @@ public class ANQPData {
     private final Clock mClock;
     private final Map<Constants.ANQPElementType, ANQPElement> mANQPElements;
     private long mExpiryTime;
+    private int mGeneration;
 
     public ANQPData(Clock clock, Map<Constants.ANQPElementType, ANQPElement> anqpElements) {
         mClock = clock;
@@ -66,6 +67,20 @@ public class ANQPData {
         mExpiryTime = mClock.getElapsedSinceBootMillis() + dataLifetime;
     }
 
+    /**
+     * Create an entry restored from a previous boot, which expires after the given lifetime.
+     *
+     * @param clock Instance of {@link Clock}
+     * @param anqpElements ANQP elements of the entry
+     * @param lifetimeMillis Remaining lifetime of the entry
+     */
+    ANQPData(Clock clock, Map<Constants.ANQPElementType, ANQPElement> anqpElements,
+            long lifetimeMillis) {
+        mClock = clock;
+        mANQPElements = new HashMap<>(anqpElements);
+        mExpiryTime = mClock.getElapsedSinceBootMillis() + lifetimeMillis;
+    }
+
     /**
      * Update an entry with post association ANQP elelemtns
      *
@@ -74,6 +89,17 @@ public class ANQPData {
     public void update(Map<Constants.ANQPElementType, ANQPElement> anqpElements) {
         mANQPElements.putAll(anqpElements);
         mExpiryTime = mClock.getElapsedSinceBootMillis() + DATA_LIFETIME_MILLISECONDS;
+        mGeneration++;
+    }
+
+    /**
+     * Return the generation of the ANQP elements, which changes every time the elements are
+     * updated. Used to tell whether results computed from the elements are still valid.
+     *
+     * @return generation of the ANQP elements
+     */
+    public int getGeneration() {
+        return mGeneration;
     }
 
     /**
@@ -95,6 +121,15 @@ public class ANQPData {
         return mExpiryTime <= at;
     }
 
+    /**
+     * Return the time at which this entry expires.
+     *
+     * @return expiry time, in milliseconds since boot
+     */
+    public long getExpiryTime() {
+        return mExpiryTime;
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
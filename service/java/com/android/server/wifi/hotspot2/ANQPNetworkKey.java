@@ -65,6 +65,22 @@ public class ANQPNetworkKey {
         return new ANQPNetworkKey(ssid, 0, 0, anqpDomainId);
     }
 
+    public String getSSID() {
+        return mSSID;
+    }
+
+    public long getBSSID() {
+        return mBSSID;
+    }
+
+    public long getHESSID() {
+        return mHESSID;
+    }
+
+    public int getAnqpDomainID() {
+        return mAnqpDomainID;
+    }
+
     @Override
     public int hashCode() {
         if (mHESSID != 0) {
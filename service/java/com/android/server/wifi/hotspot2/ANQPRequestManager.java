@@ -17,11 +17,13 @@
 package com.android.server.wifi.hotspot2;
 
 import android.app.AlarmManager;
+import android.net.wifi.WifiInfo;
 import android.os.Handler;
 import android.util.Log;
 
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.server.wifi.Clock;
+import com.android.server.wifi.WifiGlobals;
 import com.android.server.wifi.WifiInjector;
 import com.android.server.wifi.hotspot2.anqp.Constants;
 import com.android.wifi.flags.FeatureFlags;
@@ -31,14 +33,20 @@ import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
+import java.util.PriorityQueue;
 
 /**
  * Class for managing sending of ANQP requests.  This manager will ignore ANQP requests for a
  * period of time (hold off time) to a specified AP if the previous request to that AP goes
  * unanswered or failed.  The hold off time will increase exponentially until the max is reached.
+ *
+ * When the ANQP requests wait for the responses, at most
+ * {@link WifiGlobals#getMaxOutstandingAnqpRequests()} requests are sent at the same time. The
+ * other requests are queued, one per {@link ANQPNetworkKey}, and the requests to the APs most
+ * likely to match a provider and with the strongest signal are sent first.
  */
 public class ANQPRequestManager {
     private static final int ANQP_REQUEST_ALARM_INTERVAL_MS = 2_000;
@@ -50,13 +58,33 @@ public class ANQPRequestManager {
     private final AlarmManager mAlarmManager;
     private final Clock mClock;
     private final FeatureFlags mFeatureFlags;
-    private boolean mAnqpRequestPending;
+    private final WifiGlobals mWifiGlobals;
 
     /**
      * List of pending ANQP request associated with an AP (BSSID).
      */
     private final Map<Long, ANQPNetworkKey> mPendingQueries;
-    private final Queue<AnqpRequest> mPendingRequest = new ArrayDeque<>();
+    /**
+     * Requests waiting to be sent, in the order they will be sent, and the same requests by
+     * their ANQP network key.
+     */
+    private final PriorityQueue<AnqpRequest> mPendingRequest = new PriorityQueue<>();
+    private final Map<ANQPNetworkKey, AnqpRequest> mPendingRequestByKey = new HashMap<>();
+    /**
+     * Requests sent and waiting for a response, in the order they were sent.
+     */
+    private final ArrayDeque<OutstandingRequest> mOutstandingRequests = new ArrayDeque<>();
+    private long mNextRequestSequence;
+
+    private int mNumRequestsQueued;
+    private int mNumRequestsDeduplicated;
+    private int mNumRequestsSent;
+    private int mNumRequestsTimedOut;
+    private int mNumResponsesReceived;
+    private long mTotalQueueWaitMs;
+    private long mMaxQueueWaitMs;
+    private long mTotalResponseLatencyMs;
+    private long mMaxResponseLatencyMs;
 
     /**
      * List of hold off time information associated with APs specified by their BSSID.
@@ -109,25 +137,64 @@ public class ANQPRequestManager {
          */
         public long holdOffExpirationTime;
     }
-    private static class AnqpRequest {
+    /**
+     * A queued request, ordered by the likelihood of the AP to match a provider, then by the
+     * signal strength of the AP, and then by the order the requests were queued in.
+     */
+    private static class AnqpRequest implements Comparable<AnqpRequest> {
 
         AnqpRequest(long bssid, boolean rcOIs, NetworkDetail.HSRelease hsRelease,
-                ANQPNetworkKey anqpNetworkKey) {
+                ANQPNetworkKey anqpNetworkKey, int rssi, boolean likelyMatch, long sequence,
+                long queuedTime) {
             mBssid = bssid;
             mAnqpNetworkKey = anqpNetworkKey;
             mRcOIs = rcOIs;
             mHsRelease = hsRelease;
+            mRssi = rssi;
+            mLikelyMatch = likelyMatch;
+            mSequence = sequence;
+            mQueuedTime = queuedTime;
         }
         public final long mBssid;
         public final boolean mRcOIs;
         public final NetworkDetail.HSRelease mHsRelease;
         public final ANQPNetworkKey mAnqpNetworkKey;
+        public final int mRssi;
+        public final boolean mLikelyMatch;
+        public final long mSequence;
+        public final long mQueuedTime;
+
+        @Override
+        public int compareTo(AnqpRequest other) {
+            if (mLikelyMatch != other.mLikelyMatch) {
+                return mLikelyMatch ? -1 : 1;
+            }
+            if (mRssi != other.mRssi) {
+                return Integer.compare(other.mRssi, mRssi);
+            }
+            return Long.compare(mSequence, other.mSequence);
+        }
+    }
+
+    private static class OutstandingRequest {
+        OutstandingRequest(long bssid, ANQPNetworkKey anqpNetworkKey, long sentTime) {
+            mBssid = bssid;
+            mAnqpNetworkKey = anqpNetworkKey;
+            mSentTime = sentTime;
+        }
+        public final long mBssid;
+        public final ANQPNetworkKey mAnqpNetworkKey;
+        public final long mSentTime;
     }
 
     private final AlarmManager.OnAlarmListener mAnqpRequestListener =
             new AlarmManager.OnAlarmListener() {
                 public void onAlarm() {
-                    mAnqpRequestPending = false;
+                    // The oldest outstanding request timed out, its slot can be reused.
+                    if (mOutstandingRequests.poll() != null) {
+                        mNumRequestsTimedOut++;
+                    }
+                    scheduleTimeoutAlarm();
                     processNextRequest();
                 }
             };
@@ -138,6 +205,7 @@ public class ANQPRequestManager {
         mClock = clock;
         mAlarmManager = wifiInjector.getAlarmManager();
         mFeatureFlags = wifiInjector.getDeviceConfigFacade().getFeatureFlags();
+        mWifiGlobals = wifiInjector.getWifiGlobals();
         mHoldOffInfo = new HashMap<>();
         mPendingQueries = new HashMap<>();
         mHandler = handler;
@@ -159,9 +227,28 @@ public class ANQPRequestManager {
      */
     public boolean requestANQPElements(long bssid, ANQPNetworkKey anqpNetworkKey, boolean rcOIs,
             NetworkDetail.HSRelease hsReleaseVer) {
+        return requestANQPElements(bssid, anqpNetworkKey, rcOIs, hsReleaseVer,
+                WifiInfo.INVALID_RSSI, false);
+    }
+
+    /**
+     * Request ANQP elements from the specified AP, see
+     * {@link #requestANQPElements(long, ANQPNetworkKey, boolean, NetworkDetail.HSRelease)}.
+     * When the requests are queued, the RSSI of the AP and whether it is likely to match a
+     * provider are used to send the most useful requests first.
+     *
+     * @param bssid The BSSID of the AP
+     * @param anqpNetworkKey The unique network key associated with this request
+     * @param rcOIs Flag indicating the inclusion of roaming consortium OIs
+     * @param hsReleaseVer Indicates Hotspot 2.0 Release version
+     * @param rssi The RSSI of the AP
+     * @param likelyMatch Flag indicating that the AP is likely to match a provider
+     * @return true if a request was sent or queued successfully
+     */
+    public boolean requestANQPElements(long bssid, ANQPNetworkKey anqpNetworkKey, boolean rcOIs,
+            NetworkDetail.HSRelease hsReleaseVer, int rssi, boolean likelyMatch) {
         if (mFeatureFlags.anqpRequestWaitForResponse()) {
-            // Put the new request in the queue, process it if possible(no more pending request)
-            mPendingRequest.offer(new AnqpRequest(bssid, rcOIs, hsReleaseVer, anqpNetworkKey));
+            queueRequest(bssid, anqpNetworkKey, rcOIs, hsReleaseVer, rssi, likelyMatch);
             processNextRequest();
             return true;
         }
@@ -183,37 +270,94 @@ public class ANQPRequestManager {
         return true;
     }
 
-    private void processNextRequest() {
-        if (mAnqpRequestPending) {
+    /**
+     * Queue a request, unless a request for the same ANQP network key is already outstanding.
+     * Only the most useful of the queued requests for the same key is kept.
+     */
+    private void queueRequest(long bssid, ANQPNetworkKey anqpNetworkKey, boolean rcOIs,
+            NetworkDetail.HSRelease hsReleaseVer, int rssi, boolean likelyMatch) {
+        if (isOutstanding(anqpNetworkKey)) {
+            mNumRequestsDeduplicated++;
+            return;
+        }
+        AnqpRequest queued = mPendingRequestByKey.get(anqpNetworkKey);
+        if (queued == null) {
+            AnqpRequest request = new AnqpRequest(bssid, rcOIs, hsReleaseVer, anqpNetworkKey,
+                    rssi, likelyMatch, mNextRequestSequence++,
+                    mClock.getElapsedSinceBootMillis());
+            mPendingRequest.offer(request);
+            mPendingRequestByKey.put(anqpNetworkKey, request);
+            mNumRequestsQueued++;
             return;
         }
-        AnqpRequest request;
-        while ((request = mPendingRequest.poll()) != null) {
+        mNumRequestsDeduplicated++;
+        // Keep the place of the queued request in the arrival order and its queue time.
+        AnqpRequest request = new AnqpRequest(bssid, rcOIs, hsReleaseVer, anqpNetworkKey,
+                rssi, likelyMatch, queued.mSequence, queued.mQueuedTime);
+        if (request.compareTo(queued) < 0) {
+            mPendingRequest.remove(queued);
+            mPendingRequest.offer(request);
+            mPendingRequestByKey.put(anqpNetworkKey, request);
+        }
+    }
+
+    private boolean isOutstanding(ANQPNetworkKey anqpNetworkKey) {
+        for (OutstandingRequest outstanding : mOutstandingRequests) {
+            if (outstanding.mAnqpNetworkKey.equals(anqpNetworkKey)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void processNextRequest() {
+        int maxOutstandingRequests = Math.max(1, mWifiGlobals.getMaxOutstandingAnqpRequests());
+        while (mOutstandingRequests.size() < maxOutstandingRequests) {
+            AnqpRequest request = mPendingRequest.poll();
+            if (request == null) {
+                return;
+            }
+            mPendingRequestByKey.remove(request.mAnqpNetworkKey);
             // Check if we are allow to send the request now.
             if (!canSendRequestNow(request.mBssid)) {
                 continue;
             }
             // No need to hold off future requests and set next alarm for send failures.
-            if (mPasspointHandler.requestANQP(request.mBssid, getRequestElementIDs(request.mRcOIs,
-                    request.mHsRelease))) {
-                break;
+            if (!mPasspointHandler.requestANQP(request.mBssid,
+                    getRequestElementIDs(request.mRcOIs, request.mHsRelease))) {
+                continue;
+            }
+            // Update hold off info on when we are allowed to send the next ANQP request to
+            // the given AP.
+            updateHoldOffInfo(request.mBssid);
+            mPendingQueries.put(request.mBssid, request.mAnqpNetworkKey);
+            long now = mClock.getElapsedSinceBootMillis();
+            long queueWait = now - request.mQueuedTime;
+            mNumRequestsSent++;
+            mTotalQueueWaitMs += queueWait;
+            mMaxQueueWaitMs = Math.max(mMaxQueueWaitMs, queueWait);
+            mOutstandingRequests.offer(
+                    new OutstandingRequest(request.mBssid, request.mAnqpNetworkKey, now));
+            if (mOutstandingRequests.size() == 1) {
+                scheduleTimeoutAlarm();
             }
         }
-        if (request == null) {
+    }
+
+    /**
+     * Schedule the alarm for the time out of the oldest outstanding request, if any.
+     */
+    private void scheduleTimeoutAlarm() {
+        OutstandingRequest oldest = mOutstandingRequests.peek();
+        if (oldest == null) {
             return;
         }
-        // Update hold off info on when we are allowed to send the next ANQP request to
-        // the given AP.
-        updateHoldOffInfo(request.mBssid);
-        mPendingQueries.put(request.mBssid, request.mAnqpNetworkKey);
-        // Schedule next request in case of time out waiting for response.
         mAlarmManager.set(
                 AlarmManager.ELAPSED_REALTIME,
-                mClock.getElapsedSinceBootMillis() + ANQP_REQUEST_ALARM_INTERVAL_MS,
+                oldest.mSentTime + ANQP_REQUEST_ALARM_INTERVAL_MS,
                 ANQP_REQUEST_ALARM_TAG,
                 mAnqpRequestListener,
                 mHandler);
-        mAnqpRequestPending = true;
     }
 
     /**
@@ -243,9 +387,27 @@ public class ANQPRequestManager {
             // Query succeeded.  No need to hold off request to the given AP.
             mHoldOffInfo.remove(bssid);
         }
-        // Cancel the schedule, and process next request.
-        mAlarmManager.cancel(mAnqpRequestListener);
-        mAnqpRequestPending = false;
+        Iterator<OutstandingRequest> outstandingRequests = mOutstandingRequests.iterator();
+        boolean wasOldest = true;
+        while (outstandingRequests.hasNext()) {
+            OutstandingRequest outstanding = outstandingRequests.next();
+            if (outstanding.mBssid != bssid) {
+                wasOldest = false;
+                continue;
+            }
+            outstandingRequests.remove();
+            long latency = mClock.getElapsedSinceBootMillis() - outstanding.mSentTime;
+            mNumResponsesReceived++;
+            mTotalResponseLatencyMs += latency;
+            mMaxResponseLatencyMs = Math.max(mMaxResponseLatencyMs, latency);
+            if (wasOldest) {
+                // Move the time out alarm to the next oldest request.
+                mAlarmManager.cancel(mAnqpRequestListener);
+                scheduleTimeoutAlarm();
+            }
+            break;
+        }
+        // Process next request.
         processNextRequest();
         return mPendingQueries.remove(bssid);
     }
@@ -330,6 +492,22 @@ public class ANQPRequestManager {
                     + (holdOffInfo.getValue().holdOffExpirationTime
                     - mClock.getElapsedSinceBootMillis()) / 1000 + " seconds");
         }
+        pw.println("Queued requests: " + mPendingRequest.size()
+                + ", outstanding requests: " + mOutstandingRequests.size());
+        pw.println("Requests queued: " + mNumRequestsQueued
+                + ", deduplicated: " + mNumRequestsDeduplicated
+                + ", sent: " + mNumRequestsSent
+                + ", timed out: " + mNumRequestsTimedOut
+                + ", answered: " + mNumResponsesReceived);
+        if (mNumRequestsSent > 0) {
+            pw.println("Queue wait ms: average " + mTotalQueueWaitMs / mNumRequestsSent
+                    + ", max " + mMaxQueueWaitMs);
+        }
+        if (mNumResponsesReceived > 0) {
+            pw.println("Response latency ms: average "
+                    + mTotalResponseLatencyMs / mNumResponsesReceived
+                    + ", max " + mMaxResponseLatencyMs);
+        }
         pw.println("ANQPRequestManager - End ---");
     }
 
@@ -340,7 +518,8 @@ public class ANQPRequestManager {
         mPendingQueries.clear();
         mHoldOffInfo.clear();
         mAlarmManager.cancel(mAnqpRequestListener);
-        mAnqpRequestPending = false;
+        mOutstandingRequests.clear();
         mPendingRequest.clear();
+        mPendingRequestByKey.clear();
     }
 }
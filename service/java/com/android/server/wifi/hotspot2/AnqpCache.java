@@ -16,33 +16,94 @@
 
 package com.android.server.wifi.hotspot2;
 
+import android.util.Log;
+
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.server.wifi.Clock;
 import com.android.server.wifi.hotspot2.anqp.ANQPElement;
+import com.android.server.wifi.hotspot2.anqp.ANQPParser;
 import com.android.server.wifi.hotspot2.anqp.Constants;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.net.ProtocolException;
+import java.nio.BufferUnderflowException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 
 /**
  * Cache for storing ANQP data.  This is simply a data cache, all the logic related to
  * ANQP data query will be handled elsewhere (e.g. the consumer of the cache).
+ *
+ * The cache is bounded both in number of entries and in bytes of ANQP payload, evicting the
+ * least recently used entries first. The entries still within their lifetime can be saved with
+ * {@link #toByteArray()} and restored with {@link #restore(byte[])} after a reboot, so that
+ * Passpoint networks can be matched before the APs are queried again.
  */
 public class AnqpCache {
+    private static final String TAG = "AnqpCache";
+
     @VisibleForTesting
     public static final long CACHE_SWEEP_INTERVAL_MILLISECONDS = 60000L;
+    @VisibleForTesting
+    public static final int MAX_CACHE_ENTRIES = 256;
+    @VisibleForTesting
+    public static final int MAX_CACHE_PAYLOAD_BYTES = 128 * 1024;
+    // Approximate size of an entry besides its ANQP payloads.
+    private static final int ENTRY_OVERHEAD_BYTES = 64;
+    // The expiry queue is compacted once it holds this many more records than entries.
+    private static final int EXPIRY_QUEUE_COMPACTION_SLACK = 16;
+
+    // Version of the format written by toByteArray().
+    private static final int SERIALIZED_VERSION = 1;
+    private static final int ELEMENT_KIND_ANQP = 0;
+    private static final int ELEMENT_KIND_HS20 = 1;
+
+    /** Records the time an entry expires at, ordered by expiry time. */
+    private static class Expiry implements Comparable<Expiry> {
+        public final ANQPNetworkKey key;
+        public final ANQPData data;
+        public final long expiryTime;
+
+        Expiry(ANQPNetworkKey key, ANQPData data) {
+            this.key = key;
+            this.data = data;
+            this.expiryTime = data.getExpiryTime();
+        }
+
+        @Override
+        public int compareTo(Expiry other) {
+            return Long.compare(expiryTime, other.expiryTime);
+        }
+    }
 
     private long mLastSweep;
     private Clock mClock;
 
-    private final Map<ANQPNetworkKey, ANQPData> mANQPCache;
+    // Entries in least recently used order.
+    private final LinkedHashMap<ANQPNetworkKey, ANQPData> mANQPCache;
+    // Payload size of the entries in the cache, looked up without changing their LRU order.
+    private final Map<ANQPData, Integer> mEntrySizes = new IdentityHashMap<>();
+    private int mCacheSizeBytes;
+    // Expiry of the entries. A record is stale once its entry was removed or updated, stale
+    // records are skipped when polled.
+    private final PriorityQueue<Expiry> mExpiryQueue = new PriorityQueue<>();
+    private boolean mChangedSinceSerialized;
+    private int mNumEvictions;
 
     public AnqpCache(Clock clock) {
         mClock = clock;
-        mANQPCache = new HashMap<>();
+        mANQPCache = new LinkedHashMap<>(16, 0.75f, true);
         mLastSweep = mClock.getElapsedSinceBootMillis();
     }
 
@@ -54,8 +115,7 @@ public class AnqpCache {
      */
     public void addEntry(ANQPNetworkKey key,
             Map<Constants.ANQPElementType, ANQPElement> anqpElements) {
-        ANQPData data = new ANQPData(mClock, anqpElements);
-        mANQPCache.put(key, data);
+        putEntry(key, new ANQPData(mClock, anqpElements));
     }
 
     /**
@@ -68,12 +128,15 @@ public class AnqpCache {
      */
     public void addOrUpdateEntry(ANQPNetworkKey key,
             Map<Constants.ANQPElementType, ANQPElement> anqpElements) {
-        if (!mANQPCache.containsKey(key)) {
+        ANQPData data = mANQPCache.get(key);
+        if (data == null) {
             // Create a new entry
             addEntry(key, anqpElements);
             return;
         }
-        mANQPCache.get(key).update(anqpElements);
+        data.update(anqpElements);
+        onEntryChanged(key, data);
+        trimToBudget();
     }
 
     /**
@@ -96,24 +159,21 @@ public class AnqpCache {
             return;
         }
 
-        // Get all expired keys.
-        List<ANQPNetworkKey> expiredKeys = new ArrayList<>();
-        for (Map.Entry<ANQPNetworkKey, ANQPData> entry : mANQPCache.entrySet()) {
-            if (entry.getValue().expired(now)) {
-                expiredKeys.add(entry.getKey());
+        // Remove all expired entries, which are at the head of the expiry queue.
+        while (!mExpiryQueue.isEmpty() && mExpiryQueue.peek().expiryTime <= now) {
+            Expiry expiry = mExpiryQueue.poll();
+            if (isCurrent(expiry)) {
+                removeEntry(expiry.key);
             }
         }
-
-        // Remove all expired entries.
-        for (ANQPNetworkKey key : expiredKeys) {
-            mANQPCache.remove(key);
-        }
         mLastSweep = now;
     }
 
     public void dump(PrintWriter out) {
         out.println("Last sweep " + Utils.toHMS(mClock.getElapsedSinceBootMillis() - mLastSweep)
                 + " ago.");
+        out.println("Entries: " + mANQPCache.size() + ", payload bytes: " + mCacheSizeBytes
+                + ", evictions: " + mNumEvictions);
         for (Map.Entry<ANQPNetworkKey, ANQPData> entry : mANQPCache.entrySet()) {
             out.println(entry.getKey() + ": " + entry.getValue());
         }
@@ -124,6 +184,201 @@ public class AnqpCache {
      */
     public void flush() {
         mANQPCache.clear();
+        mEntrySizes.clear();
+        mExpiryQueue.clear();
+        mCacheSizeBytes = 0;
+        mChangedSinceSerialized = true;
         mLastSweep = mClock.getElapsedSinceBootMillis();
     }
+
+    /**
+     * Return whether the cache changed since it was last serialized.
+     */
+    public boolean hasChangedSinceSerialized() {
+        return mChangedSinceSerialized;
+    }
+
+    /**
+     * Serialize the entries that are not expired yet, with the ANQP elements they were received
+     * with. Elements that were not parsed from an ANQP payload are skipped.
+     *
+     * @return the serialized entries
+     */
+    public byte[] toByteArray() {
+        long now = mClock.getElapsedSinceBootMillis();
+        long wallClockOffset = mClock.getWallClockMillis() - now;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(SERIALIZED_VERSION);
+            List<Map.Entry<ANQPNetworkKey, ANQPData>> entries = new ArrayList<>();
+            for (Map.Entry<ANQPNetworkKey, ANQPData> entry : mANQPCache.entrySet()) {
+                if (!entry.getValue().expired(now)) {
+                    entries.add(entry);
+                }
+            }
+            out.writeInt(entries.size());
+            // Entries are written in least recently used order, so that restore() keeps it.
+            for (Map.Entry<ANQPNetworkKey, ANQPData> entry : entries) {
+                ANQPNetworkKey key = entry.getKey();
+                ANQPData data = entry.getValue();
+                out.writeBoolean(key.getSSID() != null);
+                if (key.getSSID() != null) {
+                    out.writeUTF(key.getSSID());
+                }
+                out.writeLong(key.getBSSID());
+                out.writeLong(key.getHESSID());
+                out.writeInt(key.getAnqpDomainID());
+                out.writeLong(data.getExpiryTime() + wallClockOffset);
+                writeElements(out, data.getElements());
+            }
+            out.flush();
+        } catch (IOException e) {
+            // Not expected when writing to memory.
+            Log.e(TAG, "Failed to serialize the ANQP cache: " + e);
+            return new byte[0];
+        }
+        mChangedSinceSerialized = false;
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Restore the entries serialized by {@link #toByteArray()}, possibly before a reboot. The
+     * entries that expired in the meantime and the ones already in the cache are skipped.
+     *
+     * @param serialized the serialized entries
+     */
+    public void restore(byte[] serialized) {
+        if (serialized == null || serialized.length == 0) {
+            return;
+        }
+        long now = mClock.getElapsedSinceBootMillis();
+        long wallClockNow = mClock.getWallClockMillis();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(serialized));
+        try {
+            int version = in.readInt();
+            if (version != SERIALIZED_VERSION) {
+                Log.w(TAG, "Ignoring ANQP cache of unknown version " + version);
+                return;
+            }
+            int numEntries = in.readInt();
+            for (int i = 0; i < numEntries; i++) {
+                String ssid = in.readBoolean() ? in.readUTF() : null;
+                ANQPNetworkKey key = new ANQPNetworkKey(ssid, in.readLong(), in.readLong(),
+                        in.readInt());
+                // Bound the lifetime in case the wall clock went back.
+                long lifetime = Math.min(in.readLong() - wallClockNow,
+                        ANQPData.DATA_LIFETIME_MILLISECONDS);
+                Map<Constants.ANQPElementType, ANQPElement> elements = readElements(in);
+                if (lifetime <= 0 || mANQPCache.containsKey(key)) {
+                    continue;
+                }
+                putEntry(key, new ANQPData(mClock, elements, lifetime));
+            }
+        } catch (IOException | ProtocolException | BufferUnderflowException
+                | IllegalArgumentException e) {
+            Log.e(TAG, "Failed to restore the ANQP cache: " + e);
+        }
+        mLastSweep = now;
+    }
+
+    private static void writeElements(DataOutputStream out,
+            Map<Constants.ANQPElementType, ANQPElement> elements) throws IOException {
+        List<ANQPElement> persistable = new ArrayList<>();
+        for (ANQPElement element : elements.values()) {
+            if (element.getPayload() != null) {
+                persistable.add(element);
+            }
+        }
+        out.writeShort(persistable.size());
+        for (ANQPElement element : persistable) {
+            Integer hs20Id = Constants.getHS20ElementID(element.getID());
+            if (hs20Id != null) {
+                out.writeByte(ELEMENT_KIND_HS20);
+                out.writeShort(hs20Id);
+            } else {
+                out.writeByte(ELEMENT_KIND_ANQP);
+                out.writeShort(Constants.getANQPElementID(element.getID()));
+            }
+            out.writeShort(element.getPayload().length);
+            out.write(element.getPayload());
+        }
+    }
+
+    private static Map<Constants.ANQPElementType, ANQPElement> readElements(DataInputStream in)
+            throws IOException {
+        Map<Constants.ANQPElementType, ANQPElement> elements = new HashMap<>();
+        int numElements = in.readUnsignedShort();
+        for (int i = 0; i < numElements; i++) {
+            int kind = in.readUnsignedByte();
+            int id = in.readUnsignedShort();
+            byte[] payload = new byte[in.readUnsignedShort()];
+            in.readFully(payload);
+            Constants.ANQPElementType type = kind == ELEMENT_KIND_HS20
+                    ? Constants.mapHS20Element(id) : Constants.mapANQPElement(id);
+            if (type == null) {
+                throw new ProtocolException("Unknown ANQP element " + kind + "/" + id);
+            }
+            elements.put(type, ANQPParser.parsePayload(type, payload));
+        }
+        return elements;
+    }
+
+    private void putEntry(ANQPNetworkKey key, ANQPData data) {
+        removeEntry(key);
+        mANQPCache.put(key, data);
+        onEntryChanged(key, data);
+        trimToBudget();
+    }
+
+    private void removeEntry(ANQPNetworkKey key) {
+        ANQPData data = mANQPCache.remove(key);
+        if (data == null) {
+            return;
+        }
+        mCacheSizeBytes -= mEntrySizes.remove(data);
+        mChangedSinceSerialized = true;
+    }
+
+    /** Update the size and expiry of an entry that was added or updated. */
+    private void onEntryChanged(ANQPNetworkKey key, ANQPData data) {
+        int size = getEntrySize(data);
+        Integer oldSize = mEntrySizes.put(data, size);
+        mCacheSizeBytes += size - (oldSize == null ? 0 : oldSize);
+        mExpiryQueue.add(new Expiry(key, data));
+        if (mExpiryQueue.size() > 2 * mANQPCache.size() + EXPIRY_QUEUE_COMPACTION_SLACK) {
+            mExpiryQueue.removeIf(expiry -> !isCurrent(expiry));
+        }
+        mChangedSinceSerialized = true;
+    }
+
+    /**
+     * Evict the least recently used entries until the cache is within its budget. The most
+     * recently used entry is always kept, even if it is over the budget on its own.
+     */
+    private void trimToBudget() {
+        Iterator<ANQPData> lruEntries = mANQPCache.values().iterator();
+        while (mANQPCache.size() > 1 && (mANQPCache.size() > MAX_CACHE_ENTRIES
+                || mCacheSizeBytes > MAX_CACHE_PAYLOAD_BYTES)) {
+            ANQPData data = lruEntries.next();
+            lruEntries.remove();
+            mCacheSizeBytes -= mEntrySizes.remove(data);
+            mNumEvictions++;
+        }
+    }
+
+    private boolean isCurrent(Expiry expiry) {
+        return mEntrySizes.containsKey(expiry.data)
+                && expiry.data.getExpiryTime() == expiry.expiryTime;
+    }
+
+    private static int getEntrySize(ANQPData data) {
+        int size = ENTRY_OVERHEAD_BYTES;
+        for (ANQPElement element : data.getElements().values()) {
+            if (element.getPayload() != null) {
+                size += element.getPayload().length;
+            }
+        }
+        return size;
+    }
 }
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.hotspot2;
+
+import android.annotation.Nullable;
+import android.util.Log;
+
+import com.android.server.wifi.WifiConfigStore;
+import com.android.server.wifi.util.WifiConfigStoreEncryptionUtil;
+import com.android.server.wifi.util.XmlUtil;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlSerializer;
+
+import java.io.IOException;
+
+/**
+ * Responsible for persisting the ANQP cache in its own shared store file, so that the ANQP
+ * elements received before a reboot can be used to match Passpoint networks right after it,
+ * without growing the store file of the saved networks. The entries are stored as the compact
+ * binary format of {@link AnqpCache#toByteArray()}.
+ */
+public class AnqpCacheStoreData implements WifiConfigStore.StoreData {
+    private static final String TAG = "AnqpCacheStoreData";
+    private static final String XML_TAG_SECTION_HEADER_ANQP_CACHE = "AnqpCache";
+    private static final String XML_TAG_ENTRIES = "Entries";
+
+    private final DataSource mDataSource;
+
+    /**
+     * Interface define the data source for the ANQP cache store data.
+     */
+    public interface DataSource {
+        /**
+         * Retrieve the serialized ANQP cache entries.
+         *
+         * @return the serialized entries
+         */
+        byte[] getEntries();
+
+        /**
+         * Restore the serialized ANQP cache entries.
+         *
+         * @param entries The serialized entries
+         */
+        void setEntries(byte[] entries);
+
+        /**
+         * Return whether the ANQP cache changed since it was last retrieved.
+         */
+        boolean hasNewEntries();
+    }
+
+    AnqpCacheStoreData(DataSource dataSource) {
+        mDataSource = dataSource;
+    }
+
+    @Override
+    public void serializeData(XmlSerializer out,
+            @Nullable WifiConfigStoreEncryptionUtil encryptionUtil)
+            throws XmlPullParserException, IOException {
+        XmlUtil.writeNextValue(out, XML_TAG_ENTRIES, mDataSource.getEntries());
+    }
+
+    @Override
+    public void deserializeData(XmlPullParser in, int outerTagDepth,
+            @WifiConfigStore.Version int version,
+            @Nullable WifiConfigStoreEncryptionUtil encryptionUtil)
+            throws XmlPullParserException, IOException {
+        // Ignore empty reads.
+        if (in == null) {
+            return;
+        }
+        while (!XmlUtil.isNextSectionEnd(in, outerTagDepth)) {
+            String[] valueName = new String[1];
+            Object value = XmlUtil.readCurrentValue(in, valueName);
+            if (valueName[0] == null) {
+                throw new XmlPullParserException("Missing value name");
+            }
+            switch (valueName[0]) {
+                case XML_TAG_ENTRIES:
+                    mDataSource.setEntries((byte[]) value);
+                    break;
+                default:
+                    Log.w(TAG, "Ignoring unknown value under ANQP cache store data "
+                            + valueName[0]);
+                    break;
+            }
+        }
+    }
+
+    @Override
+    public void resetData() {
+        // Entries received since boot are kept.
+    }
+
+    @Override
+    public boolean hasNewDataToSerialize() {
+        return mDataSource.hasNewEntries();
+    }
+
+    @Override
+    public String getName() {
+        return XML_TAG_SECTION_HEADER_ANQP_CACHE;
+    }
+
+    @Override
+    public @WifiConfigStore.StoreFileId int getStoreFileId() {
+        // Shared ANQP cache store.
+        return WifiConfigStore.STORE_FILE_SHARED_ANQP_CACHE;
+    }
+}
@@ -227,10 +227,12 @@ public class NetworkDetail {
 
         RuntimeException exception = null;
 
-        ArrayList<Integer> iesFound = new ArrayList<Integer>();
+        boolean erpFound = false;
         try {
             for (ScanResult.InformationElement ie : infoElements) {
-                iesFound.add(ie.id);
+                if (ie.id == ScanResult.InformationElement.EID_ERP) {
+                    erpFound = true;
+                }
                 switch (ie.id) {
                     case ScanResult.InformationElement.EID_SSID:
                         ssidOctets = ie.bytes;
@@ -462,7 +464,7 @@ public class NetworkDetail {
             mWifiMode = InformationElementUtil.WifiMode.determineMode(mPrimaryFreq, mMaxRate,
                     ehtOperation.isPresent(), heOperation.isPresent(), vhtOperation.isPresent(),
                     htOperation.isPresent(),
-                    iesFound.contains(ScanResult.InformationElement.EID_ERP));
+                    erpFound);
         } else {
             mWifiMode = 0;
             mMaxRate = 0;
@@ -506,8 +508,7 @@ public class NetworkDetail {
                     + ", HE: " + String.valueOf(heOperation.isPresent())
                     + ", VHT: " + String.valueOf(vhtOperation.isPresent())
                     + ", HT: " + String.valueOf(htOperation.isPresent())
-                    + ", ERP: " + String.valueOf(
-                    iesFound.contains(ScanResult.InformationElement.EID_ERP))
+                    + ", ERP: " + String.valueOf(erpFound)
                     + ", SupportedRates: " + supportedRates.toString()
                     + " ExtendedSupportedRates: " + extendedSupportedRates.toString());
         }
@@ -40,6 +40,7 @@ import android.os.Looper;
 import android.os.Process;
 import android.text.TextUtils;
 import android.util.Log;
+import android.util.LruCache;
 import android.util.Pair;
 
 import com.android.internal.annotations.VisibleForTesting;
@@ -83,6 +84,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -107,6 +109,11 @@ import java.util.concurrent.atomic.AtomicBoolean;
  */
 public class PasspointManager {
     private static final String TAG = "PasspointManager";
+    // Maximum number of ANQP entries whose provider match results are kept.
+    private static final int MAX_MATCH_CACHE_SIZE = 256;
+    // Delay before saving the ANQP cache after it changed, so that the responses received
+    // after a scan are saved together.
+    private static final long ANQP_CACHE_SAVE_DELAY_MS = 30_000L;
 
     /**
      * Handle for the current {@link PasspointManager} instance.  This is needed to avoid
@@ -125,7 +132,14 @@ public class PasspointManager {
     private final PasspointObjectFactory mObjectFactory;
 
     private final Map<String, PasspointProvider> mProviders;
+    // Index of mProviders, built on demand and dropped when mProviders changes.
+    private PasspointProviderIndex mProviderMatchIndex;
+    // Results of matching mProviders against the entries of mAnqpCache, dropped when mProviders
+    // changes.
+    private final LruCache<ANQPNetworkKey, MatchCacheEntry> mMatchCache =
+            new LruCache<>(MAX_MATCH_CACHE_SIZE);
     private final AnqpCache mAnqpCache;
+    private boolean mAnqpCacheSaveScheduled;
     private final ANQPRequestManager mAnqpRequestManager;
     private final WifiConfigManager mWifiConfigManager;
     private final WifiMetrics mWifiMetrics;
@@ -185,6 +199,7 @@ public class PasspointManager {
 
             // Add new entry to the cache.
             mAnqpCache.addOrUpdateEntry(anqpKey, anqpElements);
+            scheduleAnqpCacheSave();
         }
 
         @Override
@@ -198,6 +213,32 @@ public class PasspointManager {
         }
     }
 
+    /**
+     * Results of matching the providers against an ANQP entry, valid as long as the entry is not
+     * updated and the AP advertises the same Roaming Consortium information element.
+     */
+    private static class MatchCacheEntry {
+        public final ANQPData anqpData;
+        public final int anqpGeneration;
+        public final long[] roamingConsortiums;
+        public final Set<PasspointProvider> candidates;
+        public final Map<PasspointProvider, PasspointProvider.AnqpMatch> anqpMatches =
+                new IdentityHashMap<>();
+
+        MatchCacheEntry(ANQPData anqpData, long[] roamingConsortiums,
+                Set<PasspointProvider> candidates) {
+            this.anqpData = anqpData;
+            this.anqpGeneration = anqpData.getGeneration();
+            this.roamingConsortiums = roamingConsortiums;
+            this.candidates = candidates;
+        }
+
+        public boolean isValidFor(ANQPData data, long[] roamingConsortiumsFromAp) {
+            return anqpData == data && anqpGeneration == data.getGeneration()
+                    && Arrays.equals(roamingConsortiums, roamingConsortiumsFromAp);
+        }
+    }
+
     /**
      * Data provider for the Passpoint configuration store data
      * {@link PasspointConfigUserStoreData}.
@@ -223,6 +264,27 @@ public class PasspointManager {
                             provider.getCreatorUid());
                 }
             }
+            onProvidersChanged();
+        }
+    }
+
+    /**
+     * Data provider for the ANQP cache store data {@link AnqpCacheStoreData}.
+     */
+    private class AnqpCacheDataSourceHandler implements AnqpCacheStoreData.DataSource {
+        @Override
+        public byte[] getEntries() {
+            return mAnqpCache.toByteArray();
+        }
+
+        @Override
+        public void setEntries(byte[] entries) {
+            mAnqpCache.restore(entries);
+        }
+
+        @Override
+        public boolean hasNewEntries() {
+            return mAnqpCache.hasChangedSinceSerialized();
         }
     }
 
@@ -390,6 +452,8 @@ public class PasspointManager {
                 mKeyStore, mWifiCarrierInfoManager, new UserDataSourceHandler(), clock));
         wifiConfigStore.registerStoreData(objectFactory.makePasspointConfigSharedStoreData(
                 new SharedDataSourceHandler()));
+        wifiConfigStore.registerStoreData(objectFactory.makeAnqpCacheStoreData(
+                new AnqpCacheDataSourceHandler()));
         mPasspointProvisioner = objectFactory.makePasspointProvisioner(context, wifiNative,
                 this, wifiMetrics);
         ActivityManager activityManager = context.getSystemService(ActivityManager.class);
@@ -579,6 +643,7 @@ public class PasspointManager {
         }
         newProvider.enableVerboseLogging(mVerboseLoggingEnabled);
         mProviders.put(config.getUniqueId(), newProvider);
+        onProvidersChanged();
         if (!isFromSuggestion) {
             // Suggestions will be handled by the WifiNetworkSuggestionsManager
             mWifiConfigManager.saveToStore(true /* forceWrite */);
@@ -629,6 +694,7 @@ public class PasspointManager {
         }
         String uniqueId = provider.getConfig().getUniqueId();
         mProviders.remove(uniqueId);
+        onProvidersChanged();
         mWifiConfigManager.removeConnectChoiceFromAllNetworks(uniqueId);
         if (!provider.isFromSuggestion()) {
             // Suggestions will be handled by the WifiNetworkSuggestionsManager
@@ -929,24 +995,33 @@ public class PasspointManager {
         if (anqpEntry == null) {
             if (anqpRequestAllowed) {
                 mAnqpRequestManager.requestANQPElements(bssid, anqpKey,
-                        roamingConsortium.anqpOICount > 0, vsa.hsRelease);
+                        roamingConsortium.anqpOICount > 0, vsa.hsRelease, scanResult.level,
+                        getProviderMatchIndex().hasOiMatch(
+                                roamingConsortium.getRoamingConsortiums()));
             }
             Log.d(TAG, "ANQP entry not found for: " + anqpKey);
             return allMatches;
         }
+        MatchCacheEntry cacheEntry = getMatchCacheEntry(anqpKey, anqpEntry,
+                roamingConsortium == null ? null : roamingConsortium.getRoamingConsortiums());
         boolean anyProviderUpdated = false;
         for (Map.Entry<String, PasspointProvider> entry : mProviders.entrySet()) {
             PasspointProvider provider = entry.getValue();
             if (provider.tryUpdateCarrierId()) {
                 anyProviderUpdated = true;
             }
+            // Providers that are not indexed under any of the AP domains, realms or OIs can not
+            // match it.
+            if (!cacheEntry.candidates.contains(provider)) {
+                continue;
+            }
             if (mVerboseLoggingEnabled) {
                 Log.d(TAG, "Matching provider " + provider.getConfig().getHomeSp().getFqdn()
                         + " with "
                         + anqpEntry.getElements().get(Constants.ANQPElementType.ANQPDomName));
             }
             PasspointMatch matchStatus = provider.match(anqpEntry.getElements(),
-                    roamingConsortium, scanResult);
+                    roamingConsortium, scanResult, cacheEntry.anqpMatches);
             if (matchStatus == PasspointMatch.HomeProvider
                     || matchStatus == PasspointMatch.RoamingProvider) {
                 allMatches.add(Pair.create(provider, matchStatus));
@@ -1338,6 +1413,8 @@ public class PasspointManager {
         }
         pw.println("PasspointManager - Providers End ---");
         pw.println("PasspointManager - Next provider ID to be assigned " + mProviderIndex);
+        pw.println("PasspointManager - Cached match results: " + mMatchCache.size()
+                + ", hits: " + mMatchCache.hitCount() + ", misses: " + mMatchCache.missCount());
         mAnqpCache.dump(pw);
         mAnqpRequestManager.dump(pw);
     }
@@ -1389,9 +1466,58 @@ public class PasspointManager {
                 enterpriseConfig.getClientCertificateAlias(), null, false, false, mClock);
         provider.enableVerboseLogging(mVerboseLoggingEnabled);
         mProviders.put(passpointConfig.getUniqueId(), provider);
+        onProvidersChanged();
         return true;
     }
 
+    /**
+     * Save the ANQP cache to the store after a delay, unless a save is already scheduled.
+     */
+    private void scheduleAnqpCacheSave() {
+        if (mAnqpCacheSaveScheduled) {
+            return;
+        }
+        mAnqpCacheSaveScheduled = true;
+        mHandler.postDelayed(() -> {
+            mAnqpCacheSaveScheduled = false;
+            mWifiConfigManager.saveToStore(false);
+        }, ANQP_CACHE_SAVE_DELAY_MS);
+    }
+
+    /**
+     * Drop the provider index and the cached match results, called whenever a provider is added
+     * to or removed from {@link #mProviders}.
+     */
+    private void onProvidersChanged() {
+        mProviderMatchIndex = null;
+        mMatchCache.evictAll();
+    }
+
+    /**
+     * Return the cached match results of the providers for the ANQP entry, creating them if the
+     * entry or the Roaming Consortium information element of the AP changed since they were
+     * cached.
+     */
+    private MatchCacheEntry getMatchCacheEntry(ANQPNetworkKey anqpKey, ANQPData anqpEntry,
+            long[] roamingConsortiumsFromAp) {
+        MatchCacheEntry cacheEntry = mMatchCache.get(anqpKey);
+        if (cacheEntry != null && cacheEntry.isValidFor(anqpEntry, roamingConsortiumsFromAp)) {
+            return cacheEntry;
+        }
+        cacheEntry = new MatchCacheEntry(anqpEntry, roamingConsortiumsFromAp,
+                getProviderMatchIndex().getCandidates(anqpEntry.getElements(),
+                        roamingConsortiumsFromAp));
+        mMatchCache.put(anqpKey, cacheEntry);
+        return cacheEntry;
+    }
+
+    private PasspointProviderIndex getProviderMatchIndex() {
+        if (mProviderMatchIndex == null) {
+            mProviderMatchIndex = mObjectFactory.makePasspointProviderIndex(mProviders.values());
+        }
+        return mProviderMatchIndex;
+    }
+
     /**
      * Start the subscription provisioning flow with a provider.
      * @param callingUid integer indicating the uid of the caller
@@ -1468,6 +1594,7 @@ public class PasspointManager {
     public void clearAnqpRequestsAndFlushCache() {
         mAnqpRequestManager.clear();
         mAnqpCache.flush();
+        scheduleAnqpCacheSave();
         mProviders.values().forEach(PasspointProvider::clearProviderBlock);
     }
 
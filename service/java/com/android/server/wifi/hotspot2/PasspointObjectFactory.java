@@ -30,6 +30,7 @@ import com.android.server.wifi.WifiNative;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManagerFactory;
@@ -97,6 +98,26 @@ public class PasspointObjectFactory{
         return new PasspointConfigSharedStoreData(dataSource);
     }
 
+    /**
+     * Create a {@link AnqpCacheStoreData} instance.
+     * @param dataSource ANQP cache data source
+     * @return {@link AnqpCacheStoreData}
+     */
+    public AnqpCacheStoreData makeAnqpCacheStoreData(AnqpCacheStoreData.DataSource dataSource) {
+        return new AnqpCacheStoreData(dataSource);
+    }
+
+    /**
+     * Create a PasspointProviderIndex instance.
+     *
+     * @param providers Providers to index
+     * @return {@link PasspointProviderIndex}
+     */
+    public PasspointProviderIndex makePasspointProviderIndex(
+            Collection<PasspointProvider> providers) {
+        return new PasspointProviderIndex(providers);
+    }
+
     /**
      * Create a AnqpCache instance.
      *
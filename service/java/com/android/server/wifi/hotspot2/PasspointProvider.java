@@ -454,6 +454,24 @@ public class PasspointProvider {
         return matchingSIMImsi;
     }
 
+    /**
+     * Result of matching a provider against the ANQP elements and the Roaming Consortium
+     * information element of an AP, which only depends on them and on the installed SIM.
+     */
+    public static final class AnqpMatch {
+        // IMSI of the installed SIM the match was made with, null for non-SIM credentials
+        public final String simImsi;
+        public final PasspointMatch match;
+        // RCOI the provider matched as a RoamingProvider, 0 if none
+        public final long matchedRcoi;
+
+        AnqpMatch(String simImsi, PasspointMatch match, long matchedRcoi) {
+            this.simImsi = simImsi;
+            this.match = match;
+            this.matchedRcoi = matchedRcoi;
+        }
+    }
+
     /**
      * Return the matching status with the given AP, based on the ANQP elements from the AP.
      *
@@ -464,6 +482,20 @@ public class PasspointProvider {
      */
     public PasspointMatch match(Map<ANQPElementType, ANQPElement> anqpElements,
             RoamingConsortium roamingConsortiumFromAp, ScanResult scanResult) {
+        return match(anqpElements, roamingConsortiumFromAp, scanResult, null);
+    }
+
+    /**
+     * Same as {@link #match(Map, RoamingConsortium, ScanResult)}, reusing the result of a
+     * previous match of this provider against the same ANQP elements and Roaming Consortium
+     * information element when the installed SIM did not change.
+     *
+     * @param anqpMatches ANQP match results of the providers for these ANQP elements and
+     *                    information element, updated with this provider's result.
+     */
+    public PasspointMatch match(Map<ANQPElementType, ANQPElement> anqpElements,
+            RoamingConsortium roamingConsortiumFromAp, ScanResult scanResult,
+            @Nullable Map<PasspointProvider, AnqpMatch> anqpMatches) {
         sweepMatchedRcoiMap();
         if (isProviderBlocked(scanResult)) {
             if (mVerboseLoggingEnabled) {
@@ -488,10 +520,30 @@ public class PasspointProvider {
             }
         }
 
+        AnqpMatch anqpMatch = anqpMatches == null ? null : anqpMatches.get(this);
+        if (anqpMatch == null || !TextUtils.equals(anqpMatch.simImsi, matchingSimImsi)) {
+            anqpMatch = matchAnqp(anqpElements, roamingConsortiumFromAp, matchingSimImsi);
+            if (anqpMatches != null) {
+                anqpMatches.put(this, anqpMatch);
+            }
+        }
+        if (anqpMatch.matchedRcoi != 0) {
+            addMatchedRcoi(scanResult, anqpMatch.matchedRcoi);
+        }
+        return anqpMatch.match;
+    }
+
+    /**
+     * Match the provider against the ANQP elements and the Roaming Consortium information
+     * element of an AP.
+     */
+    private AnqpMatch matchAnqp(Map<ANQPElementType, ANQPElement> anqpElements,
+            RoamingConsortium roamingConsortiumFromAp, String matchingSimImsi) {
         // Match FQDN for Home provider or RCOI(s) for Roaming provider
         // For SIM credential, the FQDN is in the format of wlan.mnc*.mcc*.3gppnetwork.org
-        PasspointMatch providerMatch = matchFqdnAndRcoi(anqpElements, roamingConsortiumFromAp,
-                matchingSimImsi, scanResult);
+        AnqpMatch fqdnAndRcoiMatch = matchFqdnAndRcoi(anqpElements, roamingConsortiumFromAp,
+                matchingSimImsi);
+        PasspointMatch providerMatch = fqdnAndRcoiMatch.match;
 
         // 3GPP Network matching
         if (providerMatch == PasspointMatch.None && ANQPMatcher.matchThreeGPPNetwork(
@@ -501,7 +553,7 @@ public class PasspointProvider {
                 Log.d(TAG, "Final RoamingProvider match with "
                         + anqpElements.get(ANQPElementType.ANQP3GPPNetwork));
             }
-            return PasspointMatch.RoamingProvider;
+            return new AnqpMatch(matchingSimImsi, PasspointMatch.RoamingProvider, 0);
         }
 
         // Perform NAI Realm matching
@@ -514,7 +566,7 @@ public class PasspointProvider {
             if (mVerboseLoggingEnabled) {
                 Log.d(TAG, "No NAI realm match, final match: " + providerMatch);
             }
-            return providerMatch;
+            return fqdnAndRcoiMatch;
         }
 
         if (mVerboseLoggingEnabled) {
@@ -530,7 +582,7 @@ public class PasspointProvider {
         if (mVerboseLoggingEnabled) {
             Log.d(TAG, "Final match: " + providerMatch);
         }
-        return providerMatch;
+        return new AnqpMatch(matchingSimImsi, providerMatch, fqdnAndRcoiMatch.matchedRcoi);
     }
 
     /**
@@ -890,12 +942,10 @@ public class PasspointProvider {
      * @param roamingConsortiumFromAp Roaming Consortium information element from the AP
      * @param matchingSIMImsi         Installed SIM IMSI that matches the SIM credential ANQP
      *                                element
-     * @param scanResult              The relevant scan result
-     * @return {@link PasspointMatch}
+     * @return {@link AnqpMatch}
      */
-    private PasspointMatch matchFqdnAndRcoi(Map<ANQPElementType, ANQPElement> anqpElements,
-            RoamingConsortium roamingConsortiumFromAp, String matchingSIMImsi,
-            ScanResult scanResult) {
+    private AnqpMatch matchFqdnAndRcoi(Map<ANQPElementType, ANQPElement> anqpElements,
+            RoamingConsortium roamingConsortiumFromAp, String matchingSIMImsi) {
         // Domain name matching.
         if (ANQPMatcher.matchDomainName(
                 (DomainNameElement) anqpElements.get(ANQPElementType.ANQPDomName),
@@ -904,7 +954,7 @@ public class PasspointProvider {
                 Log.d(TAG, "Domain name " + mConfig.getHomeSp().getFqdn()
                         + " match: HomeProvider");
             }
-            return PasspointMatch.HomeProvider;
+            return new AnqpMatch(matchingSIMImsi, PasspointMatch.HomeProvider, 0);
         }
 
         // Other Home Partners matching.
@@ -917,7 +967,7 @@ public class PasspointProvider {
                         Log.d(TAG, "Other Home Partner " + otherHomePartner
                                 + " match: HomeProvider");
                     }
-                    return PasspointMatch.HomeProvider;
+                    return new AnqpMatch(matchingSIMImsi, PasspointMatch.HomeProvider, 0);
                 }
             }
         }
@@ -933,7 +983,7 @@ public class PasspointProvider {
                 if (mVerboseLoggingEnabled) {
                     Log.d(TAG, "All HomeOI RCOI match: HomeProvider");
                 }
-                return PasspointMatch.HomeProvider;
+                return new AnqpMatch(matchingSIMImsi, PasspointMatch.HomeProvider, 0);
             }
         } else if (mConfig.getHomeSp().getMatchAnyOis() != null) {
             // Ensure that any HomeOI whose corresponding HomeOIRequired value is false shall match
@@ -945,7 +995,7 @@ public class PasspointProvider {
                 if (mVerboseLoggingEnabled) {
                     Log.d(TAG, "Any HomeOI RCOI match: HomeProvider");
                 }
-                return PasspointMatch.HomeProvider;
+                return new AnqpMatch(matchingSIMImsi, PasspointMatch.HomeProvider, 0);
             }
         }
 
@@ -958,14 +1008,13 @@ public class PasspointProvider {
                 Log.d(TAG, String.format("RCOI match: RoamingProvider, selected RCOI = 0x%x",
                         matchedRcoi));
             }
-            addMatchedRcoi(scanResult, matchedRcoi);
-            return PasspointMatch.RoamingProvider;
+            return new AnqpMatch(matchingSIMImsi, PasspointMatch.RoamingProvider, matchedRcoi);
         }
 
         if (mVerboseLoggingEnabled) {
             Log.d(TAG, "No domain name or RCOI match");
         }
-        return PasspointMatch.None;
+        return new AnqpMatch(matchingSIMImsi, PasspointMatch.None, 0);
     }
 
     /**
@@ -1280,6 +1329,7 @@ public class PasspointProvider {
      */
     public long getAndRemoveMatchedRcoi(String ssid) {
         if (ssid == null) return 0;
+        sweepMatchedRcoiMap();
         if (mRcoiMatchForNetwork.isEmpty()) return 0;
         Pair<Long, Long> rcoiMatchEntry = mRcoiMatchForNetwork.get(ssid);
         if (rcoiMatchEntry == null) return 0;
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.hotspot2;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.net.wifi.hotspot2.PasspointConfiguration;
+import android.net.wifi.hotspot2.pps.HomeSp;
+import android.text.TextUtils;
+
+import com.android.server.wifi.hotspot2.anqp.ANQPElement;
+import com.android.server.wifi.hotspot2.anqp.Constants.ANQPElementType;
+import com.android.server.wifi.hotspot2.anqp.DomainNameElement;
+import com.android.server.wifi.hotspot2.anqp.NAIRealmData;
+import com.android.server.wifi.hotspot2.anqp.NAIRealmElement;
+import com.android.server.wifi.hotspot2.anqp.RoamingConsortiumElement;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of the Passpoint providers by the home domains, realms and OIs they can be matched
+ * with, used to find the providers that can possibly match the ANQP elements of an AP without
+ * matching every provider.
+ *
+ * A provider that is not returned by {@link #getCandidates(Map, long[])} is guaranteed not to
+ * match the AP. Providers with a SIM credential can match the AP through the MCC-MNC of the
+ * installed SIM and are always returned.
+ */
+public class PasspointProviderIndex {
+    private final Map<String, List<PasspointProvider>> mProvidersByDomain = new HashMap<>();
+    private final Map<String, List<PasspointProvider>> mProvidersByRealm = new HashMap<>();
+    private final Map<Long, List<PasspointProvider>> mProvidersByOi = new HashMap<>();
+    private final List<PasspointProvider> mSimProviders = new ArrayList<>();
+
+    /**
+     * @param providers providers to index, the index must be rebuilt when they change.
+     */
+    public PasspointProviderIndex(@NonNull Collection<PasspointProvider> providers) {
+        for (PasspointProvider provider : providers) {
+            PasspointConfiguration config = provider.getConfig();
+            if (config.getCredential().getSimCredential() != null) {
+                mSimProviders.add(provider);
+            }
+            HomeSp homeSp = config.getHomeSp();
+            addDomain(mProvidersByDomain, homeSp.getFqdn(), provider);
+            if (homeSp.getOtherHomePartners() != null) {
+                for (String otherHomePartner : homeSp.getOtherHomePartners()) {
+                    addDomain(mProvidersByDomain, otherHomePartner, provider);
+                }
+            }
+            addDomain(mProvidersByRealm, config.getCredential().getRealm(), provider);
+            addOis(homeSp.getMatchAllOis(), provider);
+            addOis(homeSp.getMatchAnyOis(), provider);
+            addOis(homeSp.getRoamingConsortiumOis(), provider);
+        }
+    }
+
+    /**
+     * Return the providers that can possibly match an AP.
+     *
+     * @param anqpElements ANQP elements of the AP
+     * @param roamingConsortiumsFromAp OIs of the Roaming Consortium information element of the
+     *                                 AP, may be null
+     * @return set of the candidate providers, compared by identity
+     */
+    @NonNull
+    public Set<PasspointProvider> getCandidates(
+            @NonNull Map<ANQPElementType, ANQPElement> anqpElements,
+            @Nullable long[] roamingConsortiumsFromAp) {
+        Set<PasspointProvider> candidates = Collections.newSetFromMap(new IdentityHashMap<>());
+        candidates.addAll(mSimProviders);
+
+        DomainNameElement domainNameElement =
+                (DomainNameElement) anqpElements.get(ANQPElementType.ANQPDomName);
+        if (domainNameElement != null && !mProvidersByDomain.isEmpty()) {
+            for (String domain : domainNameElement.getDomains()) {
+                addParentDomainMatches(mProvidersByDomain, domain, candidates);
+            }
+        }
+
+        NAIRealmElement naiRealmElement =
+                (NAIRealmElement) anqpElements.get(ANQPElementType.ANQPNAIRealm);
+        if (naiRealmElement != null && !mProvidersByRealm.isEmpty()) {
+            for (NAIRealmData realmData : naiRealmElement.getRealmDataList()) {
+                for (String realm : realmData.getRealms()) {
+                    addParentDomainMatches(mProvidersByRealm, realm, candidates);
+                }
+            }
+        }
+
+        if (!mProvidersByOi.isEmpty()) {
+            RoamingConsortiumElement roamingConsortiumElement = (RoamingConsortiumElement)
+                    anqpElements.get(ANQPElementType.ANQPRoamingConsortium);
+            if (roamingConsortiumElement != null) {
+                for (long oi : roamingConsortiumElement.getOIs()) {
+                    addAll(mProvidersByOi.get(oi), candidates);
+                }
+            }
+            if (roamingConsortiumsFromAp != null) {
+                for (long oi : roamingConsortiumsFromAp) {
+                    addAll(mProvidersByOi.get(oi), candidates);
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Return whether a provider is indexed under any of the given OIs, which makes an AP
+     * advertising them in its Roaming Consortium information element likely to match it.
+     *
+     * @param roamingConsortiumsFromAp OIs of the Roaming Consortium information element of the
+     *                                 AP, may be null
+     */
+    public boolean hasOiMatch(@Nullable long[] roamingConsortiumsFromAp) {
+        if (roamingConsortiumsFromAp == null || mProvidersByOi.isEmpty()) {
+            return false;
+        }
+        for (long oi : roamingConsortiumsFromAp) {
+            if (mProvidersByOi.containsKey(oi)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void addOis(long[] ois, PasspointProvider provider) {
+        if (ois == null) {
+            return;
+        }
+        for (long oi : ois) {
+            List<PasspointProvider> providers = mProvidersByOi.get(oi);
+            if (providers == null) {
+                providers = new ArrayList<>();
+                mProvidersByOi.put(oi, providers);
+            }
+            // Providers are added one after the other, so a provider listing an OI more than
+            // once can only be the last one of the list.
+            if (providers.isEmpty() || providers.get(providers.size() - 1) != provider) {
+                providers.add(provider);
+            }
+        }
+    }
+
+    private static void addDomain(Map<String, List<PasspointProvider>> index, String domain,
+            PasspointProvider provider) {
+        if (TextUtils.isEmpty(domain)) {
+            return;
+        }
+        String key = TextUtils.join(".", Utils.splitDomain(domain));
+        List<PasspointProvider> providers = index.get(key);
+        if (providers == null) {
+            providers = new ArrayList<>();
+            index.put(key, providers);
+        }
+        providers.add(provider);
+    }
+
+    /**
+     * Add the providers indexed under the given domain or any of its parent domains, which are
+     * the ones {@link DomainMatcher#arg2SubdomainOfArg1(String, String)} can match the domain
+     * with.
+     */
+    private static void addParentDomainMatches(Map<String, List<PasspointProvider>> index,
+            String domain, Set<PasspointProvider> candidates) {
+        if (TextUtils.isEmpty(domain)) {
+            return;
+        }
+        StringBuilder key = new StringBuilder();
+        boolean first = true;
+        for (String label : Utils.splitDomain(domain)) {
+            if (!first) {
+                key.append('.');
+            }
+            first = false;
+            key.append(label);
+            addAll(index.get(key.toString()), candidates);
+        }
+    }
+
+    private static void addAll(List<PasspointProvider> providers,
+            Set<PasspointProvider> candidates) {
+        if (providers != null) {
+            candidates.addAll(providers);
+        }
+    }
+}
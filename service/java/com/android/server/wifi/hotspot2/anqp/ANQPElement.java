@@ -5,6 +5,8 @@ package com.android.server.wifi.hotspot2.anqp;
  */
 public abstract class ANQPElement {
     private final Constants.ANQPElementType mID;
+    // Raw payload the element was parsed from, if known.
+    private byte[] mPayload;
 
     protected ANQPElement(Constants.ANQPElementType id) {
         mID = id;
@@ -13,4 +15,18 @@ public abstract class ANQPElement {
     public Constants.ANQPElementType getID() {
         return mID;
     }
+
+    /**
+     * Return the raw payload the element was parsed from, which can be parsed again with
+     * {@link ANQPParser#parsePayload(Constants.ANQPElementType, byte[])}.
+     *
+     * @return the payload, or null if the element was not created by {@link ANQPParser}
+     */
+    public byte[] getPayload() {
+        return mPayload;
+    }
+
+    void setPayload(byte[] payload) {
+        mPayload = payload;
+    }
 }
@@ -57,6 +57,18 @@ public class ANQPParser {
      */
     public static ANQPElement parseElement(Constants.ANQPElementType infoID, ByteBuffer payload)
             throws ProtocolException {
+        if (infoID == Constants.ANQPElementType.ANQPVendorSpec) {
+            // The payload of the Hotspot 2.0 element is kept by parseHS20Element().
+            return parseVendorSpecificElement(payload);
+        }
+        byte[] rawPayload = getRemaining(payload);
+        ANQPElement element = parseBaseElement(infoID, payload);
+        element.setPayload(rawPayload);
+        return element;
+    }
+
+    private static ANQPElement parseBaseElement(Constants.ANQPElementType infoID,
+            ByteBuffer payload) throws ProtocolException {
         switch (infoID) {
             case ANQPVenueName:
                 return VenueNameElement.parse(payload);
@@ -70,8 +82,6 @@ public class ANQPParser {
                 return ThreeGPPNetworkElement.parse(payload);
             case ANQPDomName:
                 return DomainNameElement.parse(payload);
-            case ANQPVendorSpec:
-                return parseVendorSpecificElement(payload);
             case ANQPVenueUrl:
                 return VenueUrlElement.parse(payload);
             default:
@@ -90,6 +100,38 @@ public class ANQPParser {
      */
     public static ANQPElement parseHS20Element(Constants.ANQPElementType infoID,
             ByteBuffer payload) throws ProtocolException {
+        byte[] rawPayload = getRemaining(payload);
+        ANQPElement element = parseBaseHS20Element(infoID, payload);
+        element.setPayload(rawPayload);
+        return element;
+    }
+
+    /**
+     * Parse an ANQP element from the payload returned by {@link ANQPElement#getPayload()}.
+     *
+     * @param infoID The ANQP element type
+     * @param payload The payload of the element
+     * @return {@link com.android.server.wifi.hotspot2.anqp.ANQPElement}
+     * @throws BufferUnderflowException
+     * @throws ProtocolException
+     */
+    public static ANQPElement parsePayload(Constants.ANQPElementType infoID, byte[] payload)
+            throws ProtocolException {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        if (Constants.getHS20ElementID(infoID) != null) {
+            return parseHS20Element(infoID, buffer);
+        }
+        return parseElement(infoID, buffer);
+    }
+
+    private static byte[] getRemaining(ByteBuffer payload) {
+        byte[] bytes = new byte[payload.remaining()];
+        payload.duplicate().get(bytes);
+        return bytes;
+    }
+
+    private static ANQPElement parseBaseHS20Element(Constants.ANQPElementType infoID,
+            ByteBuffer payload) throws ProtocolException {
         switch (infoID) {
             case HSFriendlyName:
                 return HSFriendlyNameElement.parse(payload);
@@ -109,11 +109,11 @@ public class WificondScannerImpl extends WifiScannerImpl implements Handler.Call
         mClock = clock;
 
         wifiMonitor.registerHandler(getIfaceName(),
-                WifiMonitor.SCAN_FAILED_EVENT, mEventHandler);
+                WifiMonitor.SCAN_FAILED_EVENT, mEventHandler, false);
         wifiMonitor.registerHandler(getIfaceName(),
-                WifiMonitor.PNO_SCAN_RESULTS_EVENT, mEventHandler);
+                WifiMonitor.PNO_SCAN_RESULTS_EVENT, mEventHandler, false);
         wifiMonitor.registerHandler(getIfaceName(),
-                WifiMonitor.SCAN_RESULTS_EVENT, mEventHandler);
+                WifiMonitor.SCAN_RESULTS_EVENT, mEventHandler, false);
     }
 
     @Override
@@ -16,16 +16,36 @@
 
 package com.android.server.wifi.util;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.OutputStream;
 
 /**
  * A ring buffer where each element of the ring is itself a byte array.
+ *
+ * The data of all the elements is copied into a single circular byte store, and the offset and
+ * length of each element is kept in a circular index, so appending an element and evicting the
+ * oldest one are O(1) and do not allocate once the store has grown to its steady state size. An
+ * element may wrap around the end of the store, use {@link #writeBuffer(int, OutputStream)} to
+ * read it without copying.
  */
 public class ByteArrayRingBuffer {
-    private ArrayList<byte[]> mArrayList;
+    private static final byte[] EMPTY_STORE = new byte[0];
+    private static final int MIN_STORE_BYTES = 4096;
+    private static final int INITIAL_RECORD_CAPACITY = 16;
+
+    // Circular store of the element data, grown on demand up to |mMaxBytes|.
+    private byte[] mStore = EMPTY_STORE;
+    // Offset in |mStore| of the first byte of the oldest element.
+    private int mHead;
     private int mMaxBytes;
     private int mBytesUsed;
 
+    // Circular index of the elements, oldest first.
+    private int[] mRecordOffsets = new int[INITIAL_RECORD_CAPACITY];
+    private int[] mRecordLengths = new int[INITIAL_RECORD_CAPACITY];
+    private int mFirstRecord;
+    private int mNumRecords;
+
     /**
      * Creates a ring buffer that holds at most |maxBytes| of data. The overhead for each element
      * is not included in this limit.
@@ -35,7 +55,6 @@ public class ByteArrayRingBuffer {
         if (maxBytes < 1) {
             throw new IllegalArgumentException();
         }
-        mArrayList = new ArrayList<byte[]>();
         mMaxBytes = maxBytes;
         mBytesUsed = 0;
     }
@@ -46,27 +65,87 @@ public class ByteArrayRingBuffer {
      * <p><b>Note:</b> will fail if |newData| itself exceeds the size limit for this buffer.
      * Will first remove all existing entries in this case. (This guarantees that the ring buffer
      * always represents a contiguous sequence of data.)
-     * @param newData data to be added to the ring
+     * @param newData data to be added to the ring, copied into the ring
      * @return true if the data was added
      */
     public boolean appendBuffer(byte[] newData) {
-        pruneToSize(mMaxBytes - newData.length);
-        if (mBytesUsed + newData.length > mMaxBytes) {
+        return appendBuffer(newData, 0, newData.length);
+    }
+
+    /**
+     * Same as {@link #appendBuffer(byte[])}, for the |length| bytes of |newData| starting at
+     * |offset|.
+     */
+    public boolean appendBuffer(byte[] newData, int offset, int length) {
+        pruneToSize(mMaxBytes - length);
+        if (mBytesUsed + length > mMaxBytes) {
             return false;
         }
 
-        mArrayList.add(newData);
-        mBytesUsed += newData.length;
+        ensureStoreCapacity(mBytesUsed + length);
+        int tail = storeOffset(mHead + mBytesUsed);
+        int firstChunk = Math.min(length, mStore.length - tail);
+        System.arraycopy(newData, offset, mStore, tail, firstChunk);
+        System.arraycopy(newData, offset + firstChunk, mStore, 0, length - firstChunk);
+
+        ensureRecordCapacity(mNumRecords + 1);
+        int record = recordIndex(mNumRecords);
+        mRecordOffsets[record] = tail;
+        mRecordLengths[record] = length;
+        mNumRecords++;
+        mBytesUsed += length;
         return true;
     }
 
     /**
-     * Returns the |i|-th element of the ring. The element retains its position in the ring.
+     * Returns a copy of the |i|-th element of the ring. The element retains its position in the
+     * ring.
      * @param i
      * @return the requested element
      */
     public byte[] getBuffer(int i) {
-        return mArrayList.get(i);
+        checkIndex(i);
+        byte[] buffer = new byte[mRecordLengths[recordIndex(i)]];
+        copyBuffer(i, buffer, 0);
+        return buffer;
+    }
+
+    /**
+     * Returns the length of the |i|-th element of the ring.
+     */
+    public int getBufferLength(int i) {
+        checkIndex(i);
+        return mRecordLengths[recordIndex(i)];
+    }
+
+    /**
+     * Copies the |i|-th element of the ring into |dest| at |destOffset|.
+     * @return the number of bytes copied
+     */
+    public int copyBuffer(int i, byte[] dest, int destOffset) {
+        checkIndex(i);
+        int record = recordIndex(i);
+        int offset = mRecordOffsets[record];
+        int length = mRecordLengths[record];
+        int firstChunk = Math.min(length, mStore.length - offset);
+        System.arraycopy(mStore, offset, dest, destOffset, firstChunk);
+        System.arraycopy(mStore, 0, dest, destOffset + firstChunk, length - firstChunk);
+        return length;
+    }
+
+    /**
+     * Writes the |i|-th element of the ring to |out| directly from the ring storage.
+     */
+    public void writeBuffer(int i, OutputStream out) throws IOException {
+        checkIndex(i);
+        int record = recordIndex(i);
+        int offset = mRecordOffsets[record];
+        int length = mRecordLengths[record];
+        int firstChunk = Math.min(length, mStore.length - offset);
+        out.write(mStore, offset, firstChunk);
+        if (length > firstChunk) {
+            out.write(mStore, 0, length - firstChunk);
+        }
     }
 
     /**
@@ -74,7 +153,14 @@ public class ByteArrayRingBuffer {
      * @return the number of elements present
      */
     public int getNumBuffers() {
-        return mArrayList.size();
+        return mNumRecords;
+    }
+
+    /**
+     * Returns the total number of bytes held by the elements of the ring.
+     */
+    public int getBytesUsed() {
+        return mBytesUsed;
     }
 
     /**
@@ -84,16 +170,71 @@ public class ByteArrayRingBuffer {
     public void resize(int maxBytes) {
         pruneToSize(maxBytes);
         mMaxBytes = maxBytes;
+        if (mStore.length > maxBytes) {
+            reallocateStore(Math.max(maxBytes, 0));
+        }
     }
 
     private void pruneToSize(int sizeBytes) {
-        int newBytesUsed = mBytesUsed;
-        int i = 0;
-        while (i < mArrayList.size() && newBytesUsed > sizeBytes) {
-            newBytesUsed -= mArrayList.get(i).length;
-            i++;
+        while (mNumRecords > 0 && mBytesUsed > sizeBytes) {
+            int length = mRecordLengths[mFirstRecord];
+            mHead = storeOffset(mHead + length);
+            mBytesUsed -= length;
+            mFirstRecord = (mFirstRecord + 1) % mRecordOffsets.length;
+            mNumRecords--;
+        }
+        if (mNumRecords == 0) {
+            mHead = 0;
+            mFirstRecord = 0;
+        }
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= mNumRecords) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + mNumRecords);
+        }
+    }
+
+    private int recordIndex(int i) {
+        return (mFirstRecord + i) % mRecordOffsets.length;
+    }
+
+    private int storeOffset(int offset) {
+        return mStore.length == 0 ? 0 : offset % mStore.length;
+    }
+
+    private void ensureStoreCapacity(int capacity) {
+        if (capacity <= mStore.length) return;
+        int newCapacity = Math.max(capacity, Math.max(MIN_STORE_BYTES, mStore.length * 2));
+        reallocateStore(Math.min(newCapacity, mMaxBytes));
+    }
+
+    /** Moves the elements to the start of a new store of the given capacity. */
+    private void reallocateStore(int capacity) {
+        byte[] newStore = capacity == 0 ? EMPTY_STORE : new byte[capacity];
+        int offset = 0;
+        for (int i = 0; i < mNumRecords; i++) {
+            int record = recordIndex(i);
+            copyBuffer(i, newStore, offset);
+            mRecordOffsets[record] = offset;
+            offset += mRecordLengths[record];
+        }
+        mStore = newStore;
+        mHead = 0;
+    }
+
+    private void ensureRecordCapacity(int capacity) {
+        if (capacity <= mRecordOffsets.length) return;
+        int newCapacity = Math.max(capacity, mRecordOffsets.length * 2);
+        int[] newOffsets = new int[newCapacity];
+        int[] newLengths = new int[newCapacity];
+        for (int i = 0; i < mNumRecords; i++) {
+            int record = recordIndex(i);
+            newOffsets[i] = mRecordOffsets[record];
+            newLengths[i] = mRecordLengths[record];
         }
-        mArrayList.subList(0, i).clear();
-        mBytesUsed = newBytesUsed;
+        mRecordOffsets = newOffsets;
+        mRecordLengths = newLengths;
+        mFirstRecord = 0;
     }
 }
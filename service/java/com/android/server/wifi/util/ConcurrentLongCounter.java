@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.util;
+
+import android.annotation.NonNull;
+
+import com.android.server.wifi.proto.nano.WifiMetricsProto.Int32Count;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts occurrences of long keys, without locking, for metrics updated from several threads.
+ *
+ * Up to {@link #getCapacity()} keys and their counts are kept in an open addressing table of
+ * atomic slots, so adding to the count of one of these keys neither locks nor allocates. The
+ * table has twice as many slots as keys, which keeps the probes short. Once the table holds
+ * {@link #getCapacity()} keys, additions for new keys fall back to a map guarded by a lock, so
+ * that no sample is lost, and are counted by {@link #getOverflowCount()}.
+ *
+ * Reads are weakly consistent: an addition running concurrently with a read or with
+ * {@link #clear()} may or may not be seen by it.
+ */
+public class ConcurrentLongCounter {
+    /** Marks an unused slot, this key can not be counted. */
+    private static final long EMPTY_KEY = Long.MIN_VALUE;
+
+    /** Consumer of a (key, count) pair. */
+    public interface KeyCountConsumer {
+        /** Consumes the count of a key. */
+        void accept(long key, long count);
+    }
+
+    private static class Table {
+        public final AtomicLongArray keys;
+        public final AtomicLongArray counts;
+        /** Number of slots claimed by a key. */
+        public final AtomicInteger size = new AtomicInteger();
+        /** Counts of the keys which did not fit in the table, guarded by itself. */
+        public final Map<Long, Long> overflow = new HashMap<>();
+        /** Number of additions made to |overflow|. */
+        public final AtomicLong overflowCount = new AtomicLong();
+
+        Table(int numSlots) {
+            keys = new AtomicLongArray(numSlots);
+            counts = new AtomicLongArray(numSlots);
+            for (int i = 0; i < numSlots; i++) {
+                keys.set(i, EMPTY_KEY);
+            }
+        }
+    }
+
+    private final int mCapacity;
+    private final int mNumSlots;
+    private volatile Table mTable;
+
+    /**
+     * @param capacity max number of distinct keys counted without locking, rounded up to a power
+     *                 of 2.
+     */
+    public ConcurrentLongCounter(int capacity) {
+        if (capacity <= 0 || capacity > (1 << 29)) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        mCapacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        mNumSlots = mCapacity * 2;
+        mTable = new Table(mNumSlots);
+    }
+
+    /** Returns the max number of distinct keys counted without locking. */
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    /** Increments the count of a key by 1. */
+    public void increment(long key) {
+        add(key, 1);
+    }
+
+    /** Increments the count of a key by |delta|. */
+    public void add(long key, long delta) {
+        if (key == EMPTY_KEY) {
+            throw new IllegalArgumentException("Unsupported key " + key);
+        }
+        Table table = mTable;
+        int mask = mNumSlots - 1;
+        int index = spread(key) & mask;
+        // The table is never more than half full, so the probe ends at an empty slot at the
+        // latest, unless the key is found first.
+        while (true) {
+            long current = table.keys.get(index);
+            if (current == EMPTY_KEY) {
+                if (table.size.incrementAndGet() > mCapacity) {
+                    table.size.decrementAndGet();
+                    addToOverflow(table, key, delta);
+                    return;
+                }
+                // Claim the slot, unless another thread claimed it first, maybe for the same key.
+                if (table.keys.compareAndSet(index, EMPTY_KEY, key)) {
+                    current = key;
+                } else {
+                    table.size.decrementAndGet();
+                    current = table.keys.get(index);
+                }
+            }
+            if (current == key) {
+                table.counts.addAndGet(index, delta);
+                return;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    private static void addToOverflow(Table table, long key, long delta) {
+        synchronized (table.overflow) {
+            table.overflow.merge(key, delta, Long::sum);
+        }
+        table.overflowCount.incrementAndGet();
+    }
+
+    /** Returns the count of a key, 0 if it was never counted. */
+    public long get(long key) {
+        Table table = mTable;
+        long count = 0;
+        int mask = mNumSlots - 1;
+        int index = spread(key) & mask;
+        while (true) {
+            long current = table.keys.get(index);
+            if (current == key) {
+                count = table.counts.get(index);
+                break;
+            }
+            if (current == EMPTY_KEY) {
+                break;
+            }
+            index = (index + 1) & mask;
+        }
+        if (table.overflowCount.get() > 0) {
+            synchronized (table.overflow) {
+                count += table.overflow.getOrDefault(key, 0L);
+            }
+        }
+        return count;
+    }
+
+    /** Returns the number of distinct keys counted. */
+    public int size() {
+        return snapshot().size();
+    }
+
+    /**
+     * Returns the number of additions for keys which did not fit in the table and were counted
+     * under a lock.
+     */
+    public long getOverflowCount() {
+        return mTable.overflowCount.get();
+    }
+
+    /**
+     * Calls |consumer| with each key and its count, in increasing order of keys.
+     */
+    public void forEach(@NonNull KeyCountConsumer consumer) {
+        Map<Long, Long> counts = snapshot();
+        long[] keys = new long[counts.size()];
+        int i = 0;
+        for (long key : counts.keySet()) {
+            keys[i++] = key;
+        }
+        Arrays.sort(keys);
+        for (long key : keys) {
+            consumer.accept(key, counts.get(key));
+        }
+    }
+
+    /** Returns the counts of all the keys, merging the table and the overflow map. */
+    private Map<Long, Long> snapshot() {
+        Table table = mTable;
+        Map<Long, Long> counts = new HashMap<>();
+        for (int i = 0; i < mNumSlots; i++) {
+            long key = table.keys.get(i);
+            if (key != EMPTY_KEY) {
+                counts.merge(key, table.counts.get(i), Long::sum);
+            }
+        }
+        if (table.overflowCount.get() > 0) {
+            synchronized (table.overflow) {
+                for (Map.Entry<Long, Long> entry : table.overflow.entrySet()) {
+                    counts.merge(entry.getKey(), entry.getValue(), Long::sum);
+                }
+            }
+        }
+        return counts;
+    }
+
+    /** Removes all the keys and resets the overflow count. */
+    public void clear() {
+        mTable = new Table(mNumSlots);
+    }
+
+    /**
+     * Converts this object to a standard Protobuf representation, ordered by key. Keys and counts
+     * are expected to fit in an int.
+     */
+    public Int32Count[] toProto() {
+        List<Int32Count> output = new ArrayList<>();
+        forEach((key, count) -> {
+            Int32Count entry = new Int32Count();
+            entry.key = (int) key;
+            entry.count = (int) count;
+            output.add(entry);
+        });
+        return output.toArray(new Int32Count[0]);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        forEach((key, count) -> {
+            if (sb.length() > 1) sb.append(", ");
+            sb.append(key).append('=').append(count);
+        });
+        return sb.append('}').toString();
+    }
+
+    private static int spread(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
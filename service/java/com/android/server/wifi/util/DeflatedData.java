@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.util;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.util.Base64;
+import android.util.Base64OutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Diagnostic data kept deflated in memory.
+ *
+ * The data is deflated as it is written to a {@link Builder}, so the uncompressed data never
+ * needs to be held in a single array, and is only inflated again, chunk by chunk, if it has to be
+ * dumped uncompressed.
+ */
+public class DeflatedData {
+    private static final int CHUNK_SIZE = 1024;
+
+    private final byte[] mDeflated;
+    private final int mRawLength;
+
+    private DeflatedData(byte[] deflated, int rawLength) {
+        mDeflated = deflated;
+        mRawLength = rawLength;
+    }
+
+    /**
+     * Deflates the given data, returns null if the data is null.
+     */
+    @Nullable
+    public static DeflatedData of(@Nullable byte[] data) {
+        if (data == null) return null;
+        Builder builder = new Builder();
+        builder.write(data, 0, data.length);
+        return builder.build();
+    }
+
+    /** Returns the length of the uncompressed data. */
+    public int getRawLength() {
+        return mRawLength;
+    }
+
+    /** Returns the length of the deflated data. */
+    public int getDeflatedLength() {
+        return mDeflated.length;
+    }
+
+    /** Inflates the data into a new array. */
+    @NonNull
+    public byte[] toByteArray() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(mRawLength);
+        try {
+            writeInflated(out);
+        } catch (IOException e) {
+            // Not expected for in-memory streams.
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes the data encoded in base64 to |pw|. As with a one-shot compression, the deflated
+     * data is written if it is smaller than the uncompressed data, and the uncompressed data is
+     * written otherwise.
+     */
+    public void writeBase64(@NonNull PrintWriter pw) {
+        try (OutputStream out = new Base64OutputStream(new PrintWriterOutputStream(pw),
+                Base64.DEFAULT)) {
+            if (mDeflated.length < mRawLength) {
+                out.write(mDeflated);
+            } else {
+                writeInflated(out);
+            }
+        } catch (IOException e) {
+            pw.println("Failed to write data: " + e);
+        }
+    }
+
+    /** Returns a stream that inflates the data as it is read. */
+    @NonNull
+    public InputStream openInflatedStream() {
+        return new InflaterInputStream(new ByteArrayInputStream(mDeflated));
+    }
+
+    private void writeInflated(OutputStream out) throws IOException {
+        try (InputStream in = openInflatedStream()) {
+            byte[] chunk = new byte[CHUNK_SIZE];
+            int count;
+            while ((count = in.read(chunk)) > 0) {
+                out.write(chunk, 0, count);
+            }
+        }
+    }
+
+    /**
+     * Deflates the data written to it, until {@link #build()} is called.
+     */
+    public static class Builder extends OutputStream {
+        private final ByteArrayOutputStream mBytes = new ByteArrayOutputStream(CHUNK_SIZE);
+        private final Deflater mDeflater = new Deflater(Deflater.BEST_SPEED);
+        private final DeflaterOutputStream mDeflaterStream =
+                new DeflaterOutputStream(mBytes, mDeflater, CHUNK_SIZE);
+        private int mRawLength;
+
+        @Override
+        public void write(int b) {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            try {
+                mDeflaterStream.write(b, off, len);
+            } catch (IOException e) {
+                // Not expected for in-memory streams.
+            }
+            mRawLength += len;
+        }
+
+        /**
+         * Finishes the compression and returns the deflated data. The builder can not be used
+         * afterwards.
+         */
+        @NonNull
+        public DeflatedData build() {
+            try {
+                mDeflaterStream.finish();
+            } catch (IOException e) {
+                // Not expected for in-memory streams.
+            } finally {
+                mDeflater.end();
+            }
+            return new DeflatedData(mBytes.toByteArray(), mRawLength);
+        }
+    }
+}
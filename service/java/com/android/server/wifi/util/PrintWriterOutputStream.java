@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.util;
+
+import android.annotation.NonNull;
+
+import java.io.OutputStream;
+import java.io.PrintWriter;
+
+/**
+ * Writes ASCII bytes to a PrintWriter, such as the output of a base64 encoder. Closing the
+ * stream flushes the PrintWriter without closing it.
+ */
+public class PrintWriterOutputStream extends OutputStream {
+    private final PrintWriter mPw;
+
+    public PrintWriterOutputStream(@NonNull PrintWriter pw) {
+        mPw = pw;
+    }
+
+    @Override
+    public void write(int b) {
+        mPw.write(b & 0xFF);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            mPw.write(b[i] & 0xFF);
+        }
+    }
+
+    @Override
+    public void close() {
+        mPw.flush();
+    }
+}
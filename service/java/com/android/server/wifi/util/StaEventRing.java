@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.util;
+
+import android.annotation.NonNull;
+
+import com.android.server.wifi.proto.nano.WifiMetricsProto.StaEvent;
+import com.android.server.wifi.proto.nano.WifiMetricsProto.StaEvent.ConfigInfo;
+
+import java.util.Arrays;
+
+/**
+ * Fixed size ring of {@link StaEvent}s, each stored as a packed record of primitives.
+ *
+ * Appending an event copies its fields into preallocated arrays, so the caller can reuse the
+ * same StaEvent for every event and the ring does not allocate once created. When the ring is
+ * full, the oldest event is overwritten. Events are only decoded back into StaEvent protos when
+ * read.
+ *
+ * This class is not thread safe.
+ */
+public class StaEventRing {
+    // Layout of the int part of a record.
+    private static final int I_TYPE = 0;
+    private static final int I_REASON = 1;
+    private static final int I_STATUS = 2;
+    private static final int I_LAST_RSSI = 3;
+    private static final int I_LAST_LINK_SPEED = 4;
+    private static final int I_LAST_FREQ = 5;
+    private static final int I_SUPPLICANT_STATE_CHANGES_BITMASK = 6;
+    private static final int I_FRAMEWORK_DISCONNECT_REASON = 7;
+    private static final int I_AUTH_FAILURE_REASON = 8;
+    private static final int I_LAST_SCORE = 9;
+    private static final int I_LAST_WIFI_USABILITY_SCORE = 10;
+    private static final int I_LAST_PREDICTION_HORIZON_SEC = 11;
+    private static final int I_LINK_PROBE_SUCCESS_ELAPSED_TIME_MS = 12;
+    private static final int I_LINK_PROBE_FAILURE_REASON = 13;
+    private static final int I_INTERFACE_ROLE = 14;
+    private static final int I_FLAGS = 15;
+    private static final int I_ALLOWED_KEY_MANAGEMENT = 16;
+    private static final int I_ALLOWED_PROTOCOLS = 17;
+    private static final int I_ALLOWED_AUTH_ALGORITHMS = 18;
+    private static final int I_ALLOWED_PAIRWISE_CIPHERS = 19;
+    private static final int I_ALLOWED_GROUP_CIPHERS = 20;
+    private static final int I_SCAN_RSSI = 21;
+    private static final int I_SCAN_FREQ = 22;
+    private static final int INTS_PER_EVENT = 23;
+
+    // Layout of the long part of a record.
+    private static final int L_WALL_CLOCK_MILLIS = 0;
+    private static final int L_START_TIME_MILLIS = 1;
+    private static final int L_MOBILE_TX_BYTES = 2;
+    private static final int L_MOBILE_RX_BYTES = 3;
+    private static final int L_TOTAL_TX_BYTES = 4;
+    private static final int L_TOTAL_RX_BYTES = 5;
+    private static final int LONGS_PER_EVENT = 6;
+
+    // Bits of I_FLAGS.
+    private static final int FLAG_LOCAL_GEN = 1 << 0;
+    private static final int FLAG_ASSOCIATION_TIMED_OUT = 1 << 1;
+    private static final int FLAG_LINK_PROBE_WAS_SUCCESS = 1 << 2;
+    private static final int FLAG_SCREEN_ON = 1 << 3;
+    private static final int FLAG_IS_CELLULAR_DATA_AVAILABLE = 1 << 4;
+    private static final int FLAG_IS_ADAPTIVE_CONNECTIVITY_ENABLED = 1 << 5;
+    private static final int FLAG_HAS_CONFIG_INFO = 1 << 6;
+    private static final int FLAG_HIDDEN_SSID = 1 << 7;
+    private static final int FLAG_IS_PASSPOINT = 1 << 8;
+    private static final int FLAG_IS_EPHEMERAL = 1 << 9;
+    private static final int FLAG_HAS_EVER_CONNECTED = 1 << 10;
+
+    private final int mCapacity;
+    private final int[] mInts;
+    private final long[] mLongs;
+    private final String[] mInterfaceNames;
+    // Index of the oldest event.
+    private int mHead;
+    private int mSize;
+
+    /**
+     * @param capacity max number of events kept.
+     */
+    public StaEventRing(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        mCapacity = capacity;
+        mInts = new int[capacity * INTS_PER_EVENT];
+        mLongs = new long[capacity * LONGS_PER_EVENT];
+        mInterfaceNames = new String[capacity];
+    }
+
+    /** Returns the max number of events kept. */
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    /** Returns the number of events in the ring. */
+    public int size() {
+        return mSize;
+    }
+
+    /** Removes all the events. */
+    public void clear() {
+        mHead = 0;
+        mSize = 0;
+        Arrays.fill(mInterfaceNames, null);
+    }
+
+    /**
+     * Appends an event, overwriting the oldest event if the ring is full. The fields of |event|
+     * are copied, so it can be modified or reused once this returns.
+     *
+     * @param event the event to append.
+     * @param wallClockMillis wall clock time of the event, only used for dumps.
+     */
+    public void append(@NonNull StaEvent event, long wallClockMillis) {
+        int slot;
+        if (mSize < mCapacity) {
+            slot = (mHead + mSize) % mCapacity;
+            mSize++;
+        } else {
+            slot = mHead;
+            mHead = (mHead + 1) % mCapacity;
+        }
+        int i = slot * INTS_PER_EVENT;
+        mInts[i + I_TYPE] = event.type;
+        mInts[i + I_REASON] = event.reason;
+        mInts[i + I_STATUS] = event.status;
+        mInts[i + I_LAST_RSSI] = event.lastRssi;
+        mInts[i + I_LAST_LINK_SPEED] = event.lastLinkSpeed;
+        mInts[i + I_LAST_FREQ] = event.lastFreq;
+        mInts[i + I_SUPPLICANT_STATE_CHANGES_BITMASK] = event.supplicantStateChangesBitmask;
+        mInts[i + I_FRAMEWORK_DISCONNECT_REASON] = event.frameworkDisconnectReason;
+        mInts[i + I_AUTH_FAILURE_REASON] = event.authFailureReason;
+        mInts[i + I_LAST_SCORE] = event.lastScore;
+        mInts[i + I_LAST_WIFI_USABILITY_SCORE] = event.lastWifiUsabilityScore;
+        mInts[i + I_LAST_PREDICTION_HORIZON_SEC] = event.lastPredictionHorizonSec;
+        mInts[i + I_LINK_PROBE_SUCCESS_ELAPSED_TIME_MS] = event.linkProbeSuccessElapsedTimeMs;
+        mInts[i + I_LINK_PROBE_FAILURE_REASON] = event.linkProbeFailureReason;
+        mInts[i + I_INTERFACE_ROLE] = event.interfaceRole;
+        int flags = 0;
+        if (event.localGen) flags |= FLAG_LOCAL_GEN;
+        if (event.associationTimedOut) flags |= FLAG_ASSOCIATION_TIMED_OUT;
+        if (event.linkProbeWasSuccess) flags |= FLAG_LINK_PROBE_WAS_SUCCESS;
+        if (event.screenOn) flags |= FLAG_SCREEN_ON;
+        if (event.isCellularDataAvailable) flags |= FLAG_IS_CELLULAR_DATA_AVAILABLE;
+        if (event.isAdaptiveConnectivityEnabled) flags |= FLAG_IS_ADAPTIVE_CONNECTIVITY_ENABLED;
+        ConfigInfo info = event.configInfo;
+        if (info != null) {
+            flags |= FLAG_HAS_CONFIG_INFO;
+            if (info.hiddenSsid) flags |= FLAG_HIDDEN_SSID;
+            if (info.isPasspoint) flags |= FLAG_IS_PASSPOINT;
+            if (info.isEphemeral) flags |= FLAG_IS_EPHEMERAL;
+            if (info.hasEverConnected) flags |= FLAG_HAS_EVER_CONNECTED;
+            mInts[i + I_ALLOWED_KEY_MANAGEMENT] = info.allowedKeyManagement;
+            mInts[i + I_ALLOWED_PROTOCOLS] = info.allowedProtocols;
+            mInts[i + I_ALLOWED_AUTH_ALGORITHMS] = info.allowedAuthAlgorithms;
+            mInts[i + I_ALLOWED_PAIRWISE_CIPHERS] = info.allowedPairwiseCiphers;
+            mInts[i + I_ALLOWED_GROUP_CIPHERS] = info.allowedGroupCiphers;
+            mInts[i + I_SCAN_RSSI] = info.scanRssi;
+            mInts[i + I_SCAN_FREQ] = info.scanFreq;
+        }
+        mInts[i + I_FLAGS] = flags;
+
+        int l = slot * LONGS_PER_EVENT;
+        mLongs[l + L_WALL_CLOCK_MILLIS] = wallClockMillis;
+        mLongs[l + L_START_TIME_MILLIS] = event.startTimeMillis;
+        mLongs[l + L_MOBILE_TX_BYTES] = event.mobileTxBytes;
+        mLongs[l + L_MOBILE_RX_BYTES] = event.mobileRxBytes;
+        mLongs[l + L_TOTAL_TX_BYTES] = event.totalTxBytes;
+        mLongs[l + L_TOTAL_RX_BYTES] = event.totalRxBytes;
+        mInterfaceNames[slot] = event.interfaceName;
+    }
+
+    /**
+     * Decodes an event.
+     *
+     * @param index index of the event, 0 being the oldest event in the ring.
+     * @return a new StaEvent equal to the one that was appended.
+     */
+    @NonNull
+    public StaEvent get(int index) {
+        int slot = toSlot(index);
+        int i = slot * INTS_PER_EVENT;
+        StaEvent event = new StaEvent();
+        event.type = mInts[i + I_TYPE];
+        event.reason = mInts[i + I_REASON];
+        event.status = mInts[i + I_STATUS];
+        event.lastRssi = mInts[i + I_LAST_RSSI];
+        event.lastLinkSpeed = mInts[i + I_LAST_LINK_SPEED];
+        event.lastFreq = mInts[i + I_LAST_FREQ];
+        event.supplicantStateChangesBitmask = mInts[i + I_SUPPLICANT_STATE_CHANGES_BITMASK];
+        event.frameworkDisconnectReason = mInts[i + I_FRAMEWORK_DISCONNECT_REASON];
+        event.authFailureReason = mInts[i + I_AUTH_FAILURE_REASON];
+        event.lastScore = mInts[i + I_LAST_SCORE];
+        event.lastWifiUsabilityScore = mInts[i + I_LAST_WIFI_USABILITY_SCORE];
+        event.lastPredictionHorizonSec = mInts[i + I_LAST_PREDICTION_HORIZON_SEC];
+        event.linkProbeSuccessElapsedTimeMs = mInts[i + I_LINK_PROBE_SUCCESS_ELAPSED_TIME_MS];
+        event.linkProbeFailureReason = mInts[i + I_LINK_PROBE_FAILURE_REASON];
+        event.interfaceRole = mInts[i + I_INTERFACE_ROLE];
+        int flags = mInts[i + I_FLAGS];
+        event.localGen = (flags & FLAG_LOCAL_GEN) != 0;
+        event.associationTimedOut = (flags & FLAG_ASSOCIATION_TIMED_OUT) != 0;
+        event.linkProbeWasSuccess = (flags & FLAG_LINK_PROBE_WAS_SUCCESS) != 0;
+        event.screenOn = (flags & FLAG_SCREEN_ON) != 0;
+        event.isCellularDataAvailable = (flags & FLAG_IS_CELLULAR_DATA_AVAILABLE) != 0;
+        event.isAdaptiveConnectivityEnabled =
+                (flags & FLAG_IS_ADAPTIVE_CONNECTIVITY_ENABLED) != 0;
+        if ((flags & FLAG_HAS_CONFIG_INFO) != 0) {
+            ConfigInfo info = new ConfigInfo();
+            info.allowedKeyManagement = mInts[i + I_ALLOWED_KEY_MANAGEMENT];
+            info.allowedProtocols = mInts[i + I_ALLOWED_PROTOCOLS];
+            info.allowedAuthAlgorithms = mInts[i + I_ALLOWED_AUTH_ALGORITHMS];
+            info.allowedPairwiseCiphers = mInts[i + I_ALLOWED_PAIRWISE_CIPHERS];
+            info.allowedGroupCiphers = mInts[i + I_ALLOWED_GROUP_CIPHERS];
+            info.scanRssi = mInts[i + I_SCAN_RSSI];
+            info.scanFreq = mInts[i + I_SCAN_FREQ];
+            info.hiddenSsid = (flags & FLAG_HIDDEN_SSID) != 0;
+            info.isPasspoint = (flags & FLAG_IS_PASSPOINT) != 0;
+            info.isEphemeral = (flags & FLAG_IS_EPHEMERAL) != 0;
+            info.hasEverConnected = (flags & FLAG_HAS_EVER_CONNECTED) != 0;
+            event.configInfo = info;
+        }
+
+        int l = slot * LONGS_PER_EVENT;
+        event.startTimeMillis = mLongs[l + L_START_TIME_MILLIS];
+        event.mobileTxBytes = mLongs[l + L_MOBILE_TX_BYTES];
+        event.mobileRxBytes = mLongs[l + L_MOBILE_RX_BYTES];
+        event.totalTxBytes = mLongs[l + L_TOTAL_TX_BYTES];
+        event.totalRxBytes = mLongs[l + L_TOTAL_RX_BYTES];
+        event.interfaceName = mInterfaceNames[slot];
+        return event;
+    }
+
+    /**
+     * Returns the wall clock time of an event.
+     *
+     * @param index index of the event, 0 being the oldest event in the ring.
+     */
+    public long getWallClockMillis(int index) {
+        return mLongs[toSlot(index) * LONGS_PER_EVENT + L_WALL_CLOCK_MILLIS];
+    }
+
+    private int toSlot(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("index=" + index + ", size=" + mSize);
+        }
+        return (mHead + index) % mCapacity;
+    }
+}
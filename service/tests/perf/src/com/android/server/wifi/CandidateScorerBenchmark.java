@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.server.wifi;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.content.res.Resources;
+import android.net.MacAddress;
+import android.net.wifi.ScanResult;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.filters.LargeTest;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Benchmarks for the {@link WifiCandidates.CandidateScorer}s, scoring one candidate per scan
+ * result of a corpus.
+ */
+@LargeTest
+@RunWith(Parameterized.class)
+public class CandidateScorerBenchmark {
+    private static final long SEED = 0x5C0BE;
+
+    @Rule
+    public final BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    private final WifiCandidates.CandidateScorer mScorer;
+    private final List<WifiCandidates.Candidate> mCandidates = new ArrayList<>();
+    private int mSink;
+
+    @Parameterized.Parameters(name = "{0}/{1}")
+    public static Collection<Object[]> parameters() {
+        List<Object[]> parameters = new ArrayList<>();
+        for (String scorer : Arrays.asList("ThroughputScorer", "BubbleFunScorer",
+                "CompatibilityScorer")) {
+            for (ScanCorpus.Kind kind : ScanCorpus.Kind.values()) {
+                parameters.add(new Object[] {scorer, kind});
+            }
+        }
+        return parameters;
+    }
+
+    public CandidateScorerBenchmark(String scorer, ScanCorpus.Kind kind) {
+        ScoringParams scoringParams = new ScoringParams();
+        switch (scorer) {
+            case "ThroughputScorer":
+                WifiContext context = mock(WifiContext.class);
+                Resources resources = mock(Resources.class);
+                when(context.getResources()).thenReturn(resources);
+                when(resources.getBoolean(anyInt())).thenReturn(false);
+                mScorer = new ThroughputScorer(context, scoringParams);
+                break;
+            case "BubbleFunScorer":
+                mScorer = new BubbleFunScorer(scoringParams);
+                break;
+            default:
+                mScorer = new CompatibilityScorer(scoringParams);
+                break;
+        }
+
+        Random random = new Random(SEED);
+        Map<String, Integer> networkIds = new HashMap<>();
+        for (ScanDetail scanDetail : new ScanCorpus(kind).toScanDetails()) {
+            ScanResult scanResult = scanDetail.getScanResult();
+            Integer networkId = networkIds.get(scanResult.SSID);
+            if (networkId == null) {
+                networkId = networkIds.size();
+                networkIds.put(scanResult.SSID, networkId);
+            }
+            WifiCandidates.Key key = new WifiCandidates.Key(
+                    ScanResultMatchInfo.fromScanResult(scanResult),
+                    MacAddress.fromString(scanResult.BSSID), networkId);
+            mCandidates.add(new ConcreteCandidate()
+                    .setKey(key)
+                    .setNetworkConfigId(networkId)
+                    .setNominatorId(WifiNetworkSelector.NetworkNominator.NOMINATOR_ID_SAVED)
+                    .setTrusted(true)
+                    .setScanRssi(scanResult.level)
+                    .setFrequency(scanResult.frequency)
+                    .setChannelWidth(scanResult.channelWidth)
+                    .setPredictedThroughputMbps(50 + random.nextInt(1200))
+                    .setCurrentNetwork(networkId == 0)
+                    .setCurrentBssid(mCandidates.isEmpty()));
+        }
+    }
+
+    @Test
+    public void scoreCandidates() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            WifiCandidates.ScoredCandidate choice = mScorer.scoreCandidates(mCandidates);
+            mSink += (choice == null || choice.candidateKey == null)
+                    ? 0 : choice.candidateKey.networkId;
+        }
+    }
+}
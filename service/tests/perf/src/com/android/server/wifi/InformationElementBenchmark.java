@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.server.wifi;
+
+import android.net.wifi.ScanResult;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.filters.LargeTest;
+
+import com.android.server.wifi.hotspot2.NetworkDetail;
+import com.android.server.wifi.util.InformationElementUtil;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Benchmarks for the parsing of the information elements of scan results, and the decoding of
+ * the elements into a {@link NetworkDetail}.
+ */
+@LargeTest
+@RunWith(Parameterized.class)
+public class InformationElementBenchmark {
+    @Rule
+    public final BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    private final List<ScanCorpus.Bss> mBssList;
+    private final List<ScanResult.InformationElement[]> mParsedIes = new ArrayList<>();
+    private int mSink;
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<ScanCorpus.Kind> corpora() {
+        return Arrays.asList(ScanCorpus.Kind.values());
+    }
+
+    public InformationElementBenchmark(ScanCorpus.Kind kind) {
+        mBssList = new ScanCorpus(kind).getBssList();
+        for (ScanCorpus.Bss bss : mBssList) {
+            mParsedIes.add(InformationElementUtil.parseInformationElements(bss.ies));
+        }
+    }
+
+    /** Splits the raw bytes into materialized information elements. */
+    @Test
+    public void parseInformationElements() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            for (ScanCorpus.Bss bss : mBssList) {
+                mSink += InformationElementUtil.parseInformationElements(bss.ies).length;
+            }
+        }
+    }
+
+    /** Indexes the raw bytes and decodes the index, as done for every scan result. */
+    @Test
+    public void networkDetailFromRawBytes() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            for (ScanCorpus.Bss bss : mBssList) {
+                NetworkDetail networkDetail = new NetworkDetail(bss.bssid,
+                        InformationElementUtil.indexInformationElements(bss.ies), null,
+                        bss.frequency);
+                mSink += networkDetail.getWifiMode();
+            }
+        }
+    }
+
+    /** Decodes already materialized information elements. */
+    @Test
+    public void networkDetailFromParsedElements() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            for (int i = 0; i < mBssList.size(); i++) {
+                ScanCorpus.Bss bss = mBssList.get(i);
+                NetworkDetail networkDetail = new NetworkDetail(bss.bssid, mParsedIes.get(i),
+                        null, bss.frequency);
+                mSink += networkDetail.getWifiMode();
+            }
+        }
+    }
+}
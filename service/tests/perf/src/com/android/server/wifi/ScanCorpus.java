@@ -0,0 +1,476 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import static android.net.wifi.ScanResult.InformationElement.EID_BSS_LOAD;
+import static android.net.wifi.ScanResult.InformationElement.EID_EXTENSION_PRESENT;
+import static android.net.wifi.ScanResult.InformationElement.EID_EXT_EHT_CAPABILITIES;
+import static android.net.wifi.ScanResult.InformationElement.EID_EXT_EHT_OPERATION;
+import static android.net.wifi.ScanResult.InformationElement.EID_EXT_HE_CAPABILITIES;
+import static android.net.wifi.ScanResult.InformationElement.EID_EXT_HE_OPERATION;
+import static android.net.wifi.ScanResult.InformationElement.EID_EXT_MULTI_LINK;
+import static android.net.wifi.ScanResult.InformationElement.EID_HT_CAPABILITIES;
+import static android.net.wifi.ScanResult.InformationElement.EID_HT_OPERATION;
+import static android.net.wifi.ScanResult.InformationElement.EID_INTERWORKING;
+import static android.net.wifi.ScanResult.InformationElement.EID_RNR;
+import static android.net.wifi.ScanResult.InformationElement.EID_ROAMING_CONSORTIUM;
+import static android.net.wifi.ScanResult.InformationElement.EID_RSN;
+import static android.net.wifi.ScanResult.InformationElement.EID_SSID;
+import static android.net.wifi.ScanResult.InformationElement.EID_SUPPORTED_RATES;
+import static android.net.wifi.ScanResult.InformationElement.EID_VHT_CAPABILITIES;
+import static android.net.wifi.ScanResult.InformationElement.EID_VHT_OPERATION;
+import static android.net.wifi.ScanResult.InformationElement.EID_VSA;
+
+import android.net.wifi.ScanResult;
+import android.net.wifi.WifiSsid;
+
+import com.android.server.wifi.hotspot2.NetworkDetail;
+import com.android.server.wifi.util.InformationElementUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic scan results used by the benchmarks. The corpora are generated from a fixed seed, so
+ * the same scan results are produced on every run.
+ */
+public class ScanCorpus {
+    private static final long SEED = 0x5CA11;
+    private static final int[] CHANNELS_24GHZ = {1, 6, 11};
+    private static final int[] CHANNELS_5GHZ = {36, 52, 100, 116, 132, 149};
+    private static final int[] CHANNELS_6GHZ = {5, 21, 37, 53, 69, 85, 101, 117};
+    private static final byte[] RATES_24GHZ =
+            {(byte) 0x82, (byte) 0x84, (byte) 0x8b, (byte) 0x96, 0x0c, 0x12, 0x18, 0x24};
+    private static final byte[] RATES_5GHZ =
+            {(byte) 0x8c, 0x12, (byte) 0x98, 0x24, (byte) 0xb0, 0x48, 0x60, 0x6c};
+    private static final int AKM_EAP = 1;
+    private static final int AKM_PSK = 2;
+    private static final int AKM_SAE = 8;
+
+    /** Kinds of scan corpora. */
+    public enum Kind {
+        /** 802.11n/ac/ax/be APs spread over 2.4, 5 and 6 GHz. */
+        DENSE_MULTI_BAND(300),
+        /** 802.11be APs with three affiliated links each, one per band. */
+        MULTI_LINK(60),
+        /** 802.11ax Passpoint APs. */
+        PASSPOINT(200);
+
+        private final int mNumAps;
+
+        Kind(int numAps) {
+            mNumAps = numAps;
+        }
+    }
+
+    /** Raw scan result of a single BSS, as received from the driver. */
+    public static class Bss {
+        public final String ssid;
+        public final String bssid;
+        public final String caps;
+        public final int frequency;
+        public final int level;
+        public final byte[] ies;
+
+        Bss(String ssid, String bssid, String caps, int frequency, int level, byte[] ies) {
+            this.ssid = ssid;
+            this.bssid = bssid;
+            this.caps = caps;
+            this.frequency = frequency;
+            this.level = level;
+            this.ies = ies;
+        }
+    }
+
+    private final List<Bss> mBssList = new ArrayList<>();
+    private final Random mRandom = new Random(SEED);
+
+    public ScanCorpus(Kind kind) {
+        for (int i = 0; i < kind.mNumAps; i++) {
+            switch (kind) {
+                case DENSE_MULTI_BAND:
+                    addDenseAp(i);
+                    break;
+                case MULTI_LINK:
+                    addMultiLinkAp(i);
+                    break;
+                case PASSPOINT:
+                    addPasspointAp(i);
+                    break;
+            }
+        }
+    }
+
+    /** Returns the raw scan results of the corpus. */
+    public List<Bss> getBssList() {
+        return Collections.unmodifiableList(mBssList);
+    }
+
+    /**
+     * Converts the raw scan results to {@link ScanDetail}s the same way
+     * {@link WifiNative#getScanResults(String)} does.
+     */
+    public List<ScanDetail> toScanDetails() {
+        List<ScanDetail> scanDetails = new ArrayList<>(mBssList.size());
+        long tsf = 0;
+        for (Bss bss : mBssList) {
+            ScanResult.InformationElement[] ies =
+                    InformationElementUtil.parseInformationElements(bss.ies);
+            NetworkDetail networkDetail =
+                    new NetworkDetail(bss.bssid, ies, new ArrayList<>(), bss.frequency);
+            ScanDetail scanDetail = new ScanDetail(networkDetail, WifiSsid.fromUtf8Text(bss.ssid),
+                    bss.bssid, bss.caps, bss.level, bss.frequency, ++tsf, ies, null, bss.ies);
+            scanDetail.getScanResult().setWifiStandard(
+                    toWifiStandard(networkDetail.getWifiMode()));
+            scanDetails.add(scanDetail);
+        }
+        return scanDetails;
+    }
+
+    private static int toWifiStandard(int wifiMode) {
+        switch (wifiMode) {
+            case InformationElementUtil.WifiMode.MODE_11A:
+            case InformationElementUtil.WifiMode.MODE_11B:
+            case InformationElementUtil.WifiMode.MODE_11G:
+                return ScanResult.WIFI_STANDARD_LEGACY;
+            case InformationElementUtil.WifiMode.MODE_11N:
+                return ScanResult.WIFI_STANDARD_11N;
+            case InformationElementUtil.WifiMode.MODE_11AC:
+                return ScanResult.WIFI_STANDARD_11AC;
+            case InformationElementUtil.WifiMode.MODE_11AX:
+                return ScanResult.WIFI_STANDARD_11AX;
+            case InformationElementUtil.WifiMode.MODE_11BE:
+                return ScanResult.WIFI_STANDARD_11BE;
+            default:
+                return ScanResult.WIFI_STANDARD_UNKNOWN;
+        }
+    }
+
+    private void addDenseAp(int index) {
+        int band = index % 3;
+        int channel = pickChannel(band);
+        int generation = 4 + mRandom.nextInt(4);
+        if (band == 2) generation = Math.max(generation, 6);
+        String ssid = "dense-" + (index / 4);
+        boolean sae = generation >= 6 && mRandom.nextBoolean();
+        Ies ies = new Ies()
+                .ssid(ssid)
+                .supportedRates(band == 0 ? RATES_24GHZ : RATES_5GHZ)
+                .rsn(sae ? AKM_SAE : AKM_PSK)
+                .bssLoad(mRandom.nextInt(40), mRandom.nextInt(256));
+        addPhyElements(ies, band, channel, generation);
+        mBssList.add(new Bss(ssid, randomMac(), sae ? "[RSN-SAE-CCMP][ESS]"
+                : "[WPA2-PSK-CCMP][RSN-PSK-CCMP][ESS]", toFrequency(band, channel),
+                randomLevel(), ies.toByteArray()));
+    }
+
+    private void addMultiLinkAp(int index) {
+        String ssid = "mlo-" + index;
+        byte[] mldMac = randomMacBytes();
+        String[] linkMacs = new String[3];
+        int[] channels = new int[3];
+        for (int linkId = 0; linkId < 3; linkId++) {
+            linkMacs[linkId] = randomMac();
+            channels[linkId] = pickChannel(linkId);
+        }
+        for (int linkId = 0; linkId < 3; linkId++) {
+            Ies ies = new Ies()
+                    .ssid(ssid)
+                    .supportedRates(linkId == 0 ? RATES_24GHZ : RATES_5GHZ)
+                    .rsn(AKM_SAE)
+                    .bssLoad(mRandom.nextInt(40), mRandom.nextInt(256));
+            addPhyElements(ies, linkId, channels[linkId], 7);
+            ies.multiLink(mldMac, linkId, linkMacs, linkId);
+            ies.reducedNeighborReport(linkMacs, channels, linkId);
+            mBssList.add(new Bss(ssid, linkMacs[linkId], "[RSN-SAE-CCMP][ESS]",
+                    toFrequency(linkId, channels[linkId]), randomLevel(), ies.toByteArray()));
+        }
+    }
+
+    private void addPasspointAp(int index) {
+        int band = index % 2;
+        int channel = pickChannel(band);
+        String ssid = "passpoint-" + (index % 16);
+        Ies ies = new Ies()
+                .ssid(ssid)
+                .supportedRates(band == 0 ? RATES_24GHZ : RATES_5GHZ)
+                .rsn(AKM_EAP)
+                .bssLoad(mRandom.nextInt(40), mRandom.nextInt(256))
+                .interworking(randomMacBytes())
+                .roamingConsortium()
+                .hs20Indication(1 + mRandom.nextInt(3));
+        addPhyElements(ies, band, channel, 6);
+        mBssList.add(new Bss(ssid, randomMac(), "[RSN-EAP/SHA1-CCMP][ESS]",
+                toFrequency(band, channel), randomLevel(), ies.toByteArray()));
+    }
+
+    private void addPhyElements(Ies ies, int band, int channel, int generation) {
+        if (band != 2) {
+            ies.htCapabilities().htOperation(channel);
+        }
+        if (band == 1 && generation >= 5) {
+            ies.vhtCapabilities().vhtOperation(channel);
+        }
+        if (generation >= 6) {
+            ies.heCapabilities().heOperation(band == 2 ? channel : 0);
+        }
+        if (generation >= 7) {
+            ies.ehtCapabilities().ehtOperation();
+        }
+    }
+
+    private int pickChannel(int band) {
+        int[] channels = band == 0 ? CHANNELS_24GHZ : band == 1 ? CHANNELS_5GHZ : CHANNELS_6GHZ;
+        return channels[mRandom.nextInt(channels.length)];
+    }
+
+    private static int toFrequency(int band, int channel) {
+        switch (band) {
+            case 0:
+                return 2407 + 5 * channel;
+            case 1:
+                return 5000 + 5 * channel;
+            default:
+                return 5950 + 5 * channel;
+        }
+    }
+
+    private int randomLevel() {
+        return -40 - mRandom.nextInt(50);
+    }
+
+    private byte[] randomMacBytes() {
+        byte[] mac = new byte[6];
+        mRandom.nextBytes(mac);
+        // Locally administered unicast address.
+        mac[0] = (byte) ((mac[0] & 0xFC) | 0x02);
+        return mac;
+    }
+
+    private String randomMac() {
+        return toMacString(randomMacBytes());
+    }
+
+    private static String toMacString(byte[] mac) {
+        StringBuilder sb = new StringBuilder(17);
+        for (int i = 0; i < mac.length; i++) {
+            if (i > 0) sb.append(':');
+            sb.append(String.format("%02x", mac[i] & 0xFF));
+        }
+        return sb.toString();
+    }
+
+    private static byte[] parseMac(String mac) {
+        byte[] bytes = new byte[6];
+        String[] parts = mac.split(":");
+        for (int i = 0; i < 6; i++) {
+            bytes[i] = (byte) Integer.parseInt(parts[i], 16);
+        }
+        return bytes;
+    }
+
+    /** Serializes information elements in the over-the-air format. */
+    private static class Ies {
+        private final ByteArrayOutputStream mOut = new ByteArrayOutputStream();
+
+        byte[] toByteArray() {
+            return mOut.toByteArray();
+        }
+
+        private Ies element(int eid, byte[] payload) {
+            mOut.write(eid);
+            mOut.write(payload.length);
+            mOut.write(payload, 0, payload.length);
+            return this;
+        }
+
+        private Ies extElement(int eidExt, byte[] payload) {
+            mOut.write(EID_EXTENSION_PRESENT);
+            mOut.write(payload.length + 1);
+            mOut.write(eidExt);
+            mOut.write(payload, 0, payload.length);
+            return this;
+        }
+
+        Ies ssid(String ssid) {
+            return element(EID_SSID, ssid.getBytes(StandardCharsets.UTF_8));
+        }
+
+        Ies supportedRates(byte[] rates) {
+            return element(EID_SUPPORTED_RATES, rates);
+        }
+
+        Ies bssLoad(int stationCount, int channelUtilization) {
+            return element(EID_BSS_LOAD, new byte[] {(byte) stationCount, 0,
+                    (byte) channelUtilization, 0, 0});
+        }
+
+        Ies rsn(int akm) {
+            return element(EID_RSN, new byte[] {
+                    // Version
+                    0x01, 0x00,
+                    // Group cipher CCMP
+                    0x00, 0x0F, (byte) 0xAC, 0x04,
+                    // Pairwise ciphers: CCMP
+                    0x01, 0x00, 0x00, 0x0F, (byte) 0xAC, 0x04,
+                    // AKMs
+                    0x01, 0x00, 0x00, 0x0F, (byte) 0xAC, (byte) akm,
+                    // RSN capabilities, MFP capable
+                    (byte) 0x80, 0x00});
+        }
+
+        Ies htCapabilities() {
+            byte[] payload = new byte[26];
+            // 40 MHz supported.
+            payload[0] = 0x02;
+            // Rx MCS 0-15, i.e. 2 spatial streams.
+            payload[3] = (byte) 0xFF;
+            payload[4] = (byte) 0xFF;
+            return element(EID_HT_CAPABILITIES, payload);
+        }
+
+        Ies htOperation(int channel) {
+            byte[] payload = new byte[22];
+            payload[0] = (byte) channel;
+            if (channel > 14) {
+                // Secondary channel above, any channel width.
+                payload[1] = 0x05;
+            }
+            return element(EID_HT_OPERATION, payload);
+        }
+
+        Ies vhtCapabilities() {
+            byte[] payload = new byte[12];
+            // Rx and Tx MCS 0-9 on 2 spatial streams.
+            payload[4] = (byte) 0xFA;
+            payload[5] = (byte) 0xFF;
+            payload[8] = (byte) 0xFA;
+            payload[9] = (byte) 0xFF;
+            return element(EID_VHT_CAPABILITIES, payload);
+        }
+
+        Ies vhtOperation(int channel) {
+            // 80 MHz, centered on the first channel of the 80 MHz segment plus 6.
+            int center = ((channel - 36) / 16) * 16 + 42;
+            return element(EID_VHT_OPERATION, new byte[] {0x01, (byte) center, 0x00,
+                    (byte) 0xFC, (byte) 0xFF});
+        }
+
+        Ies heCapabilities() {
+            byte[] payload = new byte[21];
+            // 40 MHz on 2.4 GHz, 40/80 MHz on 5/6 GHz.
+            payload[6] = 0x06;
+            // Rx and Tx MCS 0-11 on 2 spatial streams at up to 80 MHz.
+            payload[17] = (byte) 0xFA;
+            payload[18] = (byte) 0xFF;
+            payload[19] = (byte) 0xFA;
+            payload[20] = (byte) 0xFF;
+            return extElement(EID_EXT_HE_CAPABILITIES, payload);
+        }
+
+        Ies heOperation(int channel6g) {
+            if (channel6g == 0) {
+                return extElement(EID_EXT_HE_OPERATION, new byte[6]);
+            }
+            int center = ((channel6g - 1) / 16) * 16 + 7;
+            return extElement(EID_EXT_HE_OPERATION, new byte[] {
+                    0x00, 0x00, 0x02, 0x01, (byte) 0xFC, (byte) 0xFF,
+                    // 6 GHz operation info: 80 MHz.
+                    (byte) channel6g, 0x02, (byte) center, 0x00, 0x00});
+        }
+
+        Ies ehtCapabilities() {
+            byte[] payload = new byte[14];
+            // Rx and Tx MCS 0-13 on 2 spatial streams.
+            payload[11] = 0x22;
+            payload[12] = 0x22;
+            payload[13] = 0x22;
+            return extElement(EID_EXT_EHT_CAPABILITIES, payload);
+        }
+
+        Ies ehtOperation() {
+            return extElement(EID_EXT_EHT_OPERATION, new byte[] {0x00, 0x22, 0x22, 0x22, 0x22});
+        }
+
+        Ies multiLink(byte[] mldMac, int linkId, String[] linkMacs, int reportingLinkId) {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            // Basic multi-link element, link id info present.
+            payload.write(0x10);
+            payload.write(0x00);
+            // Common info: length, MLD MAC address, link id.
+            payload.write(8);
+            payload.write(mldMac, 0, mldMac.length);
+            payload.write(linkId);
+            for (int i = 0; i < linkMacs.length; i++) {
+                if (i == reportingLinkId) continue;
+                byte[] mac = parseMac(linkMacs[i]);
+                // Per-STA profile with the STA MAC address.
+                payload.write(0x00);
+                payload.write(11);
+                payload.write(i | 0x20);
+                payload.write(0x00);
+                payload.write(7);
+                payload.write(mac, 0, mac.length);
+            }
+            return extElement(EID_EXT_MULTI_LINK, payload.toByteArray());
+        }
+
+        Ies reducedNeighborReport(String[] linkMacs, int[] channels, int reportingLinkId) {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            for (int i = 0; i < linkMacs.length; i++) {
+                if (i == reportingLinkId) continue;
+                byte[] mac = parseMac(linkMacs[i]);
+                // One TBTT information field of 16 bytes.
+                payload.write(0x00);
+                payload.write(16);
+                payload.write(i == 0 ? 81 : i == 1 ? 128 : 131);
+                payload.write(channels[i]);
+                payload.write(0xFF);
+                payload.write(mac, 0, mac.length);
+                payload.write(new byte[5], 0, 5);
+                payload.write(0x00);
+                // MLD parameters: MLD id 0, link id.
+                payload.write(0x00);
+                payload.write(i);
+                payload.write(0x00);
+            }
+            return element(EID_RNR, payload.toByteArray());
+        }
+
+        Ies interworking(byte[] hessid) {
+            byte[] payload = new byte[7];
+            // Chargeable public network with internet access.
+            payload[0] = 0x12;
+            System.arraycopy(hessid, 0, payload, 1, hessid.length);
+            return element(EID_INTERWORKING, payload);
+        }
+
+        Ies roamingConsortium() {
+            return element(EID_ROAMING_CONSORTIUM, new byte[] {0x00, 0x33,
+                    0x50, 0x6F, (byte) 0x9A, 0x00, 0x1B, (byte) 0xC5});
+        }
+
+        Ies hs20Indication(int release) {
+            return element(EID_VSA, new byte[] {0x50, 0x6F, (byte) 0x9A, 0x10,
+                    (byte) ((release - 1) << 4)});
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.server.wifi;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.net.wifi.ScanResult;
+import android.net.wifi.nl80211.DeviceWiphyCapabilities;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.filters.LargeTest;
+
+import com.android.server.wifi.hotspot2.NetworkDetail;
+import com.android.server.wifi.util.InformationElementUtil.BssLoad;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Benchmarks for {@link ThroughputPredictor#predictThroughput}, with the inputs that
+ * {@link WifiNetworkSelector} passes for each scan result of a corpus.
+ */
+@LargeTest
+@RunWith(Parameterized.class)
+public class ThroughputPredictorBenchmark {
+    @Rule
+    public final BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    private final List<ScanDetail> mScanDetails;
+    private final ThroughputPredictor mThroughputPredictor;
+    private final DeviceWiphyCapabilities mDeviceCapabilities = new DeviceWiphyCapabilities();
+    private int mSink;
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<ScanCorpus.Kind> corpora() {
+        return Arrays.asList(ScanCorpus.Kind.values());
+    }
+
+    public ThroughputPredictorBenchmark(ScanCorpus.Kind kind) {
+        mScanDetails = new ScanCorpus(kind).toScanDetails();
+
+        Context context = mock(Context.class);
+        Resources resources = mock(Resources.class);
+        when(context.getResources()).thenReturn(resources);
+        when(resources.getBoolean(anyInt())).thenReturn(false);
+        when(resources.getInteger(anyInt())).thenReturn(0);
+        mThroughputPredictor = new ThroughputPredictor(context);
+
+        // A 2x2 802.11be device supporting up to 320 MHz.
+        for (int standard : new int[] {ScanResult.WIFI_STANDARD_11N,
+                ScanResult.WIFI_STANDARD_11AC, ScanResult.WIFI_STANDARD_11AX,
+                ScanResult.WIFI_STANDARD_11BE}) {
+            mDeviceCapabilities.setWifiStandardSupport(standard, true);
+        }
+        for (int width : new int[] {ScanResult.CHANNEL_WIDTH_40MHZ,
+                ScanResult.CHANNEL_WIDTH_80MHZ, ScanResult.CHANNEL_WIDTH_160MHZ,
+                ScanResult.CHANNEL_WIDTH_320MHZ}) {
+            mDeviceCapabilities.setChannelWidthSupported(width, true);
+        }
+        mDeviceCapabilities.setMaxNumberTxSpatialStreams(2);
+        mDeviceCapabilities.setMaxNumberRxSpatialStreams(2);
+    }
+
+    @Test
+    public void predictThroughput() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            for (ScanDetail scanDetail : mScanDetails) {
+                ScanResult scanResult = scanDetail.getScanResult();
+                NetworkDetail networkDetail = scanDetail.getNetworkDetail();
+                mSink += mThroughputPredictor.predictThroughput(mDeviceCapabilities,
+                        scanResult.getWifiStandard(), scanResult.channelWidth, scanResult.level,
+                        scanResult.frequency, networkDetail.getMaxNumberSpatialStreams(),
+                        networkDetail.getChannelUtilization(), BssLoad.INVALID, false,
+                        networkDetail.getDisabledSubchannelBitmap());
+            }
+        }
+    }
+}
@@ -185,6 +185,7 @@ public class ActiveModeWardenTest extends WifiBaseTest {
     @Mock PackageManager mPackageManager;
     @Mock Network mNetwork;
     @Mock LocalLog mLocalLog;
+    @Mock RunnerHandler mRunnerHandler;
     @Mock WifiSettingsConfigStore mSettingsConfigStore;
     @Mock LastCallerInfoManager mLastCallerInfoManager;
     @Mock WifiGlobals mWifiGlobals;
@@ -220,6 +221,7 @@ public class ActiveModeWardenTest extends WifiBaseTest {
         when(mWifiInjector.getHalDeviceManager()).thenReturn(mHalDeviceManager);
         when(mWifiInjector.getUserManager()).thenReturn(mUserManager);
         when(mWifiInjector.getWifiHandlerLocalLog()).thenReturn(mLocalLog);
+        when(mWifiInjector.getWifiHandler()).thenReturn(mRunnerHandler);
         when(mClientModeManager.getRole()).thenReturn(ROLE_CLIENT_PRIMARY);
         when(mClientModeManager.getInterfaceName()).thenReturn(WIFI_IFACE_NAME);
         when(mContext.getResources()).thenReturn(mResources);
@@ -1289,6 +1291,7 @@ public class ActiveModeWardenTest extends WifiBaseTest {
 
         verify(mSoftApManager).dump(null, writer, null);
         verify(mClientModeManager).dump(null, writer, null);
+        verify(mRunnerHandler).dumpTaskStats(writer);
     }
 
     /**
@@ -3994,6 +3994,108 @@ public class ClientModeImplTest extends WifiBaseTest {
         verify(mWifiScoreCard).noteSignalPoll(any());
     }
 
+    /**
+     * Verify that the RSSI polls run by SignalPoller update the connection info and schedule the
+     * next poll, and that the HAL is not queried on the wifi thread.
+     */
+    @Test
+    public void verifyConnectedModeAsyncRssiPolling() throws Exception {
+        TestLooper pollLooper = new TestLooper();
+        SignalPoller signalPoller = new SignalPoller(mWifiNative, mFrameworkFacade, mClock,
+                new Handler(pollLooper.getLooper()));
+        when(mWifiInjector.getSignalPoller()).thenReturn(signalPoller);
+        WifiLinkLayerStats llStats = new WifiLinkLayerStats();
+        llStats.txmpdu_be = 1000;
+        llStats.rxmpdu_bk = 2000;
+        WifiSignalPollResults signalPollResults = new WifiSignalPollResults();
+        signalPollResults.addEntry(0, -42, 65, 54, sFreq);
+        when(mWifiNative.getSupportedFeatureSet(WIFI_IFACE_NAME)).thenReturn(
+                WifiManager.WIFI_FEATURE_LINK_LAYER_STATS);
+        when(mWifiNative.getWifiLinkLayerStats(any())).thenReturn(llStats);
+        when(mWifiNative.getSupplicantSignalPollResults(any())).thenReturn(signalPollResults);
+        when(mWifiNative.completeSignalPoll(any(), any()))
+                .thenAnswer(invocation -> invocation.getArgument(1));
+        mCmi.enableRssiPolling(true);
+        connect();
+        mLooper.dispatchAll();
+        verify(mWifiNative, never()).getSupplicantSignalPollResults(any());
+        verify(mWifiScoreCard, never()).noteSignalPoll(any());
+        clearInvocations(mWifiNative);
+
+        // The HAL is queried on the poll thread, and the results applied on the wifi thread.
+        pollLooper.dispatchAll();
+        verify(mWifiNative).getWifiLinkLayerStats(WIFI_IFACE_NAME);
+        verify(mWifiNative).getSupplicantSignalPollResults(WIFI_IFACE_NAME);
+        verify(mWifiNative, never()).completeSignalPoll(any(), any());
+        mLooper.dispatchAll();
+        verify(mWifiNative).completeSignalPoll(WIFI_IFACE_NAME, signalPollResults);
+        verify(mWifiNative, never()).signalPoll(any());
+        assertEquals(llStats.txmpdu_be, mWifiInfo.txSuccess);
+        assertEquals(llStats.rxmpdu_bk, mWifiInfo.rxSuccess);
+        assertEquals(signalPollResults.getRssi(), mWifiInfo.getRssi());
+        assertEquals(signalPollResults.getTxLinkSpeed(), mWifiInfo.getTxLinkSpeedMbps());
+        assertEquals(signalPollResults.getRxLinkSpeed(), mWifiInfo.getRxLinkSpeedMbps());
+        verify(mWifiScoreCard).noteSignalPoll(any());
+
+        // The next poll is scheduled once the results were applied.
+        clearInvocations(mWifiNative);
+        mLooper.moveTimeForward(mWifiGlobals.getPollRssiIntervalMillis());
+        mLooper.dispatchAll();
+        pollLooper.dispatchAll();
+        verify(mWifiNative).getSupplicantSignalPollResults(WIFI_IFACE_NAME);
+    }
+
+    /**
+     * Verify that if supplicant returns no signal poll results, the RSSI poll falls back to
+     * wificond on the wifi thread rather than on the poll thread.
+     */
+    @Test
+    public void verifyAsyncRssiPollFallsBackToWificondOnWifiThread() throws Exception {
+        TestLooper pollLooper = new TestLooper();
+        SignalPoller signalPoller = new SignalPoller(mWifiNative, mFrameworkFacade, mClock,
+                new Handler(pollLooper.getLooper()));
+        when(mWifiInjector.getSignalPoller()).thenReturn(signalPoller);
+        WifiSignalPollResults signalPollResults = new WifiSignalPollResults();
+        signalPollResults.addEntry(0, -42, 65, 54, sFreq);
+        when(mWifiNative.getSupplicantSignalPollResults(any())).thenReturn(null);
+        when(mWifiNative.completeSignalPoll(any(), any())).thenReturn(signalPollResults);
+        mCmi.enableRssiPolling(true);
+        connect();
+        mLooper.dispatchAll();
+
+        pollLooper.dispatchAll();
+        verify(mWifiNative, never()).completeSignalPoll(any(), any());
+        mLooper.dispatchAll();
+        verify(mWifiNative).completeSignalPoll(WIFI_IFACE_NAME, null);
+        assertEquals(signalPollResults.getRssi(), mWifiInfo.getRssi());
+    }
+
+    /**
+     * Verify that the results of an RSSI poll are dropped if polling was disabled while the HAL
+     * was queried.
+     */
+    @Test
+    public void verifyAsyncRssiPollResultsDroppedAfterPollingDisabled() throws Exception {
+        TestLooper pollLooper = new TestLooper();
+        SignalPoller signalPoller = new SignalPoller(mWifiNative, mFrameworkFacade, mClock,
+                new Handler(pollLooper.getLooper()));
+        when(mWifiInjector.getSignalPoller()).thenReturn(signalPoller);
+        WifiSignalPollResults signalPollResults = new WifiSignalPollResults();
+        signalPollResults.addEntry(0, -42, 65, 54, sFreq);
+        when(mWifiNative.getSupplicantSignalPollResults(any())).thenReturn(signalPollResults);
+        when(mWifiNative.completeSignalPoll(any(), any()))
+                .thenAnswer(invocation -> invocation.getArgument(1));
+        mCmi.enableRssiPolling(true);
+        connect();
+        mLooper.dispatchAll();
+
+        mCmi.enableRssiPolling(false);
+        mLooper.dispatchAll();
+        pollLooper.dispatchAll();
+        mLooper.dispatchAll();
+        verify(mWifiScoreCard, never()).noteSignalPoll(any());
+    }
+
     /**
      * Verify that RSSI polling will send RSSI broadcasts if the RSSI signal level has changed
      */
@@ -6752,7 +6854,7 @@ public class ClientModeImplTest extends WifiBaseTest {
     @Test
     public void verifyWifiMonitorHandlersDeregisteredOnStop() throws Exception {
         verify(mWifiMonitor, atLeastOnce())
-                .registerHandler(eq(WIFI_IFACE_NAME), anyInt(), any());
+                .registerHandler(eq(WIFI_IFACE_NAME), anyInt(), any(), eq(false));
         verify(mWifiMetrics).registerForWifiMonitorEvents(WIFI_IFACE_NAME);
         verify(mWifiLastResortWatchdog).registerForWifiMonitorEvents(WIFI_IFACE_NAME);
 
@@ -21,6 +21,7 @@ import static com.android.dx.mockito.inline.extended.ExtendedMockito.mockitoSess
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.anyInt;
 import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.when;
@@ -427,4 +428,141 @@ public class ConfigurationMapTest extends WifiBaseTest {
         mConfigs.put(config);
         assertNull(mConfigs.getByScanResultForCurrentUser(scanResult));
     }
+
+    /**
+     * Verifies that {@link ConfigurationMap#getBySsidForCurrentUser(String)} returns all the
+     * networks with the SSID, and stops returning them once removed.
+     */
+    @Test
+    public void testGetBySsidForCurrentUser() {
+        WifiConfiguration openConfig = WifiConfigurationTestUtil.createOpenNetwork();
+        openConfig.networkId = 5;
+        WifiConfiguration pskConfig = WifiConfigurationTestUtil.createPskNetwork(openConfig.SSID);
+        pskConfig.networkId = 6;
+        WifiConfiguration otherConfig = WifiConfigurationTestUtil.createPskNetwork();
+        otherConfig.networkId = 7;
+        mConfigs.put(openConfig);
+        mConfigs.put(pskConfig);
+        mConfigs.put(otherConfig);
+
+        assertEquals(new HashSet<>(Arrays.asList(openConfig, pskConfig)),
+                new HashSet<>(mConfigs.getBySsidForCurrentUser(openConfig.SSID)));
+        assertEquals(Arrays.asList(otherConfig),
+                mConfigs.getBySsidForCurrentUser(otherConfig.SSID));
+
+        mConfigs.remove(openConfig.networkId);
+        assertEquals(Arrays.asList(pskConfig), mConfigs.getBySsidForCurrentUser(openConfig.SSID));
+        mConfigs.clear();
+        assertTrue(mConfigs.getBySsidForCurrentUser(openConfig.SSID).isEmpty());
+    }
+
+    /**
+     * Verifies that overwriting a network drops the index entries of the replaced network.
+     */
+    @Test
+    public void testPutOverwriteRemovesStaleIndexEntries() {
+        WifiConfiguration config1 = WifiConfigurationTestUtil.createOpenNetwork();
+        config1.networkId = 5;
+        ScanResult scanResult = createScanResultForNetwork(config1);
+        mConfigs.put(config1);
+
+        WifiConfiguration config2 = WifiConfigurationTestUtil.createPskNetwork();
+        config2.networkId = config1.networkId;
+        assertEquals(config1, mConfigs.put(config2));
+
+        assertNull(mConfigs.getByConfigKeyForCurrentUser(config1.getProfileKey()));
+        assertNull(mConfigs.getByScanResultForCurrentUser(scanResult));
+        assertTrue(mConfigs.getBySsidForCurrentUser(config1.SSID).isEmpty());
+        assertEquals(config2, mConfigs.getByConfigKeyForCurrentUser(config2.getProfileKey()));
+    }
+
+    /**
+     * Verifies that putting a network again after changing its keys in place re-indexes it.
+     */
+    @Test
+    public void testPutAgainAfterInPlaceChangeReindexesNetwork() {
+        WifiConfiguration config = WifiConfigurationTestUtil.createOpenNetwork();
+        config.networkId = 5;
+        String oldProfileKey = config.getProfileKey();
+        mConfigs.put(config);
+
+        config.setSecurityParams(WifiConfiguration.SECURITY_TYPE_PSK);
+        config.preSharedKey = "\"PassWord\"";
+        mConfigs.put(config);
+
+        assertNull(mConfigs.getByConfigKeyForCurrentUser(oldProfileKey));
+        assertEquals(config, mConfigs.getByConfigKeyForCurrentUser(config.getProfileKey()));
+        assertEquals(config, mConfigs.getByScanResultForCurrentUser(
+                createScanResultForNetwork(config)));
+        assertEquals(1, mConfigs.sizeForCurrentUser());
+    }
+
+    /**
+     * Verifies that removing a network whose SSID was changed in place drops the index entry of
+     * the SSID it was indexed with.
+     */
+    @Test
+    public void testRemoveAfterInPlaceSsidChangeRemovesIndexedSsid() {
+        WifiConfiguration config = WifiConfigurationTestUtil.createPskNetwork();
+        config.networkId = 5;
+        String oldSsid = config.SSID;
+        String oldProfileKey = config.getProfileKey();
+        mConfigs.put(config);
+
+        config.SSID = "\"NewSsid\"";
+        mConfigs.remove(config.networkId);
+
+        assertTrue(mConfigs.getBySsidForCurrentUser(oldSsid).isEmpty());
+        assertTrue(mConfigs.getBySsidForCurrentUser(config.SSID).isEmpty());
+        assertNull(mConfigs.getByConfigKeyForCurrentUser(oldProfileKey));
+    }
+
+    /**
+     * Verifies that when several networks share a profile key, the one put first is returned,
+     * and the next one once it is removed.
+     */
+    @Test
+    public void testGetByConfigKeyWithDuplicateProfileKeys() {
+        WifiConfiguration config1 = WifiConfigurationTestUtil.createPskNetwork();
+        config1.networkId = 5;
+        WifiConfiguration config2 = new WifiConfiguration(config1);
+        config2.networkId = 6;
+        mConfigs.put(config1);
+        mConfigs.put(config2);
+
+        assertEquals(config1, mConfigs.getByConfigKeyForCurrentUser(config1.getProfileKey()));
+        mConfigs.remove(config1.networkId);
+        assertEquals(config2, mConfigs.getByConfigKeyForCurrentUser(config1.getProfileKey()));
+        mConfigs.remove(config2.networkId);
+        assertNull(mConfigs.getByConfigKeyForCurrentUser(config1.getProfileKey()));
+    }
+
+    /**
+     * Verifies that the indexes for the current user are rebuilt when the user changes.
+     */
+    @Test
+    public void testSetNewUserRebuildsIndexes() {
+        // Private network of user 10, not visible to the system user.
+        WifiConfiguration config = WifiConfigurationTestUtil.createPskNetwork();
+        config.networkId = 5;
+        config.shared = false;
+        config.creatorUid = UserHandle.getUid(10, 1000);
+        mConfigs.put(config);
+        assertNull(mConfigs.getByConfigKeyForCurrentUser(config.getProfileKey()));
+        assertTrue(mConfigs.getBySsidForCurrentUser(config.SSID).isEmpty());
+
+        mCurrentUserId = 10;
+        mConfigs.setNewUser(10);
+        assertEquals(config, mConfigs.getForCurrentUser(config.networkId));
+        assertEquals(config, mConfigs.getByConfigKeyForCurrentUser(config.getProfileKey()));
+        assertEquals(Arrays.asList(config), mConfigs.getBySsidForCurrentUser(config.SSID));
+        assertEquals(config, mConfigs.getByScanResultForCurrentUser(
+                createScanResultForNetwork(config)));
+
+        mCurrentUserId = UserHandle.USER_SYSTEM;
+        mConfigs.setNewUser(UserHandle.USER_SYSTEM);
+        assertNull(mConfigs.getForCurrentUser(config.networkId));
+        assertNull(mConfigs.getByConfigKeyForCurrentUser(config.getProfileKey()));
+        assertEquals(1, mConfigs.sizeForAllUsers());
+    }
 }
@@ -34,7 +34,8 @@ public class MockWifiMonitor extends WifiMonitor {
     private final Map<String, SparseArray<Handler>> mHandlerMap = new HashMap<>();
 
     @Override
-    public void registerHandler(String iface, int what, Handler handler) {
+    public void registerHandler(String iface, int what, Handler handler,
+            boolean attachIfaceName) {
         SparseArray<Handler> ifaceHandlers = mHandlerMap.get(iface);
         if (ifaceHandlers == null) {
             ifaceHandlers = new SparseArray<>();
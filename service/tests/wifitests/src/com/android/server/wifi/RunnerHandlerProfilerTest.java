@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.os.test.TestLooper;
+import android.util.LocalLog;
+
+import androidx.test.filters.SmallTest;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Unit tests for {@link RunnerHandlerProfiler}.
+ */
+@SmallTest
+public class RunnerHandlerProfilerTest extends WifiBaseTest {
+    private RunnerHandlerProfiler mProfiler;
+
+    @Before
+    public void setUp() throws Exception {
+        mProfiler = new RunnerHandlerProfiler();
+        mProfiler.setEnabled(true);
+    }
+
+    /**
+     * Verify that tasks are aggregated by signature and show up in the dump.
+     */
+    @Test
+    public void testNoteTaskAggregatesBySignature() {
+        mProfiler.noteTask("ClientModeImpl$$Lambda1", 5, 1);
+        mProfiler.noteTask("ClientModeImpl$$Lambda1", 30, 2);
+        mProfiler.noteTask("WifiConnectivityManager$$Lambda2", 1, 0);
+
+        assertEquals(2, mProfiler.getNumSignatures());
+        assertEquals(2, mProfiler.getTaskCount("ClientModeImpl$$Lambda1"));
+        assertEquals(1, mProfiler.getTaskCount("WifiConnectivityManager$$Lambda2"));
+
+        StringWriter sw = new StringWriter();
+        mProfiler.dump(new PrintWriter(sw));
+        String dump = sw.toString();
+        assertTrue(dump.contains("ClientModeImpl$$Lambda1: count=2 totalRunTimeMs=35"));
+        // Sorted by decreasing total run time.
+        assertTrue(dump.indexOf("ClientModeImpl$$Lambda1")
+                < dump.indexOf("WifiConnectivityManager$$Lambda2"));
+    }
+
+    /**
+     * Verify that signatures past the limit are aggregated together.
+     */
+    @Test
+    public void testSignatureOverflow() {
+        for (int i = 0; i < RunnerHandlerProfiler.MAX_SIGNATURES + 10; i++) {
+            mProfiler.noteTask("task" + i, 1, 1);
+        }
+        assertEquals(RunnerHandlerProfiler.MAX_SIGNATURES + 1, mProfiler.getNumSignatures());
+        assertEquals(10, mProfiler.getTaskCount(RunnerHandlerProfiler.OVERFLOW_SIGNATURE));
+    }
+
+    /**
+     * Verify that the queue depth is only sampled once per sampling interval.
+     */
+    @Test
+    public void testQueueDepthSamplingInterval() {
+        assertTrue(mProfiler.shouldSampleQueueDepth(1000));
+        assertFalse(mProfiler.shouldSampleQueueDepth(1001));
+        assertTrue(mProfiler.shouldSampleQueueDepth(
+                1000 + RunnerHandlerProfiler.QUEUE_DEPTH_SAMPLING_INTERVAL_MS));
+    }
+
+    /**
+     * Verify that the RunnerHandler queue depth counts the messages enqueued and not yet
+     * dispatched.
+     */
+    @Test
+    public void testRunnerHandlerQueueDepth() {
+        TestLooper looper = new TestLooper();
+        RunnerHandler handler = new RunnerHandler(looper.getLooper(), 100, new LocalLog(128));
+        int[] depth = new int[1];
+        handler.post(() -> depth[0] = handler.getQueueDepth());
+        handler.post(() -> { });
+        handler.postToFront(() -> { });
+        assertEquals(3, handler.getQueueDepth());
+
+        looper.dispatchNext();
+        assertEquals(2, handler.getQueueDepth());
+        looper.dispatchNext();
+        assertEquals(1, depth[0]);
+
+        looper.dispatchAll();
+        assertEquals(0, handler.getQueueDepth());
+    }
+
+    /**
+     * Verify that disabling the profiler clears and stops collecting the stats.
+     */
+    @Test
+    public void testDisable() {
+        mProfiler.noteTask("task", 1, 1);
+        mProfiler.setEnabled(false);
+        assertEquals(0, mProfiler.getNumSignatures());
+
+        mProfiler.noteTask("task", 1, 1);
+        assertEquals(0, mProfiler.getNumSignatures());
+        assertFalse(mProfiler.shouldSampleQueueDepth(1000));
+
+        mProfiler.setEnabled(true);
+        mProfiler.noteTask("task", 1, 1);
+        assertEquals(1, mProfiler.getTaskCount("task"));
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.test.TestLooper;
+import android.util.LocalLog;
+
+import androidx.test.filters.SmallTest;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Unit tests for {@link RunnerHandler}.
+ */
+@SmallTest
+public class RunnerHandlerTest extends WifiBaseTest {
+    private static final int RUNNING_TIME_THRESHOLD_MS = 100;
+
+    private TestLooper mLooper;
+    private RunnerHandler mHandler;
+
+    @Before
+    public void setUp() throws Exception {
+        mLooper = new TestLooper();
+        mHandler = new RunnerHandler(mLooper.getLooper(), RUNNING_TIME_THRESHOLD_MS,
+                new LocalLog(128));
+        mHandler.setTaskStatsEnabled(true);
+    }
+
+    private String dumpTaskStats() {
+        StringWriter sw = new StringWriter();
+        mHandler.dumpTaskStats(new PrintWriter(sw));
+        return sw.toString();
+    }
+
+    private void postFromFirstCaller(Runnable r) {
+        mHandler.post(r);
+    }
+
+    private void postFromSecondCaller(Runnable r) {
+        mHandler.post(r);
+    }
+
+    /**
+     * Verify that the signature is captured from the stack the first time a Runnable class is
+     * posted, and then reused for the following posts of that class.
+     */
+    @Test
+    public void testSignatureCachedPerRunnableClass() {
+        Runnable task = () -> { };
+        postFromFirstCaller(task);
+        postFromSecondCaller(task);
+        mLooper.dispatchAll();
+
+        String dump = dumpTaskStats();
+        assertTrue(dump.contains("RunnerHandlerTest#postFromFirstCaller: count=2"));
+        assertFalse(dump.contains("postFromSecondCaller"));
+    }
+
+    /**
+     * Verify that a message posted to the front of the queue is dispatched first, is still
+     * matched by the Handler remove/has methods, and reports its schedule latency from the time
+     * it was posted.
+     */
+    @Test
+    public void testPostToFront() throws Exception {
+        Runnable first = () -> { };
+        Runnable second = () -> { };
+        mHandler.post(first);
+        mHandler.postToFront(second);
+        assertTrue(mHandler.hasCallbacks(second));
+        mHandler.removeCallbacks(second);
+        assertFalse(mHandler.hasCallbacks(second));
+
+        String[] order = new String[1];
+        mHandler.postToFront(() -> order[0] = "front");
+        Thread.sleep(20);
+        mLooper.dispatchNext();
+        assertEquals("front", order[0]);
+
+        Matcher matcher = Pattern.compile("RunnerHandlerTest#testPostToFront: count=1 .*"
+                + "maxScheduleLatencyMs=(\\d+)").matcher(dumpTaskStats());
+        assertTrue(matcher.find());
+        assertTrue(Integer.parseInt(matcher.group(1)) >= 20);
+    }
+
+    /**
+     * Verify that the Runnable is used as the signature when every frame up to the handler
+     * thread is ignored.
+     */
+    @Test
+    public void testSignatureFallsBackToCallbackWhenCallerIgnored() {
+        Runnable callback = () -> { };
+        StackTraceElement[] ignoredStack = {
+                new StackTraceElement(RunnerHandler.class.getName(), "sendMessageAtTime", null, 0),
+                new StackTraceElement(Handler.class.getName(), "post", null, 0),
+                new StackTraceElement(Looper.class.getName(), "loop", null, 0),
+                new StackTraceElement(HandlerThread.class.getName(), "run", null, 0)};
+        assertEquals(callback.toString(), mHandler.getSignature(ignoredStack, callback));
+
+        StackTraceElement[] stack = {
+                new StackTraceElement(RunnerHandler.class.getName(), "sendMessageAtTime", null, 0),
+                new StackTraceElement("com.android.server.wifi.ClientModeImpl", "connect", null,
+                        0),
+                new StackTraceElement(HandlerThread.class.getName(), "run", null, 0)};
+        assertEquals("ClientModeImpl#connect", mHandler.getSignature(stack, callback));
+
+        assertEquals("<UNKNOWN>", mHandler.getSignature(new StackTraceElement[0], callback));
+    }
+}
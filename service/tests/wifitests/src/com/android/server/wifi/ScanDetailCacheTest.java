@@ -28,6 +28,9 @@ import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+
 /**
  * Unit tests for {@link com.android.server.wifi.ScanDetailCache}.
  */
@@ -93,6 +96,85 @@ public class ScanDetailCacheTest extends WifiBaseTest {
         assertEquals(s4, mScanDetailCache.getScanDetail(TEST_BSSID_4));
     }
 
+    /**
+     * Verify that the oldest entries are evicted once the cache reaches its max size, even if
+     * they were not added in timestamp order.
+     */
+    @Test
+    public void testTrimEvictsOldestEntries() {
+        long[] seenTimes = {5000, 1000, 4000, 2000, 3000};
+        for (int i = 0; i < seenTimes.length; i++) {
+            setClockTime(seenTimes[i]);
+            mScanDetailCache.put(createScanDetailForNetwork(mWifiConfiguration,
+                    String.format("0a:08:5c:67:89:%02x", i), TEST_RSSI, TEST_FREQUENCY));
+        }
+        assertEquals(TEST_MAX_SIZE, mScanDetailCache.size());
+
+        setClockTime(6000);
+        ScanDetail newest = createScanDetailForNetwork(mWifiConfiguration, TEST_BSSID_4,
+                TEST_RSSI, TEST_FREQUENCY);
+        mScanDetailCache.put(newest);
+
+        // The 2 most recent entries are kept, then the new one is added.
+        assertEquals(TEST_TRIM_SIZE + 1, mScanDetailCache.size());
+        assertNotNull(mScanDetailCache.getScanDetail("0a:08:5c:67:89:00"));
+        assertNotNull(mScanDetailCache.getScanDetail("0a:08:5c:67:89:02"));
+        assertEquals(newest, mScanDetailCache.getScanDetail(TEST_BSSID_4));
+        assertEquals(newest.getScanResult(), mScanDetailCache.getMostRecentScanResult());
+    }
+
+    /**
+     * Verify that values() iterates in ascending order of timestamp, and reflects removals.
+     */
+    @Test
+    public void testValuesOrderedByTimestamp() {
+        setClockTime(3000);
+        ScanDetail s3 = createScanDetailForNetwork(mWifiConfiguration, TEST_BSSID_3,
+                TEST_RSSI, TEST_FREQUENCY);
+        setClockTime(1000);
+        ScanDetail s1 = createScanDetailForNetwork(mWifiConfiguration, TEST_BSSID_1,
+                TEST_RSSI, TEST_FREQUENCY);
+        setClockTime(2000);
+        ScanDetail s2 = createScanDetailForNetwork(mWifiConfiguration, TEST_BSSID_2,
+                TEST_RSSI, TEST_FREQUENCY);
+        mScanDetailCache.put(s3);
+        mScanDetailCache.put(s1);
+        mScanDetailCache.put(s2);
+        assertEquals(Arrays.asList(s1, s2, s3), new ArrayList<>(mScanDetailCache.values()));
+
+        mScanDetailCache.remove(TEST_BSSID_2);
+        assertEquals(Arrays.asList(s1, s3), new ArrayList<>(mScanDetailCache.values()));
+        assertNull(mScanDetailCache.getScanDetail(TEST_BSSID_2));
+    }
+
+    /**
+     * Verify that replacing an entry or updating its timestamp in place moves it to its new
+     * position in the timestamp order.
+     */
+    @Test
+    public void testUpdatedEntryBecomesMostRecent() {
+        setClockTime(1000);
+        ScanDetail s1 = createScanDetailForNetwork(mWifiConfiguration, TEST_BSSID_1,
+                TEST_RSSI, TEST_FREQUENCY);
+        setClockTime(2000);
+        ScanDetail s2 = createScanDetailForNetwork(mWifiConfiguration, TEST_BSSID_2,
+                TEST_RSSI, TEST_FREQUENCY);
+        mScanDetailCache.put(s1);
+        mScanDetailCache.put(s2);
+        assertEquals(s2.getScanResult(), mScanDetailCache.getMostRecentScanResult());
+
+        s1.setSeen();
+        mScanDetailCache.onSeenUpdated(TEST_BSSID_1);
+        assertEquals(s1.getScanResult(), mScanDetailCache.getMostRecentScanResult());
+
+        setClockTime(s1.getSeen() + 1000);
+        ScanDetail s2Updated = createScanDetailForNetwork(mWifiConfiguration, TEST_BSSID_2,
+                TEST_RSSI, TEST_FREQUENCY);
+        mScanDetailCache.put(s2Updated);
+        assertEquals(2, mScanDetailCache.size());
+        assertEquals(s2Updated.getScanResult(), mScanDetailCache.getMostRecentScanResult());
+    }
+
     private void setClockTime(long millis) {
         when(mClock.getUptimeSinceBootMillis()).thenReturn(millis);
         when(mClock.getWallClockMillis()).thenReturn(millis);
@@ -284,6 +284,53 @@ public class ScanResultMatchInfoTest extends WifiBaseTest {
         assertEquals(key2.hashCode(), key3.hashCode());
     }
 
+    /**
+     * Verify that the scan result match info index returns the scan results matching a network,
+     * including the transition mode ones, in the order they were indexed.
+     */
+    @Test
+    public void testIndexGetMatchingScanResults() {
+        WifiConfiguration pskConf = WifiConfigurationTestUtil.createPskNetwork("\"PskNetwork\"");
+        WifiConfiguration saeConf = WifiConfigurationTestUtil.createSaeNetwork("\"PskNetwork\"");
+        WifiConfiguration openConf =
+                WifiConfigurationTestUtil.createOpenNetwork("\"OpenNetwork\"");
+        ScanResult pskScan = createScanDetailForNetwork(pskConf, "AA:AA:AA:AA:AA:AA")
+                .getScanResult();
+        ScanResult openScan = createScanDetailForNetwork(openConf, "BB:BB:BB:BB:BB:BB")
+                .getScanResult();
+        ScanResult transitionScan = createScanDetailForWpa2Wpa3TransitionModeNetwork(pskConf,
+                "CC:CC:CC:CC:CC:CC").getScanResult();
+        List<ScanResult> scanResults = List.of(pskScan, openScan, transitionScan);
+
+        ScanResultMatchInfoIndex index = ScanResultMatchInfoIndex.fromScanResults(scanResults);
+        assertEquals(scanResults, index.getScanResults());
+        assertEquals(List.of(pskScan, transitionScan), index.getMatchingScanResults(
+                ScanResultMatchInfo.fromWifiConfiguration(pskConf)));
+        assertEquals(List.of(transitionScan), index.getMatchingScanResults(
+                ScanResultMatchInfo.fromWifiConfiguration(saeConf)));
+        assertEquals(List.of(openScan), index.getMatchingScanResults(
+                ScanResultMatchInfo.fromWifiConfiguration(openConf)));
+        assertTrue(index.getMatchingScanResults(ScanResultMatchInfo.fromWifiConfiguration(
+                WifiConfigurationTestUtil.createPskNetwork("\"Other\""))).isEmpty());
+    }
+
+    /**
+     * Verify that a scan detail computes its match info once, and that an index of scan details
+     * reuses it.
+     */
+    @Test
+    public void testScanDetailCachesMatchInfo() {
+        WifiConfiguration conf = WifiConfigurationTestUtil.createPskNetwork("\"PskNetwork\"");
+        ScanDetail scan = createScanDetailForNetwork(conf, "AA:AA:AA:AA:AA:AA");
+        ScanResultMatchInfo matchInfo = scan.getScanResultMatchInfo();
+        assertEquals(ScanResultMatchInfo.fromScanResult(scan.getScanResult()), matchInfo);
+        assertTrue(matchInfo == scan.getScanResultMatchInfo());
+
+        ScanResultMatchInfoIndex index = ScanResultMatchInfoIndex.fromScanDetails(List.of(scan));
+        assertEquals(List.of(scan.getScanResult()), index.getMatchingScanResults(
+                ScanResultMatchInfo.fromWifiConfiguration(conf)));
+    }
+
     /**
      * Creates a scan detail corresponding to the provided network and given BSSID
      */
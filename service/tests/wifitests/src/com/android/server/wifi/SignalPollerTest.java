@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.os.Handler;
+import android.os.test.TestLooper;
+
+import androidx.test.filters.SmallTest;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+/**
+ * Unit tests for {@link SignalPoller}.
+ */
+@SmallTest
+public class SignalPollerTest extends WifiBaseTest {
+    private static final String TEST_IFACE_NAME = "wlan0";
+    private static final String TEST_IFACE_NAME_2 = "wlan1";
+    private static final long TEST_TIMESTAMP_MS = 123456L;
+
+    @Mock WifiNative mWifiNative;
+    @Mock FrameworkFacade mFacade;
+    @Mock Clock mClock;
+    @Mock SignalPoller.Callback mCallback;
+    @Mock SignalPoller.Callback mCallback2;
+
+    private TestLooper mLooper;
+    private SignalPoller mSignalPoller;
+    private final WifiLinkLayerStats mLinkLayerStats = new WifiLinkLayerStats();
+    private final WifiSignalPollResults mSignalPollResults = new WifiSignalPollResults();
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        mLooper = new TestLooper();
+        mSignalPoller = new SignalPoller(mWifiNative, mFacade, mClock,
+                new Handler(mLooper.getLooper()));
+        when(mWifiNative.getWifiLinkLayerStats(any())).thenReturn(mLinkLayerStats);
+        when(mWifiNative.getSupplicantSignalPollResults(any())).thenReturn(mSignalPollResults);
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(TEST_TIMESTAMP_MS);
+    }
+
+    /**
+     * Verify that a poll is run on the poll thread and delivers the HAL results.
+     */
+    @Test
+    public void testPollDeliversSample() {
+        mSignalPoller.requestPoll(TEST_IFACE_NAME, true, mCallback);
+        verify(mWifiNative, never()).getSupplicantSignalPollResults(any());
+
+        mLooper.dispatchAll();
+        ArgumentCaptor<SignalPoller.Sample> captor =
+                ArgumentCaptor.forClass(SignalPoller.Sample.class);
+        verify(mCallback).onSignalPollSample(captor.capture());
+        SignalPoller.Sample sample = captor.getValue();
+        assertEquals(TEST_IFACE_NAME, sample.getIfaceName());
+        assertSame(mLinkLayerStats, sample.getLinkLayerStats());
+        assertSame(mSignalPollResults, sample.getSignalPollResults());
+        assertEquals(TEST_TIMESTAMP_MS, sample.getTimestampMs());
+        // wificond is only queried on the wifi thread.
+        verify(mWifiNative, never()).signalPoll(any());
+        verify(mWifiNative, never()).completeSignalPoll(any(), any());
+    }
+
+    /**
+     * Verify that the link layer stats are only fetched if requested.
+     */
+    @Test
+    public void testPollWithoutLinkLayerStats() {
+        mSignalPoller.requestPoll(TEST_IFACE_NAME, false, mCallback);
+        mLooper.dispatchAll();
+
+        verify(mWifiNative, never()).getWifiLinkLayerStats(any());
+        ArgumentCaptor<SignalPoller.Sample> captor =
+                ArgumentCaptor.forClass(SignalPoller.Sample.class);
+        verify(mCallback).onSignalPollSample(captor.capture());
+        assertNull(captor.getValue().getLinkLayerStats());
+        assertSame(mSignalPollResults, captor.getValue().getSignalPollResults());
+    }
+
+    /**
+     * Verify that the polls of several interfaces are batched, with all the HAL queries made
+     * before the samples are delivered.
+     */
+    @Test
+    public void testPollsOfSeveralInterfacesAreBatched() {
+        mSignalPoller.requestPoll(TEST_IFACE_NAME, true, mCallback);
+        mSignalPoller.requestPoll(TEST_IFACE_NAME_2, true, mCallback2);
+        assertEquals(1, mLooper.dispatchAll());
+
+        InOrder inOrder = inOrder(mWifiNative, mCallback, mCallback2);
+        inOrder.verify(mWifiNative).getSupplicantSignalPollResults(TEST_IFACE_NAME);
+        inOrder.verify(mWifiNative).getSupplicantSignalPollResults(TEST_IFACE_NAME_2);
+        inOrder.verify(mCallback).onSignalPollSample(any());
+        inOrder.verify(mCallback2).onSignalPollSample(any());
+    }
+
+    /**
+     * Verify that a second request for an interface whose poll has not started is served by the
+     * pending poll, and reported to the latest callback.
+     */
+    @Test
+    public void testPendingPollsOfAnInterfaceAreMerged() {
+        mSignalPoller.requestPoll(TEST_IFACE_NAME, true, mCallback);
+        mSignalPoller.requestPoll(TEST_IFACE_NAME, true, mCallback2);
+        mLooper.dispatchAll();
+
+        verify(mWifiNative).getSupplicantSignalPollResults(TEST_IFACE_NAME);
+        verify(mCallback, never()).onSignalPollSample(any());
+        verify(mCallback2).onSignalPollSample(any());
+
+        // A request made after the batch ran starts a new poll.
+        mSignalPoller.requestPoll(TEST_IFACE_NAME, true, mCallback);
+        mLooper.dispatchAll();
+        verify(mCallback).onSignalPollSample(any());
+    }
+
+    /**
+     * Verify that a sample is still delivered if the HAL query fails.
+     */
+    @Test
+    public void testPollDeliversSampleIfHalQueryFails() {
+        when(mWifiNative.getWifiLinkLayerStats(any())).thenReturn(null);
+        when(mWifiNative.getSupplicantSignalPollResults(any())).thenReturn(null);
+        mSignalPoller.requestPoll(TEST_IFACE_NAME, true, mCallback);
+        mLooper.dispatchAll();
+
+        ArgumentCaptor<SignalPoller.Sample> captor =
+                ArgumentCaptor.forClass(SignalPoller.Sample.class);
+        verify(mCallback).onSignalPollSample(captor.capture());
+        assertNull(captor.getValue().getLinkLayerStats());
+        assertNull(captor.getValue().getSignalPollResults());
+    }
+}
@@ -78,7 +78,8 @@ public class SupplicantStateTrackerTest extends WifiBaseTest {
         mSupplicantStateTracker = new SupplicantStateTracker(mContext, mWcm, mBatteryStats,
                 mLooper.getLooper(), mWifiMonitor, TEST_IFACE, mClientModeManager, mBroadcastQueue);
 
-        verify(mWifiMonitor, atLeastOnce()).registerHandler(eq(TEST_IFACE), anyInt(), any());
+        verify(mWifiMonitor, atLeastOnce()).registerHandler(eq(TEST_IFACE), anyInt(), any(),
+                eq(false));
     }
 
     @After
@@ -1252,6 +1252,57 @@ public class WifiBlocklistMonitorTest extends WifiBaseTest {
         mWifiBlocklistMonitor.blockBssidForDurationMs(TEST_BSSID_1, config, -1,
                 TEST_FRAMEWORK_BLOCK_REASON, TEST_GOOD_RSSI);
         assertEquals(0, mWifiBlocklistMonitor.updateAndGetBssidBlocklist().size());
+
+        // test malformed BSSID
+        mWifiBlocklistMonitor.blockBssidForDurationMs("0a:08:5c:67:89", config, testDuration,
+                TEST_FRAMEWORK_BLOCK_REASON, TEST_GOOD_RSSI);
+        assertEquals(0, mWifiBlocklistMonitor.updateAndGetBssidBlocklist().size());
+    }
+
+    /**
+     * Verify that a BSSID blocked again for a longer duration only expires at the end of the
+     * latest duration, and that the other BSSIDs still expire on time.
+     */
+    @Test
+    public void testBlockingAgainPostponesExpiry() {
+        WifiConfiguration config = WifiConfigurationTestUtil.createPskNetwork(TEST_SSID_1);
+        when(mClock.getWallClockMillis()).thenReturn(0L);
+        mWifiBlocklistMonitor.blockBssidForDurationMs(TEST_BSSID_1, config, 5000L,
+                TEST_FRAMEWORK_BLOCK_REASON, TEST_GOOD_RSSI);
+        mWifiBlocklistMonitor.blockBssidForDurationMs(TEST_BSSID_2, config, 8000L,
+                TEST_FRAMEWORK_BLOCK_REASON, TEST_GOOD_RSSI);
+
+        when(mClock.getWallClockMillis()).thenReturn(1000L);
+        mWifiBlocklistMonitor.blockBssidForDurationMs(TEST_BSSID_1, config, 10000L,
+                TEST_FRAMEWORK_BLOCK_REASON, TEST_GOOD_RSSI);
+
+        when(mClock.getWallClockMillis()).thenReturn(5001L);
+        assertEquals(Set.of(TEST_BSSID_1, TEST_BSSID_2),
+                mWifiBlocklistMonitor.updateAndGetBssidBlocklist());
+
+        when(mClock.getWallClockMillis()).thenReturn(8001L);
+        assertEquals(Set.of(TEST_BSSID_1), mWifiBlocklistMonitor.updateAndGetBssidBlocklist());
+
+        when(mClock.getWallClockMillis()).thenReturn(11001L);
+        assertEquals(0, mWifiBlocklistMonitor.updateAndGetBssidBlocklist().size());
+    }
+
+    /**
+     * Verify that BSSIDs are packed into the low 48 bits of their key, and that malformed BSSIDs
+     * are rejected.
+     */
+    @Test
+    public void testBssidToKey() {
+        assertEquals(0x0a085c678900L, WifiBlocklistMonitor.bssidToKey(TEST_BSSID_1));
+        assertEquals(0xffffffffffffL, WifiBlocklistMonitor.bssidToKey("FF:ff:FF:ff:FF:ff"));
+        assertEquals(WifiBlocklistMonitor.INVALID_BSSID_KEY,
+                WifiBlocklistMonitor.bssidToKey(null));
+        assertEquals(WifiBlocklistMonitor.INVALID_BSSID_KEY,
+                WifiBlocklistMonitor.bssidToKey(ClientModeImpl.SUPPLICANT_BSSID_ANY));
+        assertEquals(WifiBlocklistMonitor.INVALID_BSSID_KEY,
+                WifiBlocklistMonitor.bssidToKey("0a-08-5c-67-89-00"));
+        assertEquals(WifiBlocklistMonitor.INVALID_BSSID_KEY,
+                WifiBlocklistMonitor.bssidToKey("0a:08:5c:67:89:0g"));
     }
 
     private List<ScanDetail> simulateRssiUpdate(String bssid, int rssi) {
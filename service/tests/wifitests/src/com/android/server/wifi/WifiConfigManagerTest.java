@@ -23,8 +23,11 @@ import static com.android.server.wifi.WifiConfigManager.BUFFERED_WRITE_ALARM_TAG
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.junit.Assume.assumeTrue;
@@ -505,6 +508,70 @@ public class WifiConfigManagerTest extends WifiBaseTest {
         assertEquals(WifiConfiguration.Status.DISABLED, retrievedNetworks.get(0).status);
     }
 
+    /**
+     * Verifies that {@link WifiConfigManager#getConfiguredNetworksSnapshot()} returns the same
+     * list until a network is added or removed.
+     */
+    @Test
+    public void testConfiguredNetworksSnapshotIsSharedUntilNetworksChange() {
+        WifiConfiguration openNetwork = WifiConfigurationTestUtil.createOpenNetwork();
+        verifyAddNetworkToWifiConfigManager(openNetwork);
+
+        List<WifiConfiguration> snapshot = mWifiConfigManager.getConfiguredNetworksSnapshot();
+        long version = mWifiConfigManager.getConfiguredNetworksVersion();
+        assertEquals(1, snapshot.size());
+        assertSame(snapshot, mWifiConfigManager.getConfiguredNetworksSnapshot());
+        assertEquals(version, mWifiConfigManager.getConfiguredNetworksVersion());
+
+        WifiConfiguration pskNetwork = WifiConfigurationTestUtil.createPskNetwork();
+        verifyAddNetworkToWifiConfigManager(pskNetwork);
+        List<WifiConfiguration> snapshotAfterAdd =
+                mWifiConfigManager.getConfiguredNetworksSnapshot();
+        assertNotSame(snapshot, snapshotAfterAdd);
+        assertEquals(2, snapshotAfterAdd.size());
+        assertTrue(mWifiConfigManager.getConfiguredNetworksVersion() > version);
+
+        verifyRemoveNetworkFromWifiConfigManager(openNetwork);
+        List<WifiConfiguration> snapshotAfterRemove =
+                mWifiConfigManager.getConfiguredNetworksSnapshot();
+        assertEquals(1, snapshotAfterRemove.size());
+        assertEquals(pskNetwork.networkId, snapshotAfterRemove.get(0).networkId);
+    }
+
+    /**
+     * Verifies that {@link WifiConfigManager#getConfiguredNetworksSnapshot()} is invalidated when
+     * the selection status of a network changes.
+     */
+    @Test
+    public void testConfiguredNetworksSnapshotInvalidatedOnNetworkSelectionStatusChange() {
+        WifiConfiguration openNetwork = WifiConfigurationTestUtil.createOpenNetwork();
+        int networkId = verifyAddNetworkToWifiConfigManager(openNetwork).getNetworkId();
+        mWifiConfigManager.updateNetworkSelectionStatus(networkId,
+                TEST_NETWORK_SELECTION_ENABLE_REASON);
+        assertTrue(mWifiConfigManager.getConfiguredNetworksSnapshot().get(0)
+                .getNetworkSelectionStatus().isNetworkEnabled());
+
+        mWifiConfigManager.updateNetworkSelectionStatus(networkId,
+                TEST_NETWORK_SELECTION_PERM_DISABLE_REASON);
+        assertTrue(mWifiConfigManager.getConfiguredNetworksSnapshot().get(0)
+                .getNetworkSelectionStatus().isNetworkPermanentlyDisabled());
+    }
+
+    /**
+     * Verifies that the networks in {@link WifiConfigManager#getConfiguredNetworksSnapshot()}
+     * have their passwords masked, and that the list can not be modified.
+     */
+    @Test
+    public void testConfiguredNetworksSnapshotIsMaskedAndUnmodifiable() {
+        WifiConfiguration pskNetwork = WifiConfigurationTestUtil.createPskNetwork();
+        verifyAddNetworkToWifiConfigManager(pskNetwork);
+
+        List<WifiConfiguration> snapshot = mWifiConfigManager.getConfiguredNetworksSnapshot();
+        assertEquals(WifiConfigManager.PASSWORD_MASK, snapshot.get(0).preSharedKey);
+        assertThrows(UnsupportedOperationException.class,
+                () -> snapshot.add(new WifiConfiguration()));
+    }
+
     /**
      * Verifies the addition of a WAPI-PSK network using
      * {@link WifiConfigManager#addOrUpdateNetwork(WifiConfiguration, int)}
@@ -7185,6 +7252,11 @@ public class WifiConfigManagerTest extends WifiBaseTest {
         assertTrue(mergedNetwork.isSecurityType(upgradableSecurityType));
         assertFalse(mergedNetwork.getSecurityParams(upgradableSecurityType)
                 .isAddedByAutoUpgrade());
+        // The merged network is indexed with its keys after the merge.
+        WifiConfiguration networkByProfileKey =
+                mWifiConfigManager.getConfiguredNetwork(mergedNetwork.getProfileKey());
+        assertNotNull(networkByProfileKey);
+        assertEquals(mergedNetwork.networkId, networkByProfileKey.networkId);
     }
 
     /**
@@ -813,6 +813,29 @@ public class WifiConfigStoreTest extends WifiBaseTest {
         verify(userStoreNetworkSuggestionsData, never()).serializeData(any(), any());
     }
 
+    /**
+     * Verify that the data of the shared ANQP cache store file is written to its own file, without
+     * rewriting the shared general store file.
+     */
+    @Test
+    public void testWriteAnqpCacheStoreFileOnly() throws Exception {
+        MockStoreFile anqpCacheStore =
+                new MockStoreFile(WifiConfigStore.STORE_FILE_SHARED_ANQP_CACHE);
+        mWifiConfigStore = new WifiConfigStore(mContext, new Handler(mLooper.getLooper()), mClock,
+                mWifiMetrics, Arrays.asList(mSharedStore, mSharedSoftApStore, anqpCacheStore));
+        MockStoreData anqpCacheStoreData =
+                new MockStoreData(WifiConfigStore.STORE_FILE_SHARED_ANQP_CACHE);
+        mSharedStoreData.setHasAnyNewData(false);
+        assertTrue(mWifiConfigStore.registerStoreData(mSharedStoreData));
+        assertTrue(mWifiConfigStore.registerStoreData(anqpCacheStoreData));
+
+        mWifiConfigStore.write(true);
+
+        assertTrue(anqpCacheStore.isStoreWritten());
+        assertFalse(mSharedStore.isStoreWritten());
+        assertFalse(mSharedSoftApStore.isStoreWritten());
+    }
+
     /**
      * Verify that we gracefully skip unknown section when reading an user store file.
      */
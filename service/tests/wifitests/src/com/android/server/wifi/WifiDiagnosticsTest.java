@@ -107,11 +107,11 @@ public class WifiDiagnosticsTest extends WifiBaseTest {
     private WifiNative.RingBufferStatus mFakeRbs;
     /**
      * Returns the data that we would dump in a bug report, for our ring buffer.
-     * @return a 2-D byte array, where the first dimension is the record number, and the second
-     * dimension is the byte index within that record.
+     * @return the records of the ring buffer, concatenated.
      */
-    private final byte[][] getLoggerRingBufferData() throws Exception {
-        return mWifiDiagnostics.getBugReports().get(0).ringBuffers.get(FAKE_RING_BUFFER_NAME);
+    private final byte[] getLoggerRingBufferData() throws Exception {
+        return mWifiDiagnostics.getBugReports().get(0).ringBuffers.get(FAKE_RING_BUFFER_NAME)
+                .toByteArray();
     }
 
     /**
@@ -306,9 +306,7 @@ public class WifiDiagnosticsTest extends WifiBaseTest {
         mWifiDiagnostics.triggerBugReportDataCapture(WifiDiagnostics.REPORT_REASON_NONE);
         mTestLooper.dispatchAll();
 
-        byte[][] ringBufferData = getLoggerRingBufferData();
-        assertEquals(1, ringBufferData.length);
-        assertArrayEquals(data, ringBufferData[0]);
+        assertArrayEquals(data, getLoggerRingBufferData());
     }
 
     /**
@@ -328,9 +326,7 @@ public class WifiDiagnosticsTest extends WifiBaseTest {
         mWifiDiagnostics.triggerBugReportDataCapture(WifiDiagnostics.REPORT_REASON_NONE);
         mTestLooper.dispatchAll();
 
-        byte[][] ringBufferData = getLoggerRingBufferData();
-        assertEquals(1, ringBufferData.length);
-        assertArrayEquals(data2, ringBufferData[0]);
+        assertArrayEquals(data2, getLoggerRingBufferData());
     }
 
     // Verifies that startPktFateMonitoring(any()) reports failure to start packet fate
@@ -725,7 +721,8 @@ public class WifiDiagnosticsTest extends WifiBaseTest {
                 mFakeRbs, new byte[LARGE_RING_BUFFER_SIZE_KB * BYTES_PER_KBYTE]);
         mWifiDiagnostics.triggerBugReportDataCapture(WifiDiagnostics.REPORT_REASON_NONE);
         mTestLooper.dispatchAll();
-        assertEquals(1, getLoggerRingBufferData().length);
+        assertEquals(LARGE_RING_BUFFER_SIZE_KB * BYTES_PER_KBYTE,
+                getLoggerRingBufferData().length);
     }
 
     /** Verifies that we use large ring buffers when switched from normal to verbose mode. */
@@ -739,7 +736,8 @@ public class WifiDiagnosticsTest extends WifiBaseTest {
                 mFakeRbs, new byte[LARGE_RING_BUFFER_SIZE_KB * BYTES_PER_KBYTE]);
         mWifiDiagnostics.triggerBugReportDataCapture(WifiDiagnostics.REPORT_REASON_NONE);
         mTestLooper.dispatchAll();
-        assertEquals(1, getLoggerRingBufferData().length);
+        assertEquals(LARGE_RING_BUFFER_SIZE_KB * BYTES_PER_KBYTE,
+                getLoggerRingBufferData().length);
     }
 
     /** Verifies that we use small ring buffers when switched from verbose to normal mode. */
@@ -779,7 +777,7 @@ public class WifiDiagnosticsTest extends WifiBaseTest {
         assertEquals(1, mWifiDiagnostics.getAlertReports().size());
         WifiDiagnostics.BugReport alertReport = mWifiDiagnostics.getAlertReports().get(0);
         assertEquals(ALERT_REASON_CODE, alertReport.errorCode);
-        assertArrayEquals(ALERT_DATA, alertReport.alertData);
+        assertArrayEquals(ALERT_DATA, alertReport.alertData.toByteArray());
 
         verify(mWifiMetrics).logFirmwareAlert(anyString(), eq(ALERT_REASON_CODE));
         verify(mWifiScoreCard).noteFirmwareAlert(ALERT_REASON_CODE);
@@ -1011,9 +1009,7 @@ public class WifiDiagnosticsTest extends WifiBaseTest {
         mWifiDiagnostics.triggerBugReportDataCapture(WifiDiagnostics.REPORT_REASON_NONE);
         mTestLooper.dispatchAll();
 
-        byte[][] ringBufferData = getLoggerRingBufferData();
-        assertEquals(1, ringBufferData.length);
-        assertArrayEquals(data, ringBufferData[0]);
+        assertArrayEquals(data, getLoggerRingBufferData());
     }
 
     /**
@@ -1033,9 +1029,7 @@ public class WifiDiagnosticsTest extends WifiBaseTest {
         mWifiDiagnostics.triggerBugReportDataCapture(WifiDiagnostics.REPORT_REASON_NONE);
         mTestLooper.dispatchAll();
 
-        byte[][] ringBufferData = getLoggerRingBufferData();
-        assertEquals(1, ringBufferData.length);
-        assertArrayEquals(data, ringBufferData[0]);
+        assertArrayEquals(data, getLoggerRingBufferData());
     }
 
     /**
@@ -1056,9 +1050,7 @@ public class WifiDiagnosticsTest extends WifiBaseTest {
         mWifiDiagnostics.triggerBugReportDataCapture(WifiDiagnostics.REPORT_REASON_NONE);
         mTestLooper.dispatchAll();
 
-        byte[][] ringBufferData0 = getLoggerRingBufferData();
-        assertEquals(1, ringBufferData0.length);
-        assertArrayEquals(data, ringBufferData0[0]);
+        assertArrayEquals(data, getLoggerRingBufferData());
 
         mWifiDiagnostics.stopLogging(STA_IF_NAME);
 
@@ -1066,9 +1058,7 @@ public class WifiDiagnosticsTest extends WifiBaseTest {
         mWifiDiagnostics.triggerBugReportDataCapture(WifiDiagnostics.REPORT_REASON_NONE);
         mTestLooper.dispatchAll();
 
-        byte[][] ringBufferData1 = getLoggerRingBufferData();
-        assertEquals(1, ringBufferData1.length);
-        assertArrayEquals(data, ringBufferData1[0]);
+        assertArrayEquals(data, getLoggerRingBufferData());
     }
 
     /**
@@ -1089,9 +1079,7 @@ public class WifiDiagnosticsTest extends WifiBaseTest {
         mWifiDiagnostics.triggerBugReportDataCapture(WifiDiagnostics.REPORT_REASON_NONE);
         mTestLooper.dispatchAll();
 
-        byte[][] ringBufferData0 = getLoggerRingBufferData();
-        assertEquals(1, ringBufferData0.length);
-        assertArrayEquals(data, ringBufferData0[0]);
+        assertArrayEquals(data, getLoggerRingBufferData());
 
         mWifiDiagnostics.stopLogging(AP_IF_NAME);
 
@@ -1099,9 +1087,7 @@ public class WifiDiagnosticsTest extends WifiBaseTest {
         mWifiDiagnostics.triggerBugReportDataCapture(WifiDiagnostics.REPORT_REASON_NONE);
         mTestLooper.dispatchAll();
 
-        byte[][] ringBufferData1 = getLoggerRingBufferData();
-        assertEquals(1, ringBufferData1.length);
-        assertArrayEquals(data, ringBufferData1[0]);
+        assertArrayEquals(data, getLoggerRingBufferData());
     }
 
     /** Verifies that stoplogging on both the interfaces clean up
@@ -40,6 +40,7 @@ import android.net.wifi.WifiScanner.ScanData;
 import android.net.wifi.WifiScanner.ScanSettings;
 import android.net.wifi.WifiSsid;
 import android.os.Build;
+import android.os.Handler;
 import android.os.test.TestLooper;
 import android.util.LocalLog;
 
@@ -181,7 +182,7 @@ public class WifiHealthMonitorTest extends WifiBaseTest {
         mWifiConfigManager = mockConfigManager();
 
         mWifiScoreCard = new WifiScoreCard(mClock, "some seed", mDeviceConfigFacade,
-                mContext, mWifiGlobals);
+                mContext, mWifiGlobals, new Handler(mLooper.getLooper()), Runnable::run);
         mAlarmManager = new TestAlarmManager();
         when(mContext.getSystemService(Context.ALARM_SERVICE))
                 .thenReturn(mAlarmManager.getAlarmManager());
@@ -263,6 +264,7 @@ public class WifiHealthMonitorTest extends WifiBaseTest {
     private WifiConfigManager mockConfigManager() {
         WifiConfigManager wifiConfigManager = mock(WifiConfigManager.class);
         when(wifiConfigManager.getConfiguredNetworks()).thenReturn(mConfiguredNetworks);
+        when(wifiConfigManager.getConfiguredNetworksSnapshot()).thenReturn(mConfiguredNetworks);
         when(wifiConfigManager.findScanRssi(anyInt(), anyInt()))
                 .thenReturn(-53);
 
@@ -227,29 +227,8 @@ public class WifiMetricsTest extends WifiBaseTest {
         mTestLooper = new TestLooper();
         mResources = new MockResources();
         when(mContext.getResources()).thenReturn(mResources);
-        mWifiMetrics =
-                new WifiMetrics(
-                        mContext,
-                        mFacade,
-                        mClock,
-                        mTestLooper.getLooper(),
-                        new WifiAwareMetrics(mClock),
-                        new RttMetrics(mClock),
-                        mWifiPowerMetrics,
-                        mWifiP2pMetrics,
-                        mDppMetrics,
-                        mWifiMonitor,
-                        mWifiDeviceStateChangeManager);
-        mWifiMetrics.setWifiConfigManager(mWcm);
-        mWifiMetrics.setWifiBlocklistMonitor(mWifiBlocklistMonitor);
-        mWifiMetrics.setPasspointManager(mPpm);
-        mWifiMetrics.setScoringParams(mScoringParams);
-        mWifiMetrics.setWifiNetworkSelector(mWns);
-        mWifiMetrics.setWifiDataStall(mWifiDataStall);
-        mWifiMetrics.setWifiChannelUtilization(mWifiChannelUtilization);
-        mWifiMetrics.setWifiSettingsStore(mWifiSettingsStore);
-        mWifiMetrics.setWifiHealthMonitor(mWifiHealthMonitor);
-        mWifiMetrics.setWifiScoreCard(mWifiScoreCard);
+        when(mWifiP2pMetrics.consolidateProto()).thenReturn(new WifiMetricsProto.WifiP2pStats());
+        mWifiMetrics = createWifiMetrics(mWifiP2pMetrics);
         when(mOnWifiUsabilityStatsListener.asBinder()).thenReturn(mAppBinder);
         when(mWifiScoreCard.lookupNetwork(anyString())).thenReturn(mPerNetwork);
         when(mPerNetwork.getRecentStats()).thenReturn(mNetworkConnectionStats);
@@ -277,6 +256,33 @@ public class WifiMetricsTest extends WifiBaseTest {
                 .startMocking();
     }
 
+    private WifiMetrics createWifiMetrics(WifiP2pMetrics wifiP2pMetrics) {
+        WifiMetrics wifiMetrics =
+                new WifiMetrics(
+                        mContext,
+                        mFacade,
+                        mClock,
+                        mTestLooper.getLooper(),
+                        new WifiAwareMetrics(mClock),
+                        new RttMetrics(mClock),
+                        mWifiPowerMetrics,
+                        wifiP2pMetrics,
+                        mDppMetrics,
+                        mWifiMonitor,
+                        mWifiDeviceStateChangeManager);
+        wifiMetrics.setWifiConfigManager(mWcm);
+        wifiMetrics.setWifiBlocklistMonitor(mWifiBlocklistMonitor);
+        wifiMetrics.setPasspointManager(mPpm);
+        wifiMetrics.setScoringParams(mScoringParams);
+        wifiMetrics.setWifiNetworkSelector(mWns);
+        wifiMetrics.setWifiDataStall(mWifiDataStall);
+        wifiMetrics.setWifiChannelUtilization(mWifiChannelUtilization);
+        wifiMetrics.setWifiSettingsStore(mWifiSettingsStore);
+        wifiMetrics.setWifiHealthMonitor(mWifiHealthMonitor);
+        wifiMetrics.setWifiScoreCard(mWifiScoreCard);
+        return wifiMetrics;
+    }
+
     @After
     public void tearDown() {
         mSession.finishMocking();
@@ -2897,6 +2903,75 @@ public class WifiMetricsTest extends WifiBaseTest {
         assertEquals(WifiMetrics.MAX_STA_EVENTS, mDecodedProto.staEventList.length);
     }
 
+    /**
+     * Verify that the proto dump, which serializes the large repeated fields a slice at a time,
+     * keeps their order and the other fields, and resets the metrics.
+     */
+    @Test
+    public void testProtoDumpKeepsOrderOfSlicedFields() throws Exception {
+        int numEvents = 50;
+        for (int i = 0; i < numEvents; i++) {
+            mWifiMetrics.logStaEvent(TEST_IFACE_NAME, i % 2 == 0
+                    ? StaEvent.TYPE_CMD_START_CONNECT : StaEvent.TYPE_CMD_START_ROAM);
+        }
+        mWifiMetrics.incrementNumHalCrashes();
+        cleanDumpProtoAndDeserialize();
+
+        assertEquals(numEvents, mDecodedProto.staEventList.length);
+        for (int i = 0; i < numEvents; i++) {
+            assertEquals(i % 2 == 0 ? StaEvent.TYPE_CMD_START_CONNECT
+                    : StaEvent.TYPE_CMD_START_ROAM, mDecodedProto.staEventList[i].type);
+        }
+        assertEquals(1, mDecodedProto.numHalCrashes);
+
+        dumpProtoAndDeserialize();
+        assertEquals(0, mDecodedProto.staEventList.length);
+        assertEquals(0, mDecodedProto.numHalCrashes);
+    }
+
+    /**
+     * Verify that the proto dump writes the sub-messages kept across dumps before they are reset,
+     * and that the ones which are not reset still hold their values after the dump.
+     */
+    @Test
+    public void testProtoDumpWritesSharedSubMessagesBeforeReset() throws Exception {
+        mWifiMetrics.addWifiLockActiveSession(WifiManager.WIFI_MODE_FULL_HIGH_PERF,
+                new int[]{TEST_UID}, new String[]{TEST_TAG}, 100000, true, false, false);
+        mWifiMetrics.incrementNumWifiToggles(true, true);
+        mWifiMetrics.incrementNetworkRequestApiNumRequest();
+        dumpProtoAndDeserialize();
+
+        assertEquals(100000, mDecodedProto.wifiLockStats.highPerfActiveTimeMs);
+        assertEquals(1, mDecodedProto.wifiToggleStats.numToggleOnPrivileged);
+        assertEquals(1, mDecodedProto.wifiNetworkRequestApiLog.numRequest);
+
+        // The toggle made after the dump only counts towards the next one.
+        mWifiMetrics.incrementNumWifiToggles(true, true);
+        dumpProtoAndDeserialize();
+        assertEquals(0, mDecodedProto.wifiLockStats.highPerfActiveTimeMs);
+        assertEquals(1, mDecodedProto.wifiToggleStats.numToggleOnPrivileged);
+        assertEquals(1, mDecodedProto.wifiNetworkRequestApiLog.numRequest);
+    }
+
+    /**
+     * Verify that the proto dump writes the P2P stats before WifiP2pMetrics resets them.
+     */
+    @Test
+    public void testProtoDumpWritesP2pStatsBeforeReset() throws Exception {
+        WifiP2pMetrics wifiP2pMetrics = new WifiP2pMetrics(mClock, mContext);
+        mWifiMetrics = createWifiMetrics(wifiP2pMetrics);
+        wifiP2pMetrics.incrementPeerScans();
+        wifiP2pMetrics.incrementServiceScans();
+        dumpProtoAndDeserialize();
+
+        assertEquals(1, mDecodedProto.wifiP2PStats.numTotalPeerScans);
+        assertEquals(1, mDecodedProto.wifiP2PStats.numTotalServiceScans);
+
+        dumpProtoAndDeserialize();
+        assertEquals(0, mDecodedProto.wifiP2PStats.numTotalPeerScans);
+        assertEquals(0, mDecodedProto.wifiP2PStats.numTotalServiceScans);
+    }
+
     /**
      * Tests that link probe StaEvents do not exceed
      * {@link WifiMetrics#MAX_LINK_PROBE_STA_EVENTS}.
@@ -3785,6 +3860,33 @@ public class WifiMetricsTest extends WifiBaseTest {
         verifyUnusableEvent(mDecodedProto.wifiIsUnusableEventList[2], 3);
     }
 
+    /**
+     * Verify that the RSSI poll counts of several frequencies are logged ordered by frequency,
+     * then by RSSI.
+     */
+    @Test
+    public void testRssiPollCountsOrderedByFrequencyAndRssi() throws Exception {
+        mWifiMetrics.incrementRssiPollRssiCount(5180, -50);
+        mWifiMetrics.incrementRssiPollRssiCount(2412, -40);
+        mWifiMetrics.incrementRssiPollRssiCount(5180, -70);
+        mWifiMetrics.incrementRssiPollRssiCount(2412, -40);
+        mWifiMetrics.incrementRssiPollRssiCount(5180, -50);
+        mWifiMetrics.incrementRssiPollRssiCount(2412, -127);
+        dumpProtoAndDeserialize();
+
+        int[][] expected = {{2412, -127, 1}, {2412, -40, 2}, {5180, -70, 1}, {5180, -50, 2}};
+        assertEquals(expected.length, mDecodedProto.rssiPollRssiCount.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i][0], mDecodedProto.rssiPollRssiCount[i].frequency);
+            assertEquals(expected[i][1], mDecodedProto.rssiPollRssiCount[i].rssi);
+            assertEquals(expected[i][2], mDecodedProto.rssiPollRssiCount[i].count);
+        }
+
+        // The counts are cleared by the dump.
+        dumpProtoAndDeserialize();
+        assertEquals(0, mDecodedProto.rssiPollRssiCount.length);
+    }
+
     /**
      * Verify that LinkSpeedCounts is correctly logged in metrics
      */
@@ -4470,6 +4572,41 @@ public class WifiMetricsTest extends WifiBaseTest {
         }
     }
 
+    /**
+     * Verify that the entries of a labeled WifiUsabilityStats are not modified by the following
+     * polls, which recycle the entries of the ring buffer.
+     * @throws Exception
+     */
+    @Test
+    public void testWifiUsabilityStatsSnapshotNotChangedByLaterPolls() throws Exception {
+        WifiInfo info = mock(WifiInfo.class);
+        when(info.getRssi()).thenReturn(-50);
+        WifiLinkLayerStats stats = new WifiLinkLayerStats();
+        stats.timeStampInMs = 1000;
+        stats.contentionTimeAvgBeInUsec = 10;
+        RadioStat radio = new RadioStat();
+        radio.on_time = 100;
+        stats.radioStats = new RadioStat[] {radio};
+        mWifiMetrics.updateWifiUsabilityStatsEntries(TEST_IFACE_NAME, info, stats);
+        mWifiMetrics.addToWifiUsabilityStatsList(TEST_IFACE_NAME, WifiUsabilityStats.LABEL_BAD,
+                WifiUsabilityStats.TYPE_DATA_STALL_BAD_TX, -1);
+
+        addGoodWifiUsabilityStats(nextRandomStats(stats));
+        dumpProtoAndDeserialize();
+
+        assertEquals(2, mDecodedProto.wifiUsabilityStatsList.length);
+        WifiUsabilityStats badStats = mDecodedProto.wifiUsabilityStatsList[1];
+        assertEquals(WifiUsabilityStats.LABEL_BAD, badStats.label);
+        assertEquals(1, badStats.stats.length);
+        assertEquals(1000, badStats.stats[0].timeStampMs);
+        assertEquals(-50, badStats.stats[0].rssi);
+        assertEquals(10, badStats.stats[0].contentionTimeStats[
+                WifiMetricsProto.ContentionTimeStats.WME_ACCESS_CATEGORY_BE]
+                .contentionTimeAvgMicros);
+        assertEquals(1, badStats.stats[0].radioStats.length);
+        assertEquals(100, badStats.stats[0].radioStats[0].totalRadioOnTimeMs);
+    }
+
     /**
      * Verify that LABEL_GOOD stats are not generated more frequently than
      * |MIN_WIFI_GOOD_USABILITY_STATS_PERIOD_MS|
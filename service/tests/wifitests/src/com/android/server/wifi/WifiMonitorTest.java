@@ -22,6 +22,8 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -637,6 +639,61 @@ public class WifiMonitorTest extends WifiBaseTest {
         verify(mHandlerSpy, times(1)).handleMessage(messageCaptor.capture());
     }
 
+    /**
+     * Verify that the iface name is only attached for handlers which asked for it.
+     */
+    @Test
+    public void testIfaceNameOnlyAttachedWhenRequested() {
+        mWifiMonitor.registerHandler(
+                WLAN_IFACE_NAME, WifiMonitor.SCAN_RESULTS_EVENT, mHandlerSpy, false);
+        mWifiMonitor.registerHandler(
+                WLAN_IFACE_NAME, WifiMonitor.SCAN_RESULTS_EVENT, mSecondHandlerSpy);
+        mWifiMonitor.broadcastScanResultEvent(WLAN_IFACE_NAME);
+        mLooper.dispatchAll();
+
+        ArgumentCaptor<Message> messageCaptor = ArgumentCaptor.forClass(Message.class);
+        verify(mHandlerSpy).handleMessage(messageCaptor.capture());
+        assertNull(messageCaptor.getValue().peekData());
+        verify(mSecondHandlerSpy).handleMessage(messageCaptor.capture());
+        assertEquals(WLAN_IFACE_NAME,
+                messageCaptor.getValue().getData().getString(WifiMonitor.KEY_IFACE));
+    }
+
+    /**
+     * Verify that registering the same handler twice only delivers the event once.
+     */
+    @Test
+    public void testRegisterHandlerTwiceDeliversEventOnce() {
+        mWifiMonitor.registerHandler(
+                WLAN_IFACE_NAME, WifiMonitor.SCAN_RESULTS_EVENT, mHandlerSpy);
+        mWifiMonitor.registerHandler(
+                WLAN_IFACE_NAME, WifiMonitor.SCAN_RESULTS_EVENT, mHandlerSpy);
+        mWifiMonitor.broadcastScanResultEvent(WLAN_IFACE_NAME);
+        mLooper.dispatchAll();
+
+        verify(mHandlerSpy, times(1)).handleMessage(any());
+    }
+
+    /**
+     * Verify that the events of an iface whose handlers were all deregistered are not sent to
+     * the handlers of other ifaces.
+     */
+    @Test
+    public void testEventNotBroadcastToOtherIfacesAfterDeregister() {
+        mWifiMonitor.setMonitoring(SECOND_WLAN_IFACE_NAME, true);
+        mWifiMonitor.registerHandler(
+                WLAN_IFACE_NAME, WifiMonitor.SCAN_RESULTS_EVENT, mHandlerSpy);
+        mWifiMonitor.registerHandler(
+                SECOND_WLAN_IFACE_NAME, WifiMonitor.SCAN_RESULTS_EVENT, mSecondHandlerSpy);
+        mWifiMonitor.deregisterHandler(
+                WLAN_IFACE_NAME, WifiMonitor.SCAN_RESULTS_EVENT, mHandlerSpy);
+        mWifiMonitor.broadcastScanResultEvent(WLAN_IFACE_NAME);
+        mLooper.dispatchAll();
+
+        verify(mHandlerSpy, never()).handleMessage(any());
+        verify(mSecondHandlerSpy, never()).handleMessage(any());
+    }
+
     /**
      * Broadcast Bss transition request frame handling event test.
      */
@@ -918,6 +918,29 @@ public class WifiNativeTest extends WifiBaseTest {
         verify(mWificondControl).signalPoll(WIFI_IFACE_NAME);
     }
 
+    /**
+     * Verifies that getSupplicantSignalPollResults() only queries supplicant, and that
+     * completeSignalPoll() falls back to WificondControl if supplicant returned no results.
+     */
+    @Test
+    public void testSignalPollSplitBetweenSupplicantAndWificond() throws Exception {
+        WifiSignalPollResults supplicantResults = new WifiSignalPollResults();
+        supplicantResults.addEntry(0, -50, 24, 12, 2412);
+        when(mStaIfaceHal.getSignalPollResults(WIFI_IFACE_NAME)).thenReturn(supplicantResults);
+        when(mWificondControl.signalPoll(WIFI_IFACE_NAME)).thenReturn(SIGNAL_POLL_RESULT);
+
+        assertEquals(supplicantResults,
+                mWifiNative.getSupplicantSignalPollResults(WIFI_IFACE_NAME));
+        assertEquals(supplicantResults,
+                mWifiNative.completeSignalPoll(WIFI_IFACE_NAME, supplicantResults));
+        verify(mWificondControl, never()).signalPoll(any());
+
+        WifiSignalPollResults pollResults = mWifiNative.completeSignalPoll(WIFI_IFACE_NAME, null);
+        assertEquals(SIGNAL_POLL_RESULT.currentRssiDbm, pollResults.getRssi());
+        assertEquals(SIGNAL_POLL_RESULT.txBitrateMbps, pollResults.getTxLinkSpeed());
+        verify(mWificondControl).signalPoll(WIFI_IFACE_NAME);
+    }
+
     /**
      * Verifies that scan() calls underlying WificondControl.
      */
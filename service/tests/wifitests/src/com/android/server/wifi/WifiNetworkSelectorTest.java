@@ -855,7 +855,7 @@ public class WifiNetworkSelectorTest extends WifiBaseTest {
         WifiConfiguration candidate = mWifiNetworkSelector.selectNetwork(candidates);
         verify(mWifiMetrics).incrementNetworkSelectionFilteredBssidCount(0);
 
-        verify(mWifiConfigManager).getConfiguredNetworks();
+        verify(mWifiConfigManager).getConfiguredNetworksSnapshot();
         verify(mWifiConfigManager, times(savedConfigs.length)).tryEnableNetwork(anyInt());
         verify(mWifiConfigManager, times(savedConfigs.length))
                 .clearNetworkCandidateScanResult(anyInt());
@@ -2368,6 +2368,42 @@ public class WifiNetworkSelectorTest extends WifiBaseTest {
         return scanDetailsAndConfigs.getScanDetails();
     }
 
+    /**
+     * Verify that the throughput of a scan detail nominated several times is only predicted once
+     * per network selection, and predicted again in the next network selection.
+     */
+    @Test
+    public void testThroughputPredictedOncePerScanDetailPerSelection() {
+        String[] ssids = {"\"test1\""};
+        String[] bssids = {"6c:f3:7f:ae:8c:f3"};
+        int[] freqs = {5180};
+        String[] caps = {"[WPA2-PSK][ESS]"};
+        int[] levels = {mThresholdMinimumRssi5G + 8};
+        int[] securities = {SECURITY_PSK};
+        byte[][] iesByteStream = {new byte[0]};
+        ScanDetailsAndWifiConfigs scanDetailsAndConfigs =
+                WifiNetworkSelectorTestUtil.setupScanDetailsAndConfigStore(ssids, bssids,
+                        freqs, caps, levels, securities, mWifiConfigManager, mClock, iesByteStream);
+        List<ScanDetail> scanDetails = scanDetailsAndConfigs.getScanDetails();
+        // add a second NetworkNominator that also returns the first network in the scan list
+        mWifiNetworkSelector.registerNetworkNominator(
+                new PlaceholderNominator(0, PLACEHOLDER_NOMINATOR_ID_2));
+
+        mWifiNetworkSelector.getCandidatesFromScan(scanDetails, new HashSet<>(),
+                Arrays.asList(new ClientModeManagerState(TEST_IFACE_NAME, false, true, mWifiInfo,
+                        false)),
+                false, true, true, Collections.emptySet(), false);
+        verify(mThroughputPredictor, times(1)).predictThroughput(any(), anyInt(), anyInt(),
+                anyInt(), anyInt(), anyInt(), anyInt(), anyInt(), anyBoolean(), any());
+
+        mWifiNetworkSelector.getCandidatesFromScan(scanDetails, new HashSet<>(),
+                Arrays.asList(new ClientModeManagerState(TEST_IFACE_NAME, false, true, mWifiInfo,
+                        false)),
+                false, true, true, Collections.emptySet(), false);
+        verify(mThroughputPredictor, times(2)).predictThroughput(any(), anyInt(), anyInt(),
+                anyInt(), anyInt(), anyInt(), anyInt(), anyInt(), anyBoolean(), any());
+    }
+
     /**
      * Tests that metrics are recorded for 3 scorers.
      */
@@ -355,16 +355,17 @@ public class WifiNetworkSelectorTestUtil {
                         return null;
                     }
                 });
-        when(wifiConfigManager.getConfiguredNetworks())
-                .then(new AnswerWithArguments() {
-                    public List<WifiConfiguration> answer() {
-                        List<WifiConfiguration> savedNetworks = new ArrayList<>();
-                        for (int netId = 0; netId < configs.length; netId++) {
-                            savedNetworks.add(new WifiConfiguration(configs[netId]));
-                        }
-                        return savedNetworks;
-                    }
-                });
+        AnswerWithArguments configuredNetworksAnswer = new AnswerWithArguments() {
+            public List<WifiConfiguration> answer() {
+                List<WifiConfiguration> savedNetworks = new ArrayList<>();
+                for (int netId = 0; netId < configs.length; netId++) {
+                    savedNetworks.add(new WifiConfiguration(configs[netId]));
+                }
+                return savedNetworks;
+            }
+        };
+        when(wifiConfigManager.getConfiguredNetworks()).then(configuredNetworksAnswer);
+        when(wifiConfigManager.getConfiguredNetworksSnapshot()).then(configuredNetworksAnswer);
         when(wifiConfigManager.clearNetworkCandidateScanResult(anyInt()))
                 .then(new AnswerWithArguments() {
                     public boolean answer(int netId) {
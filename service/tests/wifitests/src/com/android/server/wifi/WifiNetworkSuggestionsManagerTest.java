@@ -34,6 +34,7 @@ import static com.android.server.wifi.WifiNetworkSuggestionsManager.NOTIFICATION
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assume.assumeFalse;
 import static org.junit.Assume.assumeTrue;
@@ -4805,6 +4806,46 @@ public class WifiNetworkSuggestionsManagerTest extends WifiBaseTest {
                 mWifiNetworkSuggestionsManager.getAllApprovedNetworkSuggestions());
     }
 
+    /**
+     * Verify that the suggestion views are reused until the suggestions change, and updated on
+     * add and remove.
+     */
+    @Test
+    public void testSuggestionViewsUpdatedOnlyOnChange() {
+        WifiNetworkSuggestion networkSuggestion1 = createWifiNetworkSuggestion(
+                WifiConfigurationTestUtil.createOpenNetwork(), null, false, false, true, true,
+                DEFAULT_PRIORITY_GROUP);
+        WifiNetworkSuggestion networkSuggestion2 = createWifiNetworkSuggestion(
+                WifiConfigurationTestUtil.createPskNetwork(), null, false, false, true, true,
+                DEFAULT_PRIORITY_GROUP);
+        assertEquals(WifiManager.STATUS_NETWORK_SUGGESTIONS_SUCCESS,
+                mWifiNetworkSuggestionsManager.add(List.of(networkSuggestion1), TEST_UID_1,
+                        TEST_PACKAGE_1, TEST_FEATURE));
+        mWifiNetworkSuggestionsManager.setHasUserApprovedForApp(true, TEST_UID_1, TEST_PACKAGE_1);
+
+        Set<WifiNetworkSuggestion> approvedSuggestions =
+                mWifiNetworkSuggestionsManager.getAllApprovedNetworkSuggestions();
+        assertEquals(Set.of(networkSuggestion1), approvedSuggestions);
+        assertSame(approvedSuggestions,
+                mWifiNetworkSuggestionsManager.getAllApprovedNetworkSuggestions());
+
+        assertEquals(WifiManager.STATUS_NETWORK_SUGGESTIONS_SUCCESS,
+                mWifiNetworkSuggestionsManager.add(List.of(networkSuggestion2), TEST_UID_1,
+                        TEST_PACKAGE_1, TEST_FEATURE));
+        assertEquals(Set.of(networkSuggestion1, networkSuggestion2),
+                mWifiNetworkSuggestionsManager.getAllApprovedNetworkSuggestions());
+        assertEquals(2, mWifiNetworkSuggestionsManager
+                .getAllScanOptimizationSuggestionNetworks().size());
+
+        assertEquals(WifiManager.STATUS_NETWORK_SUGGESTIONS_SUCCESS,
+                mWifiNetworkSuggestionsManager.remove(List.of(networkSuggestion1), TEST_UID_1,
+                        TEST_PACKAGE_1, WifiManager.ACTION_REMOVE_SUGGESTION_DISCONNECT));
+        assertEquals(Set.of(networkSuggestion2),
+                mWifiNetworkSuggestionsManager.getAllNetworkSuggestions());
+        assertEquals(Set.of(networkSuggestion2),
+                mWifiNetworkSuggestionsManager.getAllApprovedNetworkSuggestions());
+    }
+
     /**
      * Verify only carrier privileged app can suggest carrier merged network. A valid carrier
      * merged network must be metered enterprise network with a valid subscription Id.
@@ -49,6 +49,8 @@ import android.net.MacAddress;
 import android.net.wifi.SupplicantState;
 import android.net.wifi.WifiInfo;
 import android.net.wifi.WifiSsid;
+import android.os.Handler;
+import android.os.test.TestLooper;
 import android.util.Base64;
 import android.util.Pair;
 
@@ -67,6 +69,7 @@ import com.android.server.wifi.proto.WifiScoreCardProto.NetworkStats;
 import com.android.server.wifi.proto.WifiScoreCardProto.Signal;
 import com.android.server.wifi.proto.nano.WifiMetricsProto.BandwidthEstimatorStats;
 import com.android.server.wifi.util.IntHistogram;
+import com.android.server.wifi.util.NativeUtil;
 import com.android.server.wifi.util.RssiUtil;
 import com.android.wifi.resources.R;
 
@@ -75,6 +78,9 @@ import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -102,6 +108,7 @@ public class WifiScoreCardTest extends WifiBaseTest {
     private static final String WIFI_IFACE_NAME = "wlanTest";
 
     WifiScoreCard mWifiScoreCard;
+    TestLooper mLooper;
 
     @Mock Clock mClock;
     @Mock WifiScoreCard.MemoryStore mMemoryStore;
@@ -150,8 +157,9 @@ public class WifiScoreCardTest extends WifiBaseTest {
         mWifiInfo.setMaxSupportedTxLinkSpeedMbps(866);
         mWifiInfo.setMaxSupportedRxLinkSpeedMbps(866);
         millisecondsPass(0);
+        mLooper = new TestLooper();
         mWifiScoreCard = new WifiScoreCard(mClock, "some seed", mDeviceConfigFacade,
-                mContext, mWifiGlobals);
+                mContext, mWifiGlobals, new Handler(mLooper.getLooper()), Runnable::run);
         mWifiScoreCard.mPersistentHistograms = true; // TODO - remove when ready
         when(mDeviceConfigFacade.getConnectionFailureHighThrPercent()).thenReturn(
                 DeviceConfigFacade.DEFAULT_CONNECTION_FAILURE_HIGH_THR_PERCENT);
@@ -312,6 +320,60 @@ public class WifiScoreCardTest extends WifiBaseTest {
         assertEquals(100L, mWifiScoreCard.getBssidConnectionTimestampMs(ssid, bssid));
     }
 
+    /**
+     * Reference implementation of computeHashLong(), through the boxed SSID bytes.
+     */
+    private static long computeHashLongReference(String ssid, MacAddress mac, String l2KeySeed)
+            throws Exception {
+        final byte[] decodedSsid;
+        try {
+            decodedSsid = NativeUtil.byteArrayFromArrayList(NativeUtil.decodeSsid(ssid));
+        } catch (IllegalArgumentException e) {
+            return 0;
+        }
+        byte[][] parts = {l2KeySeed.getBytes(), decodedSsid, mac.toByteArray()};
+        ByteArrayOutputStream mashed = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            mashed.write(part.length);
+            mashed.write(part);
+        }
+        return ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(mashed.toByteArray()))
+                .getLong();
+    }
+
+    /**
+     * Test that computeHashLong() keeps the L2Keys computed before, including for malformed
+     * SSIDs.
+     */
+    @Test
+    public void testComputeHashLongMatchesReference() throws Exception {
+        String[] ssids = {
+                "\"Joe's Place\"", "4a6f65", "", "\"\"", "xyz", "\"\u00e9\u20ac\"", "\"\ud800\"",
+                "\"0123456789012345678901234567890123\""};
+        for (String ssid : ssids) {
+            for (int i = 0; i < 2; i++) {
+                assertEquals(ssid, computeHashLongReference(ssid, TEST_BSSID_1, "some seed"),
+                        WifiScoreCard.computeHashLong(ssid, TEST_BSSID_1, "some seed"));
+            }
+        }
+        assertEquals(0, WifiScoreCard.computeHashLong("xyz", TEST_BSSID_1, "some seed"));
+        assertNotEquals(0, WifiScoreCard.computeHashLong("\"Joe's Place\"", TEST_BSSID_1,
+                "some seed"));
+    }
+
+    /**
+     * Test that the cached group hint matches the one of a new score card.
+     */
+    @Test
+    public void testGroupHintFromSsidIsCached() throws Exception {
+        String ssid = mWifiInfo.getSSID();
+        String groupHint = mWifiScoreCard.groupHintFromSsid(ssid);
+        assertSame(groupHint, mWifiScoreCard.groupHintFromSsid(ssid));
+        WifiScoreCard other = new WifiScoreCard(mClock, "some seed", mDeviceConfigFacade,
+                mContext, mWifiGlobals, new Handler(mLooper.getLooper()), Runnable::run);
+        assertEquals(groupHint, other.groupHintFromSsid(ssid));
+    }
+
     /**
      * Test identifiers.
      */
@@ -814,6 +876,66 @@ public class WifiScoreCardTest extends WifiBaseTest {
         assertEquals(beforeSize, mKeys.size());
     }
 
+    /**
+     * Changes made while connected should be written by a single delayed write-behind pass.
+     */
+    @Test
+    public void testWriteBehindCoalescesWrites() throws Exception {
+        mWifiScoreCard.installMemoryStore(mMemoryStore);
+        mWifiInfo.setRssi(-55);
+        mWifiScoreCard.noteConnectionAttempt(mWifiInfo, -53, mWifiInfo.getSSID());
+        millisecondsPass(100);
+        mWifiScoreCard.noteIpConfiguration(mWifiInfo);
+        mWifiScoreCard.noteValidationSuccess(mWifiInfo);
+        mLooper.dispatchAll();
+        verify(mMemoryStore, never()).write(any(), any(), any());
+
+        mLooper.moveTimeForward(WifiScoreCard.WRITE_BEHIND_DELAY_MS);
+        mLooper.dispatchAll();
+        // 1 for perBssid and 1 for perNetwork
+        verify(mMemoryStore, times(2)).write(any(), any(), any());
+        verify(mMemoryStore, times(2)).setCluster(any(), any());
+        assertEquals(0, mWifiScoreCard.doWrites());
+    }
+
+    /**
+     * Disconnection should write the changes without waiting for the write-behind pass.
+     */
+    @Test
+    public void testDisconnectionFlushesWrites() throws Exception {
+        mWifiScoreCard.installMemoryStore(mMemoryStore);
+        mWifiInfo.setRssi(-55);
+        mWifiScoreCard.noteConnectionAttempt(mWifiInfo, -53, mWifiInfo.getSSID());
+        millisecondsPass(100);
+        mWifiScoreCard.noteIpConfiguration(mWifiInfo);
+        verify(mMemoryStore, never()).write(any(), any(), any());
+
+        mWifiScoreCard.resetConnectionState(WIFI_IFACE_NAME);
+        verify(mMemoryStore, times(2)).write(any(), any(), any());
+
+        // The write-behind pass was cancelled
+        mLooper.moveTimeForward(WifiScoreCard.WRITE_BEHIND_DELAY_MS);
+        mLooper.dispatchAll();
+        verify(mMemoryStore, times(2)).write(any(), any(), any());
+    }
+
+    /**
+     * The cluster of an entry should only be set the first time it is written.
+     */
+    @Test
+    public void testClusterSetOnlyOnFirstWrite() throws Exception {
+        mWifiScoreCard.installMemoryStore(mMemoryStore);
+        mWifiInfo.setRssi(-55);
+        for (int i = 0; i < 2; i++) {
+            mWifiScoreCard.noteConnectionAttempt(mWifiInfo, -53, mWifiInfo.getSSID());
+            mWifiScoreCard.noteIpConfiguration(mWifiInfo);
+            assertEquals(2, mWifiScoreCard.doWrites());
+        }
+
+        verify(mMemoryStore, times(4)).write(any(), any(), any());
+        verify(mMemoryStore, times(2)).setCluster(any(), any());
+    }
+
     /**
      * Calling doWrites before installing a MemoryStore should do nothing.
      */
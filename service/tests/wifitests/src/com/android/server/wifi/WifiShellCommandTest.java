@@ -36,6 +36,7 @@ import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -105,6 +106,7 @@ public class WifiShellCommandTest extends WifiBaseTest {
     @Mock WifiDiagnostics mWifiDiagnostics;
     @Mock DeviceConfigFacade mDeviceConfig;
     @Mock WifiScanner mWifiScanner;
+    @Mock RunnerHandler mWifiHandler;
     WifiShellCommand mWifiShellCommand;
 
     @Before
@@ -131,6 +133,7 @@ public class WifiShellCommandTest extends WifiBaseTest {
         when(mWifiInjector.getWifiDiagnostics()).thenReturn(mWifiDiagnostics);
         when(mWifiInjector.getDeviceConfigFacade()).thenReturn(mDeviceConfig);
         when(mContext.getSystemService(WifiScanner.class)).thenReturn(mWifiScanner);
+        when(mWifiInjector.getWifiHandler()).thenReturn(mWifiHandler);
 
         mWifiShellCommand = new WifiShellCommand(mWifiInjector, mWifiService, mContext,
                 mWifiGlobals, mWifiThreadRunner);
@@ -164,6 +167,29 @@ public class WifiShellCommandTest extends WifiBaseTest {
         assertFalse(mWifiShellCommand.getErrPrintWriter().toString().isEmpty());
     }
 
+    @Test
+    public void testWifiThreadTaskStats() {
+        BinderUtil.setUid(Process.ROOT_UID);
+        doAnswer(invocation -> {
+            ((Runnable) invocation.getArgument(0)).run();
+            return true;
+        }).when(mWifiThreadRunner).run(any());
+        mWifiShellCommand.exec(
+                new Binder(), new FileDescriptor(), new FileDescriptor(), new FileDescriptor(),
+                new String[]{"wifi-thread-task-stats"});
+        verify(mWifiHandler).dumpTaskStats(any());
+
+        mWifiShellCommand.exec(
+                new Binder(), new FileDescriptor(), new FileDescriptor(), new FileDescriptor(),
+                new String[]{"wifi-thread-task-stats", "reset"});
+        verify(mWifiHandler).resetTaskStats();
+
+        mWifiShellCommand.exec(
+                new Binder(), new FileDescriptor(), new FileDescriptor(), new FileDescriptor(),
+                new String[]{"wifi-thread-task-stats", "disabled"});
+        verify(mWifiHandler).setTaskStatsEnabled(false);
+    }
+
     @Test
     public void testGetIpReachDisconnect() {
         when(mWifiGlobals.getIpReachabilityDisconnectEnabled()).thenReturn(true);
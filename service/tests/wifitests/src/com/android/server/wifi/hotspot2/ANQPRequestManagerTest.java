@@ -24,6 +24,7 @@ import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.anyLong;
 import static org.mockito.Mockito.anyObject;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.times;
@@ -40,12 +41,14 @@ import androidx.test.filters.SmallTest;
 import com.android.server.wifi.Clock;
 import com.android.server.wifi.DeviceConfigFacade;
 import com.android.server.wifi.WifiBaseTest;
+import com.android.server.wifi.WifiGlobals;
 import com.android.server.wifi.WifiInjector;
 import com.android.server.wifi.hotspot2.anqp.Constants;
 import com.android.wifi.flags.FeatureFlags;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 
 import java.util.Arrays;
@@ -59,6 +62,8 @@ public class ANQPRequestManagerTest extends WifiBaseTest {
     private static final long TEST_BSSID = 0x123456L;
     private static final ANQPNetworkKey TEST_ANQP_KEY =
             new ANQPNetworkKey("TestSSID", TEST_BSSID, 0, 0);
+    private static final long TEST_HESSID = 0x5678L;
+    private static final int TEST_ANQP_DOMAIN_ID = 1;
 
     private static final List<Constants.ANQPElementType> R1_ANQP_WITHOUT_RC = Arrays.asList(
             Constants.ANQPElementType.ANQPVenueName,
@@ -117,6 +122,8 @@ public class ANQPRequestManagerTest extends WifiBaseTest {
     FeatureFlags mFeatureFlags;
     @Mock
     DeviceConfigFacade mDeviceConfigFacade;
+    @Mock
+    WifiGlobals mWifiGlobals;
 
 
     /**
@@ -130,6 +137,8 @@ public class ANQPRequestManagerTest extends WifiBaseTest {
         when(mWifiInjector.getAlarmManager()).thenReturn(mAlarmManager.getAlarmManager());
         when(mDeviceConfigFacade.getFeatureFlags()).thenReturn(mFeatureFlags);
         when(mFeatureFlags.anqpRequestWaitForResponse()).thenReturn(false);
+        when(mWifiInjector.getWifiGlobals()).thenReturn(mWifiGlobals);
+        when(mWifiGlobals.getMaxOutstandingAnqpRequests()).thenReturn(1);
         mManager = new ANQPRequestManager(mHandler, mClock, mWifiInjector,
                 new Handler(mLooper.getLooper()));
     }
@@ -405,9 +414,9 @@ public class ANQPRequestManagerTest extends WifiBaseTest {
         when(mHandler.requestANQP(anyLong(), any())).thenReturn(true);
         mManager.requestANQPElements(TEST_BSSID, TEST_ANQP_KEY, true,
                 NetworkDetail.HSRelease.R3);
-        mManager.requestANQPElements(TEST_BSSID + 1, TEST_ANQP_KEY, true,
+        mManager.requestANQPElements(TEST_BSSID + 1, createKey(TEST_BSSID + 1), true,
                 NetworkDetail.HSRelease.R3);
-        mManager.requestANQPElements(TEST_BSSID + 2, TEST_ANQP_KEY, true,
+        mManager.requestANQPElements(TEST_BSSID + 2, createKey(TEST_BSSID + 2), true,
                 NetworkDetail.HSRelease.R3);
         verify(mHandler).requestANQP(TEST_BSSID, R1R2_ANQP_WITH_RC);
         verify(mHandler).requestANQP(anyLong(), any());
@@ -423,8 +432,103 @@ public class ANQPRequestManagerTest extends WifiBaseTest {
         verify(mHandler, times(3)).requestANQP(anyLong(), any());
         mManager.onRequestCompleted(TEST_BSSID + 2, true);
         // No more request in the queue, should process new request immediately
-        mManager.requestANQPElements(TEST_BSSID + 3, TEST_ANQP_KEY, true,
+        mManager.requestANQPElements(TEST_BSSID + 3, createKey(TEST_BSSID + 3), true,
                 NetworkDetail.HSRelease.R3);
         verify(mHandler).requestANQP(TEST_BSSID + 3, R1R2_ANQP_WITH_RC);
     }
+
+    /**
+     * Verify that only one request is queued per ANQP network key, keeping the request to the
+     * strongest AP, and that no request is queued for a key with an outstanding request.
+     */
+    @Test
+    public void testWaitResponseDeduplicatesRequestsByKey() {
+        when(mFeatureFlags.anqpRequestWaitForResponse()).thenReturn(true);
+        when(mHandler.requestANQP(anyLong(), any())).thenReturn(true);
+        ANQPNetworkKey domainKey = ANQPNetworkKey.buildKey("TestSSID", TEST_BSSID + 1,
+                TEST_HESSID, TEST_ANQP_DOMAIN_ID);
+        mManager.requestANQPElements(TEST_BSSID, TEST_ANQP_KEY, true, NetworkDetail.HSRelease.R3,
+                -50, false);
+        // Requests to the APs of the same ANQP domain.
+        mManager.requestANQPElements(TEST_BSSID + 1, domainKey, true, NetworkDetail.HSRelease.R3,
+                -80, false);
+        mManager.requestANQPElements(TEST_BSSID + 2, domainKey, true, NetworkDetail.HSRelease.R3,
+                -60, false);
+        mManager.requestANQPElements(TEST_BSSID + 3, domainKey, true, NetworkDetail.HSRelease.R3,
+                -70, false);
+        verify(mHandler).requestANQP(TEST_BSSID, R1R2_ANQP_WITH_RC);
+
+        assertEquals(TEST_ANQP_KEY, mManager.onRequestCompleted(TEST_BSSID, true));
+        verify(mHandler).requestANQP(TEST_BSSID + 2, R1R2_ANQP_WITH_RC);
+        // The request for the outstanding key is dropped.
+        mManager.requestANQPElements(TEST_BSSID + 4, domainKey, true, NetworkDetail.HSRelease.R3,
+                -40, false);
+
+        assertEquals(domainKey, mManager.onRequestCompleted(TEST_BSSID + 2, true));
+        verify(mHandler, times(2)).requestANQP(anyLong(), any());
+    }
+
+    /**
+     * Verify that the queued requests to the APs likely to match a provider are sent first, and
+     * then the requests to the strongest APs.
+     */
+    @Test
+    public void testWaitResponseSendsMostUsefulRequestFirst() {
+        when(mFeatureFlags.anqpRequestWaitForResponse()).thenReturn(true);
+        when(mHandler.requestANQP(anyLong(), any())).thenReturn(true);
+        mManager.requestANQPElements(TEST_BSSID, TEST_ANQP_KEY, true, NetworkDetail.HSRelease.R3,
+                -50, false);
+        mManager.requestANQPElements(TEST_BSSID + 1, createKey(TEST_BSSID + 1), true,
+                NetworkDetail.HSRelease.R3, -80, false);
+        mManager.requestANQPElements(TEST_BSSID + 2, createKey(TEST_BSSID + 2), true,
+                NetworkDetail.HSRelease.R3, -60, false);
+        mManager.requestANQPElements(TEST_BSSID + 3, createKey(TEST_BSSID + 3), true,
+                NetworkDetail.HSRelease.R3, -85, true);
+
+        mManager.onRequestCompleted(TEST_BSSID, true);
+        mManager.onRequestCompleted(TEST_BSSID + 3, true);
+        mManager.onRequestCompleted(TEST_BSSID + 2, true);
+        InOrder inOrder = inOrder(mHandler);
+        inOrder.verify(mHandler).requestANQP(TEST_BSSID, R1R2_ANQP_WITH_RC);
+        inOrder.verify(mHandler).requestANQP(TEST_BSSID + 3, R1R2_ANQP_WITH_RC);
+        inOrder.verify(mHandler).requestANQP(TEST_BSSID + 2, R1R2_ANQP_WITH_RC);
+        inOrder.verify(mHandler).requestANQP(TEST_BSSID + 1, R1R2_ANQP_WITH_RC);
+    }
+
+    /**
+     * Verify that up to the configured number of requests are outstanding at the same time, and
+     * that the time out of the oldest request frees its slot.
+     */
+    @Test
+    public void testWaitResponseWithSeveralOutstandingRequests() {
+        when(mFeatureFlags.anqpRequestWaitForResponse()).thenReturn(true);
+        when(mWifiGlobals.getMaxOutstandingAnqpRequests()).thenReturn(2);
+        when(mHandler.requestANQP(anyLong(), any())).thenReturn(true);
+        for (int i = 0; i < 4; i++) {
+            mManager.requestANQPElements(TEST_BSSID + i, createKey(TEST_BSSID + i), true,
+                    NetworkDetail.HSRelease.R3, -50, false);
+        }
+        verify(mHandler).requestANQP(TEST_BSSID, R1R2_ANQP_WITH_RC);
+        verify(mHandler).requestANQP(TEST_BSSID + 1, R1R2_ANQP_WITH_RC);
+        verify(mHandler, times(2)).requestANQP(anyLong(), any());
+
+        // The response to the second request frees one slot.
+        mManager.onRequestCompleted(TEST_BSSID + 1, true);
+        verify(mHandler).requestANQP(TEST_BSSID + 2, R1R2_ANQP_WITH_RC);
+        verify(mHandler, times(3)).requestANQP(anyLong(), any());
+
+        // The first request times out.
+        mAlarmManager.dispatch(ANQP_REQUEST_ALARM_TAG);
+        mLooper.dispatchAll();
+        verify(mHandler).requestANQP(TEST_BSSID + 3, R1R2_ANQP_WITH_RC);
+        verify(mHandler, times(4)).requestANQP(anyLong(), any());
+        assertTrue(mAlarmManager.isPending(ANQP_REQUEST_ALARM_TAG));
+
+        // A late response is still associated with its key.
+        assertEquals(createKey(TEST_BSSID), mManager.onRequestCompleted(TEST_BSSID, true));
+    }
+
+    private static ANQPNetworkKey createKey(long bssid) {
+        return new ANQPNetworkKey("TestSSID", bssid, 0, 0);
+    }
 }
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.hotspot2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.aryEq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.util.Xml;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.internal.util.FastXmlSerializer;
+import com.android.server.wifi.WifiBaseTest;
+import com.android.server.wifi.WifiConfigStore;
+import com.android.server.wifi.util.WifiConfigStoreEncryptionUtil;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlSerializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Unit tests for {@link com.android.server.wifi.hotspot2.AnqpCacheStoreData}.
+ */
+@SmallTest
+public class AnqpCacheStoreDataTest extends WifiBaseTest {
+    private static final byte[] TEST_ENTRIES = new byte[] {0, 0, 0, 1, 0, 0, 0, 0};
+
+    @Mock AnqpCacheStoreData.DataSource mDataSource;
+    AnqpCacheStoreData mStoreData;
+
+    /** Sets up test. */
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        mStoreData = new AnqpCacheStoreData(mDataSource);
+    }
+
+    private byte[] serializeData() throws Exception {
+        final XmlSerializer out = new FastXmlSerializer();
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        out.setOutput(outputStream, StandardCharsets.UTF_8.name());
+        mStoreData.serializeData(out, mock(WifiConfigStoreEncryptionUtil.class));
+        out.flush();
+        return outputStream.toByteArray();
+    }
+
+    private void deserializeData(byte[] data) throws Exception {
+        final XmlPullParser in = Xml.newPullParser();
+        final ByteArrayInputStream inputStream = new ByteArrayInputStream(data);
+        in.setInput(inputStream, StandardCharsets.UTF_8.name());
+        mStoreData.deserializeData(in, in.getDepth(),
+                WifiConfigStore.ENCRYPT_CREDENTIALS_CONFIG_STORE_DATA_VERSION,
+                mock(WifiConfigStoreEncryptionUtil.class));
+    }
+
+    /**
+     * Verify that the serialized entries are handed back to the data source when deserialized.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void serializeAndDeserializeEntries() throws Exception {
+        when(mDataSource.getEntries()).thenReturn(TEST_ENTRIES);
+        byte[] data = serializeData();
+
+        deserializeData(data);
+        verify(mDataSource).setEntries(aryEq(TEST_ENTRIES));
+    }
+
+    /**
+     * Verify that deserialization of an empty store data does not update the data source.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void deserializeEmptyStoreData() throws Exception {
+        deserializeData(new byte[0]);
+        verify(mDataSource, never()).setEntries(any());
+    }
+
+    /**
+     * Verify that the store data is only written when the cache changed.
+     */
+    @Test
+    public void hasNewDataToSerializeFollowsDataSource() {
+        when(mDataSource.hasNewEntries()).thenReturn(false);
+        assertFalse(mStoreData.hasNewDataToSerialize());
+        when(mDataSource.hasNewEntries()).thenReturn(true);
+        assertTrue(mStoreData.hasNewDataToSerialize());
+    }
+
+    /**
+     * Verify that the store data is written to the shared ANQP cache store.
+     */
+    @Test
+    public void getStoreFileId() {
+        assertEquals(WifiConfigStore.STORE_FILE_SHARED_ANQP_CACHE, mStoreData.getStoreFileId());
+    }
+}
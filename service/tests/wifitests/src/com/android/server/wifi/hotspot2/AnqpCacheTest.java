@@ -16,6 +16,7 @@
 
 package com.android.server.wifi.hotspot2;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
@@ -28,6 +29,7 @@ import androidx.test.filters.SmallTest;
 import com.android.server.wifi.Clock;
 import com.android.server.wifi.WifiBaseTest;
 import com.android.server.wifi.hotspot2.anqp.ANQPElement;
+import com.android.server.wifi.hotspot2.anqp.ANQPParser;
 import com.android.server.wifi.hotspot2.anqp.Constants;
 import com.android.server.wifi.hotspot2.anqp.I18Name;
 import com.android.server.wifi.hotspot2.anqp.VenueNameElement;
@@ -38,7 +40,9 @@ import org.junit.Test;
 import org.mockito.Mock;
 
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
@@ -60,6 +64,8 @@ public class AnqpCacheTest extends WifiBaseTest {
     private static final String TEST_VENUE_URL1 = "https://www.google.com/";
     private static final String TEST_VENUE_URL2 = "https://www.android.com/";
     private static final String TEST_VENUE_URL3 = "https://support.google.com/";
+    private static final String TEST_DOMAIN = "example.com";
+    private static final long TEST_WALL_CLOCK_MILLIS = 1_700_000_000_000L;
 
     @Mock Clock mClock;
     AnqpCache mCache;
@@ -72,6 +78,7 @@ public class AnqpCacheTest extends WifiBaseTest {
         initMocks(this);
         // Returning the initial timestamp.
         when(mClock.getElapsedSinceBootMillis()).thenReturn(0L);
+        when(mClock.getWallClockMillis()).thenReturn(TEST_WALL_CLOCK_MILLIS);
         mCache = new AnqpCache(mClock);
     }
 
@@ -178,4 +185,150 @@ public class AnqpCacheTest extends WifiBaseTest {
         assertTrue(data.getElements().get(Constants.ANQPElementType.ANQPVenueUrl)
                 .equals(venueUrlElement));
     }
+
+    /**
+     * Create the ANQP elements of a Domain Name element parsed from a payload with the given
+     * domains.
+     */
+    private static Map<Constants.ANQPElementType, ANQPElement> createParsedDomainNameElements(
+            String... domains) throws Exception {
+        ByteBuffer payload = ByteBuffer.allocate(64 * 1024);
+        for (String domain : domains) {
+            payload.put((byte) domain.length());
+            payload.put(domain.getBytes());
+        }
+        payload.flip();
+        Map<Constants.ANQPElementType, ANQPElement> elements = new HashMap<>();
+        elements.put(Constants.ANQPElementType.ANQPDomName,
+                ANQPParser.parseElement(Constants.ANQPElementType.ANQPDomName, payload));
+        return elements;
+    }
+
+    private static ANQPNetworkKey createKey(int i) {
+        return new ANQPNetworkKey("test" + i, 0L, 0L, 1);
+    }
+
+    /**
+     * Verify that the least recently used entry is evicted once the cache is full.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void evictLeastRecentlyUsedEntryWhenFull() throws Exception {
+        for (int i = 0; i < AnqpCache.MAX_CACHE_ENTRIES; i++) {
+            mCache.addEntry(createKey(i), null);
+        }
+        // Use the first entry, so that the second one is the least recently used.
+        assertNotNull(mCache.getEntry(createKey(0)));
+
+        mCache.addEntry(createKey(AnqpCache.MAX_CACHE_ENTRIES), null);
+        assertNotNull(mCache.getEntry(createKey(0)));
+        assertNull(mCache.getEntry(createKey(1)));
+        assertNotNull(mCache.getEntry(createKey(2)));
+        assertNotNull(mCache.getEntry(createKey(AnqpCache.MAX_CACHE_ENTRIES)));
+    }
+
+    /**
+     * Verify that the least recently used entries are evicted once the payloads of the entries
+     * are over the byte budget.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void evictLeastRecentlyUsedEntryOverByteBudget() throws Exception {
+        String[] domains = new String[240];
+        char[] label = new char[249];
+        Arrays.fill(label, 'a');
+        Arrays.fill(domains, new String(label));
+        int numEntries = AnqpCache.MAX_CACHE_PAYLOAD_BYTES / (domains.length * 250) + 1;
+        for (int i = 0; i < numEntries; i++) {
+            mCache.addEntry(createKey(i), createParsedDomainNameElements(domains));
+        }
+
+        assertNull(mCache.getEntry(createKey(0)));
+        for (int i = 1; i < numEntries; i++) {
+            assertNotNull(mCache.getEntry(createKey(i)));
+        }
+    }
+
+    /**
+     * Verify that updating an entry postpones its expiry.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void sweepKeepsUpdatedEntry() throws Exception {
+        mCache.addEntry(ENTRY_KEY, null);
+        when(mClock.getElapsedSinceBootMillis())
+                .thenReturn(AnqpCache.CACHE_SWEEP_INTERVAL_MILLISECONDS);
+        mCache.addOrUpdateEntry(ENTRY_KEY, new HashMap<>());
+
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(ANQPData.DATA_LIFETIME_MILLISECONDS);
+        mCache.sweep();
+        assertNotNull(mCache.getEntry(ENTRY_KEY));
+
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(ANQPData.DATA_LIFETIME_MILLISECONDS
+                + AnqpCache.CACHE_SWEEP_INTERVAL_MILLISECONDS);
+        mCache.sweep();
+        assertNull(mCache.getEntry(ENTRY_KEY));
+    }
+
+    /**
+     * Verify that the entries are restored after a reboot with their ANQP elements and remaining
+     * lifetime, and that the expired entries are not restored.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void serializeAndRestoreEntries() throws Exception {
+        ANQPNetworkKey bssidKey = new ANQPNetworkKey("test", 0x112233445566L, 0L, 0);
+        ANQPNetworkKey hessidKey = new ANQPNetworkKey(null, 0L, 0x665544332211L, 2);
+        Map<Constants.ANQPElementType, ANQPElement> elements =
+                createParsedDomainNameElements(TEST_DOMAIN);
+        mCache.addEntry(bssidKey, elements);
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(1000L);
+        mCache.addEntry(hessidKey, elements);
+        assertTrue(mCache.hasChangedSinceSerialized());
+
+        byte[] serialized = mCache.toByteArray();
+        assertFalse(mCache.hasChangedSinceSerialized());
+
+        // Reboot, 10 seconds before the second entry expires.
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(5000L);
+        when(mClock.getWallClockMillis()).thenReturn(
+                TEST_WALL_CLOCK_MILLIS + ANQPData.DATA_LIFETIME_MILLISECONDS - 10_000L);
+        AnqpCache restoredCache = new AnqpCache(mClock);
+        restoredCache.restore(serialized);
+
+        ANQPData data = restoredCache.getEntry(bssidKey);
+        assertNotNull(data);
+        assertEquals(elements, data.getElements());
+        assertEquals(14_000L, data.getExpiryTime());
+        assertEquals(15_000L, restoredCache.getEntry(hessidKey).getExpiryTime());
+
+        // Restoring after the entries expired does not restore them.
+        when(mClock.getWallClockMillis()).thenReturn(
+                TEST_WALL_CLOCK_MILLIS + ANQPData.DATA_LIFETIME_MILLISECONDS + 1000L);
+        AnqpCache expiredCache = new AnqpCache(mClock);
+        expiredCache.restore(serialized);
+        assertNull(expiredCache.getEntry(bssidKey));
+        assertNull(expiredCache.getEntry(hessidKey));
+    }
+
+    /**
+     * Verify that a corrupted blob is ignored.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void restoreIgnoresCorruptedEntries() throws Exception {
+        mCache.addEntry(ENTRY_KEY, createParsedDomainNameElements(TEST_DOMAIN));
+        byte[] serialized = mCache.toByteArray();
+
+        AnqpCache restoredCache = new AnqpCache(mClock);
+        restoredCache.restore(Arrays.copyOf(serialized, serialized.length - 3));
+        assertNull(restoredCache.getEntry(ENTRY_KEY));
+        restoredCache.restore(new byte[] {1, 2, 3});
+        assertNull(restoredCache.getEntry(ENTRY_KEY));
+    }
 }
@@ -28,7 +28,9 @@ import static org.hamcrest.collection.IsIterableContainingInAnyOrder.containsInA
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.argThat;
@@ -131,6 +133,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -259,6 +262,14 @@ public class PasspointManagerTest extends WifiBaseTest {
         when(mObjectFactory.makeOsuServerConnection())
                 .thenReturn(mOsuServerConnection);
         when(mObjectFactory.makeWfaKeyStore()).thenReturn(mWfaKeyStore);
+        // Match every AP against all the providers, the index is covered by its own tests.
+        when(mObjectFactory.makePasspointProviderIndex(any())).thenAnswer(invocation -> {
+            Set<PasspointProvider> providers = Collections.newSetFromMap(new IdentityHashMap<>());
+            providers.addAll(invocation.getArgument(0));
+            PasspointProviderIndex index = mock(PasspointProviderIndex.class);
+            when(index.getCandidates(anyMap(), any())).thenReturn(providers);
+            return index;
+        });
         when(mWfaKeyStore.get()).thenReturn(mKeyStore);
         when(mObjectFactory.makePasspointProvisioner(any(Context.class), any(WifiNative.class),
                 any(PasspointManager.class), any(WifiMetrics.class)))
@@ -530,6 +541,28 @@ public class PasspointManagerTest extends WifiBaseTest {
                 any(String.class));
     }
 
+    /**
+     * Verify that the ANQP cache is saved once after a delay on receiving successful responses.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void anqpResponseSuccessSavesAnqpCacheAfterDelay() throws Exception {
+        Map<ANQPElementType, ANQPElement> anqpElementMap = new HashMap<>();
+        anqpElementMap.put(ANQPElementType.ANQPDomName,
+                new DomainNameElement(Arrays.asList(new String[] {"test.com"})));
+
+        when(mAnqpRequestManager.onRequestCompleted(TEST_BSSID, true)).thenReturn(TEST_ANQP_KEY);
+        mCallbacks.onANQPResponse(TEST_BSSID, anqpElementMap);
+        mCallbacks.onANQPResponse(TEST_BSSID, anqpElementMap);
+        mLooper.dispatchAll();
+        verify(mWifiConfigManager, never()).saveToStore(false);
+
+        mLooper.moveTimeForward(30_000L);
+        mLooper.dispatchAll();
+        verify(mWifiConfigManager).saveToStore(false);
+    }
+
     /**
      * Verify that no ANQP elements will be added to the ANQP cache on receiving a successful
      * response for a request that's not sent by us.
@@ -1078,7 +1111,7 @@ public class PasspointManagerTest extends WifiBaseTest {
             // Verify that a request for ANQP elements is initiated.
             verify(mAnqpRequestManager).requestANQPElements(eq(TEST_BSSID),
                     any(ANQPNetworkKey.class),
-                    anyBoolean(), any(NetworkDetail.HSRelease.class));
+                    anyBoolean(), any(NetworkDetail.HSRelease.class), anyInt(), anyBoolean());
         } finally {
             session.finishMocking();
         }
@@ -1096,7 +1129,7 @@ public class PasspointManagerTest extends WifiBaseTest {
         ANQPData entry = new ANQPData(mClock, null);
 
         when(mAnqpCache.getEntry(TEST_ANQP_KEY)).thenReturn(entry);
-        when(provider.match(anyMap(), any(RoamingConsortium.class), any(ScanResult.class)))
+        when(provider.match(anyMap(), any(RoamingConsortium.class), any(ScanResult.class), any()))
             .thenReturn(PasspointMatch.HomeProvider);
         List<Pair<PasspointProvider, PasspointMatch>> results =
                 mManager.matchProvider(createTestScanResult());
@@ -1117,7 +1150,7 @@ public class PasspointManagerTest extends WifiBaseTest {
         ANQPData entry = new ANQPData(mClock, null);
 
         when(mAnqpCache.getEntry(TEST_ANQP_KEY)).thenReturn(entry);
-        when(provider.match(anyMap(), any(RoamingConsortium.class), any(ScanResult.class)))
+        when(provider.match(anyMap(), any(RoamingConsortium.class), any(ScanResult.class), any()))
             .thenReturn(PasspointMatch.RoamingProvider);
         List<Pair<PasspointProvider, PasspointMatch>> results =
                 mManager.matchProvider(createTestScanResult());
@@ -1138,11 +1171,51 @@ public class PasspointManagerTest extends WifiBaseTest {
         ANQPData entry = new ANQPData(mClock, null);
 
         when(mAnqpCache.getEntry(TEST_ANQP_KEY)).thenReturn(entry);
-        when(provider.match(anyMap(), any(RoamingConsortium.class), any(ScanResult.class)))
+        when(provider.match(anyMap(), any(RoamingConsortium.class), any(ScanResult.class), any()))
             .thenReturn(PasspointMatch.None);
         assertTrue(mManager.matchProvider(createTestScanResult()).isEmpty());
     }
 
+    /**
+     * Verify that the provider index and the match results are reused across scans of an AP, and
+     * dropped when its ANQP entry is updated or the providers change.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void matchProviderReusesMatchResultsUntilAnqpEntryOrProvidersChange()
+            throws Exception {
+        PasspointProvider provider =
+                addTestProvider(TEST_FQDN, TEST_FRIENDLY_NAME, TEST_PACKAGE, false, null, false);
+        ANQPData entry = new ANQPData(mClock, null);
+        when(mAnqpCache.getEntry(TEST_ANQP_KEY)).thenReturn(entry);
+        when(provider.match(anyMap(), any(RoamingConsortium.class), any(ScanResult.class), any()))
+                .thenReturn(PasspointMatch.HomeProvider);
+        ArgumentCaptor<Map> anqpMatchesCaptor = ArgumentCaptor.forClass(Map.class);
+
+        mManager.matchProvider(createTestScanResult());
+        mManager.matchProvider(createTestScanResult());
+        verify(mObjectFactory).makePasspointProviderIndex(any());
+        verify(provider, times(2)).match(anyMap(), any(RoamingConsortium.class),
+                any(ScanResult.class), anqpMatchesCaptor.capture());
+        assertSame(anqpMatchesCaptor.getAllValues().get(0),
+                anqpMatchesCaptor.getAllValues().get(1));
+
+        // Updating the ANQP entry drops the match results, but not the index.
+        entry.update(Collections.emptyMap());
+        mManager.matchProvider(createTestScanResult());
+        verify(mObjectFactory).makePasspointProviderIndex(any());
+        verify(provider, times(3)).match(anyMap(), any(RoamingConsortium.class),
+                any(ScanResult.class), anqpMatchesCaptor.capture());
+        assertNotSame(anqpMatchesCaptor.getAllValues().get(1),
+                anqpMatchesCaptor.getAllValues().get(2));
+
+        // Adding a provider drops both.
+        addTestProvider(TEST_FQDN + 1, TEST_FRIENDLY_NAME, TEST_PACKAGE, false, null, false);
+        mManager.matchProvider(createTestScanResult());
+        verify(mObjectFactory, times(2)).makePasspointProviderIndex(any());
+    }
+
     /**
      * Verify the expectations for sweepCache.
      *
@@ -1203,7 +1276,7 @@ public class PasspointManagerTest extends WifiBaseTest {
 
             when(mAnqpCache.getEntry(TEST_ANQP_KEY2)).thenReturn(entry);
             when(InformationElementUtil.getHS2VendorSpecificIE(isNull())).thenReturn(vsa);
-            when(provider.match(anyMap(), isNull(), any(ScanResult.class)))
+            when(provider.match(anyMap(), isNull(), any(ScanResult.class), any()))
                     .thenReturn(PasspointMatch.HomeProvider);
 
             List<Pair<PasspointProvider, PasspointMatch>> matchedProviders =
@@ -1242,11 +1315,11 @@ public class PasspointManagerTest extends WifiBaseTest {
 
             when(mAnqpCache.getEntry(TEST_ANQP_KEY2)).thenReturn(entry);
             when(InformationElementUtil.getHS2VendorSpecificIE(isNull())).thenReturn(vsa);
-            when(providerHome.match(anyMap(), isNull(), any(ScanResult.class)))
+            when(providerHome.match(anyMap(), isNull(), any(ScanResult.class), any()))
                     .thenReturn(PasspointMatch.HomeProvider);
-            when(providerRoaming.match(anyMap(), isNull(), any(ScanResult.class)))
+            when(providerRoaming.match(anyMap(), isNull(), any(ScanResult.class), any()))
                     .thenReturn(PasspointMatch.RoamingProvider);
-            when(providerNone.match(anyMap(), isNull(), any(ScanResult.class)))
+            when(providerNone.match(anyMap(), isNull(), any(ScanResult.class), any()))
                     .thenReturn(PasspointMatch.None);
 
             Map<String, Map<Integer, List<ScanResult>>> configs =
@@ -2372,11 +2445,11 @@ public class PasspointManagerTest extends WifiBaseTest {
 
             when(mAnqpCache.getEntry(TEST_ANQP_KEY)).thenReturn(entry);
             when(InformationElementUtil.getHS2VendorSpecificIE(isNull())).thenReturn(vsa);
-            when(providerHome.match(anyMap(), isNull(), any(ScanResult.class)))
+            when(providerHome.match(anyMap(), isNull(), any(ScanResult.class), any()))
                     .thenReturn(PasspointMatch.HomeProvider);
-            when(providerRoaming.match(anyMap(), isNull(), any(ScanResult.class)))
+            when(providerRoaming.match(anyMap(), isNull(), any(ScanResult.class), any()))
                     .thenReturn(PasspointMatch.RoamingProvider);
-            when(providerNone.match(anyMap(), isNull(), any(ScanResult.class)))
+            when(providerNone.match(anyMap(), isNull(), any(ScanResult.class), any()))
                     .thenReturn(PasspointMatch.None);
 
             List<Pair<PasspointProvider, PasspointMatch>> results =
@@ -2422,11 +2495,11 @@ public class PasspointManagerTest extends WifiBaseTest {
 
             when(mAnqpCache.getEntry(TEST_ANQP_KEY)).thenReturn(entry);
             when(InformationElementUtil.getHS2VendorSpecificIE(isNull())).thenReturn(vsa);
-            when(providerHome.match(anyMap(), isNull(), any(ScanResult.class)))
+            when(providerHome.match(anyMap(), isNull(), any(ScanResult.class), any()))
                     .thenReturn(PasspointMatch.HomeProvider);
-            when(providerRoaming.match(anyMap(), isNull(), any(ScanResult.class)))
+            when(providerRoaming.match(anyMap(), isNull(), any(ScanResult.class), any()))
                     .thenReturn(PasspointMatch.RoamingProvider);
-            when(providerNone.match(anyMap(), isNull(), any(ScanResult.class)))
+            when(providerNone.match(anyMap(), isNull(), any(ScanResult.class), any()))
                     .thenReturn(PasspointMatch.None);
 
             List<Pair<PasspointProvider, PasspointMatch>> results =
@@ -2474,11 +2547,11 @@ public class PasspointManagerTest extends WifiBaseTest {
 
             when(mAnqpCache.getEntry(TEST_ANQP_KEY)).thenReturn(entry);
             when(InformationElementUtil.getHS2VendorSpecificIE(isNull())).thenReturn(vsa);
-            when(providerHome.match(anyMap(), isNull(), any(ScanResult.class)))
+            when(providerHome.match(anyMap(), isNull(), any(ScanResult.class), any()))
                     .thenReturn(PasspointMatch.HomeProvider);
-            when(providerRoaming.match(anyMap(), isNull(), any(ScanResult.class)))
+            when(providerRoaming.match(anyMap(), isNull(), any(ScanResult.class), any()))
                     .thenReturn(PasspointMatch.RoamingProvider);
-            when(providerNone.match(anyMap(), isNull(), any(ScanResult.class)))
+            when(providerNone.match(anyMap(), isNull(), any(ScanResult.class), any()))
                     .thenReturn(PasspointMatch.None);
 
             List<Pair<PasspointProvider, PasspointMatch>> results =
@@ -2647,7 +2720,8 @@ public class PasspointManagerTest extends WifiBaseTest {
         reset(mWifiConfigManager);
         when(mAnqpCache.getEntry(TEST_ANQP_KEY2)).thenReturn(null);
         verify(mAnqpRequestManager, never()).requestANQPElements(any(long.class),
-                any(ANQPNetworkKey.class), any(boolean.class), any(NetworkDetail.HSRelease.class));
+                any(ANQPNetworkKey.class), any(boolean.class), any(NetworkDetail.HSRelease.class),
+                anyInt(), anyBoolean());
     }
 
     /**
@@ -3143,7 +3217,7 @@ public class PasspointManagerTest extends WifiBaseTest {
                 addTestProvider(TEST_FQDN, TEST_FRIENDLY_NAME, TEST_PACKAGE, false, null, false);
         ANQPData entry = new ANQPData(mClock, null);
 
-        when(provider.match(anyMap(), any(RoamingConsortium.class), any(ScanResult.class)))
+        when(provider.match(anyMap(), any(RoamingConsortium.class), any(ScanResult.class), any()))
                 .thenReturn(PasspointMatch.HomeProvider);
 
         // Disable the Wifi Passpoint and expect the matchProvider to return empty list.
@@ -3156,7 +3230,8 @@ public class PasspointManagerTest extends WifiBaseTest {
         when(mAnqpCache.getEntry(TEST_ANQP_KEY)).thenReturn(null);
         assertTrue(mManager.getAllMatchedProviders(createTestScanResult()).isEmpty());
         verify(mAnqpRequestManager, never()).requestANQPElements(any(long.class),
-                any(ANQPNetworkKey.class), any(boolean.class), any(NetworkDetail.HSRelease.class));
+                any(ANQPNetworkKey.class), any(boolean.class), any(NetworkDetail.HSRelease.class),
+                anyInt(), anyBoolean());
 
         // Enable the Wifi Passpoint and expect the matchProvider to return matched result.
         when(mAnqpCache.getEntry(TEST_ANQP_KEY)).thenReturn(entry);
@@ -3173,7 +3248,7 @@ public class PasspointManagerTest extends WifiBaseTest {
         // ANQP cache misses, still no result.
         assertTrue(mManager.getAllMatchedProviders(createTestScanResult()).isEmpty());
         verify(mAnqpRequestManager).requestANQPElements(eq(TEST_BSSID),
-                any(ANQPNetworkKey.class), anyBoolean(), any());
+                any(ANQPNetworkKey.class), anyBoolean(), any(), anyInt(), anyBoolean());
     }
 }
 
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.hotspot2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.net.wifi.hotspot2.PasspointConfiguration;
+import android.net.wifi.hotspot2.pps.Credential;
+import android.net.wifi.hotspot2.pps.HomeSp;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.server.wifi.WifiBaseTest;
+import com.android.server.wifi.hotspot2.anqp.ANQPElement;
+import com.android.server.wifi.hotspot2.anqp.Constants.ANQPElementType;
+import com.android.server.wifi.hotspot2.anqp.DomainNameElement;
+import com.android.server.wifi.hotspot2.anqp.NAIRealmData;
+import com.android.server.wifi.hotspot2.anqp.NAIRealmElement;
+import com.android.server.wifi.hotspot2.anqp.RoamingConsortiumElement;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Unit tests for {@link PasspointProviderIndex}.
+ */
+@SmallTest
+public class PasspointProviderIndexTest extends WifiBaseTest {
+    private static final String TEST_FQDN = "example.com";
+    private static final String TEST_OTHER_HOME_PARTNER = "partner.org";
+    private static final String TEST_REALM = "realm.net";
+    private static final long TEST_OI = 0x1234L;
+    private static final long TEST_OTHER_OI = 0x5678L;
+
+    private static PasspointProvider createProvider(String fqdn, String realm, long[] ois,
+            boolean simCredential) {
+        HomeSp homeSp = new HomeSp();
+        homeSp.setFqdn(fqdn);
+        homeSp.setRoamingConsortiumOis(ois);
+        Credential credential = new Credential();
+        credential.setRealm(realm);
+        if (simCredential) {
+            credential.setSimCredential(new Credential.SimCredential());
+        }
+        PasspointConfiguration config = new PasspointConfiguration();
+        config.setHomeSp(homeSp);
+        config.setCredential(credential);
+        PasspointProvider provider = mock(PasspointProvider.class);
+        when(provider.getConfig()).thenReturn(config);
+        return provider;
+    }
+
+    private static Map<ANQPElementType, ANQPElement> createDomainNameElements(
+            String... domains) {
+        Map<ANQPElementType, ANQPElement> elements = new HashMap<>();
+        elements.put(ANQPElementType.ANQPDomName, new DomainNameElement(Arrays.asList(domains)));
+        return elements;
+    }
+
+    /**
+     * Verify that a provider is a candidate for the APs advertising its FQDN or one of its
+     * sub-domains, ignoring the case and a trailing dot.
+     */
+    @Test
+    public void testCandidatesByDomain() {
+        PasspointProvider provider = createProvider(TEST_FQDN, null, null, false);
+        PasspointProviderIndex index = new PasspointProviderIndex(Arrays.asList(provider));
+
+        assertTrue(index.getCandidates(createDomainNameElements(TEST_FQDN), null)
+                .contains(provider));
+        assertTrue(index.getCandidates(createDomainNameElements("wlan.EXAMPLE.com."), null)
+                .contains(provider));
+        assertTrue(index.getCandidates(createDomainNameElements("com", "ample.com",
+                "example.com.org"), null).isEmpty());
+        assertTrue(index.getCandidates(Collections.emptyMap(), null).isEmpty());
+    }
+
+    /**
+     * Verify that a provider is a candidate for the APs advertising one of its other home
+     * partners.
+     */
+    @Test
+    public void testCandidatesByOtherHomePartner() {
+        PasspointProvider provider = createProvider(TEST_FQDN, null, null, false);
+        PasspointConfiguration config = provider.getConfig();
+        config.getHomeSp().setOtherHomePartners(new String[] {TEST_OTHER_HOME_PARTNER});
+        PasspointProviderIndex index = new PasspointProviderIndex(Arrays.asList(provider));
+
+        assertTrue(index.getCandidates(createDomainNameElements("a." + TEST_OTHER_HOME_PARTNER),
+                null).contains(provider));
+    }
+
+    /**
+     * Verify that a provider is a candidate for the APs advertising its NAI realm.
+     */
+    @Test
+    public void testCandidatesByRealm() {
+        PasspointProvider provider = createProvider(TEST_FQDN, TEST_REALM, null, false);
+        PasspointProviderIndex index = new PasspointProviderIndex(Arrays.asList(provider));
+        Map<ANQPElementType, ANQPElement> elements = new HashMap<>();
+        elements.put(ANQPElementType.ANQPNAIRealm, new NAIRealmElement(Arrays.asList(
+                new NAIRealmData(Arrays.asList("other.net", TEST_REALM),
+                        Collections.emptyList()))));
+
+        assertTrue(index.getCandidates(elements, null).contains(provider));
+        // A realm is not matched against the domain names.
+        assertTrue(index.getCandidates(createDomainNameElements(TEST_REALM), null).isEmpty());
+    }
+
+    /**
+     * Verify that a provider is a candidate for the APs advertising one of its OIs, in the ANQP
+     * element or in the information element.
+     */
+    @Test
+    public void testCandidatesByOi() {
+        PasspointProvider provider =
+                createProvider(TEST_FQDN, null, new long[] {TEST_OI, TEST_OI}, false);
+        PasspointProviderIndex index = new PasspointProviderIndex(Arrays.asList(provider));
+        Map<ANQPElementType, ANQPElement> elements = new HashMap<>();
+        elements.put(ANQPElementType.ANQPRoamingConsortium,
+                new RoamingConsortiumElement(Arrays.asList(TEST_OTHER_OI, TEST_OI)));
+
+        assertTrue(index.getCandidates(elements, null).contains(provider));
+        assertTrue(index.getCandidates(Collections.emptyMap(), new long[] {TEST_OI})
+                .contains(provider));
+        assertTrue(index.getCandidates(Collections.emptyMap(), new long[] {TEST_OTHER_OI})
+                .isEmpty());
+    }
+
+    /**
+     * Verify that an AP is likely to match a provider when it advertises one of the provider OIs
+     * in its information element.
+     */
+    @Test
+    public void testHasOiMatch() {
+        PasspointProvider provider = createProvider(TEST_FQDN, null, new long[] {TEST_OI}, false);
+        PasspointProviderIndex index = new PasspointProviderIndex(Arrays.asList(provider));
+
+        assertTrue(index.hasOiMatch(new long[] {TEST_OTHER_OI, TEST_OI}));
+        assertFalse(index.hasOiMatch(new long[] {TEST_OTHER_OI}));
+        assertFalse(index.hasOiMatch(null));
+    }
+
+    /**
+     * Verify that the providers with a SIM credential are always candidates, and that only the
+     * matching providers are returned.
+     */
+    @Test
+    public void testCandidatesWithSeveralProviders() {
+        PasspointProvider simProvider = createProvider("sim.com", null, null, true);
+        PasspointProvider provider = createProvider(TEST_FQDN, null, null, false);
+        PasspointProvider otherProvider = createProvider("other.com", null, null, false);
+        PasspointProviderIndex index = new PasspointProviderIndex(
+                Arrays.asList(simProvider, provider, otherProvider));
+
+        Set<PasspointProvider> candidates =
+                index.getCandidates(createDomainNameElements(TEST_FQDN), null);
+        assertEquals(2, candidates.size());
+        assertTrue(candidates.contains(simProvider));
+        assertTrue(candidates.contains(provider));
+    }
+}
@@ -77,6 +77,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -814,6 +815,43 @@ public class PasspointProviderTest extends WifiBaseTest {
         assertEquals(0, mProvider.getAndRemoveMatchedRcoi(TEST_SSID_QUOTED));
     }
 
+    /**
+     * Verify that the ANQP match result of a provider is reused while the installed SIM does not
+     * change, and that the matched RCOI is still recorded for the scan result.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void matchReusesAnqpMatchForSameSim() throws Exception {
+        // Setup test provider.
+        PasspointConfiguration config = generateTestPasspointConfiguration(
+                CredentialType.SIM, false);
+        mProvider = createProvider(config);
+        when(mWifiCarrierInfoManager.getMatchingImsiCarrierId(
+                eq(config.getCredential().getSimCredential().getImsi())))
+                .thenReturn(new Pair<String, Integer>(TEST_IMSI, VALID_CARRIER_ID));
+
+        // Setup Roaming Consortium ANQP element.
+        Map<ANQPElementType, ANQPElement> anqpElementMap = new HashMap<>();
+        anqpElementMap.put(ANQPElementType.ANQPRoamingConsortium,
+                createRoamingConsortiumElement(TEST_ANQP_RC_OIS));
+
+        // A result computed with another SIM is not reused.
+        Map<PasspointProvider, PasspointProvider.AnqpMatch> anqpMatches =
+                new IdentityHashMap<>();
+        anqpMatches.put(mProvider,
+                new PasspointProvider.AnqpMatch("otherImsi", PasspointMatch.None, 0));
+        assertEquals(PasspointMatch.RoamingProvider, mProvider.match(anqpElementMap,
+                mRoamingConsortium, createTestScanResult(), anqpMatches));
+        assertEquals(TEST_IMSI, anqpMatches.get(mProvider).simImsi);
+        assertEquals(TEST_IE_RC_OIS[0], mProvider.getAndRemoveMatchedRcoi(TEST_SSID_QUOTED));
+
+        // The result is reused even though the provider would not match these elements.
+        assertEquals(PasspointMatch.RoamingProvider, mProvider.match(Collections.emptyMap(),
+                new RoamingConsortium(), createTestScanResult(), anqpMatches));
+        assertEquals(TEST_IE_RC_OIS[0], mProvider.getAndRemoveMatchedRcoi(TEST_SSID_QUOTED));
+    }
+
     /**
      * Verify that a provider is a roaming provider when a roaming consortium OI matches an OI in
      * the roaming consortium ANQP element and the provider's credential matches the NAI realm
@@ -16,6 +16,7 @@
 
 package com.android.server.wifi.hotspot2.anqp;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 import android.net.wifi.WifiSsid;
@@ -321,6 +322,33 @@ public class ANQPParserTest extends WifiBaseTest {
                 ANQPParser.parseElement(Constants.ANQPElementType.ANQPDomName, buffer));
     }
 
+    /**
+     * Verify that a parsed element keeps its payload, and that the element parsed again from it
+     * is equal to the original one.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void parsePayloadOfParsedElement() throws Exception {
+        byte[] domainNamePayload = getDomainNamePayload(new String[] {"test.com", "abc.com"});
+        ANQPElement domainName = ANQPParser.parseElement(Constants.ANQPElementType.ANQPDomName,
+                ByteBuffer.wrap(domainNamePayload));
+        assertArrayEquals(domainNamePayload, domainName.getPayload());
+        assertEquals(domainName, ANQPParser.parsePayload(Constants.ANQPElementType.ANQPDomName,
+                domainName.getPayload()));
+
+        // The payload of a Hotspot 2.0 element in a Vendor Specific element is its own one.
+        byte[] hsFriendlyNamePayload =
+                getHSFriendlyNamePayload(new String[] {"en"}, new String[] {"test"});
+        ANQPElement hsFriendlyName = ANQPParser.parseElement(
+                Constants.ANQPElementType.ANQPVendorSpec, ByteBuffer.wrap(getVendorSpecificPayload(
+                        ANQPParser.VENDOR_SPECIFIC_HS20_OI, ANQPParser.VENDOR_SPECIFIC_HS20_TYPE,
+                        Constants.HS_FRIENDLY_NAME, hsFriendlyNamePayload)));
+        assertArrayEquals(hsFriendlyNamePayload, hsFriendlyName.getPayload());
+        assertEquals(hsFriendlyName, ANQPParser.parsePayload(
+                Constants.ANQPElementType.HSFriendlyName, hsFriendlyName.getPayload()));
+    }
+
     /**
      * Verify that an expected RoamingConsortiumElement will be returned when parsing a buffer that
      * contained a Roaming Consortium ANQP element.
@@ -16,9 +16,9 @@
 
 package com.android.server.wifi.util;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
-import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import androidx.test.filters.SmallTest;
@@ -27,6 +27,8 @@ import com.android.server.wifi.WifiBaseTest;
 
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+
 /**
  * Unit tests for {@link com.android.server.wifi.util.ByteArrayRingBuffer}.
  */
@@ -46,7 +48,7 @@ public class ByteArrayRingBufferTest extends WifiBaseTest {
         final byte[] data = {0};
         assertTrue(rb.appendBuffer(data));
         assertEquals(1, rb.getNumBuffers());
-        assertSame(data, rb.getBuffer(0));
+        assertArrayEquals(data, rb.getBuffer(0));
     }
 
     @Test
@@ -57,8 +59,8 @@ public class ByteArrayRingBufferTest extends WifiBaseTest {
         assertTrue(rb.appendBuffer(data1));
         assertTrue(rb.appendBuffer(data2));
         assertEquals(2, rb.getNumBuffers());
-        assertSame(data1, rb.getBuffer(0));
-        assertSame(data2, rb.getBuffer(1));
+        assertArrayEquals(data1, rb.getBuffer(0));
+        assertArrayEquals(data2, rb.getBuffer(1));
     }
 
     @Test
@@ -98,7 +100,7 @@ public class ByteArrayRingBufferTest extends WifiBaseTest {
         final byte[] data2 = {11};
         assertTrue(rb.appendBuffer(data2));
         assertEquals(1, rb.getNumBuffers());
-        assertSame(data2, rb.getBuffer(0));
+        assertArrayEquals(data2, rb.getBuffer(0));
     }
 
     @Test
@@ -112,7 +114,7 @@ public class ByteArrayRingBufferTest extends WifiBaseTest {
         final byte[] data3 = {11, 12, 13, 14, 15, 16};
         assertTrue(rb.appendBuffer(data3));
         assertEquals(1, rb.getNumBuffers());
-        assertSame(data3, rb.getBuffer(0));
+        assertArrayEquals(data3, rb.getBuffer(0));
     }
 
     @Test
@@ -137,8 +139,8 @@ public class ByteArrayRingBufferTest extends WifiBaseTest {
         final byte[] data3 = {11};
         assertTrue(rb.appendBuffer(data3));
         assertEquals(2, rb.getNumBuffers());
-        assertSame(data2, rb.getBuffer(0));
-        assertSame(data3, rb.getBuffer(1));
+        assertArrayEquals(data2, rb.getBuffer(0));
+        assertArrayEquals(data3, rb.getBuffer(1));
     }
 
     @Test
@@ -187,6 +189,62 @@ public class ByteArrayRingBufferTest extends WifiBaseTest {
         rb.resize(MAX_BYTES);
     }
 
+    /** Verifies that the ring copies the appended data. */
+    @Test
+    public void appendCopiesData() {
+        final ByteArrayRingBuffer rb = new ByteArrayRingBuffer(MAX_BYTES);
+        final byte[] data = {1, 2, 3};
+        assertTrue(rb.appendBuffer(data));
+        data[0] = 42;
+        assertArrayEquals(new byte[] {1, 2, 3}, rb.getBuffer(0));
+    }
+
+    /** Verifies that elements wrapping around the end of the storage are read back intact. */
+    @Test
+    public void elementsWrappingAroundStorageAreReadIntact() throws Exception {
+        final ByteArrayRingBuffer rb = new ByteArrayRingBuffer(MAX_BYTES);
+        assertTrue(rb.appendBuffer(new byte[] {1, 2, 3, 4, 5, 6}));
+        assertTrue(rb.appendBuffer(new byte[] {7, 8, 9}));
+        // Evicts the first element, and wraps around the end of the 10 bytes storage.
+        final byte[] data = {10, 11, 12, 13};
+        assertTrue(rb.appendBuffer(data));
+        assertEquals(2, rb.getNumBuffers());
+        assertEquals(7, rb.getBytesUsed());
+        assertEquals(4, rb.getBufferLength(1));
+        assertArrayEquals(data, rb.getBuffer(1));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        rb.writeBuffer(0, out);
+        rb.writeBuffer(1, out);
+        assertArrayEquals(new byte[] {7, 8, 9, 10, 11, 12, 13}, out.toByteArray());
+    }
+
+    /** Verifies that the ring keeps working after storing many small elements. */
+    @Test
+    public void manySmallElementsAreEvictedInFifoOrder() {
+        final ByteArrayRingBuffer rb = new ByteArrayRingBuffer(MAX_BYTES);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(rb.appendBuffer(new byte[] {(byte) i}));
+        }
+        assertEquals(MAX_BYTES, rb.getNumBuffers());
+        for (int i = 0; i < MAX_BYTES; i++) {
+            assertArrayEquals(new byte[] {(byte) (100 - MAX_BYTES + i)}, rb.getBuffer(i));
+        }
+    }
+
+    /** Verifies that shrinking the buffer retains the most recent elements. */
+    @Test
+    public void resizeRetainsMostRecentElementsOnShrink() {
+        final ByteArrayRingBuffer rb = new ByteArrayRingBuffer(MAX_BYTES);
+        assertTrue(rb.appendBuffer(new byte[] {1, 2, 3, 4}));
+        assertTrue(rb.appendBuffer(new byte[] {5, 6, 7, 8}));
+        rb.resize(5);
+        assertEquals(1, rb.getNumBuffers());
+        assertArrayEquals(new byte[] {5, 6, 7, 8}, rb.getBuffer(0));
+        assertTrue(rb.appendBuffer(new byte[] {9}));
+        assertArrayEquals(new byte[] {9}, rb.getBuffer(1));
+    }
+
     /** Verifies that we don't crash when growing an empty buffer. */
     @Test
     public void growingEmptyBufferSucceeds() {
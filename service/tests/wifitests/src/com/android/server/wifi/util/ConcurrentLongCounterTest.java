@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.util;
+
+import static com.android.server.wifi.WifiMetricsTestUtil.assertKeyCountsEqual;
+import static com.android.server.wifi.WifiMetricsTestUtil.buildInt32Count;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.server.wifi.WifiBaseTest;
+import com.android.server.wifi.proto.nano.WifiMetricsProto.Int32Count;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit tests for {@link ConcurrentLongCounter}.
+ */
+@SmallTest
+public class ConcurrentLongCounterTest extends WifiBaseTest {
+    private static final int[] TEST_KEYS = {
+            100, 20, 34, 5656, 3535, 6456, -1231, -4235, 20, 3535, -5, 100, 6456, 34, -4235, -4235
+    };
+
+    /**
+     * Tests when the counter is empty.
+     */
+    @Test
+    public void testEmpty() {
+        ConcurrentLongCounter counter = new ConcurrentLongCounter(16);
+        assertEquals(0, counter.size());
+        assertEquals(0, counter.get(1));
+        assertEquals("{}", counter.toString());
+        assertKeyCountsEqual(new Int32Count[0], counter.toProto());
+    }
+
+    /**
+     * Tests that the keys are counted and reported in increasing order.
+     */
+    @Test
+    public void testIncrementAndAdd() {
+        ConcurrentLongCounter counter = new ConcurrentLongCounter(16);
+        for (int k : TEST_KEYS) {
+            counter.increment(k);
+        }
+        counter.add(-5, 10);
+
+        Int32Count[] expected = {
+                buildInt32Count(-4235, 3),
+                buildInt32Count(-1231, 1),
+                buildInt32Count(-5, 11),
+                buildInt32Count(20, 2),
+                buildInt32Count(34, 2),
+                buildInt32Count(100, 2),
+                buildInt32Count(3535, 2),
+                buildInt32Count(5656, 1),
+                buildInt32Count(6456, 2),
+        };
+        assertKeyCountsEqual(expected, counter.toProto());
+        assertEquals(expected.length, counter.size());
+        assertEquals(11, counter.get(-5));
+        assertEquals("{-4235=3, -1231=1, -5=11, 20=2, 34=2, 100=2, 3535=2, 5656=1, 6456=2}",
+                counter.toString());
+    }
+
+    /**
+     * Tests that long keys are kept as is.
+     */
+    @Test
+    public void testLongKeys() {
+        ConcurrentLongCounter counter = new ConcurrentLongCounter(4);
+        long key1 = (5180L << 32) - 60;
+        long key2 = (2412L << 32) - 70;
+        counter.increment(key1);
+        counter.increment(key2);
+        counter.increment(key1);
+
+        List<Long> keys = new ArrayList<>();
+        List<Long> counts = new ArrayList<>();
+        counter.forEach((key, count) -> {
+            keys.add(key);
+            counts.add(count);
+        });
+        assertEquals(List.of(key2, key1), keys);
+        assertEquals(List.of(1L, 2L), counts);
+    }
+
+    /**
+     * Tests that new keys are still counted once the table is full, through the overflow map,
+     * while the keys in the table are still incremented without overflowing.
+     */
+    @Test
+    public void testFullCounterOverflowsNewKeys() {
+        ConcurrentLongCounter counter = new ConcurrentLongCounter(3);
+        assertEquals(4, counter.getCapacity());
+        for (int k = 0; k < 4; k++) {
+            counter.increment(k);
+        }
+        assertEquals(0, counter.getOverflowCount());
+        counter.increment(4);
+        counter.add(4, 2);
+        counter.increment(2);
+        assertEquals(2, counter.getOverflowCount());
+        assertEquals(5, counter.size());
+        assertEquals(2, counter.get(2));
+        assertEquals(3, counter.get(4));
+        assertEquals("{0=1, 1=1, 2=2, 3=1, 4=3}", counter.toString());
+    }
+
+    /**
+     * Tests that clear removes all the keys and the overflow count.
+     */
+    @Test
+    public void testClear() {
+        ConcurrentLongCounter counter = new ConcurrentLongCounter(1);
+        counter.increment(1);
+        counter.increment(2);
+        assertEquals(1, counter.getOverflowCount());
+        counter.clear();
+        assertEquals(0, counter.size());
+        assertEquals(0, counter.get(1));
+        assertEquals(0, counter.get(2));
+        assertEquals(0, counter.getOverflowCount());
+        counter.increment(2);
+        assertEquals(1, counter.get(2));
+        assertEquals(0, counter.getOverflowCount());
+    }
+
+    private static void incrementConcurrently(ConcurrentLongCounter counter, int numThreads,
+            int numIncrements, int numKeys) throws Exception {
+        Thread[] threads = new Thread[numThreads];
+        for (int t = 0; t < numThreads; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < numIncrements; i++) {
+                    counter.increment(i % numKeys);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    /**
+     * Tests that no increment is lost when several threads update the counter concurrently.
+     */
+    @Test
+    public void testConcurrentIncrements() throws Exception {
+        final int numThreads = 4;
+        final int numIncrements = 10000;
+        final int numKeys = 50;
+        ConcurrentLongCounter counter = new ConcurrentLongCounter(numKeys);
+        incrementConcurrently(counter, numThreads, numIncrements, numKeys);
+
+        assertEquals(numKeys, counter.size());
+        for (int k = 0; k < numKeys; k++) {
+            assertEquals(numThreads * numIncrements / numKeys, counter.get(k));
+        }
+        assertEquals(0, counter.getOverflowCount());
+    }
+
+    /**
+     * Tests that no increment is lost when several threads update the counter concurrently with
+     * more keys than fit in the table.
+     */
+    @Test
+    public void testConcurrentIncrementsWithOverflow() throws Exception {
+        final int numThreads = 4;
+        final int numIncrements = 10000;
+        final int numKeys = 50;
+        ConcurrentLongCounter counter = new ConcurrentLongCounter(8);
+        incrementConcurrently(counter, numThreads, numIncrements, numKeys);
+
+        assertEquals(numKeys, counter.size());
+        for (int k = 0; k < numKeys; k++) {
+            assertEquals(numThreads * numIncrements / numKeys, counter.get(k));
+        }
+        assertTrue(counter.getOverflowCount() > 0);
+    }
+}
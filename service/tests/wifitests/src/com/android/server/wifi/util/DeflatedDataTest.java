@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.util.Base64;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.server.wifi.WifiBaseTest;
+
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.zip.Inflater;
+
+/**
+ * Unit tests for {@link com.android.server.wifi.util.DeflatedData}.
+ */
+@SmallTest
+public class DeflatedDataTest extends WifiBaseTest {
+    private static final int COMPRESSIBLE_DATA_SIZE = 4096;
+
+    private static byte[] makeCompressibleData() {
+        byte[] data = new byte[COMPRESSIBLE_DATA_SIZE];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 4);
+        }
+        return data;
+    }
+
+    private static String writeBase64(DeflatedData deflated) {
+        StringWriter sw = new StringWriter();
+        PrintWriter pw = new PrintWriter(sw);
+        deflated.writeBase64(pw);
+        pw.flush();
+        return sw.toString();
+    }
+
+    @Test
+    public void ofNullReturnsNull() {
+        assertNull(DeflatedData.of(null));
+    }
+
+    @Test
+    public void ofEmptyDataInflatesToEmptyData() {
+        DeflatedData deflated = DeflatedData.of(new byte[0]);
+        assertEquals(0, deflated.getRawLength());
+        assertArrayEquals(new byte[0], deflated.toByteArray());
+    }
+
+    @Test
+    public void dataSurvivesRoundTrip() {
+        byte[] data = makeCompressibleData();
+        DeflatedData deflated = DeflatedData.of(data);
+        assertEquals(data.length, deflated.getRawLength());
+        assertTrue(deflated.getDeflatedLength() < data.length);
+        assertArrayEquals(data, deflated.toByteArray());
+    }
+
+    @Test
+    public void builderDeflatesDataWrittenInChunks() {
+        byte[] data = makeCompressibleData();
+        DeflatedData.Builder builder = new DeflatedData.Builder();
+        builder.write(data[0]);
+        builder.write(data, 1, 99);
+        builder.write(data, 100, data.length - 100);
+        DeflatedData deflated = builder.build();
+        assertEquals(data.length, deflated.getRawLength());
+        assertArrayEquals(data, deflated.toByteArray());
+    }
+
+    @Test
+    public void writeBase64WritesDeflatedDataIfSmaller() throws Exception {
+        byte[] data = makeCompressibleData();
+        byte[] decoded = Base64.decode(writeBase64(DeflatedData.of(data)), Base64.DEFAULT);
+        assertTrue(decoded.length < data.length);
+
+        Inflater inflater = new Inflater();
+        inflater.setInput(decoded);
+        byte[] inflated = new byte[data.length];
+        assertEquals(data.length, inflater.inflate(inflated));
+        inflater.end();
+        assertArrayEquals(data, inflated);
+    }
+
+    @Test
+    public void writeBase64WritesRawDataIfDeflatedDataIsNotSmaller() {
+        byte[] data = new byte[] {0x01, 0x7f, (byte) 0x80};
+        assertArrayEquals(data,
+                Base64.decode(writeBase64(DeflatedData.of(data)), Base64.DEFAULT));
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.server.wifi.WifiBaseTest;
+import com.android.server.wifi.proto.nano.WifiMetricsProto.StaEvent;
+import com.android.server.wifi.proto.nano.WifiMetricsProto.StaEvent.ConfigInfo;
+
+import com.google.protobuf.nano.MessageNano;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link StaEventRing}.
+ */
+@SmallTest
+public class StaEventRingTest extends WifiBaseTest {
+    private static final String TEST_IFACE_NAME = "wlan0";
+
+    private static StaEvent createFullStaEvent() {
+        StaEvent event = new StaEvent();
+        event.type = StaEvent.TYPE_NETWORK_DISCONNECTION_EVENT;
+        event.reason = 3;
+        event.status = 17;
+        event.localGen = true;
+        event.lastRssi = -60;
+        event.lastLinkSpeed = 866;
+        event.lastFreq = 5180;
+        event.supplicantStateChangesBitmask = 0x42;
+        event.startTimeMillis = 123456789L;
+        event.frameworkDisconnectReason = StaEvent.DISCONNECT_API;
+        event.associationTimedOut = true;
+        event.authFailureReason = StaEvent.AUTH_FAILURE_WRONG_PSWD;
+        event.lastScore = 55;
+        event.lastWifiUsabilityScore = 80;
+        event.lastPredictionHorizonSec = 15;
+        event.linkProbeWasSuccess = true;
+        event.linkProbeSuccessElapsedTimeMs = 20;
+        event.linkProbeFailureReason = 2;
+        event.mobileTxBytes = 1L << 40;
+        event.mobileRxBytes = 2L << 40;
+        event.totalTxBytes = 3L << 40;
+        event.totalRxBytes = 4L << 40;
+        event.screenOn = true;
+        event.isCellularDataAvailable = true;
+        event.isAdaptiveConnectivityEnabled = true;
+        event.interfaceName = TEST_IFACE_NAME;
+        event.interfaceRole = 1;
+        ConfigInfo info = new ConfigInfo();
+        info.allowedKeyManagement = 0x6;
+        info.allowedProtocols = 0x3;
+        info.allowedAuthAlgorithms = 0x1;
+        info.allowedPairwiseCiphers = 0xc;
+        info.allowedGroupCiphers = 0xf;
+        info.hiddenSsid = true;
+        info.isPasspoint = true;
+        info.isEphemeral = true;
+        info.hasEverConnected = true;
+        info.scanRssi = -70;
+        info.scanFreq = 2437;
+        event.configInfo = info;
+        return event;
+    }
+
+    /**
+     * Verify that an event with every field set is decoded to an equal proto.
+     */
+    @Test
+    public void testAppendAndGetRoundTrip() {
+        StaEventRing ring = new StaEventRing(4);
+        StaEvent event = createFullStaEvent();
+        ring.append(event, 1000L);
+
+        assertEquals(1, ring.size());
+        assertEquals(1000L, ring.getWallClockMillis(0));
+        assertArrayEquals(MessageNano.toByteArray(event),
+                MessageNano.toByteArray(ring.get(0)));
+    }
+
+    /**
+     * Verify that the appended event can be reused without changing the stored event, and that
+     * an event without config info is decoded without one.
+     */
+    @Test
+    public void testAppendedEventIsCopied() {
+        StaEventRing ring = new StaEventRing(4);
+        StaEvent event = createFullStaEvent();
+        byte[] expected = MessageNano.toByteArray(event);
+        ring.append(event, 1000L);
+
+        event.clear();
+        event.type = StaEvent.TYPE_CMD_START_CONNECT;
+        ring.append(event, 2000L);
+
+        assertArrayEquals(expected, MessageNano.toByteArray(ring.get(0)));
+        assertEquals(StaEvent.TYPE_CMD_START_CONNECT, ring.get(1).type);
+        assertEquals(-1, ring.get(1).reason);
+        assertNull(ring.get(1).configInfo);
+    }
+
+    /**
+     * Verify that the oldest events are overwritten once the ring is full, and that the events
+     * are read oldest first.
+     */
+    @Test
+    public void testOldestEventsAreOverwritten() {
+        StaEventRing ring = new StaEventRing(3);
+        StaEvent event = new StaEvent();
+        for (int i = 0; i < 5; i++) {
+            event.lastRssi = -50 - i;
+            ring.append(event, i);
+        }
+
+        assertEquals(3, ring.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(-52 - i, ring.get(i).lastRssi);
+            assertEquals(i + 2, ring.getWallClockMillis(i));
+        }
+    }
+
+    /**
+     * Verify that clear removes all the events.
+     */
+    @Test
+    public void testClear() {
+        StaEventRing ring = new StaEventRing(2);
+        ring.append(createFullStaEvent(), 1000L);
+        ring.append(createFullStaEvent(), 2000L);
+        ring.clear();
+        assertEquals(0, ring.size());
+
+        StaEvent event = new StaEvent();
+        event.type = StaEvent.TYPE_WIFI_ENABLED;
+        ring.append(event, 3000L);
+        assertEquals(1, ring.size());
+        assertEquals(StaEvent.TYPE_WIFI_ENABLED, ring.get(0).type);
+    }
+
+    /**
+     * Verify that reading past the events throws.
+     */
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testGetOutOfBounds() {
+        StaEventRing ring = new StaEventRing(2);
+        ring.append(new StaEvent(), 1000L);
+        ring.get(1);
+    }
+}